@@ -26,6 +26,7 @@ import model.util.FXMLLoaderUtils;
 import org.controlsfx.control.MaskerPane;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
 
@@ -79,6 +80,9 @@ public class SanimalAnalysisController implements Initializable
 	/// FXML bound fields end
 	///
 
+	// Analysis needs every matching image in memory at once, so queries matching more images than this are refused
+	private static final Long MAX_ANALYZED_IMAGES = 200_000L;
+
 	private Integer eventIntervalIndex = 0;
 
 	private Image standardArrow = new Image("/images/analysisWindow/arrowDivider.png");
@@ -159,9 +163,27 @@ public class SanimalAnalysisController implements Initializable
 			@Override
 			protected List<ImageEntry> call()
 			{
+				this.updateMessage("Counting images...");
+				// Count the matching images first, the cluster computes this without sending any images so it's quick
+				Long totalImages = SanimalData.getInstance().getEsConnectionManager().performCountQuery(query).getTotalImages();
+				// Don't start downloading images if they won't fit in memory
+				if (totalImages > MAX_ANALYZED_IMAGES)
+				{
+					SanimalData.getInstance().getErrorDisplay().notify("The query matches " + totalImages + " images, but at most " + MAX_ANALYZED_IMAGES + " images can be analyzed at once. Add more filters to narrow the query down!");
+					return null;
+				}
+
 				this.updateMessage("Performing query...");
-				// Grab the result of the query
-				return SanimalData.getInstance().getEsConnectionManager().performQuery(query);
+				// Grab the result of the query a page at a time so we can show how many of the images have arrived so far. Each page's
+				// hits are thrown away once it is converted, so only the images themselves are kept
+				List<ImageEntry> queryResult = new ArrayList<>(totalImages.intValue());
+				SanimalData.getInstance().getEsConnectionManager().performQuery(query, page ->
+				{
+					queryResult.addAll(page);
+					this.updateMessage("Performing query... (" + queryResult.size() + " of " + totalImages + " images received)");
+					this.updateProgress(queryResult.size(), totalImages);
+				});
+				return queryResult;
 			}
 		};
 		Integer finalEventInterval = eventInterval;
@@ -171,6 +193,10 @@ public class SanimalAnalysisController implements Initializable
 		{
 			this.mpnQuerying.setVisible(false);
 
+			// If the query was refused there is nothing to analyze
+			if (queryTask.getValue() == null)
+				return;
+
 			// Analyze the result of the query
 			DataAnalyzer dataAnalyzer = new DataAnalyzer(queryTask.getValue(), finalEventInterval);
 
@@ -99,6 +99,8 @@ public class SanimalHomeController implements Initializable
 	 */
 	public void logoutPressed(ActionEvent actionEvent)
 	{
+		// Close our connections to CyVerse before exiting
+		SanimalData.getInstance().getCyConnectionManager().logout();
 		System.exit(0);
 	}
 
@@ -307,6 +307,8 @@ public class SanimalImportController implements Initializable
 		MonadicBinding<ImageContainer> selectedImage = EasyBind.monadic(this.imageTree.getSelectionModel().selectedItemProperty()).map(TreeItem::getValue);
 		// Clear the preview pane if there is a preview'd image
 		selectedImage.addListener((observable, oldValue, newValue) -> this.speciesPreviewImage.setValue(null));
+		// Start downloading the cloud images near the selection so that they are ready when the user gets to them
+		selectedImage.addListener((observable, oldValue, newValue) -> SanimalData.getInstance().getCloudImagePrefetcher().prefetchAround(newValue));
 		// Update the currently selected image and directory
 		currentlySelectedImage.bind(selectedImage.map(imageContainer -> (imageContainer instanceof ImageEntry) ? (ImageEntry) imageContainer : null));
 		currentlySelectedDirectory.bind(selectedImage.map(imageContainer -> (imageContainer instanceof ImageDirectory) ? (ImageDirectory) imageContainer : null));
@@ -397,8 +399,8 @@ public class SanimalImportController implements Initializable
 		{
 			// When we select a new image, reset the image viewport to center and zoomed out.
 			this.resetImageView(null);
-			// We also make sure to pull the image from online if it's a cloud based image
-			if (newValue instanceof CloudImageEntry) ((CloudImageEntry) newValue).pullFromCloudIfNotPulled();
+			// We also make sure to pull the image from online if it's a cloud based image. If the image has a thumbnail we show that until the user zooms in
+			if (newValue instanceof CloudImageEntry && !((CloudImageEntry) newValue).hasThumbnail()) ((CloudImageEntry) newValue).pullFromCloudIfNotPulled();
 		});
 
 		// When we press a key, we want to add the bound species to the species entry
@@ -1328,6 +1330,10 @@ public class SanimalImportController implements Initializable
 	// Found here: https://gist.github.com/james-d/ce5ec1fd44ce6c64e81a
 	public void onImageScroll(ScrollEvent scrollEvent)
 	{
+		// If we're only showing a thumbnail of a cloud image, download the full image now that the user is zooming in
+		if (this.currentlySelectedImage.getValue() instanceof CloudImageEntry)
+			((CloudImageEntry) this.currentlySelectedImage.getValue()).pullFromCloudIfNotPulled();
+
 		double delta = -scrollEvent.getDeltaY();
 		Rectangle2D viewport = this.imagePreview.getViewport();
 
@@ -11,6 +11,7 @@ import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
 import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -106,6 +107,8 @@ public class SanimalUploadController implements Initializable
 
 	// The currently selected image collection
 	private ObjectProperty<ImageCollection> selectedCollection = new SimpleObjectProperty<>();
+	// True while a page of uploads is being downloaded, so that we only request one page at a time
+	private Boolean loadingUploadPage = false;
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources)
@@ -164,6 +167,12 @@ public class SanimalUploadController implements Initializable
 			ImageUploadDownloadListEntryController controller = FXMLLoaderUtils.loadFXML("uploadView/ImageUploadDownloadListEntry.fxml").getController();
 			controller.setOnDownload(() -> this.downloadImages(controller.getItem()));
 			controller.setOnUpload(() -> this.saveImages(controller.getItem()));
+			// When the last upload in the list is shown, load the next page of uploads
+			controller.indexProperty().addListener((observable, oldValue, newValue) ->
+			{
+				if (newValue.intValue() >= 0 && newValue.intValue() == list.getItems().size() - 1 && this.selectedCollection.getValue() != null)
+					this.loadNextUploadPage(this.selectedCollection.getValue());
+			});
 			return controller;
 		});
 		// Bind the upload download to the current selection's uploads, Sort the uploads by date taken and filter them by the query
@@ -228,6 +237,7 @@ public class SanimalUploadController implements Initializable
 	private void syncUploadsForCollection(ImageCollection collection)
 	{
 		// Disable the download list and show the loading label and circle
+		this.loadingUploadPage = true;
 		this.mpnDownloadUploads.setVisible(true);
 		this.mpnDownloadUploads.setText(STATUS_LOADING);
 		this.vbxDownloadList.setDisable(true);
@@ -254,12 +264,44 @@ public class SanimalUploadController implements Initializable
 			this.mpnDownloadUploads.setVisible(false);
 			this.mpnDownloadUploads.progressProperty().unbind();
 			this.vbxDownloadList.setDisable(false);
+			this.loadingUploadPage = false;
 		});
+		collectionUploadDownloader.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> this.loadingUploadPage = false);
 
 		// Add the task
 		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(collectionUploadDownloader);
 	}
 
+	/**
+	 * Method called to load the next page of uploads to a collection once the user scrolls to the end of the upload list
+	 *
+	 * @param collection The image collection to download more uploads for
+	 */
+	private void loadNextUploadPage(ImageCollection collection)
+	{
+		// Only load one page at a time, and only if there are more uploads to load
+		if (this.loadingUploadPage || !collection.moreUploadsAvailable())
+			return;
+		this.loadingUploadPage = true;
+
+		// Create a task to pull the next page of the collection's uploads
+		ErrorTask<Void> uploadPageDownloader = new ErrorTask<Void>()
+		{
+			@Override
+			protected Void call()
+			{
+				this.updateMessage("Downloading more uploads to collection: " + collection.getName());
+				SanimalData.getInstance().getEsConnectionManager().retrieveAndInsertNextUploadPageFor(collection);
+				return null;
+			}
+		};
+		uploadPageDownloader.setOnSucceeded(event -> this.loadingUploadPage = false);
+		uploadPageDownloader.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> this.loadingUploadPage = false);
+
+		// Add the task
+		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(uploadPageDownloader);
+	}
+
 	/**
 	 * When we click the new collection button
 	 *
@@ -372,7 +414,7 @@ public class SanimalUploadController implements Initializable
 			boolean validDirectory = true;
 
 			// Each image must have a location and species tagged
-			for (CloudImageEntry imageEntry : imageDirectory.flattened().filter(imageContainer -> imageContainer instanceof CloudImageEntry).map(imageContainer -> (CloudImageEntry) imageContainer).filter(cloudImageEntry -> cloudImageEntry.hasBeenPulledFromCloud() && cloudImageEntry.isCloudDirty()).collect(Collectors.toList()))
+			for (CloudImageEntry imageEntry : imageDirectory.flattened().filter(imageContainer -> imageContainer instanceof CloudImageEntry).map(imageContainer -> (CloudImageEntry) imageContainer).filter(CloudImageEntry::isCloudDirty).collect(Collectors.toList()))
 			{
 				if (imageEntry.getLocationTaken() == null)
 				{
@@ -482,8 +524,22 @@ public class SanimalUploadController implements Initializable
 
 			dialog.showAndWait().ifPresent(result ->
 			{
-				if (this.selectedCollection.getValue() != null)
-					SanimalData.getInstance().getCyConnectionManager().indexExisitingImages(this.selectedCollection.getValue(), result);
+				ImageCollection collection = this.selectedCollection.getValue();
+				if (collection != null)
+				{
+					// Indexing reads the header of every image, so do it in the background
+					ErrorTask<Void> indexTask = new ErrorTask<Void>()
+					{
+						@Override
+						protected Void call()
+						{
+							this.updateMessage("Indexing existing images in: " + result);
+							SanimalData.getInstance().getCyConnectionManager().indexExisitingImages(collection, result);
+							return null;
+						}
+					};
+					SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(indexTask);
+				}
 			});
 		}
 		else
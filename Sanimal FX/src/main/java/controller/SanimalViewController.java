@@ -268,11 +268,19 @@ public class SanimalViewController implements Initializable
 						//esConnectionManager.nukeAndRecreateUserIndex();
 						//esConnectionManager.nukeAndRecreateMetadataIndex();
 						//esConnectionManager.nukeAndRecreateCollectionsIndex();
+						//esConnectionManager.nukeAndRecreateUploadsIndex();
+						//esConnectionManager.migrateCollectionUploads();
+						//esConnectionManager.splitLegacyMetadataIndex();
+						//esConnectionManager.migrateMetadataIndices(null);
+						//esConnectionManager.backfillSpeciesFields();
+						//esConnectionManager.rebuildRollupsIndex();
 
 						// Then initialize the remove sanimal directory
 						this.updateMessage("Initializing Sanimal remote directory...");
 						this.updateProgress(2, 7);
 						esConnectionManager.initSanimalRemoteDirectory();
+						// Put back the settings of any metadata index left tuned by a bulk load that never finished
+						esConnectionManager.restoreStaleBulkLoads();
 
 						// Pull Sanimal settings from the remote directory
 						this.updateMessage("Pulling settings from remote directory...");
@@ -0,0 +1,153 @@
+package controller.analysisView.conditions;
+
+import controller.analysisView.IConditionController;
+import javafx.fxml.FXML;
+import javafx.scene.control.TextField;
+import model.query.IQueryCondition;
+import model.query.conditions.GeoBoundingBoxCondition;
+import org.controlsfx.validation.ValidationSupport;
+import org.controlsfx.validation.Validator;
+import org.fxmisc.easybind.EasyBind;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+
+/**
+ * Class used as a controller for the "Bounding box filter" UI component
+ */
+public class GeoBoundingBoxConditionController implements IConditionController
+{
+	///
+	/// FXML Bound Fields Start
+	///
+
+	@FXML
+	public TextField txtNorth;
+	@FXML
+	public TextField txtWest;
+	@FXML
+	public TextField txtSouth;
+	@FXML
+	public TextField txtEast;
+
+	///
+	/// FXML Bound Fields End
+	///
+
+	/**
+	 * Initialize sets up validators to ensure that each edge of the box is a valid latitude or longitude, that the north
+	 * edge is above the south edge, and that the west and east edges differ
+	 *
+	 * @param location ignored
+	 * @param resources ignored
+	 */
+	@Override
+	public void initialize(URL location, ResourceBundle resources)
+	{
+		ValidationSupport fieldValidator = new ValidationSupport();
+		// The north and south edges must be latitudes, and the west and east edges must be longitudes. The box must also have
+		// a height and a width, so the north edge must be above the south edge and the west and east edges must differ. An
+		// invalid box is left out of the query, see GeoBoundingBoxCondition
+		fieldValidator.registerValidator(this.txtNorth, true, Validator.combine(
+				Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, 90.0), "North must be a latitude between -90 and 90!"),
+				Validator.createPredicateValidator((String north) -> this.northAboveSouth(north, this.txtSouth.getText()), "North must be above south!")));
+		fieldValidator.registerValidator(this.txtSouth, true, Validator.combine(
+				Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, 90.0), "South must be a latitude between -90 and 90!"),
+				Validator.createPredicateValidator((String south) -> this.northAboveSouth(this.txtNorth.getText(), south), "South must be below north!")));
+		fieldValidator.registerValidator(this.txtWest, true, Validator.combine(
+				Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, 180.0), "West must be a longitude between -180 and 180!"),
+				Validator.createPredicateValidator((String west) -> this.westNotEast(west, this.txtEast.getText()), "West and east must be different!")));
+		fieldValidator.registerValidator(this.txtEast, true, Validator.combine(
+				Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, 180.0), "East must be a longitude between -180 and 180!"),
+				Validator.createPredicateValidator((String east) -> this.westNotEast(this.txtWest.getText(), east), "West and east must be different!")));
+	}
+
+	/**
+	 * Initializes the controller with a data model to bind to
+	 *
+	 * @param iQueryCondition The data model which should be a bounding box filter condition
+	 */
+	@Override
+	public void initializeData(IQueryCondition iQueryCondition)
+	{
+		if (iQueryCondition instanceof GeoBoundingBoxCondition)
+		{
+			GeoBoundingBoxCondition geoBoundingBoxCondition = (GeoBoundingBoxCondition) iQueryCondition;
+
+			// Initialize our fields
+			this.txtNorth.setText(geoBoundingBoxCondition.northProperty().getValue().toString());
+			this.txtWest.setText(geoBoundingBoxCondition.westProperty().getValue().toString());
+			this.txtSouth.setText(geoBoundingBoxCondition.southProperty().getValue().toString());
+			this.txtEast.setText(geoBoundingBoxCondition.eastProperty().getValue().toString());
+
+			// Bind the new values to our model
+			geoBoundingBoxCondition.northProperty().bind(EasyBind.map(this.txtNorth.textProperty(), north -> parseOrDefault(north, 90.0, 90.0)));
+			geoBoundingBoxCondition.westProperty().bind(EasyBind.map(this.txtWest.textProperty(), west -> parseOrDefault(west, 180.0, -180.0)));
+			geoBoundingBoxCondition.southProperty().bind(EasyBind.map(this.txtSouth.textProperty(), south -> parseOrDefault(south, 90.0, -90.0)));
+			geoBoundingBoxCondition.eastProperty().bind(EasyBind.map(this.txtEast.textProperty(), east -> parseOrDefault(east, 180.0, 180.0)));
+		}
+	}
+
+	/**
+	 * Parses the string number into a double, or returns the default number if the parse fails or the number is out of range
+	 *
+	 * @param number The number to parse as a string
+	 * @param limit The largest absolute value the number may have
+	 * @param defaultNumber The default return value
+	 * @return The string as a number or the default number if the parse fails
+	 */
+	private Double parseOrDefault(String number, Double limit, Double defaultNumber)
+	{
+		if (this.validDoubleInRange(number, limit))
+			return Double.parseDouble(number);
+		else
+			return defaultNumber;
+	}
+
+	/**
+	 * Tests if the north edge of the box is above the south edge. Edges that aren't numbers are reported by the range validators
+	 *
+	 * @param north The north edge as a string
+	 * @param south The south edge as a string
+	 * @return True if the north edge is above the south edge or either edge is not a valid latitude
+	 */
+	private Boolean northAboveSouth(String north, String south)
+	{
+		if (this.validDoubleInRange(north, 90.0) && this.validDoubleInRange(south, 90.0))
+			return Double.parseDouble(north) > Double.parseDouble(south);
+		return true;
+	}
+
+	/**
+	 * Tests if the west and east edges of the box differ. Edges that aren't numbers are reported by the range validators
+	 *
+	 * @param west The west edge as a string
+	 * @param east The east edge as a string
+	 * @return True if the edges differ or either edge is not a valid longitude
+	 */
+	private Boolean westNotEast(String west, String east)
+	{
+		if (this.validDoubleInRange(west, 180.0) && this.validDoubleInRange(east, 180.0))
+			return Double.parseDouble(west) != Double.parseDouble(east);
+		return true;
+	}
+
+	/**
+	 * Tests if a string is a valid double between -limit and limit
+	 *
+	 * @param number The number to test
+	 * @param limit The largest absolute value the number may have
+	 * @return True if the number is a valid double in range, false otherwise
+	 */
+	private Boolean validDoubleInRange(String number, Double limit)
+	{
+		try
+		{
+			return Math.abs(Double.parseDouble(number)) <= limit;
+		}
+		catch (NumberFormatException ignored)
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package controller.analysisView.conditions;
+
+import controller.analysisView.IConditionController;
+import javafx.fxml.FXML;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.TextField;
+import javafx.util.StringConverter;
+import model.SanimalData;
+import model.location.Location;
+import model.query.IQueryCondition;
+import model.query.conditions.GeoDistanceCondition;
+import org.controlsfx.validation.ValidationSupport;
+import org.controlsfx.validation.Validator;
+import org.fxmisc.easybind.EasyBind;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+
+/**
+ * Class used as a controller for the "Distance filter" UI component
+ */
+public class GeoDistanceConditionController implements IConditionController
+{
+	///
+	/// FXML Bound Fields Start
+	///
+
+	@FXML
+	public ComboBox<Location> cbxLocation;
+	@FXML
+	public TextField txtLatitude;
+	@FXML
+	public TextField txtLongitude;
+	@FXML
+	public TextField txtDistance;
+	@FXML
+	public ComboBox<GeoDistanceCondition.RadiusUnits> cbxUnit;
+
+	///
+	/// FXML Bound Fields End
+	///
+
+	/**
+	 * Initialize sets up validators to ensure that the center point and distance are valid numbers
+	 *
+	 * @param location ignored
+	 * @param resources ignored
+	 */
+	@Override
+	public void initialize(URL location, ResourceBundle resources)
+	{
+		ValidationSupport fieldValidator = new ValidationSupport();
+		// The center must be a valid latitude and longitude, and the distance must be positive
+		fieldValidator.registerValidator(this.txtLatitude, true, Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, -90.0, 90.0), "Latitude must be between -90 and 90!"));
+		fieldValidator.registerValidator(this.txtLongitude, true, Validator.createPredicateValidator((String number) -> this.validDoubleInRange(number, -180.0, 180.0), "Longitude must be between -180 and 180!"));
+		fieldValidator.registerValidator(this.txtDistance, true, Validator.createPredicateValidator(this::validPositiveDouble, "Distance must be a positive decimal value!"));
+
+		// Picking a known location fills in the center point with its coordinates
+		this.cbxLocation.setItems(SanimalData.getInstance().getLocationList());
+		this.cbxLocation.setConverter(new StringConverter<Location>()
+		{
+			@Override
+			public String toString(Location location)
+			{
+				return location == null ? "" : location.getName() + " (" + location.getId() + ")";
+			}
+
+			@Override
+			public Location fromString(String string)
+			{
+				return null;
+			}
+		});
+		this.cbxLocation.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
+		{
+			if (newValue != null)
+			{
+				this.txtLatitude.setText(newValue.getLatitude().toString());
+				this.txtLongitude.setText(newValue.getLongitude().toString());
+			}
+		});
+	}
+
+	/**
+	 * Initializes the controller with a data model to bind to
+	 *
+	 * @param iQueryCondition The data model which should be a distance filter condition
+	 */
+	@Override
+	public void initializeData(IQueryCondition iQueryCondition)
+	{
+		if (iQueryCondition instanceof GeoDistanceCondition)
+		{
+			GeoDistanceCondition geoDistanceCondition = (GeoDistanceCondition) iQueryCondition;
+
+			// Initialize our fields
+			this.txtLatitude.setText(geoDistanceCondition.latitudeProperty().getValue().toString());
+			this.txtLongitude.setText(geoDistanceCondition.longitudeProperty().getValue().toString());
+			this.txtDistance.setText(geoDistanceCondition.distanceProperty().getValue().toString());
+			this.cbxUnit.setItems(geoDistanceCondition.getUnitList());
+			this.cbxUnit.getSelectionModel().select(geoDistanceCondition.unitsProperty().getValue());
+
+			// Bind the new values to our model
+			geoDistanceCondition.latitudeProperty().bind(EasyBind.map(this.txtLatitude.textProperty(), latitude -> parseOrDefault(latitude, -90.0, 90.0, 0.0)));
+			geoDistanceCondition.longitudeProperty().bind(EasyBind.map(this.txtLongitude.textProperty(), longitude -> parseOrDefault(longitude, -180.0, 180.0, 0.0)));
+			// An invalid distance becomes 0 which leaves the condition out of the query
+			geoDistanceCondition.distanceProperty().bind(EasyBind.map(this.txtDistance.textProperty(), distance -> this.validPositiveDouble(distance) ? Double.parseDouble(distance) : 0.0));
+			geoDistanceCondition.unitsProperty().bind(this.cbxUnit.getSelectionModel().selectedItemProperty());
+		}
+	}
+
+	/**
+	 * Parses the string number into a double, or returns the default number if the parse fails or the number is out of range
+	 *
+	 * @param number The number to parse as a string
+	 * @param min The smallest value the number may have
+	 * @param max The largest value the number may have
+	 * @param defaultNumber The default return value
+	 * @return The string as a number or the default number if the parse fails
+	 */
+	private Double parseOrDefault(String number, Double min, Double max, Double defaultNumber)
+	{
+		if (this.validDoubleInRange(number, min, max))
+			return Double.parseDouble(number);
+		else
+			return defaultNumber;
+	}
+
+	/**
+	 * Tests if a string is a valid double greater than 0
+	 *
+	 * @param number The number to test
+	 * @return True if the number is a valid positive double, false otherwise
+	 */
+	private Boolean validPositiveDouble(String number)
+	{
+		return this.validDoubleInRange(number, Double.MIN_VALUE, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Tests if a string is a valid double between min and max
+	 *
+	 * @param number The number to test
+	 * @param min The smallest value the number may have
+	 * @param max The largest value the number may have
+	 * @return True if the number is a valid double in range, false otherwise
+	 */
+	private Boolean validDoubleInRange(String number, Double min, Double max)
+	{
+		try
+		{
+			Double value = Double.parseDouble(number);
+			return value >= min && value <= max;
+		}
+		catch (NumberFormatException ignored)
+		{
+			return false;
+		}
+	}
+}
@@ -13,6 +13,7 @@ import javafx.concurrent.Task;
 import model.cyverse.CyVerseConnectionManager;
 import model.cyverse.ImageCollection;
 import model.elasticsearch.ElasticSearchConnectionManager;
+import model.image.CloudImagePrefetcher;
 import model.image.ImageContainer;
 import model.image.ImageDirectory;
 import model.image.ImageEntry;
@@ -87,6 +88,9 @@ public class SanimalData
 	// Manager of all temporary files used by the SANIMAL software
 	private final TempDirectoryManager tempDirectoryManager = new TempDirectoryManager();
 
+	// Persistent cache of images downloaded from CyVerse
+	private final CloudImageCache cloudImageCache = new CloudImageCache();
+
 	// List of sanimal settings
 	private final SettingsData settings = new SettingsData();
 	private AtomicBoolean needSettingsSync = new AtomicBoolean(false);
@@ -95,6 +99,9 @@ public class SanimalData
 	// Class used to display errors as popups
 	private final ErrorDisplay errorDisplay = new ErrorDisplay(this);
 
+	// Prefetcher used to download cloud images before the user selects them
+	private final CloudImagePrefetcher cloudImagePrefetcher = new CloudImagePrefetcher();
+
 	// Query engine used in storing the current query setup
 	private QueryEngine queryEngine = new QueryEngine();
 
@@ -485,6 +492,11 @@ public class SanimalData
 		return tempDirectoryManager;
 	}
 
+	public CloudImageCache getCloudImageCache()
+	{
+		return this.cloudImageCache;
+	}
+
 	public ErrorDisplay getErrorDisplay()
 	{
 		return this.errorDisplay;
@@ -496,4 +508,9 @@ public class SanimalData
 	}
 
 	public QueryEngine getQueryEngine() { return this.queryEngine; }
+
+	public CloudImagePrefetcher getCloudImagePrefetcher()
+	{
+		return this.cloudImagePrefetcher;
+	}
 }
@@ -0,0 +1,118 @@
+package model.analysis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A class holding image counts computed by the cluster instead of from individual images. Used by analysis that only needs
+ * totals, so the images themselves never have to be downloaded
+ */
+public class ImageCounts
+{
+	// The number of images matching the query
+	private Long totalImages = 0L;
+	// Scientific name -> number of images containing the species
+	private Map<String, Long> imagesPerSpecies = new LinkedHashMap<>();
+	// Scientific name -> number of animals of the species over all images
+	private Map<String, Long> animalsPerSpecies = new LinkedHashMap<>();
+	// Location ID -> number of images taken at the location
+	private Map<String, Long> imagesPerLocation = new LinkedHashMap<>();
+	// Year -> number of images taken in that year
+	private Map<Integer, Long> imagesPerYear = new LinkedHashMap<>();
+	// Month (1-12) -> number of images taken in that month over all years
+	private Map<Integer, Long> imagesPerMonth = new LinkedHashMap<>();
+	// Hour (0-23) -> number of images taken in that hour over all days
+	private Map<Integer, Long> imagesPerHour = new LinkedHashMap<>();
+	// Year and month (yyyy-MM) -> number of images taken in that month of that year
+	private Map<String, Long> imagesPerYearMonth = new LinkedHashMap<>();
+
+	/**
+	 * Setter for the total number of images
+	 *
+	 * @param totalImages The number of images matching the query
+	 */
+	public void setTotalImages(Long totalImages)
+	{
+		this.totalImages = totalImages;
+	}
+
+	/**
+	 * Getter for the total number of images
+	 *
+	 * @return The number of images matching the query
+	 */
+	public Long getTotalImages()
+	{
+		return this.totalImages;
+	}
+
+	/**
+	 * Getter for the number of images of each species
+	 *
+	 * @return A map of scientific name -> number of images containing the species
+	 */
+	public Map<String, Long> getImagesPerSpecies()
+	{
+		return this.imagesPerSpecies;
+	}
+
+	/**
+	 * Getter for the number of animals of each species
+	 *
+	 * @return A map of scientific name -> number of animals of the species over all images
+	 */
+	public Map<String, Long> getAnimalsPerSpecies()
+	{
+		return this.animalsPerSpecies;
+	}
+
+	/**
+	 * Getter for the number of images at each location
+	 *
+	 * @return A map of location ID -> number of images taken at the location
+	 */
+	public Map<String, Long> getImagesPerLocation()
+	{
+		return this.imagesPerLocation;
+	}
+
+	/**
+	 * Getter for the number of images in each year
+	 *
+	 * @return A map of year -> number of images taken in that year
+	 */
+	public Map<Integer, Long> getImagesPerYear()
+	{
+		return this.imagesPerYear;
+	}
+
+	/**
+	 * Getter for the number of images in each month
+	 *
+	 * @return A map of month (1-12) -> number of images taken in that month over all years
+	 */
+	public Map<Integer, Long> getImagesPerMonth()
+	{
+		return this.imagesPerMonth;
+	}
+
+	/**
+	 * Getter for the number of images in each hour
+	 *
+	 * @return A map of hour (0-23) -> number of images taken in that hour over all days
+	 */
+	public Map<Integer, Long> getImagesPerHour()
+	{
+		return this.imagesPerHour;
+	}
+
+	/**
+	 * Getter for the number of images in each month of each year
+	 *
+	 * @return A map of year and month (yyyy-MM) -> number of images taken in that month
+	 */
+	public Map<String, Long> getImagesPerYearMonth()
+	{
+		return this.imagesPerYearMonth;
+	}
+}
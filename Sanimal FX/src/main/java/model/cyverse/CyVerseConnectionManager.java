@@ -1,57 +1,93 @@
 package model.cyverse;
 
+import com.google.gson.reflect.TypeToken;
 import javafx.application.Platform;
 import javafx.beans.property.StringProperty;
 import javafx.collections.ObservableList;
 import model.SanimalData;
 import model.image.*;
+import model.location.Location;
+import model.species.Species;
+import model.util.CloudImageCache;
+import model.util.MetadataUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.irods.jargon.core.connection.AuthScheme;
-import org.irods.jargon.core.connection.IRODSAccount;
-import org.irods.jargon.core.connection.IRODSSession;
-import org.irods.jargon.core.connection.IRODSSimpleProtocolManager;
-import org.irods.jargon.core.connection.auth.AuthResponse;
-import org.irods.jargon.core.exception.AuthenticationException;
-import org.irods.jargon.core.exception.InvalidUserException;
-import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.protovalues.FilePermissionEnum;
-import org.irods.jargon.core.pub.*;
-import org.irods.jargon.core.pub.domain.User;
-import org.irods.jargon.core.pub.io.IRODSFile;
-import org.irods.jargon.core.pub.io.IRODSFileFactory;
-import org.irods.jargon.core.query.CollectionAndDataObjectListingEntry;
-import org.irods.jargon.core.transfer.TransferStatus;
 import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
 
-import java.io.File;
+import java.io.*;
+import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * A class used to wrap the CyVerse Jargon FTP/iRODS library
+ * A class used to store collections and uploads on CyVerse. All storage operations go through a storage backend which is
+ * iRODS by default, or a local directory if the "sanimal.storage" system property is set to "local"
  */
 public class CyVerseConnectionManager
 {
-	// The string containing the host address that we connect to
-	private static final String CYVERSE_HOST = "data.cyverse.org"; // diana.cyverse.org
-	// The directory that each user has as their home directory
-	private static final String HOME_DIRECTORY = "/iplant/home/";
+	// The system property used to pick the storage backend
+	private static final String STORAGE_BACKEND_PROPERTY = "sanimal.storage";
 	// The directory that collections are stored in
 	private static final String COLLECTIONS_DIRECTORY = "/iplant/home/dslovikosky/Sanimal/Collections";
-	// Each user is part of the iPlant zone
-	private static final String ZONE = "iplant";
 	private static final SimpleDateFormat FOLDER_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss") ;
+	// The maximum number of images that go into a single TAR part
+	private static final Integer MAX_IMAGES_PER_TAR = 900;
+	// The number of uploaded TAR parts that may wait to be indexed before the upload thread indexes them itself
+	private static final Integer INDEXING_PIPELINE_DEPTH = 2;
+	// Uploads with at least this many images turn off index refreshing while they are indexed
+	private static final Integer BULK_LOAD_MIN_IMAGES = 2000;
+	// The number of images saved to CyVerse at the same time
+	private static final Integer SAVE_WORKER_COUNT = 4;
+	// The number of image headers read from CyVerse at the same time for images missing from the index
+	private static final Integer HEADER_READ_WORKER_COUNT = 2;
+	// The number of permission changes sent to CyVerse at the same time
+	private static final Integer PERMISSION_WORKER_COUNT = 4;
+	// The number of times we try to save an image before giving up on it
+	static final Integer SAVE_RETRY_COUNT = 3;
+	// How long to wait before retrying a failed save, doubled after each failed attempt
+	private static final Long SAVE_RETRY_DELAY_MILLIS = 1000L;
+	// The suffix of the ZIP file containing the thumbnails of an upload, the file sits next to the upload's directory
+	private static final String THUMBNAIL_PACK_SUFFIX = "-thumbnails.zip";
+	// The prefix of the JSON files written by metadata only saves, they contain the tags of every image edited in that save
+	private static final String TAG_DELTA_PREFIX = "TagDelta-";
+	// The type used to serialize a list of tag deltas
+	private static final Type TAG_DELTA_LIST_TYPE = new TypeToken<ArrayList<ImageTagDelta>>()
+	{
+	}.getType();
+
+	// The storage that everything is read from and written to
+	private final IStorageBackend storageBackend;
+
+	/**
+	 * Constructor picks the storage backend to use
+	 */
+	public CyVerseConnectionManager()
+	{
+		// The local backend stores everything on disk, useful to benchmark without a CyVerse round trip
+		this(System.getProperty(STORAGE_BACKEND_PROPERTY, "irods").equalsIgnoreCase("local") ? new LocalStorageBackend() : new IRODSStorageBackend());
+	}
 
-	// Cache the authenticated iRODS account
-	private IRODSAccount authenticatedAccount;
-	// Session manager ensures that we don't leave sessions open
-	private CyVerseSessionManager sessionManager;
+	/**
+	 * Constructor uses the given storage backend
+	 *
+	 * @param storageBackend The storage that everything is read from and written to
+	 */
+	CyVerseConnectionManager(IStorageBackend storageBackend)
+	{
+		this.storageBackend = storageBackend;
+	}
 
 	/**
 	 * Given a username and password, this method logs a cyverse user in
@@ -62,48 +98,15 @@ public class CyVerseConnectionManager
 	 */
 	public Boolean login(String username, String password)
 	{
-		try
-		{
-			// Create a new CyVerse account given the host address, port, username, password, homedirectory, and one field I have no idea what it does..., however leaving it as empty string makes file creation work!
-			IRODSAccount account = IRODSAccount.instance(CYVERSE_HOST, 1247, username, password, HOME_DIRECTORY + username, ZONE, "", AuthScheme.STANDARD);
-			// Create a new session
-			IRODSSession session = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
-			// Create an irodsAO
-			IRODSAccessObjectFactory irodsAO = IRODSAccessObjectFactoryImpl.instance(session);
-			// Perform the authentication and get a response
-			AuthResponse authResponse = irodsAO.authenticateIRODSAccount(account);
-			// If the authentication worked, return true and set the username and logged in fields
-			if (authResponse.isSuccessful())
-			{
-				// Cache the authenticated IRODS account
-				this.authenticatedAccount = authResponse.getAuthenticatedIRODSAccount();
-
-				// Store a session manager
-				this.sessionManager = new CyVerseSessionManager(this.authenticatedAccount);
-
-				// We're good, return true
-				return true;
-			}
-			else
-			{
-				// If the authentication failed, print a message, and logout in case the login partially completed
-				SanimalData.getInstance().getErrorDisplay().printError("Authentication failed. Response was: " + authResponse.getAuthMessage());
-			}
-			session.closeSession(account);
-		}
-		// If the authentication failed, print a message, and logout in case the login partially completed
-		catch (InvalidUserException | AuthenticationException e)
-		{
-			SanimalData.getInstance().getErrorDisplay().printError("Authentication failed!");
-		}
-		// If the authentication failed due to a jargon exception, print a message, and logout in case the login partially completed
-		// Not really sure how this happens, probably if the server incorrectly responds or is down
-		catch (JargonException e)
-		{
-			SanimalData.getInstance().getErrorDisplay().notify("Could not authenticate the user!\n" + ExceptionUtils.getStackTrace(e));
-		}
-		// Default, just return false
-		return false;
+		return this.storageBackend.login(username, password);
+	}
+
+	/**
+	 * Logs the current user out of CyVerse, closing every pooled connection
+	 */
+	public void logout()
+	{
+		this.storageBackend.logout();
 	}
 
 	/**
@@ -113,7 +116,7 @@ public class CyVerseConnectionManager
 	 */
 	public void pushLocalCollection(ImageCollection collection, StringProperty messageCallback)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			// Check if we are the owner of the collection
 			String ownerUsername = collection.getOwner();
@@ -121,33 +124,54 @@ public class CyVerseConnectionManager
 			{
 				try
 				{
-					IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-
 					// The name of the collection directory is the UUID of the collection
 					String collectionDirName = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString();
 
 					// Create the directory, and set the permissions appropriately
-					IRODSFile collectionDir = fileFactory.instanceIRODSFile(collectionDirName);
-					if (!collectionDir.exists())
-						collectionDir.mkdir();
-					this.setFilePermissions(collectionDirName, collection.getPermissions(), false);
+					this.storageBackend.mkdirs(collectionDirName);
 
 					if (messageCallback != null)
 						messageCallback.setValue("Writing collection Uploads directory...");
 
-					// Create the folder containing uploads, and set its permissions
-					IRODSFile collectionDirUploads = fileFactory.instanceIRODSFile(collectionDirName + "/Uploads");
-					if (!collectionDirUploads.exists())
-						collectionDirUploads.mkdir();
-					this.setFilePermissions(collectionDirUploads.getAbsolutePath(), collection.getPermissions(), true);
+					// Create the folder containing uploads
+					String collectionDirUploadsName = collectionDirName + "/Uploads";
+					this.storageBackend.mkdirs(collectionDirUploadsName);
+
+					if (messageCallback != null)
+						messageCallback.setValue("Updating collection permissions...");
+
+					// Set the permissions of both directories. Only permissions that changed are sent, and they are sent in parallel
+					ExecutorService permissionWorkers = Executors.newFixedThreadPool(PERMISSION_WORKER_COUNT);
+					try
+					{
+						List<Future<?>> permissionChanges = new ArrayList<>();
+						permissionChanges.addAll(this.setFilePermissions(collectionDirName, collection.getPermissions(), false, permissionWorkers));
+						permissionChanges.addAll(this.setFilePermissions(collectionDirUploadsName, collection.getPermissions(), true, permissionWorkers));
+						// Wait for every change to go through
+						for (Future<?> permissionChange : permissionChanges)
+						{
+							try
+							{
+								permissionChange.get();
+							}
+							catch (InterruptedException | ExecutionException e)
+							{
+								SanimalData.getInstance().getErrorDisplay().notify("Error setting permissions for user!\n" + ExceptionUtils.getStackTrace(e));
+							}
+						}
+					}
+					finally
+					{
+						permissionWorkers.shutdown();
+					}
 				}
-				catch (JargonException e)
+				catch (IOException e)
 				{
 					SanimalData.getInstance().getErrorDisplay().notify("Error creating the collections directory! Error was:\n" + ExceptionUtils.getStackTrace(e));
 				}
 			}
 
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 	}
 
@@ -158,125 +182,105 @@ public class CyVerseConnectionManager
 	 */
 	public void removeCollection(ImageCollection collection)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			// The name of the collection to remove
 			String collectionsDirName = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString();
 			try
 			{
 				// If it exists, delete it
-				IRODSFile collectionDir = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount).instanceIRODSFile(collectionsDirName);
-				if (collectionDir.exists())
-					collectionDir.delete();
+				this.storageBackend.delete(collectionsDirName);
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				SanimalData.getInstance().getErrorDisplay().notify("Could not delete the collection from CyVerse!\n" + ExceptionUtils.getStackTrace(e));
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 	}
 
 	/**
-	 * Sets the file permission for a file on the CyVerse system
+	 * Sets the file permission for a file on the CyVerse system. The file's current permissions are compared to the given
+	 * permissions and only the users whose permission changed are updated
 	 *
 	 * @param fileName The name of the file to update permissions of
 	 * @param permissions The list of permissions to set
 	 * @param recursive If the permissions are to be recursive
-	 * @throws JargonException Thrown if something goes wrong in the Jargon library
+	 * @param permissionWorkers The thread pool that the permission changes are sent on
+	 * @return A list of pending permission changes, one per user whose permission changed
+	 * @throws IOException Thrown if the storage could not be reached
 	 */
-	private void setFilePermissions(String fileName, ObservableList<Permission> permissions, boolean recursive) throws JargonException
+	private List<Future<?>> setFilePermissions(String fileName, ObservableList<Permission> permissions, boolean recursive, ExecutorService permissionWorkers) throws IOException
 	{
-		// Create the file, and remove all permissions from it
-		IRODSFile file = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount).instanceIRODSFile(fileName);
-		this.removeAllFilePermissions(file);
-		// If the file is a directory, set the directory permissions
-		if (file.isDirectory())
+		File file = this.storageBackend.getRemoteFile(fileName);
+		Boolean isDirectory = file.isDirectory();
+		if (!isDirectory && !file.isFile())
+			return Collections.emptyList();
+
+		// Read the permissions that are currently set on the file, excluding owners
+		Map<String, FilePermissionEnum> currentPermissions = this.storageBackend.getPermissions(fileName);
+
+		// If a directory's contents don't inherit its permissions, its contents may not match the directory. In that case we
+		// turn inheritance on and send every permission this one time so that the contents match from now on
+		Boolean sendAll = isDirectory && recursive && !this.storageBackend.isPermissionInheritanceEnabled(fileName);
+		if (sendAll)
+			this.storageBackend.enablePermissionInheritance(fileName);
+
+		// Compute the permission each non-owner user should have. Users without read access should have no permission at all
+		Map<String, FilePermissionEnum> desiredPermissions = new HashMap<>();
+		for (Permission permission : permissions)
 		{
-			// Go through each non-owner permission
-			CollectionAO collectionAO = this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount);
-			permissions.filtered(permission -> !permission.isOwner()).forEach(permission -> {
-				try
-				{
-					// If the user can upload, and we're not forcing read only, set the permission to write
-					if (permission.canUpload())
-						collectionAO.setAccessPermissionWrite(ZONE, file.getAbsolutePath(), permission.getUsername(), recursive);
-					// If the user can read set the permission to write
-					else if (permission.canRead())
-						collectionAO.setAccessPermissionRead(ZONE, file.getAbsolutePath(), permission.getUsername(), recursive);
-				}
-				catch (JargonException e)
-				{
-					SanimalData.getInstance().getErrorDisplay().notify("Error setting permissions for user!\n" + ExceptionUtils.getStackTrace(e));
-				}
-			});
+			if (!permission.isOwner())
+			{
+				// If the user can upload they get write access, otherwise if they can read they get read access
+				if (permission.canUpload())
+					desiredPermissions.put(permission.getUsername(), FilePermissionEnum.WRITE);
+				else if (permission.canRead())
+					desiredPermissions.put(permission.getUsername(), FilePermissionEnum.READ);
+			}
 		}
-		// File permissions are done differently, so do that here
-		else if (file.isFile())
+
+		// Compute the changes. A null permission means the user's permission is removed
+		Map<String, FilePermissionEnum> permissionChanges = new HashMap<>();
+		desiredPermissions.forEach((username, desiredPermission) ->
 		{
-			DataObjectAO dataObjectAO = this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount);
-			// Go through each permission and set the file permissions
-			permissions.filtered(permission -> !permission.isOwner()).forEach(permission -> {
-				try
-				{
-					// If the user can upload, and we're not forcing read only, set the permission to write
-					if (permission.canUpload())
-						dataObjectAO.setAccessPermissionWrite(ZONE, file.getAbsolutePath(), permission.getUsername());
-						// If the user can read set the permission to write
-					else if (permission.canRead())
-						dataObjectAO.setAccessPermissionRead(ZONE, file.getAbsolutePath(), permission.getUsername());
-				}
-				catch (JargonException e)
-				{
-					SanimalData.getInstance().getErrorDisplay().notify("Error setting permissions for user!\n" + ExceptionUtils.getStackTrace(e));
-				}
-			});
-		}
+			if (sendAll || currentPermissions.get(username) != desiredPermission)
+				permissionChanges.put(username, desiredPermission);
+		});
+		currentPermissions.keySet().forEach(username ->
+		{
+			if (!desiredPermissions.containsKey(username))
+				permissionChanges.put(username, null);
+		});
+
+		// Send each change on its own worker
+		List<Future<?>> pendingChanges = new ArrayList<>();
+		permissionChanges.forEach((username, newPermission) ->
+			pendingChanges.add(permissionWorkers.submit(() -> this.applyFilePermission(fileName, username, newPermission, recursive))));
+		return pendingChanges;
 	}
 
 	/**
-	 * Removes all file permissions except the owner
+	 * Sets a single user's permission on a file, run on one of the permission workers with its own session
 	 *
-	 * @param file The file to remove permission from
-	 * @throws JargonException Thrown if something goes wrong in the Jargon library
+	 * @param absolutePath The path of the file on CyVerse
+	 * @param username The user to set the permission of
+	 * @param newPermission The new permission of the user, or null to remove the user's permission
+	 * @param recursive If the permission is to be recursive, only used for directories
 	 */
-	private void removeAllFilePermissions(IRODSFile file) throws JargonException
+	private void applyFilePermission(String absolutePath, String username, FilePermissionEnum newPermission, boolean recursive)
 	{
-		// Directories are done differently than files, so test this first
-		if (file.isDirectory())
-		{
-			// If it's a collection, we list all permission for the folder
-			CollectionAndDataObjectListingEntry collectionPermissions = this.sessionManager.getCurrentAO().getCollectionAndDataObjectListAndSearchAO(this.authenticatedAccount).getCollectionAndDataObjectListingEntryAtGivenAbsolutePath(file.getAbsolutePath());
-			CollectionAO collectionAO = this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount);
-			// We go through each permission, and remove all access permissions from that user
-			collectionPermissions.getUserFilePermission().forEach(userFilePermission -> {
-				if (userFilePermission.getFilePermissionEnum() != FilePermissionEnum.OWN)
-					try
-					{
-						collectionAO.removeAccessPermissionForUser(ZONE, file.getAbsolutePath(), userFilePermission.getUserName(), true);
-					}
-					catch (JargonException e)
-					{
-						SanimalData.getInstance().getErrorDisplay().notify("Error removing permissions from user!\n" + ExceptionUtils.getStackTrace(e));
-					}
-			});
-		}
-		else if (file.isFile())
+		if (this.storageBackend.openSession())
 		{
-			// If it's a file, we list all permission for the file
-			DataObjectAO dataObjectAO = this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount);
-			// We go through each permission, and remove all access permissions from that user
-			dataObjectAO.listPermissionsForDataObject(file.getAbsolutePath()).forEach(userFilePermission -> {
-				if (userFilePermission.getFilePermissionEnum() != FilePermissionEnum.OWN)
-					try
-					{
-						dataObjectAO.removeAccessPermissionsForUser(ZONE, file.getAbsolutePath(), userFilePermission.getUserName());
-					}
-					catch (JargonException e)
-					{
-						SanimalData.getInstance().getErrorDisplay().notify("Error removing permissions from user!\n" + ExceptionUtils.getStackTrace(e));
-					}
-			});
+			try
+			{
+				this.storageBackend.setPermission(absolutePath, username, newPermission, recursive);
+			}
+			catch (IOException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Error setting permissions for user " + username + "!\n" + ExceptionUtils.getStackTrace(e));
+			}
+			this.storageBackend.closeSession();
 		}
 	}
 
@@ -288,19 +292,18 @@ public class CyVerseConnectionManager
 	 */
 	public Boolean isValidUsername(String username)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
-				User byName = this.sessionManager.getCurrentAO().getUserAO(this.authenticatedAccount).findByName(username);
-				// Grab the user object for a given name, if it's null, it doesn't exist!
-				this.sessionManager.closeSession();
-				return byName != null;
+				Boolean validUsername = this.storageBackend.isValidUsername(username);
+				this.storageBackend.closeSession();
+				return validUsername;
 			}
-			catch (JargonException ignored)
+			catch (IOException ignored)
 			{
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 		return false;
 	}
@@ -315,22 +318,20 @@ public class CyVerseConnectionManager
 	 */
 	public void uploadImages(ImageCollection collection, ImageDirectory directoryToWrite, TransferStatusCallbackListener transferCallback, StringProperty messageCallback)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
 				// Grab the uploads folder for a given collection
 				String collectionUploadDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionUploadDir = fileFactory.instanceIRODSFile(collectionUploadDirStr);
 				// If the uploads directory exists and we can write to it, upload
-				if (collectionUploadDir.exists() && collectionUploadDir.canWrite())
+				if (this.storageBackend.canWrite(collectionUploadDirStr))
 				{
 					if (messageCallback != null)
 						messageCallback.setValue("Creating upload folder on CyVerse...");
 
 					// Create a new folder for the upload, we will use the current date as the name plus our username
-					String uploadFolderName = FOLDER_FORMAT.format(new Date(this.sessionManager.getCurrentAO().getEnvironmentalInfoAO(this.authenticatedAccount).getIRODSServerCurrentTime())) + " " + SanimalData.getInstance().getUsername();
+					String uploadFolderName = FOLDER_FORMAT.format(new Date(this.storageBackend.getServerTime())) + " " + SanimalData.getInstance().getUsername();
 					String uploadDirName = collectionUploadDirStr + "/" + uploadFolderName;
 
 					if (messageCallback != null)
@@ -345,32 +346,118 @@ public class CyVerseConnectionManager
 					String localDirAbsolutePath = directoryToWrite.getFile().getAbsolutePath();
 					String localDirName = directoryToWrite.getFile().getName();
 
-					// Make a set of tar files from the image files. Don't use a single tar file because we may have > 1000 images in each
-					File[] tarsToWrite = DirectoryManager.directoryToTars(directoryToWrite, imageEntry ->
+					// Function used to compute the image's "cyverse" path relative to the upload directory
+					Function<ImageEntry, String> imageToRelativePath = imageEntry ->
 					{
-						// Compute the image's "cyverse" path
 						String fileRelativePath = localDirName + StringUtils.substringAfter(imageEntry.getFile().getAbsolutePath(), localDirAbsolutePath);
-						fileRelativePath = fileRelativePath.replace('\\', '/');
-						return fileRelativePath + "\n";
-					}, 900);
+						return fileRelativePath.replace('\\', '/');
+					};
+
+					// Generate the thumbnails of every image while we create the TAR files
+					CompletableFuture<File> thumbnailPackFuture = CompletableFuture.supplyAsync(() -> DirectoryManager.directoryToThumbnailPack(directoryToWrite, imageToRelativePath));
+
+					// Split the images into tar parts once, the same parts are written into the tar files and indexed once each part is uploaded
+					List<List<ImageEntry>> tarParts = DirectoryManager.splitIntoTarParts(directoryToWrite, MAX_IMAGES_PER_TAR);
+					// Make a set of tar files from the image files. Don't use a single tar file because we may have > 1000 images in each
+					File[] tarsToWrite = DirectoryManager.directoryToTars(directoryToWrite, tarParts, imageEntry -> imageToRelativePath.apply(imageEntry) + "\n");
 
-					// For each tar part, upload
-					for (Integer tarPart = 0; tarPart < tarsToWrite.length; tarPart++)
+					// Large uploads tune the metadata indices they write to for bulk loading while their parts are indexed
+					String bulkLoadLease = imageCount >= BULK_LOAD_MIN_IMAGES ? SanimalData.getInstance().getEsConnectionManager().beginBulkLoad(tarParts.stream().flatMap(List::stream).collect(Collectors.toList())) : null;
+					// Each part's images get indexed on a single background thread while the next part uploads. The queue is bounded, so if
+					// indexing falls behind the upload thread indexes the part itself instead of letting parts pile up
+					ExecutorService indexingPipeline = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(INDEXING_PIPELINE_DEPTH), new ThreadPoolExecutor.CallerRunsPolicy());
+					List<Future<Boolean>> indexingTasks = new ArrayList<>();
+					// Set if any part's images could not be indexed
+					Boolean indexingFailed = false;
+					try
 					{
+						try
+						{
+							// For each tar part, upload
+							for (Integer tarPart = 0; tarPart < tarsToWrite.length; tarPart++)
+							{
+								if (messageCallback != null)
+									messageCallback.setValue("Uploading TAR file part (" + (tarPart + 1) + " / " + tarsToWrite.length + ") to CyVerse...");
+
+								File toWrite = tarsToWrite[tarPart];
+								File localToUpload = new File(FilenameUtils.getFullPath(toWrite.getAbsolutePath()) + uploadFolderName + "-" + tarPart.toString() + "." + FilenameUtils.getExtension(toWrite.getAbsolutePath()));
+								toWrite.renameTo(localToUpload);
+								// Upload the tar, it gets extracted into the upload directory
+								this.storageBackend.putArchive(localToUpload, uploadDirName, transferCallback);
+
+								localToUpload.delete();
+
+								// The part is on CyVerse, so index its image metadata using elasticsearch in the background
+								List<ImageEntry> tarPartImages = tarParts.get(tarPart);
+								indexingTasks.add(indexingPipeline.submit(() -> SanimalData.getInstance().getEsConnectionManager().indexImages(uploadDirName + "/" + localDirName, collection.getID().toString(), localDirAbsolutePath, tarPartImages)));
+							}
+						}
+						finally
+						{
+							// No more parts will be submitted
+							indexingPipeline.shutdown();
+						}
+
 						if (messageCallback != null)
-							messageCallback.setValue("Uploading TAR file part (" + (tarPart + 1) + " / " + tarsToWrite.length + ") to CyVerse...");
+							messageCallback.setValue("Uploading image thumbnails to CyVerse...");
 
-						File toWrite = tarsToWrite[tarPart];
-						File localToUpload = new File(FilenameUtils.getFullPath(toWrite.getAbsolutePath()) + uploadFolderName + "-" + tarPart.toString() + "." + FilenameUtils.getExtension(toWrite.getAbsolutePath()));
-						toWrite.renameTo(localToUpload);
-						// Upload the tar
-						this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localToUpload, collectionUploadDir, transferCallback, null);
+						// Upload the thumbnail pack next to the upload's TAR files, it's a ZIP so it won't get extracted
+						try
+						{
+							File thumbnailPack = thumbnailPackFuture.get();
+							if (thumbnailPack != null)
+							{
+								File localToUpload = new File(FilenameUtils.getFullPath(thumbnailPack.getAbsolutePath()) + uploadFolderName + THUMBNAIL_PACK_SUFFIX);
+								thumbnailPack.renameTo(localToUpload);
+								this.storageBackend.putFile(localToUpload, collectionUploadDirStr + "/" + localToUpload.getName(), transferCallback);
+								localToUpload.delete();
+							}
+						}
+						catch (InterruptedException | ExecutionException e)
+						{
+							SanimalData.getInstance().getErrorDisplay().notify("Error creating image thumbnails!\n" + ExceptionUtils.getStackTrace(e));
+						}
 
-						localToUpload.delete();
+						if (messageCallback != null)
+							messageCallback.setValue("Finishing indexing of image metadata...");
+
+						// Wait for the remaining parts to be indexed
+						for (Future<Boolean> indexingTask : indexingTasks)
+						{
+							try
+							{
+								if (!indexingTask.get())
+									indexingFailed = true;
+							}
+							catch (InterruptedException | ExecutionException e)
+							{
+								SanimalData.getInstance().getErrorDisplay().notify("Error indexing uploaded image metadata!\n" + ExceptionUtils.getStackTrace(e));
+								indexingFailed = true;
+							}
+						}
+					}
+					finally
+					{
+						// If a part failed to upload, the parts before it may still be indexing. Wait for them so the bulk load settings
+						// aren't restored while they are still being written
+						indexingPipeline.shutdown();
+						try
+						{
+							indexingPipeline.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+						}
+						SanimalData.getInstance().getEsConnectionManager().endBulkLoad(bulkLoadLease);
 					}
 
-					// Finally we actually index the image metadata using elasticsearch
-					SanimalData.getInstance().getEsConnectionManager().indexImages(uploadDirName + "/" + localDirName, collection.getID().toString(), directoryToWrite, uploadEntry);
+					// Finally we add the upload to the collection once all parts are indexed. If some metadata is missing the upload would
+					// look complete without it, so we leave the upload out of the collection instead
+					if (indexingFailed)
+						SanimalData.getInstance().getErrorDisplay().notify("The images in '" + uploadFolderName + "' were uploaded, but some of their metadata could not be indexed. The upload was not added to the collection!");
+					else
+						SanimalData.getInstance().getEsConnectionManager().insertUploadIntoCollection(collection.getID().toString(), uploadEntry);
 
 					// Let rules do the rest!
 				}
@@ -379,11 +466,11 @@ public class CyVerseConnectionManager
 					SanimalData.getInstance().getErrorDisplay().notify("You don't have permission to upload to this collection!");
 				}
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				SanimalData.getInstance().getErrorDisplay().notify("Could not upload the images to CyVerse!\n" + ExceptionUtils.getStackTrace(e));
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 	}
 
@@ -396,16 +483,14 @@ public class CyVerseConnectionManager
 	 */
 	public void saveImages(ImageCollection collection, CloudUploadEntry uploadEntryToSave, StringProperty messageCallback)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
 				// Grab the save folder for a given collection
 				String collectionSaveDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionSaveDir = fileFactory.instanceIRODSFile(collectionSaveDirStr);
 				// If the save directory exists and we can write to it, save
-				if (collectionSaveDir.exists() && collectionSaveDir.canWrite())
+				if (this.storageBackend.canWrite(collectionSaveDirStr))
 				{
 					// Grab the image directory to save
 					ImageDirectory imageDirectory = uploadEntryToSave.getCloudImageDirectory();
@@ -413,43 +498,40 @@ public class CyVerseConnectionManager
 					List<CloudImageEntry> toUpload = imageDirectory.flattened()
 							.filter(imageContainer -> imageContainer instanceof CloudImageEntry)
 							.map(imageContainer -> (CloudImageEntry) imageContainer)
-							.filter(cloudImageEntry -> cloudImageEntry.hasBeenPulledFromCloud() && cloudImageEntry.isCloudDirty())
+							.filter(CloudImageEntry::isCloudDirty)
 							.collect(Collectors.toList());
 					Platform.runLater(() -> imageDirectory.setUploadProgress(0.0));
 
-					messageCallback.setValue("Saving " + toUpload.size() + " image(s) to CyVerse...");
+					// Either save only the changed tags or the whole images depending on the user's settings
+					List<CloudImageEntry> savedImages;
+					if (SanimalData.getInstance().getSettings().getMetadataOnlyCloudSaves())
+					{
+						messageCallback.setValue("Saving the tags of " + toUpload.size() + " image(s) to CyVerse...");
+						savedImages = this.saveImageTagDeltas(toUpload, uploadEntryToSave);
+					}
+					else
+					{
+						// Images edited without being downloaded have no local file to re-upload, so only their tags can be saved
+						Map<Boolean, List<CloudImageEntry>> pulledAndNotPulled = toUpload.stream().collect(Collectors.partitioningBy(CloudImageEntry::hasBeenPulledFromCloud));
+						messageCallback.setValue("Saving " + toUpload.size() + " image(s) to CyVerse...");
+						Date saveStarted = Calendar.getInstance().getTime();
+						List<CloudImageEntry> savedImageFiles = this.saveImageFiles(pulledAndNotPulled.get(true), imageDirectory);
+						// The saved files hold the latest tags, so older tag deltas must not be applied on top of them anymore
+						this.supersedeTagDeltas(uploadEntryToSave.getUploadIRODSPath(), savedImageFiles.stream().map(cloudImageEntry -> cloudImageEntry.getCyverseFile().getAbsolutePath()).collect(Collectors.toSet()), saveStarted);
+						savedImages = new ArrayList<>(savedImageFiles);
+						savedImages.addAll(this.saveImageTagDeltas(pulledAndNotPulled.get(false), uploadEntryToSave));
+					}
+					Platform.runLater(() -> imageDirectory.setUploadProgress(1.0));
 
-					Double numberOfImagesToUpload = (double) toUpload.size();
+					// Count how many images gained or lost their species tags
 					Integer numberOfDetaggedImages = 0;
 					Integer numberOfRetaggedImages = 0;
-					// Begin saving
-					for (int i = 0; i < toUpload.size(); i++)
+					for (CloudImageEntry cloudImageEntry : savedImages)
 					{
-						// Grab the cloud image entry to upload
-						CloudImageEntry cloudImageEntry = toUpload.get(i);
-						// If it has been pulled save it
 						if (cloudImageEntry.getSpeciesPresent().isEmpty() && cloudImageEntry.wasTaggedWithSpecies())
 							numberOfDetaggedImages++;
 						else if (!cloudImageEntry.getSpeciesPresent().isEmpty() && !cloudImageEntry.wasTaggedWithSpecies())
 							numberOfRetaggedImages++;
-
-						// Save that specific cloud image
-						this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(cloudImageEntry.getFile(), cloudImageEntry.getCyverseFile(), new TransferStatusCallbackListener()
-						{
-							@Override
-							public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
-							@Override
-							public void overallStatusCallback(TransferStatus transferStatus) {}
-							@Override
-							public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
-						}, null);
-
-						// Update the progress every 20 uploads
-						if (i % 20 == 0)
-						{
-							int finalI = i;
-							Platform.runLater(() -> imageDirectory.setUploadProgress(finalI / numberOfImagesToUpload));
-						}
 					}
 
 					// Add an edit comment so users know the file was edited
@@ -457,20 +539,228 @@ public class CyVerseConnectionManager
 					Integer imagesWithSpecies = uploadEntryToSave.getImagesWithSpecies() - numberOfDetaggedImages + numberOfRetaggedImages;
 					uploadEntryToSave.setImagesWithSpecies(imagesWithSpecies);
 
-					// Finally we update our metadata index
-					SanimalData.getInstance().getEsConnectionManager().updateIndexedImages(toUpload, collection.getID().toString(), uploadEntryToSave);
+					// Finally we update our metadata index once with every image that was saved
+					messageCallback.setValue("Updating the metadata index...");
+					SanimalData.getInstance().getEsConnectionManager().updateIndexedImages(savedImages, collection.getID().toString(), uploadEntryToSave);
 				}
 				else
 				{
 					SanimalData.getInstance().getErrorDisplay().notify("You don't have permission to save to this collection!");
 				}
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				SanimalData.getInstance().getErrorDisplay().notify("Could not save the image list to the collection on CyVerse!\n" + ExceptionUtils.getStackTrace(e));
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
+		}
+	}
+
+	/**
+	 * Saves only the tags of the given images to CyVerse. The tags are written into a small JSON file that is placed next
+	 * to the images in the upload directory, the image files themselves are left untouched. When the upload is downloaded
+	 * again these tags are applied on top of the tags stored in the image files
+	 *
+	 * @param toUpload The images whose tags should be saved
+	 * @param uploadEntryToSave The upload that the images belong to
+	 * @return The list of images whose tags were successfully saved
+	 */
+	List<CloudImageEntry> saveImageTagDeltas(List<CloudImageEntry> toUpload, CloudUploadEntry uploadEntryToSave)
+	{
+		// Nothing to save, return
+		if (toUpload.isEmpty())
+			return toUpload;
+
+		try
+		{
+			// Convert every image to a delta and write the deltas to a temporary JSON file
+			List<ImageTagDelta> tagDeltas = toUpload.stream().map(ImageTagDelta::new).collect(Collectors.toList());
+			File localTagDeltaFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile("TagDelta.json");
+			try (Writer writer = new FileWriter(localTagDeltaFile))
+			{
+				SanimalData.getInstance().getGson().toJson(tagDeltas, TAG_DELTA_LIST_TYPE, writer);
+			}
+
+			// The delta file is named after the time and user that saved it so that deltas can be applied in order
+			String tagDeltaFileName = TAG_DELTA_PREFIX + FOLDER_FORMAT.format(Calendar.getInstance().getTime()) + " " + SanimalData.getInstance().getUsername() + ".json";
+			// Upload the delta file next to the images
+			this.storageBackend.putFile(localTagDeltaFile, uploadEntryToSave.getUploadIRODSPath() + "/" + tagDeltaFileName, null);
+			return toUpload;
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not save the image tags to CyVerse!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Removes images that were saved as whole files from the tag delta files of their upload. The saved files already
+	 * hold the latest tags, so the deltas would otherwise be applied on top of them when the upload is downloaded again.
+	 * Delta files left empty are deleted and the rest are rewritten. Only deltas saved before the save started are
+	 * changed, so that tags saved by someone else while the files were uploading still win
+	 *
+	 * @param uploadDirectoryPath The path of the upload directory on CyVerse
+	 * @param savedImagePaths The paths of the images that were saved as whole files
+	 * @param saveStarted The time the images started saving
+	 */
+	void supersedeTagDeltas(String uploadDirectoryPath, Set<String> savedImagePaths, Date saveStarted)
+	{
+		// Nothing was saved, so nothing is superseded
+		if (savedImagePaths.isEmpty())
+			return;
+
+		try
+		{
+			// Delta file names start with the time they were saved, so any name before this one was saved before the save started
+			String saveStartedFileName = TAG_DELTA_PREFIX + FOLDER_FORMAT.format(saveStarted);
+			List<String> tagDeltaFileNames = this.storageBackend.listFileNames(uploadDirectoryPath).stream()
+					.filter(name -> name.startsWith(TAG_DELTA_PREFIX) && name.compareTo(saveStartedFileName) < 0)
+					.collect(Collectors.toList());
+			for (String tagDeltaFileName : tagDeltaFileNames)
+			{
+				String tagDeltaFilePath = uploadDirectoryPath + "/" + tagDeltaFileName;
+				List<ImageTagDelta> tagDeltas;
+				try (Reader reader = new InputStreamReader(this.storageBackend.openInputStream(tagDeltaFilePath)))
+				{
+					tagDeltas = SanimalData.getInstance().getGson().fromJson(reader, TAG_DELTA_LIST_TYPE);
+				}
+
+				// Only touch the file if it has tags for one of the saved images
+				if (tagDeltas == null || tagDeltas.stream().noneMatch(tagDelta -> savedImagePaths.contains(tagDelta.getImageIRODSPath())))
+					continue;
+				List<ImageTagDelta> remainingTagDeltas = tagDeltas.stream().filter(tagDelta -> !savedImagePaths.contains(tagDelta.getImageIRODSPath())).collect(Collectors.toList());
+				if (remainingTagDeltas.isEmpty())
+				{
+					this.storageBackend.delete(tagDeltaFilePath);
+				}
+				else
+				{
+					// Write the remaining deltas back under the same name so they keep their place in the save order
+					File localTagDeltaFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile("TagDelta.json");
+					try (Writer writer = new FileWriter(localTagDeltaFile))
+					{
+						SanimalData.getInstance().getGson().toJson(remainingTagDeltas, TAG_DELTA_LIST_TYPE, writer);
+					}
+					this.storageBackend.putFile(localTagDeltaFile, tagDeltaFilePath, null);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not remove the saved images from the upload's saved tags, older tags may be shown when the upload is downloaded again!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Saves the given images to CyVerse in parallel. Each worker opens its own session once and re-uses it for every
+	 * image it pulls off of the queue
+	 *
+	 * @param toUpload The images to save
+	 * @param imageDirectory The directory being saved, used to display progress
+	 * @return The list of images that were successfully saved
+	 */
+	private List<CloudImageEntry> saveImageFiles(List<CloudImageEntry> toUpload, ImageDirectory imageDirectory)
+	{
+		// Queue up every image, workers will pull images off of the queue until it is empty
+		Queue<CloudImageEntry> saveQueue = new ConcurrentLinkedQueue<>(toUpload);
+		List<CloudImageEntry> savedImages = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger imagesProcessed = new AtomicInteger(0);
+		ExecutorService saveWorkers = Executors.newFixedThreadPool(SAVE_WORKER_COUNT);
+		List<Future<?>> saveWorkerTasks = new ArrayList<>();
+		for (Integer i = 0; i < SAVE_WORKER_COUNT; i++)
+			saveWorkerTasks.add(saveWorkers.submit(() -> this.saveImagesFromQueue(saveQueue, savedImages, imagesProcessed, toUpload.size(), imageDirectory)));
+		saveWorkers.shutdown();
+
+		// Wait for every worker to finish
+		for (Future<?> saveWorkerTask : saveWorkerTasks)
+		{
+			try
+			{
+				saveWorkerTask.get();
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Error saving images to CyVerse!\n" + ExceptionUtils.getStackTrace(e));
+			}
+		}
+
+		// Let the user know if any images could not be saved even after retrying
+		if (savedImages.size() != toUpload.size())
+			SanimalData.getInstance().getErrorDisplay().notify((toUpload.size() - savedImages.size()) + " image(s) could not be saved to CyVerse!");
+
+		return savedImages;
+	}
+
+	/**
+	 * Worker used by saveImageFiles which saves images off of a shared queue until the queue is empty. Each worker uses its
+	 * own session for all of the images it saves
+	 *
+	 * @param saveQueue The queue of images that still need saving
+	 * @param savedImages The list of images that were successfully saved
+	 * @param imagesProcessed The number of images processed by all workers so far
+	 * @param totalImages The total number of images to save
+	 * @param imageDirectory The directory being saved, used to display progress
+	 */
+	private void saveImagesFromQueue(Queue<CloudImageEntry> saveQueue, List<CloudImageEntry> savedImages, AtomicInteger imagesProcessed, Integer totalImages, ImageDirectory imageDirectory)
+	{
+		if (this.storageBackend.openSession())
+		{
+			// Save images until there are none left
+			CloudImageEntry cloudImageEntry;
+			while ((cloudImageEntry = saveQueue.poll()) != null)
+			{
+				if (this.saveImageWithRetry(cloudImageEntry.getFile(), cloudImageEntry.getCyverseFile().getAbsolutePath()))
+					savedImages.add(cloudImageEntry);
+
+				// Update the progress after every image
+				Integer processed = imagesProcessed.incrementAndGet();
+				Platform.runLater(() -> imageDirectory.setUploadProgress(processed / (double) totalImages));
+			}
+			this.storageBackend.closeSession();
+		}
+	}
+
+	/**
+	 * Saves a single image to CyVerse, retrying a few times if the transfer fails. Each retry waits twice as long as the
+	 * one before it to give a busy server or a flaky network time to recover
+	 *
+	 * @param localFile The local copy of the image to save
+	 * @param cyversePath The path of the image on CyVerse, the old image is overwritten
+	 * @return True if the image was saved, false otherwise
+	 */
+	Boolean saveImageWithRetry(File localFile, String cyversePath)
+	{
+		for (Integer attempt = 1; attempt <= SAVE_RETRY_COUNT; attempt++)
+		{
+			try
+			{
+				// Save that specific cloud image, overwriting the old one
+				this.storageBackend.putFile(localFile, cyversePath, null);
+				return true;
+			}
+			catch (IOException e)
+			{
+				// If this was the last attempt, print the error
+				if (attempt.equals(SAVE_RETRY_COUNT))
+				{
+					SanimalData.getInstance().getErrorDisplay().printError("Could not save the image (" + StringUtils.substringAfterLast(cyversePath, "/") + ") after " + SAVE_RETRY_COUNT + " attempts!\n" + ExceptionUtils.getStackTrace(e));
+					return false;
+				}
+			}
+
+			// Wait before the next attempt, backing off exponentially
+			try
+			{
+				Thread.sleep(SAVE_RETRY_DELAY_MILLIS << (attempt - 1));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -481,83 +771,391 @@ public class CyVerseConnectionManager
 	 */
 	public CloudImageDirectory downloadUploadDirectory(CloudUploadEntry uploadEntry)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
 				// Grab the uploads folder for a given collection
 				String cloudDirectoryStr = uploadEntry.getUploadIRODSPath();
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile cloudDirectory = fileFactory.instanceIRODSFile(cloudDirectoryStr);
+				File cloudDirectory = this.storageBackend.getRemoteFile(cloudDirectoryStr);
 				CloudImageDirectory cloudImageDirectory = new CloudImageDirectory(cloudDirectory);
 				this.createDirectoryAndImageTree(cloudImageDirectory);
-				// We need to make sure we remove the UploadMeta.json "image entry"
-				cloudImageDirectory.getChildren().removeIf(imageContainer -> imageContainer instanceof CloudImageEntry && ((CloudImageEntry) imageContainer).getCyverseFile().getAbsolutePath().contains("UploadMeta.json"));
-				this.sessionManager.closeSession();
+				// We need to make sure we remove the UploadMeta.json and TagDelta JSON "image entries"
+				cloudImageDirectory.getChildren().removeIf(imageContainer -> imageContainer instanceof CloudImageEntry && FilenameUtils.getExtension(((CloudImageEntry) imageContainer).getCyverseFile().getName()).equalsIgnoreCase("json"));
+				// Give every image the tags saved by metadata only saves that haven't been written into the image files yet
+				Map<String, ImageTagDelta> pendingTagDeltas = this.readPendingTagDeltas(cloudDirectoryStr);
+				// Fill in each image's metadata from the index with a single query so that we don't need to download every image to read it
+				Map<String, ImageEntry> indexedImages = SanimalData.getInstance().getEsConnectionManager().fetchIndexedImagesForUpload(cloudDirectoryStr);
+				// Grab the upload's thumbnails so that images can be previewed without downloading them
+				Map<String, File> thumbnails = this.downloadThumbnailPack(cloudDirectoryStr);
+				// Images that were never indexed get their metadata from the image header instead once the directory is returned
+				Queue<CloudImageEntry> headersToRead = new ConcurrentLinkedQueue<>();
+				cloudImageDirectory.flattened()
+					.filter(imageContainer -> imageContainer instanceof CloudImageEntry)
+					.map(imageContainer -> (CloudImageEntry) imageContainer)
+					.forEach(cloudImageEntry ->
+					{
+						String cyverseFilePath = cloudImageEntry.getCyverseFile().getAbsolutePath();
+						cloudImageEntry.setPendingTagDelta(pendingTagDeltas.get(cyverseFilePath));
+						// If the index could not be read we don't know which images are missing from it. Reading every header would
+						// take far too long, so those images get their metadata once they are downloaded instead
+						if (indexedImages != null)
+						{
+							ImageEntry indexedImage = indexedImages.get(cyverseFilePath);
+							if (indexedImage != null)
+								cloudImageEntry.setIndexedMetadata(indexedImage);
+							else if (cloudImageEntry.getCyverseFile().getName().toLowerCase().matches(".+\\.jpe?g"))
+								headersToRead.add(cloudImageEntry);
+						}
+						File thumbnail = thumbnails.get(cyverseFilePath);
+						if (thumbnail != null)
+							cloudImageEntry.setThumbnailFile(thumbnail);
+					});
+				this.storageBackend.closeSession();
+				this.readImageHeadersInBackground(headersToRead);
 				return cloudImageDirectory;
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				e.printStackTrace();
 				SanimalData.getInstance().getErrorDisplay().notify("Downloading uploaded collection failed!");
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 
 		return null;
 	}
 
 	/**
-	 * Recursively create the directory structure
+	 * Reads the metadata of images from their headers on a few background threads, and gives each image its metadata
+	 * once read. Used for images that are missing from the index. The header is far smaller than the image, but each read
+	 * is still a round trip to CyVerse, so this does not hold up showing the images. Images that were downloaded or edited
+	 * before their header was read keep their metadata
 	 *
-	 * @param current
-	 *            The current directory to work on
+	 * @param cloudImageEntries The images to read the headers of
 	 */
-	private void createDirectoryAndImageTree(CloudImageDirectory current)
+	private void readImageHeadersInBackground(Queue<CloudImageEntry> cloudImageEntries)
 	{
-		IRODSFile[] subFiles = (IRODSFile []) current.getCyverseDirectory().listFiles((dir, name) -> true);
+		if (cloudImageEntries.isEmpty())
+			return;
 
-		if (subFiles != null)
+		Integer workerCount = Math.min(HEADER_READ_WORKER_COUNT, cloudImageEntries.size());
+		ExecutorService headerReaders = Executors.newFixedThreadPool(workerCount, runnable ->
+		{
+			Thread thread = new Thread(runnable, "CyVerse Image Header Reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (Integer i = 0; i < workerCount; i++)
 		{
-			// Get all files in the directory
-			for (IRODSFile file : subFiles)
+			headerReaders.submit(() ->
 			{
-				// Add all image files to the directory
-				if (!file.isDirectory())
+				// Each worker reads headers in its own session
+				if (this.storageBackend.openSession())
 				{
-					current.addImage(new CloudImageEntry(file));
+					CloudImageEntry cloudImageEntry;
+					while ((cloudImageEntry = cloudImageEntries.poll()) != null)
+					{
+						File cyverseFile = cloudImageEntry.getCyverseFile();
+						try
+						{
+							// Only the header is read here. Turning it into tags may add to the known locations and species, which
+							// are shown by the UI, so that is done on the FX thread
+							TiffImageMetadata tiffImageMetadata = this.readRemoteTiffMetadataInSession(cyverseFile);
+							CloudImageEntry finalCloudImageEntry = cloudImageEntry;
+							Platform.runLater(() ->
+							{
+								if (!finalCloudImageEntry.hasBeenPulledFromCloud() && !finalCloudImageEntry.isCloudDirty())
+								{
+									ImageEntry headerImage = new ImageEntry(new File(cyverseFile.getAbsolutePath()));
+									try
+									{
+										headerImage.readMetadataIntoImage(tiffImageMetadata, SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
+									}
+									catch (ImageReadException e)
+									{
+										SanimalData.getInstance().getErrorDisplay().printError("Could not read the metadata of the remote file (" + cyverseFile.getName() + ")!\n" + ExceptionUtils.getStackTrace(e));
+										return;
+									}
+									// Apply any tags saved by a metadata only save that haven't been written into the image file yet
+									ImageTagDelta pendingTagDelta = finalCloudImageEntry.getPendingTagDelta();
+									if (pendingTagDelta != null)
+										pendingTagDelta.applyTo(headerImage, SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
+									finalCloudImageEntry.setIndexedMetadata(headerImage);
+								}
+							});
+						}
+						catch (ImageReadException | IOException e)
+						{
+							SanimalData.getInstance().getErrorDisplay().printError("Could not read the metadata of the remote file (" + cyverseFile.getName() + ")!\n" + ExceptionUtils.getStackTrace(e));
+						}
+					}
+					this.storageBackend.closeSession();
 				}
-				// Add all subdirectories to the directory
-				else
+			});
+		}
+		// No more work will be submitted, the threads end once the queue is empty
+		headerReaders.shutdown();
+	}
+
+	/**
+	 * Downloads and extracts the thumbnail pack of an upload if the upload has one
+	 *
+	 * @param uploadIRODSPath The path of the upload on CyVerse
+	 * @return A map of image path on CyVerse -> local thumbnail of that image, empty if the upload has no thumbnails
+	 * @throws IOException If the thumbnail pack could not be downloaded
+	 */
+	private Map<String, File> downloadThumbnailPack(String uploadIRODSPath) throws IOException
+	{
+		Map<String, File> thumbnails = new HashMap<>();
+		// Uploads made before thumbnails existed won't have a thumbnail pack
+		String thumbnailPackPath = uploadIRODSPath + THUMBNAIL_PACK_SUFFIX;
+		if (!this.storageBackend.exists(thumbnailPackPath))
+			return thumbnails;
+
+		// Download the thumbnail pack
+		File localThumbnailPack = SanimalData.getInstance().getTempDirectoryManager().createTempFile("thumbnails.zip");
+		this.storageBackend.getFile(thumbnailPackPath, localThumbnailPack);
+
+		// Extract each thumbnail into its own temporary file
+		try (ZipFile zipFile = new ZipFile(localThumbnailPack))
+		{
+			Enumeration<ZipArchiveEntry> zipEntries = zipFile.getEntries();
+			while (zipEntries.hasMoreElements())
+			{
+				ZipArchiveEntry zipEntry = zipEntries.nextElement();
+				if (!zipEntry.isDirectory())
 				{
-					CloudImageDirectory subDirectory = new CloudImageDirectory(file);
-					current.addChild(subDirectory);
-					this.createDirectoryAndImageTree(subDirectory);
+					File localThumbnail = SanimalData.getInstance().getTempDirectoryManager().createTempFile(FilenameUtils.getName(zipEntry.getName()));
+					try (InputStream thumbnailStream = zipFile.getInputStream(zipEntry))
+					{
+						FileUtils.copyInputStreamToFile(thumbnailStream, localThumbnail);
+					}
+					// Thumbnails are stored with the image path relative to the upload directory
+					thumbnails.put(uploadIRODSPath + "/" + zipEntry.getName(), localThumbnail);
 				}
 			}
 		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not read the thumbnails of the upload!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		localThumbnailPack.delete();
+		return thumbnails;
+	}
+
+	/**
+	 * Reads all tag delta files written by metadata only saves into the given upload directory. Deltas are applied in the
+	 * order they were saved so that the latest save of an image wins
+	 *
+	 * @param uploadDirectoryPath The path of the upload directory on CyVerse
+	 * @return A map of image path to the latest tags saved for that image
+	 * @throws IOException If the upload directory could not be read
+	 */
+	Map<String, ImageTagDelta> readPendingTagDeltas(String uploadDirectoryPath) throws IOException
+	{
+		Map<String, ImageTagDelta> pendingTagDeltas = new HashMap<>();
+		// Grab all tag delta files, their names start with the save date so sorting them sorts them by save date
+		List<String> tagDeltaFileNames = this.storageBackend.listFileNames(uploadDirectoryPath).stream()
+				.filter(name -> name.startsWith(TAG_DELTA_PREFIX))
+				.sorted()
+				.collect(Collectors.toList());
+		for (String tagDeltaFileName : tagDeltaFileNames)
+		{
+			// Read the deltas straight off of CyVerse, they're small so no need to download them first
+			try (Reader reader = new InputStreamReader(this.storageBackend.openInputStream(uploadDirectoryPath + "/" + tagDeltaFileName)))
+			{
+				List<ImageTagDelta> tagDeltas = SanimalData.getInstance().getGson().fromJson(reader, TAG_DELTA_LIST_TYPE);
+				if (tagDeltas != null)
+					for (ImageTagDelta tagDelta : tagDeltas)
+						pendingTagDeltas.put(tagDelta.getImageIRODSPath(), tagDelta);
+			}
+			catch (IOException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Could not read the saved image tags (" + tagDeltaFileName + ")!\n" + ExceptionUtils.getStackTrace(e));
+			}
+		}
+		return pendingTagDeltas;
 	}
 
+	/**
+	 * Creates the directory structure of an upload. Instead of listing each directory separately we ask the storage for
+	 * every file under the upload at once and then build the tree in memory
+	 *
+	 * @param root The directory of the upload to fill in
+	 * @throws IOException If the upload could not be listed
+	 */
+	private void createDirectoryAndImageTree(CloudImageDirectory root) throws IOException
+	{
+		String rootPath = root.getCyverseDirectory().getAbsolutePath();
+
+		// Map of directory path -> file name -> file stat in that directory. The sorted listing keeps the tree sorted by name
+		SortedMap<String, SortedMap<String, RemoteFileStat>> directoryToFileNames = this.storageBackend.listFilesRecursively(rootPath);
+
+		// Now build the tree from the listing, creating directories as we need them
+		CloudImageCache cloudImageCache = SanimalData.getInstance().getCloudImageCache();
+		Map<String, CloudImageDirectory> pathToDirectory = new HashMap<>();
+		pathToDirectory.put(rootPath, root);
+		for (Map.Entry<String, SortedMap<String, RemoteFileStat>> directoryAndFileNames : directoryToFileNames.entrySet())
+		{
+			CloudImageDirectory directory = this.getOrCreateCloudDirectory(directoryAndFileNames.getKey(), pathToDirectory);
+			for (Map.Entry<String, RemoteFileStat> fileNameAndStat : directoryAndFileNames.getValue().entrySet())
+			{
+				// The cache key comes from the listing so we never have to ask the storage for the size and date of each image
+				String filePath = directoryAndFileNames.getKey() + "/" + fileNameAndStat.getKey();
+				String cacheKey = cloudImageCache.cacheKeyFor(filePath, fileNameAndStat.getValue().getSize(), fileNameAndStat.getValue().getLastModified());
+				directory.addImage(new CloudImageEntry(this.storageBackend.getRemoteFile(filePath), cacheKey));
+			}
+		}
+	}
+
+	/**
+	 * Returns the cloud directory for a given path, creating it and any missing parent directories if needed
+	 *
+	 * @param directoryPath The path of the directory on CyVerse
+	 * @param pathToDirectory Map of path -> every directory created so far, must contain the root directory
+	 * @return The cloud directory representing the path
+	 * @throws IOException If the file reference could not be created
+	 */
+	private CloudImageDirectory getOrCreateCloudDirectory(String directoryPath, Map<String, CloudImageDirectory> pathToDirectory) throws IOException
+	{
+		CloudImageDirectory directory = pathToDirectory.get(directoryPath);
+		if (directory == null)
+		{
+			// Create the parent first, then add this directory to it
+			CloudImageDirectory parent = this.getOrCreateCloudDirectory(StringUtils.substringBeforeLast(directoryPath, "/"), pathToDirectory);
+			directory = new CloudImageDirectory(this.storageBackend.getRemoteFile(directoryPath));
+			parent.addChild(directory);
+			pathToDirectory.put(directoryPath, directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Indexes images that were uploaded to CyVerse without SANIMAL (or before indexing existed). Only the header of each
+	 * image is read to get its metadata, so none of the images are downloaded. Images without a location can't be
+	 * indexed and are skipped
+	 *
+	 * @param imageCollection The collection to index the images into
+	 * @param absoluteIRODSPath The top level CyVerse directory to recursively index
+	 */
 	public void indexExisitingImages(ImageCollection imageCollection, String absoluteIRODSPath)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile topLevelDirectory = fileFactory.instanceIRODSFile(absoluteIRODSPath);
+				// Remove any trailing slash so that paths we compute line up with the paths CyVerse gives us
+				File topLevelDirectory = this.storageBackend.getRemoteFile(StringUtils.removeEnd(absoluteIRODSPath, "/"));
 				if (topLevelDirectory.exists() && topLevelDirectory.isDirectory() && topLevelDirectory.canRead())
 				{
-					RuleProcessingAO ruleProcessingAO = this.sessionManager.getCurrentAO().getRuleProcessingAO(this.authenticatedAccount);
+					// List every file under the directory with a single catalog query
+					CloudImageDirectory cloudImageDirectory = new CloudImageDirectory(topLevelDirectory);
+					this.createDirectoryAndImageTree(cloudImageDirectory);
 
+					// Read the metadata of each JPEG from its header. This runs in the background, so the images' locations and
+					// species are matched against lists of our own instead of the known lists shown by the UI
+					List<ImageEntry> imagesToIndex = new ArrayList<>();
+					List<Location> headerLocations = new ArrayList<>();
+					List<Species> headerSpecies = new ArrayList<>();
+					cloudImageDirectory.flattened()
+						.filter(imageContainer -> imageContainer instanceof CloudImageEntry)
+						.map(imageContainer -> ((CloudImageEntry) imageContainer).getCyverseFile())
+						.filter(cyverseFile -> cyverseFile.getName().toLowerCase().matches(".+\\.jpe?g"))
+						.forEach(cyverseFile ->
+						{
+							ImageEntry imageEntry = this.readRemoteImageMetadataInSession(cyverseFile, headerLocations, headerSpecies);
+							if (imageEntry != null && imageEntry.getLocationTaken() != null)
+								imagesToIndex.add(imageEntry);
+						});
+
+					// The images' files are their paths on CyVerse, so the base path and local path are the same
+					String topLevelPath = topLevelDirectory.getAbsolutePath();
+					String bulkLoadLease = imagesToIndex.size() >= BULK_LOAD_MIN_IMAGES ? SanimalData.getInstance().getEsConnectionManager().beginBulkLoad(imagesToIndex) : null;
+					try
+					{
+						SanimalData.getInstance().getEsConnectionManager().indexImages(topLevelPath, imageCollection.getID().toString(), new File(topLevelPath).getAbsolutePath(), imagesToIndex);
+					}
+					finally
+					{
+						SanimalData.getInstance().getEsConnectionManager().endBulkLoad(bulkLoadLease);
+					}
+				}
+				else
+				{
+					SanimalData.getInstance().getErrorDisplay().notify("The directory " + absoluteIRODSPath + " does not exist or can't be read!");
 				}
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				SanimalData.getInstance().getErrorDisplay().notify("Error indexing existing images. Error was:\n" + ExceptionUtils.getStackTrace(e));
 			}
 
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
+		}
+	}
+
+	/**
+	 * Reads the metadata of a JPEG image on CyVerse without downloading the image. Only the header segments of the image
+	 * (usually under 64KB) are read. This may be called off of the FX thread, so the image's location and species are not
+	 * matched against the known locations and species
+	 *
+	 * @param cyverseFile The image on CyVerse
+	 * @return An image entry whose file is the CyVerse path of the image and whose tags are read from the image's header,
+	 * or null if the header could not be read
+	 */
+	public ImageEntry readRemoteImageMetadata(File cyverseFile)
+	{
+		if (this.storageBackend.openSession())
+		{
+			ImageEntry imageEntry = this.readRemoteImageMetadataInSession(cyverseFile, new ArrayList<>(), new ArrayList<>());
+			this.storageBackend.closeSession();
+			return imageEntry;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the metadata of a JPEG image on CyVerse without downloading the image. Must be called from a thread with an
+	 * open session
+	 *
+	 * @param cyverseFile The image on CyVerse
+	 * @param knownLocations The locations to match the image's location against, must not be the UI's list off of the FX thread
+	 * @param knownSpecies The species to match the image's species against, must not be the UI's list off of the FX thread
+	 * @return An image entry whose file is the CyVerse path of the image and whose tags are read from the image's header,
+	 * or null if the header could not be read
+	 */
+	private ImageEntry readRemoteImageMetadataInSession(File cyverseFile, List<Location> knownLocations, List<Species> knownSpecies)
+	{
+		try
+		{
+			TiffImageMetadata tiffImageMetadata = this.readRemoteTiffMetadataInSession(cyverseFile);
+			ImageEntry imageEntry = new ImageEntry(new File(cyverseFile.getAbsolutePath()));
+			imageEntry.readMetadataIntoImage(tiffImageMetadata, knownLocations, knownSpecies);
+			return imageEntry;
+		}
+		catch (ImageReadException | IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not read the metadata of the remote file (" + cyverseFile.getName() + ")!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the header of a JPEG image on CyVerse without downloading the image. Must be called from a thread with an open
+	 * session
+	 *
+	 * @param cyverseFile The image on CyVerse
+	 * @return The metadata stored in the image's header, or null if the image has none
+	 * @throws ImageReadException If the header could not be parsed
+	 * @throws IOException If the image could not be read
+	 */
+	private TiffImageMetadata readRemoteTiffMetadataInSession(File cyverseFile) throws ImageReadException, IOException
+	{
+		// Buffer the stream so that reading the segment markers does not make a round trip to CyVerse each
+		try (InputStream imageStream = new BufferedInputStream(this.storageBackend.openInputStream(cyverseFile.getAbsolutePath())))
+		{
+			return MetadataUtils.readImageMetadata(imageStream, cyverseFile.getName());
 		}
 	}
 
@@ -565,38 +1163,45 @@ public class CyVerseConnectionManager
 	 * Downloads a CyVerse file to a local file
 	 *
 	 * @param cyverseFile The file in CyVerse to download
+	 * @param cacheKey The key of this version of the file in the cloud image cache, or null to skip the cache
 	 * @return The local file
 	 */
-	public File remoteToLocalImageFile(IRODSFile cyverseFile)
+	public File remoteToLocalImageFile(File cyverseFile, String cacheKey)
 	{
-		if (this.sessionManager.openSession())
+		if (this.storageBackend.openSession())
 		{
 			try
 			{
 				// Grab the name of the CyVerse file
 				String fileName = cyverseFile.getName();
+
+				// If the file is unchanged since we last downloaded it, use the cached copy instead of downloading it again
+				CloudImageCache cloudImageCache = SanimalData.getInstance().getCloudImageCache();
+				File cachedImageFile = cacheKey != null ? cloudImageCache.retrieve(cacheKey, fileName) : null;
+				if (cachedImageFile != null)
+				{
+					this.storageBackend.closeSession();
+					return cachedImageFile;
+				}
+
 				// Create a temporary file to write to with the same name
 				File localImageFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile(fileName);
 
 				// Download the file locally
-				this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).getOperation(cyverseFile, localImageFile, new TransferStatusCallbackListener()
-				{
-					@Override
-					public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
-					@Override
-					public void overallStatusCallback(TransferStatus transferStatus) {}
-					@Override
-					public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
-				}, null);
-
-				this.sessionManager.closeSession();
+				this.storageBackend.getFile(cyverseFile.getAbsolutePath(), localImageFile);
+
+				// Cache the downloaded file for next time
+				if (cacheKey != null)
+					cloudImageCache.store(cacheKey, fileName, localImageFile);
+
+				this.storageBackend.closeSession();
 				return localImageFile;
 			}
-			catch (JargonException e)
+			catch (IOException e)
 			{
 				SanimalData.getInstance().getErrorDisplay().notify("Could not pull the remote file (" + cyverseFile.getName() + ")!\n" + ExceptionUtils.getStackTrace(e));
 			}
-			this.sessionManager.closeSession();
+			this.storageBackend.closeSession();
 		}
 
 		return null;
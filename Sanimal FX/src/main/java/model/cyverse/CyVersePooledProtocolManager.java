@@ -0,0 +1,320 @@
+package model.cyverse;
+
+import model.SanimalData;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.irods.jargon.core.connection.*;
+import org.irods.jargon.core.exception.AuthenticationException;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.packinstr.MiscSvrInfo;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * iRODS protocol manager that keeps connections open once a session is done with them so that the next session can
+ * reuse the connection instead of connecting and authenticating again. Connections that sit idle for too long are
+ * closed so we never hand out a connection that the server has already dropped
+ */
+public class CyVersePooledProtocolManager extends IRODSProtocolManager
+{
+	// Connections idle for longer than this are closed instead of being reused, this is well under the server's idle timeout
+	private static final Long MAX_IDLE_MILLIS = 60_000L;
+	// How often we look for connections that have been idle for too long
+	private static final Long EVICTION_INTERVAL_MILLIS = 15_000L;
+	// Connections idle for longer than this are checked with a round trip to the server before they are reused
+	private static final Long KEEP_ALIVE_CHECK_MILLIS = 5_000L;
+
+	// The most connections we keep open while idle
+	private final Integer maxIdleConnections;
+
+	// The idle connections, most recently returned first. Access must be synchronized on the list
+	private final Deque<IdleConnection> idleConnections = new LinkedList<>();
+	// Set once the pool is destroyed, after which returned connections are closed instead of pooled. Access must be synchronized on idleConnections
+	private Boolean destroyed = false;
+
+	// Thread that periodically closes connections that have been idle for too long
+	private final ScheduledExecutorService idleEvictor = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "CyVerse Idle Connection Evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Usage metrics
+	private final AtomicLong connectionsCreated = new AtomicLong(0);
+	private final AtomicLong connectionsReused = new AtomicLong(0);
+	private final AtomicLong connectionsEvicted = new AtomicLong(0);
+	private final AtomicLong connectionsDiscarded = new AtomicLong(0);
+
+	/**
+	 * Constructor sets up the idle connection evictor
+	 *
+	 * @param maxIdleConnections The most connections to keep open while idle
+	 */
+	public CyVersePooledProtocolManager(Integer maxIdleConnections)
+	{
+		super();
+		this.maxIdleConnections = maxIdleConnections;
+		this.idleEvictor.scheduleWithFixedDelay(this::evictIdleConnections, EVICTION_INTERVAL_MILLIS, EVICTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Called by the session when a thread needs a connection. Reuses an idle connection to the same account if there is
+	 * a valid one, otherwise connects a new one
+	 *
+	 * @param irodsAccount The account to connect as
+	 * @param pipelineConfiguration The connection configuration
+	 * @param irodsSession The session requesting the connection
+	 * @return A connected protocol ready to use
+	 * @throws AuthenticationException If a new connection failed to authenticate
+	 * @throws JargonException If a new connection failed to connect
+	 */
+	@Override
+	public AbstractIRODSMidLevelProtocol getIRODSProtocol(IRODSAccount irodsAccount, PipelineConfiguration pipelineConfiguration, IRODSSession irodsSession) throws AuthenticationException, JargonException
+	{
+		String accountKey = irodsAccount.toString();
+		// Take the most recently used connection to the account, it's the least likely to have gone stale
+		while (true)
+		{
+			IdleConnection idleConnection = null;
+			synchronized (this.idleConnections)
+			{
+				Iterator<IdleConnection> iterator = this.idleConnections.iterator();
+				while (iterator.hasNext() && idleConnection == null)
+				{
+					IdleConnection current = iterator.next();
+					if (current.accountKey.equals(accountKey))
+					{
+						iterator.remove();
+						idleConnection = current;
+					}
+				}
+			}
+
+			// No idle connection for this account, so connect a new one
+			if (idleConnection == null)
+				break;
+
+			// Validate the connection before handing it out, if it's no good close it and try the next one
+			if (idleConnection.isValid() && idleConnection.isAlive())
+			{
+				this.connectionsReused.incrementAndGet();
+				return idleConnection.protocol;
+			}
+			this.closeConnection(idleConnection.protocol);
+			this.connectionsEvicted.incrementAndGet();
+		}
+
+		this.connectionsCreated.incrementAndGet();
+		return this.createNewProtocol(irodsAccount, pipelineConfiguration, irodsSession);
+	}
+
+	/**
+	 * Called by the session when a thread is done with its connection. Keeps the connection open for the next session
+	 * unless we already have enough idle connections
+	 *
+	 * @param abstractIRODSMidLevelProtocol The connection that is no longer in use
+	 * @throws JargonException Never thrown, connection errors are printed instead
+	 */
+	@Override
+	public void returnIRODSProtocol(AbstractIRODSMidLevelProtocol abstractIRODSMidLevelProtocol) throws JargonException
+	{
+		if (abstractIRODSMidLevelProtocol == null || !abstractIRODSMidLevelProtocol.isConnected())
+			return;
+
+		IdleConnection toClose = null;
+		synchronized (this.idleConnections)
+		{
+			// Once the pool is destroyed nothing would ever close a pooled connection, so close it right away
+			if (this.destroyed)
+			{
+				toClose = new IdleConnection(abstractIRODSMidLevelProtocol);
+			}
+			else
+			{
+				this.idleConnections.addFirst(new IdleConnection(abstractIRODSMidLevelProtocol));
+				// If we have too many idle connections close the one that's been idle the longest
+				if (this.idleConnections.size() > this.maxIdleConnections)
+					toClose = this.idleConnections.removeLast();
+			}
+		}
+
+		if (toClose != null)
+		{
+			this.closeConnection(toClose.protocol);
+			this.connectionsEvicted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Called by the session when a connection hit an error and can't be trusted anymore, so it is never pooled
+	 *
+	 * @param abstractIRODSMidLevelProtocol The broken connection
+	 */
+	@Override
+	public void returnWithForceIRODSProtocol(AbstractIRODSMidLevelProtocol abstractIRODSMidLevelProtocol)
+	{
+		if (abstractIRODSMidLevelProtocol != null)
+		{
+			abstractIRODSMidLevelProtocol.obliterateConnectionAndDiscardErrors();
+			this.connectionsDiscarded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Nothing to initialize, the evictor is started in the constructor
+	 */
+	@Override
+	public void initialize()
+	{
+	}
+
+	/**
+	 * Closes every idle connection and stops the evictor. Connections returned after this are closed instead of pooled
+	 */
+	@Override
+	public void destroy()
+	{
+		this.idleEvictor.shutdownNow();
+		List<IdleConnection> toClose;
+		synchronized (this.idleConnections)
+		{
+			this.destroyed = true;
+			toClose = new ArrayList<>(this.idleConnections);
+			this.idleConnections.clear();
+		}
+		toClose.forEach(idleConnection -> this.closeConnection(idleConnection.protocol));
+	}
+
+	/**
+	 * Closes every connection that has been idle for longer than MAX_IDLE_MILLIS, run periodically by the evictor
+	 */
+	private void evictIdleConnections()
+	{
+		List<IdleConnection> toClose = new ArrayList<>();
+		synchronized (this.idleConnections)
+		{
+			this.idleConnections.removeIf(idleConnection ->
+			{
+				if (!idleConnection.isValid())
+				{
+					toClose.add(idleConnection);
+					return true;
+				}
+				return false;
+			});
+		}
+		toClose.forEach(idleConnection -> this.closeConnection(idleConnection.protocol));
+		this.connectionsEvicted.addAndGet(toClose.size());
+	}
+
+	/**
+	 * Closes a connection, printing any error since there's nothing else we can do about it
+	 *
+	 * @param protocol The connection to close
+	 */
+	private void closeConnection(AbstractIRODSMidLevelProtocol protocol)
+	{
+		try
+		{
+			protocol.shutdown();
+		}
+		catch (JargonException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Error closing an idle CyVerse connection!\n" + ExceptionUtils.getStackTrace(e));
+			protocol.obliterateConnectionAndDiscardErrors();
+		}
+	}
+
+	/**
+	 * An open connection that is not in use by any session
+	 */
+	private static class IdleConnection
+	{
+		// The open connection
+		private final AbstractIRODSMidLevelProtocol protocol;
+		// The account the connection is authenticated as
+		private final String accountKey;
+		// The time the connection was returned to the pool
+		private final Long idleSinceMillis;
+
+		/**
+		 * Constructor stores the connection and the time it became idle
+		 *
+		 * @param protocol The connection that is now idle
+		 */
+		IdleConnection(AbstractIRODSMidLevelProtocol protocol)
+		{
+			this.protocol = protocol;
+			this.accountKey = protocol.getIrodsAccount().toString();
+			this.idleSinceMillis = System.currentTimeMillis();
+		}
+
+		/**
+		 * Tests if the connection is still safe to use
+		 *
+		 * @return True if the connection is still connected and has not been idle long enough for the server to drop it
+		 */
+		boolean isValid()
+		{
+			return this.protocol.isConnected() && System.currentTimeMillis() - this.idleSinceMillis < MAX_IDLE_MILLIS;
+		}
+
+		/**
+		 * Tests if the server still answers on this connection. A connection can look connected on our end after the
+		 * server or a firewall dropped it, so connections idle for more than a few seconds are checked with a cheap
+		 * server info request before they are handed out
+		 *
+		 * @return True if the connection was used recently or the server answered the keep-alive request
+		 */
+		boolean isAlive()
+		{
+			if (System.currentTimeMillis() - this.idleSinceMillis < KEEP_ALIVE_CHECK_MILLIS)
+				return true;
+			try
+			{
+				this.protocol.irodsFunction(MiscSvrInfo.instance());
+				return true;
+			}
+			catch (JargonException e)
+			{
+				return false;
+			}
+		}
+	}
+
+	///
+	/// Getters/Setters
+	///
+
+	public Long getConnectionsCreated()
+	{
+		return this.connectionsCreated.get();
+	}
+
+	public Long getConnectionsReused()
+	{
+		return this.connectionsReused.get();
+	}
+
+	public Long getConnectionsEvicted()
+	{
+		return this.connectionsEvicted.get();
+	}
+
+	public Long getConnectionsDiscarded()
+	{
+		return this.connectionsDiscarded.get();
+	}
+
+	public Integer getIdleConnectionCount()
+	{
+		synchronized (this.idleConnections)
+		{
+			return this.idleConnections.size();
+		}
+	}
+}
@@ -1,26 +1,46 @@
 package model.cyverse;
 
-import javafx.util.Pair;
 import model.SanimalData;
-import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.irods.jargon.core.connection.IRODSAccount;
 import org.irods.jargon.core.connection.IRODSSession;
-import org.irods.jargon.core.connection.IRODSSimpleProtocolManager;
 import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactoryImpl;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class that maintains connections to cyverse
+ * Class that maintains connections to cyverse. Threads borrow a session with openSession and return it with closeSession.
+ * The connection behind a session is kept open once it is returned so that the next session on any thread can reuse it
  */
 public class CyVerseSessionManager
 {
-	// A map of thread -> session objects, used to keep 1 session per thread
-	private Map<Thread, Pair<IRODSSession, IRODSAccessObjectFactory>> sessions = Collections.synchronizedMap(new HashMap<>());
+	// The most sessions that may be open at once, any more threads wait until a session is returned
+	private static final Integer MAX_OPEN_SESSIONS = 10;
+	// The longest a thread waits for a session before giving up. Threads that hold a session while waiting on workers that
+	// need their own session would otherwise wait forever once every session is taken
+	private static final Long MAX_SESSION_WAIT_SECONDS = 120L;
+
+	// The set of threads that currently have a session open, used to keep 1 session per thread
+	private final Set<Thread> threadsWithSessions = ConcurrentHashMap.newKeySet();
+	// Permits limiting the number of open sessions
+	private final Semaphore sessionPermits = new Semaphore(MAX_OPEN_SESSIONS, true);
+
+	// The protocol manager that pools the actual connections to CyVerse
+	private final CyVersePooledProtocolManager protocolManager = new CyVersePooledProtocolManager(MAX_OPEN_SESSIONS);
+	// The session and access object factory shared by all threads. Jargon keeps each thread's connection separate
+	private IRODSSession session;
+	private IRODSAccessObjectFactory accessObjectFactory;
+
+	// Usage metrics
+	private final AtomicLong sessionsOpened = new AtomicLong(0);
+	private final AtomicLong sessionWaitNanos = new AtomicLong(0);
+	private final AtomicLong sessionWaitTimeouts = new AtomicLong(0);
 
 	// A reference to the authenticated irods account
 	private IRODSAccount authenticatedAccount;
@@ -33,10 +53,21 @@ public class CyVerseSessionManager
 	public CyVerseSessionManager(IRODSAccount authenticatedAccount)
 	{
 		this.authenticatedAccount = authenticatedAccount;
+		try
+		{
+			// Create the shared session on top of the pooled protocol manager
+			this.session = IRODSSession.instance(this.protocolManager);
+			this.accessObjectFactory = IRODSAccessObjectFactoryImpl.instance(this.session);
+		}
+		catch (JargonException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error creating a session!\n" + ExceptionUtils.getStackTrace(e));
+		}
 	}
 
 	/**
-	 * Either returns false if a session is already open in the current thread or a session fails to open, returns true otherwise
+	 * Either returns false if a session is already open in the current thread or a session fails to open, returns true otherwise.
+	 * If the maximum number of sessions are already open this waits until one is closed, or gives up after MAX_SESSION_WAIT_SECONDS
 	 *
 	 * @return True if the session was opened successfully
 	 */
@@ -44,54 +75,69 @@ public class CyVerseSessionManager
 	{
 		// Grab the current thread
 		Thread current = Thread.currentThread();
-		// Test if this thread already has a session object
-		if (this.sessions.containsKey(current))
+		// Test if this thread already has a session object, or if we couldn't create the shared session
+		if (this.threadsWithSessions.contains(current) || this.accessObjectFactory == null)
 			return false;
-		else
+
+		// Wait for a free session, but not forever
+		long waitStart = System.nanoTime();
+		try
 		{
-			// Create a session
-			try
-			{
-				// Create the session and store it
-				IRODSSession newSession = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
-				IRODSAccessObjectFactory newAccessFactory = IRODSAccessObjectFactoryImpl.instance(newSession);
-				this.sessions.put(current, new Pair<>(newSession, newAccessFactory));
-				return true;
-			}
-			// Print an error and return false
-			catch (JargonException e)
+			Boolean acquired = this.sessionPermits.tryAcquire(MAX_SESSION_WAIT_SECONDS, TimeUnit.SECONDS);
+			this.sessionWaitNanos.addAndGet(System.nanoTime() - waitStart);
+			if (!acquired)
 			{
-				SanimalData.getInstance().getErrorDisplay().notify("Error creating a session!\n" + ExceptionUtils.getStackTrace(e));
+				this.sessionWaitTimeouts.incrementAndGet();
+				SanimalData.getInstance().getErrorDisplay().notify("Timed out waiting for a free CyVerse session! " + this.getUsageSummary());
 				return false;
 			}
 		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		this.threadsWithSessions.add(current);
+		this.sessionsOpened.incrementAndGet();
+		return true;
 	}
 
 	/**
-	 * Closes the session for the current thread if there is one open at the moment
+	 * Closes the session for the current thread if there is one open at the moment. The connection behind the session is
+	 * kept open for the next session to use
 	 */
 	public void closeSession()
 	{
 		// Grab the current thread, and see if a session is associated with the thread
 		Thread current = Thread.currentThread();
-		if (this.sessions.containsKey(current))
+		if (this.threadsWithSessions.remove(current))
 		{
-			// If so, grab the session and close it
-			Pair<IRODSSession, IRODSAccessObjectFactory> session = this.sessions.get(current);
 			try
 			{
-				// Close the session
-				session.getKey().closeSession(this.authenticatedAccount);
+				// Hand the thread's connection back to the pool
+				this.session.closeSession(this.authenticatedAccount);
 			}
 			// An error occured, ignore it
 			catch (JargonException e)
 			{
-				SanimalData.getInstance().getErrorDisplay().notify("Error closing a session!\n" + org.apache.commons.lang.exception.ExceptionUtils.getStackTrace(e));
+				SanimalData.getInstance().getErrorDisplay().notify("Error closing a session!\n" + ExceptionUtils.getStackTrace(e));
+			}
+			finally
+			{
+				this.sessionPermits.release();
 			}
-			this.sessions.remove(current);
 		}
 	}
 
+	/**
+	 * Closes every pooled connection to CyVerse. Called when the user logs out, no sessions may be opened afterwards
+	 */
+	public void destroy()
+	{
+		this.protocolManager.destroy();
+	}
+
 	/**
 	 * Getter for the current session this thread is operating on
 	 *
@@ -99,10 +145,9 @@ public class CyVerseSessionManager
 	 */
 	public IRODSSession getCurrentSession()
 	{
-		Pair<IRODSSession, IRODSAccessObjectFactory> sessionPair = this.sessions.get(Thread.currentThread());
-		if (sessionPair == null)
+		if (!this.threadsWithSessions.contains(Thread.currentThread()))
 			return null;
-		return sessionPair.getKey();
+		return this.session;
 	}
 
 	/**
@@ -112,9 +157,45 @@ public class CyVerseSessionManager
 	 */
 	public IRODSAccessObjectFactory getCurrentAO()
 	{
-		Pair<IRODSSession, IRODSAccessObjectFactory> sessionPair = this.sessions.get(Thread.currentThread());
-		if (sessionPair == null)
+		if (!this.threadsWithSessions.contains(Thread.currentThread()))
 			return null;
-		return sessionPair.getValue();
+		return this.accessObjectFactory;
+	}
+
+	/**
+	 * Returns a summary of how the session pool has been used, useful when tuning the pool size
+	 *
+	 * @return A human readable summary of the pool's usage
+	 */
+	public String getUsageSummary()
+	{
+		return "Sessions opened: " + this.sessionsOpened.get() +
+				", open now: " + this.threadsWithSessions.size() +
+				", total wait: " + (this.sessionWaitNanos.get() / 1_000_000) + "ms" +
+				", wait timeouts: " + this.sessionWaitTimeouts.get() +
+				", connections created: " + this.protocolManager.getConnectionsCreated() +
+				", reused: " + this.protocolManager.getConnectionsReused() +
+				", evicted: " + this.protocolManager.getConnectionsEvicted() +
+				", discarded: " + this.protocolManager.getConnectionsDiscarded() +
+				", idle: " + this.protocolManager.getIdleConnectionCount();
+	}
+
+	///
+	/// Getters/Setters
+	///
+
+	public Long getSessionsOpened()
+	{
+		return this.sessionsOpened.get();
+	}
+
+	public Long getSessionWaitMillis()
+	{
+		return this.sessionWaitNanos.get() / 1_000_000;
+	}
+
+	public Integer getOpenSessionCount()
+	{
+		return this.threadsWithSessions.size();
 	}
 }
@@ -0,0 +1,434 @@
+package model.cyverse;
+
+import model.SanimalData;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.irods.jargon.core.connection.AuthScheme;
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.connection.IRODSSession;
+import org.irods.jargon.core.connection.IRODSSimpleProtocolManager;
+import org.irods.jargon.core.connection.auth.AuthResponse;
+import org.irods.jargon.core.exception.AuthenticationException;
+import org.irods.jargon.core.exception.DataNotFoundException;
+import org.irods.jargon.core.exception.InvalidUserException;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.protovalues.FilePermissionEnum;
+import org.irods.jargon.core.pub.CollectionAO;
+import org.irods.jargon.core.pub.DataObjectAO;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactoryImpl;
+import org.irods.jargon.core.pub.domain.UserFilePermission;
+import org.irods.jargon.core.pub.io.IRODSFile;
+import org.irods.jargon.core.pub.io.IRODSFileFactory;
+import org.irods.jargon.core.query.*;
+import org.irods.jargon.core.transfer.TransferStatus;
+import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Storage backend that stores everything on the CyVerse data store using iRODS
+ */
+public class IRODSStorageBackend implements IStorageBackend
+{
+	// The string containing the host address that we connect to
+	private static final String CYVERSE_HOST = "data.cyverse.org"; // diana.cyverse.org
+	// The port that iRODS listens on
+	private static final Integer CYVERSE_PORT = 1247;
+	// The directory that each user has as their home directory
+	private static final String HOME_DIRECTORY = "/iplant/home/";
+	// Each user is part of the iPlant zone
+	private static final String ZONE = "iplant";
+	// The number of files to retrieve per page when recursively listing a directory
+	private static final Integer LISTING_PAGE_SIZE = 5000;
+	// Transfer callback that always overwrites existing files
+	private static final TransferStatusCallbackListener OVERWRITE_CALLBACK = new TransferStatusCallbackListener()
+	{
+		@Override
+		public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
+		@Override
+		public void overallStatusCallback(TransferStatus transferStatus) {}
+		@Override
+		public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
+	};
+
+	// Cache the authenticated iRODS account
+	private IRODSAccount authenticatedAccount;
+	// Session manager ensures that we don't leave sessions open
+	private CyVerseSessionManager sessionManager;
+
+	/**
+	 * Given a username and password, this method logs a cyverse user in
+	 *
+	 * @param username The username of the CyVerse account
+	 * @param password The password of the CyVerse account
+	 * @return True if the login was successful, false otherwise
+	 */
+	@Override
+	public Boolean login(String username, String password)
+	{
+		try
+		{
+			// Create a new CyVerse account given the host address, port, username, password, homedirectory, and one field I have no idea what it does..., however leaving it as empty string makes file creation work!
+			IRODSAccount account = IRODSAccount.instance(CYVERSE_HOST, CYVERSE_PORT, username, password, HOME_DIRECTORY + username, ZONE, "", AuthScheme.STANDARD);
+			// Create a new session
+			IRODSSession session = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
+			// Create an irodsAO
+			IRODSAccessObjectFactory irodsAO = IRODSAccessObjectFactoryImpl.instance(session);
+			// Perform the authentication and get a response
+			AuthResponse authResponse = irodsAO.authenticateIRODSAccount(account);
+			// If the authentication worked, return true and set the username and logged in fields
+			if (authResponse.isSuccessful())
+			{
+				// Cache the authenticated IRODS account
+				this.authenticatedAccount = authResponse.getAuthenticatedIRODSAccount();
+
+				// Close the connection used to authenticate, the session manager makes its own pooled connections
+				session.closeSession(account);
+
+				// Store a session manager
+				this.sessionManager = new CyVerseSessionManager(this.authenticatedAccount);
+
+				// We're good, return true
+				return true;
+			}
+			else
+			{
+				// If the authentication failed, print a message, and logout in case the login partially completed
+				SanimalData.getInstance().getErrorDisplay().printError("Authentication failed. Response was: " + authResponse.getAuthMessage());
+			}
+			session.closeSession(account);
+		}
+		// If the authentication failed, print a message, and logout in case the login partially completed
+		catch (InvalidUserException | AuthenticationException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Authentication failed!");
+		}
+		// If the authentication failed due to a jargon exception, print a message, and logout in case the login partially completed
+		// Not really sure how this happens, probably if the server incorrectly responds or is down
+		catch (JargonException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not authenticate the user!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		// Default, just return false
+		return false;
+	}
+
+	@Override
+	public void logout()
+	{
+		// Close every pooled connection to CyVerse
+		if (this.sessionManager != null)
+		{
+			this.sessionManager.destroy();
+			this.sessionManager = null;
+		}
+	}
+
+	@Override
+	public Boolean openSession()
+	{
+		// No sessions can be opened once logged out
+		return this.sessionManager != null && this.sessionManager.openSession();
+	}
+
+	@Override
+	public void closeSession()
+	{
+		if (this.sessionManager != null)
+			this.sessionManager.closeSession();
+	}
+
+	@Override
+	public File getRemoteFile(String path) throws IOException
+	{
+		// iRODS files are java files that ask iRODS for their size and dates
+		return (File) this.instanceIRODSFile(path);
+	}
+
+	@Override
+	public Boolean exists(String path) throws IOException
+	{
+		return this.instanceIRODSFile(path).exists();
+	}
+
+	@Override
+	public Boolean canWrite(String path) throws IOException
+	{
+		IRODSFile file = this.instanceIRODSFile(path);
+		return file.exists() && file.canWrite();
+	}
+
+	@Override
+	public void mkdirs(String path) throws IOException
+	{
+		IRODSFile directory = this.instanceIRODSFile(path);
+		if (!directory.exists() && !directory.mkdirs())
+			throw new IOException("Could not create the directory " + path);
+	}
+
+	@Override
+	public void delete(String path) throws IOException
+	{
+		IRODSFile file = this.instanceIRODSFile(path);
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not delete " + path);
+	}
+
+	@Override
+	public Long getServerTime() throws IOException
+	{
+		return this.jargon(() -> this.sessionManager.getCurrentAO().getEnvironmentalInfoAO(this.authenticatedAccount).getIRODSServerCurrentTime());
+	}
+
+	@Override
+	public Boolean isValidUsername(String username) throws IOException
+	{
+		try
+		{
+			// Grab the user object for a given name, if it's null, it doesn't exist!
+			return this.sessionManager.getCurrentAO().getUserAO(this.authenticatedAccount).findByName(username) != null;
+		}
+		catch (DataNotFoundException e)
+		{
+			return false;
+		}
+		catch (JargonException e)
+		{
+			throw new IOException("Could not look up the user " + username, e);
+		}
+	}
+
+	@Override
+	public void putFile(File localFile, String remotePath, TransferStatusCallbackListener transferCallback) throws IOException
+	{
+		IRODSFile remoteFile = this.instanceIRODSFile(remotePath);
+		this.jargon(() ->
+		{
+			this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localFile, remoteFile, transferCallback != null ? transferCallback : OVERWRITE_CALLBACK, null);
+			return null;
+		});
+	}
+
+	@Override
+	public void putArchive(File localArchive, String extractDirectory, TransferStatusCallbackListener transferCallback) throws IOException
+	{
+		// The archive is placed next to the directory and the data store's rules extract it into the directory for us
+		IRODSFile remoteDirectoryFile = this.instanceIRODSFile(StringUtils.substringBeforeLast(extractDirectory, "/"));
+		this.jargon(() ->
+		{
+			this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localArchive, remoteDirectoryFile, transferCallback, null);
+			return null;
+		});
+	}
+
+	@Override
+	public void getFile(String remotePath, File localFile) throws IOException
+	{
+		IRODSFile remoteFile = this.instanceIRODSFile(remotePath);
+		this.jargon(() ->
+		{
+			this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).getOperation(remoteFile, localFile, OVERWRITE_CALLBACK, null);
+			return null;
+		});
+	}
+
+	@Override
+	public InputStream openInputStream(String remotePath) throws IOException
+	{
+		// The stream uses the current thread's connection, so it must be closed before the session is
+		return this.jargon(() -> this.getFileFactory().instanceIRODSFileInputStream(remotePath));
+	}
+
+	@Override
+	public List<String> listFileNames(String directoryPath) throws IOException
+	{
+		String[] fileNames = this.instanceIRODSFile(directoryPath).list();
+		return fileNames == null ? Collections.emptyList() : Arrays.asList(fileNames);
+	}
+
+	/**
+	 * Lists every file under a directory. Instead of listing each directory separately we ask the iRODS catalog for every
+	 * file under the directory with a paged query
+	 *
+	 * @param rootPath The remote path of the directory
+	 * @return A sorted map of directory path -> sorted map of file name -> size and date of the files directly in that directory
+	 * @throws IOException If the catalog query fails
+	 */
+	@Override
+	public SortedMap<String, SortedMap<String, RemoteFileStat>> listFilesRecursively(String rootPath) throws IOException
+	{
+		// Map of directory path -> file name -> file stat in that directory. Using tree maps keeps the listing sorted by name
+		SortedMap<String, SortedMap<String, RemoteFileStat>> directoryToFileNames = new TreeMap<>();
+		try
+		{
+			// Ask for the directory, name, size, and modify date of every file whose directory starts with the root path. Distinct removes duplicate rows from file replicas
+			IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, null)
+					.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME)
+					.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME)
+					.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_SIZE)
+					.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_MODIFY_TIME)
+					.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.LIKE, rootPath + "%");
+			IRODSGenQueryFromBuilder query = queryBuilder.exportIRODSQueryFromBuilder(LISTING_PAGE_SIZE);
+			IRODSGenQueryExecutor queryExecutor = this.sessionManager.getCurrentAO().getIRODSGenQueryExecutor(this.authenticatedAccount);
+
+			// Read the results page by page
+			IRODSQueryResultSet resultSet = queryExecutor.executeIRODSQuery(query, 0);
+			try
+			{
+				while (true)
+				{
+					for (IRODSQueryResultRow row : resultSet.getResults())
+					{
+						String directoryPath = row.getColumn(0);
+						// The LIKE also matches sibling directories that start with the same name, so filter those out
+						if (directoryPath.equals(rootPath) || directoryPath.startsWith(rootPath + "/"))
+						{
+							// iRODS stores modify dates in seconds. Replicas that differ return one row each, so keep the newest one
+							RemoteFileStat fileStat = new RemoteFileStat(Long.parseLong(row.getColumn(2).trim()), Long.parseLong(row.getColumn(3).trim()) * 1000L);
+							directoryToFileNames.computeIfAbsent(directoryPath, ignored -> new TreeMap<>()).merge(row.getColumn(1), fileStat, (first, second) -> first.getLastModified() >= second.getLastModified() ? first : second);
+						}
+					}
+					if (!resultSet.isHasMoreRecords())
+						break;
+					resultSet = queryExecutor.getMoreResults(resultSet);
+				}
+			}
+			finally
+			{
+				// Make sure to close the query on the server
+				queryExecutor.closeResults(resultSet);
+			}
+		}
+		catch (GenQueryBuilderException | JargonQueryException e)
+		{
+			throw new IOException("Could not build the listing query for " + rootPath, e);
+		}
+		catch (JargonException e)
+		{
+			throw new IOException("Could not list the directory " + rootPath, e);
+		}
+		return directoryToFileNames;
+	}
+
+	@Override
+	public Map<String, FilePermissionEnum> getPermissions(String path) throws IOException
+	{
+		// Directories are done differently than files, so test this first
+		List<UserFilePermission> userFilePermissions;
+		if (this.instanceIRODSFile(path).isDirectory())
+			userFilePermissions = this.jargon(() -> this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount).listPermissionsForCollection(path));
+		else
+			userFilePermissions = this.jargon(() -> this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount).listPermissionsForDataObject(path));
+
+		Map<String, FilePermissionEnum> permissions = new HashMap<>();
+		for (UserFilePermission userFilePermission : userFilePermissions)
+			if (userFilePermission.getFilePermissionEnum() != FilePermissionEnum.OWN)
+				permissions.put(userFilePermission.getUserName(), userFilePermission.getFilePermissionEnum());
+		return permissions;
+	}
+
+	@Override
+	public void setPermission(String path, String username, FilePermissionEnum permission, Boolean recursive) throws IOException
+	{
+		Boolean isDirectory = this.instanceIRODSFile(path).isDirectory();
+		this.jargon(() ->
+		{
+			if (isDirectory)
+			{
+				CollectionAO collectionAO = this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount);
+				if (permission == FilePermissionEnum.WRITE)
+					collectionAO.setAccessPermissionWrite(ZONE, path, username, recursive);
+				else if (permission == FilePermissionEnum.READ)
+					collectionAO.setAccessPermissionRead(ZONE, path, username, recursive);
+				else
+					collectionAO.removeAccessPermissionForUser(ZONE, path, username, recursive);
+			}
+			// File permissions are done differently, so do that here
+			else
+			{
+				DataObjectAO dataObjectAO = this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount);
+				if (permission == FilePermissionEnum.WRITE)
+					dataObjectAO.setAccessPermissionWrite(ZONE, path, username);
+				else if (permission == FilePermissionEnum.READ)
+					dataObjectAO.setAccessPermissionRead(ZONE, path, username);
+				else
+					dataObjectAO.removeAccessPermissionsForUser(ZONE, path, username);
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public Boolean isPermissionInheritanceEnabled(String path) throws IOException
+	{
+		return this.jargon(() -> this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount).isCollectionSetForPermissionInheritance(path));
+	}
+
+	@Override
+	public void enablePermissionInheritance(String path) throws IOException
+	{
+		this.jargon(() ->
+		{
+			this.sessionManager.getCurrentAO().getCollectionAO(this.authenticatedAccount).setAccessPermissionInherit(ZONE, path, true);
+			return null;
+		});
+	}
+
+	/**
+	 * Creates a reference to an iRODS file using the current thread's session
+	 *
+	 * @param path The path of the file
+	 * @return The iRODS file
+	 * @throws IOException If the reference could not be created
+	 */
+	private IRODSFile instanceIRODSFile(String path) throws IOException
+	{
+		return this.jargon(() -> this.getFileFactory().instanceIRODSFile(path));
+	}
+
+	/**
+	 * Returns the file factory of the current thread's session
+	 *
+	 * @return The file factory
+	 * @throws JargonException If the factory could not be created
+	 */
+	private IRODSFileFactory getFileFactory() throws JargonException
+	{
+		return this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
+	}
+
+	/**
+	 * Runs a Jargon operation, turning any Jargon error into an IOException
+	 *
+	 * @param operation The operation to run
+	 * @param <T> The type returned by the operation
+	 * @return The result of the operation
+	 * @throws IOException If the operation threw a JargonException
+	 */
+	private <T> T jargon(JargonOperation<T> operation) throws IOException
+	{
+		try
+		{
+			return operation.run();
+		}
+		catch (JargonException e)
+		{
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * A call into the Jargon library
+	 *
+	 * @param <T> The type returned by the call
+	 */
+	@FunctionalInterface
+	private interface JargonOperation<T>
+	{
+		T run() throws JargonException;
+	}
+}
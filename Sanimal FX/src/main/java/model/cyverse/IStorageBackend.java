@@ -0,0 +1,199 @@
+package model.cyverse;
+
+import org.irods.jargon.core.protovalues.FilePermissionEnum;
+import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Interface for the storage that collections and uploads are kept in. All paths are absolute remote paths using / as
+ * a separator. Most operations must be called from a thread that has a session open, see openSession
+ */
+public interface IStorageBackend
+{
+	/**
+	 * Logs a user into the storage
+	 *
+	 * @param username The username of the user
+	 * @param password The password of the user
+	 * @return True if the login was successful, false otherwise
+	 */
+	Boolean login(String username, String password);
+
+	/**
+	 * Logs the current user out, closing any connections to the storage
+	 */
+	void logout();
+
+	/**
+	 * Opens a session for the current thread
+	 *
+	 * @return False if a session is already open in the current thread or a session fails to open, true otherwise
+	 */
+	Boolean openSession();
+
+	/**
+	 * Closes the session of the current thread if one is open
+	 */
+	void closeSession();
+
+	/**
+	 * Returns a reference to a remote file. The file's name, path, size, and last modified date describe the remote
+	 * file, not a local one
+	 *
+	 * @param path The path of the remote file
+	 * @return A reference to the remote file
+	 * @throws IOException If the reference could not be created
+	 */
+	File getRemoteFile(String path) throws IOException;
+
+	/**
+	 * Tests if a remote file or directory exists
+	 *
+	 * @param path The remote path
+	 * @return True if the file or directory exists
+	 * @throws IOException If the storage could not be reached
+	 */
+	Boolean exists(String path) throws IOException;
+
+	/**
+	 * Tests if the current user can write to a remote directory
+	 *
+	 * @param path The remote path
+	 * @return True if the directory exists and can be written to
+	 * @throws IOException If the storage could not be reached
+	 */
+	Boolean canWrite(String path) throws IOException;
+
+	/**
+	 * Creates a remote directory and any missing parent directories
+	 *
+	 * @param path The remote path of the directory
+	 * @throws IOException If the directory could not be created
+	 */
+	void mkdirs(String path) throws IOException;
+
+	/**
+	 * Deletes a remote file or directory and everything in it
+	 *
+	 * @param path The remote path
+	 * @throws IOException If the file could not be deleted
+	 */
+	void delete(String path) throws IOException;
+
+	/**
+	 * Returns the current time according to the storage
+	 *
+	 * @return The current time in milliseconds since the epoch
+	 * @throws IOException If the storage could not be reached
+	 */
+	Long getServerTime() throws IOException;
+
+	/**
+	 * Tests if a user exists
+	 *
+	 * @param username The username to test
+	 * @return True if the user exists
+	 * @throws IOException If the storage could not be reached
+	 */
+	Boolean isValidUsername(String username) throws IOException;
+
+	/**
+	 * Uploads a local file, replacing the remote file if it exists
+	 *
+	 * @param localFile The file to upload
+	 * @param remotePath The remote path to upload the file to
+	 * @param transferCallback Optional callback receiving transfer progress
+	 * @throws IOException If the upload failed
+	 */
+	void putFile(File localFile, String remotePath, TransferStatusCallbackListener transferCallback) throws IOException;
+
+	/**
+	 * Uploads a TAR archive which is then extracted into a remote directory. The archive must be named after the directory
+	 * followed by a part number, ex: "upload-0.tar" is extracted into ".../upload"
+	 *
+	 * @param localArchive The TAR archive to upload
+	 * @param extractDirectory The remote directory that the archive is extracted into
+	 * @param transferCallback Optional callback receiving transfer progress
+	 * @throws IOException If the upload failed
+	 */
+	void putArchive(File localArchive, String extractDirectory, TransferStatusCallbackListener transferCallback) throws IOException;
+
+	/**
+	 * Downloads a remote file
+	 *
+	 * @param remotePath The remote path of the file
+	 * @param localFile The local file to download to
+	 * @throws IOException If the download failed
+	 */
+	void getFile(String remotePath, File localFile) throws IOException;
+
+	/**
+	 * Opens a stream to read a remote file without downloading it first
+	 *
+	 * @param remotePath The remote path of the file
+	 * @return A stream of the remote file which must be closed by the caller
+	 * @throws IOException If the file could not be opened
+	 */
+	InputStream openInputStream(String remotePath) throws IOException;
+
+	/**
+	 * Lists the names of the files directly inside of a remote directory
+	 *
+	 * @param directoryPath The remote path of the directory
+	 * @return The names of the files in the directory
+	 * @throws IOException If the directory could not be listed
+	 */
+	List<String> listFileNames(String directoryPath) throws IOException;
+
+	/**
+	 * Lists every file under a remote directory, including files in sub-directories
+	 *
+	 * @param rootPath The remote path of the directory
+	 * @return A sorted map of directory path -> sorted map of file name -> size and date of the files directly in that directory
+	 * @throws IOException If the directory could not be listed
+	 */
+	SortedMap<String, SortedMap<String, RemoteFileStat>> listFilesRecursively(String rootPath) throws IOException;
+
+	/**
+	 * Reads the permissions of a remote file or directory, excluding owners
+	 *
+	 * @param path The remote path
+	 * @return A map of username -> the user's permission
+	 * @throws IOException If the permissions could not be read
+	 */
+	Map<String, FilePermissionEnum> getPermissions(String path) throws IOException;
+
+	/**
+	 * Sets a single user's permission on a remote file or directory
+	 *
+	 * @param path The remote path
+	 * @param username The user to set the permission of
+	 * @param permission READ or WRITE, or null to remove the user's permission
+	 * @param recursive If the permission should also be set on everything inside of a directory
+	 * @throws IOException If the permission could not be set
+	 */
+	void setPermission(String path, String username, FilePermissionEnum permission, Boolean recursive) throws IOException;
+
+	/**
+	 * Tests if files created inside of a remote directory inherit the directory's permissions
+	 *
+	 * @param path The remote path of the directory
+	 * @return True if the directory's permissions are inherited
+	 * @throws IOException If the storage could not be reached
+	 */
+	Boolean isPermissionInheritanceEnabled(String path) throws IOException;
+
+	/**
+	 * Makes files created inside of a remote directory inherit the directory's permissions
+	 *
+	 * @param path The remote path of the directory
+	 * @throws IOException If inheritance could not be enabled
+	 */
+	void enablePermissionInheritance(String path) throws IOException;
+}
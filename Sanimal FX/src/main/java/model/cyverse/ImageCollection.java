@@ -29,9 +29,13 @@ public class ImageCollection
 	// A list containing permissions of this collection
 	// We don't serialize it when converting to JSON since we want to keep this field transient (Because permissions are private!)
 	private ObservableList<Permission> permissions = FXCollections.observableArrayList(permission -> new Observable[] { permission.usernameProperty(), permission.readProperty(), permission.uploadProperty(), permission.ownerProperty()});
-	// Keep a list of uploads that is also transient so it will not be serialized. We serialize this differently because uploads should not be public
+	// Keep a list of uploads. Uploads are stored in their own index, so this is filled in a page at a time when the collection is selected
 	private ObservableList<CloudUploadEntry> uploads = FXCollections.observableArrayList(upload -> new Observable[] {});
 	private transient Boolean uploadsWereSynced = false;
+	// The sort values of the last upload loaded, used to fetch the next page of uploads. Null before the first page is loaded
+	private transient Object[] uploadsCursor = null;
+	// True if there may be more uploads in the index that have not been loaded into the upload list yet
+	private transient Boolean moreUploadsAvailable = false;
 
 	/**
 	 * Constructs a new image collection with a default name
@@ -158,4 +162,24 @@ public class ImageCollection
 	{
 		return uploadsWereSynced;
 	}
+
+	public void setUploadsCursor(Object[] uploadsCursor)
+	{
+		this.uploadsCursor = uploadsCursor;
+	}
+
+	public Object[] getUploadsCursor()
+	{
+		return this.uploadsCursor;
+	}
+
+	public void setMoreUploadsAvailable(Boolean moreUploadsAvailable)
+	{
+		this.moreUploadsAvailable = moreUploadsAvailable;
+	}
+
+	public Boolean moreUploadsAvailable()
+	{
+		return this.moreUploadsAvailable;
+	}
 }
@@ -0,0 +1,469 @@
+package model.cyverse;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.irods.jargon.core.protovalues.FilePermissionEnum;
+import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage backend that keeps everything in a directory on the local disk. Remote paths are mapped into the root directory
+ * and every call can be slowed down to simulate the latency and bandwidth of a real data store. Used to benchmark and
+ * test the transfer code without a connection to CyVerse. Select it by starting SANIMAL with -Dsanimal.storage=local
+ */
+public class LocalStorageBackend implements IStorageBackend
+{
+	// The system property containing the directory that remote paths are stored in
+	private static final String ROOT_PROPERTY = "sanimal.storage.local.root";
+	// The system property containing the simulated latency of each call in milliseconds
+	private static final String LATENCY_PROPERTY = "sanimal.storage.local.latencyMillis";
+	// The system property containing the simulated bandwidth in KB/s, 0 is unlimited
+	private static final String BANDWIDTH_PROPERTY = "sanimal.storage.local.bandwidthKBps";
+	// The number of bytes in a KB
+	private static final Long BYTES_PER_KB = 1024L;
+
+	// The directory that remote paths are stored in
+	private final File rootDirectory;
+	// The simulated latency of each call in milliseconds
+	private final Long latencyMillis;
+	// The simulated bandwidth in bytes per second, 0 is unlimited
+	private final Long bandwidthBytesPerSecond;
+
+	// The set of threads that currently have a session open
+	private final Set<Thread> threadsWithSessions = ConcurrentHashMap.newKeySet();
+	// Map of remote path -> (username -> permission), kept in memory since this storage is only used for testing
+	private final Map<String, Map<String, FilePermissionEnum>> permissions = new ConcurrentHashMap<>();
+	// The set of remote directories whose permissions are inherited by new files
+	private final Set<String> inheritingDirectories = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Constructor reads the root directory and simulated network speed from system properties
+	 */
+	public LocalStorageBackend()
+	{
+		this(new File(System.getProperty(ROOT_PROPERTY, FileUtils.getFile(FileUtils.getUserDirectory(), ".sanimal", "localStorage").getAbsolutePath())), Long.getLong(LATENCY_PROPERTY, 0L), Long.getLong(BANDWIDTH_PROPERTY, 0L));
+	}
+
+	/**
+	 * Constructor just initializes fields
+	 *
+	 * @param rootDirectory The directory that remote paths are stored in
+	 * @param latencyMillis The simulated latency of each call in milliseconds
+	 * @param bandwidthKBps The simulated bandwidth in KB/s, 0 is unlimited
+	 */
+	LocalStorageBackend(File rootDirectory, Long latencyMillis, Long bandwidthKBps)
+	{
+		this.rootDirectory = rootDirectory;
+		this.latencyMillis = latencyMillis;
+		this.bandwidthBytesPerSecond = bandwidthKBps * BYTES_PER_KB;
+		this.rootDirectory.mkdirs();
+	}
+
+	/**
+	 * Any non-empty username can log in since there's no server to authenticate with
+	 *
+	 * @param username The username of the user
+	 * @param password Ignored
+	 * @return True if the username is not empty
+	 */
+	@Override
+	public Boolean login(String username, String password)
+	{
+		return StringUtils.isNotBlank(username);
+	}
+
+	@Override
+	public void logout()
+	{
+		// There are no connections to close, just forget any open sessions
+		this.threadsWithSessions.clear();
+	}
+
+	@Override
+	public Boolean openSession()
+	{
+		// Opening a session is a round trip
+		this.simulateLatency();
+		return this.threadsWithSessions.add(Thread.currentThread());
+	}
+
+	@Override
+	public void closeSession()
+	{
+		this.threadsWithSessions.remove(Thread.currentThread());
+	}
+
+	@Override
+	public File getRemoteFile(String path)
+	{
+		return new LocalStorageFile(path, this.toLocalFile(path));
+	}
+
+	@Override
+	public Boolean exists(String path)
+	{
+		this.simulateLatency();
+		return this.toLocalFile(path).exists();
+	}
+
+	@Override
+	public Boolean canWrite(String path)
+	{
+		this.simulateLatency();
+		File localFile = this.toLocalFile(path);
+		return localFile.exists() && localFile.canWrite();
+	}
+
+	@Override
+	public void mkdirs(String path) throws IOException
+	{
+		this.simulateLatency();
+		FileUtils.forceMkdir(this.toLocalFile(path));
+	}
+
+	@Override
+	public void delete(String path) throws IOException
+	{
+		this.simulateLatency();
+		File localFile = this.toLocalFile(path);
+		if (localFile.exists())
+			FileUtils.forceDelete(localFile);
+		this.permissions.keySet().removeIf(permissionPath -> this.isSameOrInside(permissionPath, path));
+		this.inheritingDirectories.removeIf(directoryPath -> this.isSameOrInside(directoryPath, path));
+	}
+
+	@Override
+	public Long getServerTime()
+	{
+		this.simulateLatency();
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public Boolean isValidUsername(String username)
+	{
+		this.simulateLatency();
+		return StringUtils.isNotBlank(username);
+	}
+
+	/**
+	 * Copies a local file into storage. Transfer callbacks are not called, progress jumps to done once the copy finishes
+	 */
+	@Override
+	public void putFile(File localFile, String remotePath, TransferStatusCallbackListener transferCallback) throws IOException
+	{
+		this.simulateLatency();
+		this.simulateTransfer(localFile.length());
+		FileUtils.copyFile(localFile, this.toLocalFile(remotePath));
+		this.inheritPermissions(remotePath);
+	}
+
+	/**
+	 * Copies a TAR archive into storage and extracts it, standing in for the data store rules that extract uploads
+	 */
+	@Override
+	public void putArchive(File localArchive, String extractDirectory, TransferStatusCallbackListener transferCallback) throws IOException
+	{
+		this.simulateLatency();
+		this.simulateTransfer(localArchive.length());
+		try (TarArchiveInputStream tarStream = new TarArchiveInputStream(new BufferedInputStream(new FileInputStream(localArchive))))
+		{
+			TarArchiveEntry tarEntry;
+			while ((tarEntry = tarStream.getNextTarEntry()) != null)
+			{
+				// Make sure the entry can't escape the directory it's extracted into
+				String entryName = FilenameUtils.normalizeNoEndSeparator(tarEntry.getName(), true);
+				if (entryName == null || entryName.startsWith("/"))
+					throw new IOException("Invalid entry " + tarEntry.getName() + " in archive " + localArchive.getName());
+
+				String remotePath = extractDirectory + "/" + entryName;
+				if (tarEntry.isDirectory())
+					FileUtils.forceMkdir(this.toLocalFile(remotePath));
+				else
+				{
+					FileUtils.copyInputStreamToFile(new CloseShieldInputStream(tarStream), this.toLocalFile(remotePath));
+					this.inheritPermissions(remotePath);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void getFile(String remotePath, File localFile) throws IOException
+	{
+		this.simulateLatency();
+		File storedFile = this.toLocalFile(remotePath);
+		this.simulateTransfer(storedFile.length());
+		FileUtils.copyFile(storedFile, localFile);
+	}
+
+	@Override
+	public InputStream openInputStream(String remotePath) throws IOException
+	{
+		this.simulateLatency();
+		// Slow down each read instead of the whole file since callers may only read part of the file
+		return new FilterInputStream(new FileInputStream(this.toLocalFile(remotePath)))
+		{
+			@Override
+			public int read() throws IOException
+			{
+				int read = super.read();
+				if (read != -1)
+					simulateTransfer(1L);
+				return read;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException
+			{
+				int read = super.read(buffer, offset, length);
+				if (read > 0)
+					simulateTransfer((long) read);
+				return read;
+			}
+		};
+	}
+
+	@Override
+	public List<String> listFileNames(String directoryPath)
+	{
+		this.simulateLatency();
+		String[] fileNames = this.toLocalFile(directoryPath).list();
+		return fileNames == null ? Collections.emptyList() : Arrays.asList(fileNames);
+	}
+
+	@Override
+	public SortedMap<String, SortedMap<String, RemoteFileStat>> listFilesRecursively(String rootPath) throws IOException
+	{
+		this.simulateLatency();
+		SortedMap<String, SortedMap<String, RemoteFileStat>> directoryToFileNames = new TreeMap<>();
+		File localRoot = this.toLocalFile(rootPath);
+		if (!localRoot.isDirectory())
+			return directoryToFileNames;
+
+		try (Stream<Path> files = Files.walk(localRoot.toPath()))
+		{
+			for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList()))
+				directoryToFileNames.computeIfAbsent(this.toRemotePath(file.getParent()), ignored -> new TreeMap<>()).put(file.getFileName().toString(), new RemoteFileStat(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+		}
+		return directoryToFileNames;
+	}
+
+	@Override
+	public Map<String, FilePermissionEnum> getPermissions(String path)
+	{
+		this.simulateLatency();
+		return new HashMap<>(this.permissions.getOrDefault(path, Collections.emptyMap()));
+	}
+
+	@Override
+	public void setPermission(String path, String username, FilePermissionEnum permission, Boolean recursive) throws IOException
+	{
+		this.simulateLatency();
+		// Find every path the permission applies to
+		List<String> paths = new ArrayList<>();
+		File localFile = this.toLocalFile(path);
+		if (recursive && localFile.isDirectory())
+		{
+			try (Stream<Path> files = Files.walk(localFile.toPath()))
+			{
+				files.map(this::toRemotePath).forEach(paths::add);
+			}
+		}
+		else
+			paths.add(path);
+
+		for (String toUpdate : paths)
+		{
+			Map<String, FilePermissionEnum> pathPermissions = this.permissions.computeIfAbsent(toUpdate, ignored -> new ConcurrentHashMap<>());
+			if (permission == null)
+				pathPermissions.remove(username);
+			else
+				pathPermissions.put(username, permission);
+		}
+	}
+
+	@Override
+	public Boolean isPermissionInheritanceEnabled(String path)
+	{
+		this.simulateLatency();
+		return this.inheritingDirectories.contains(path);
+	}
+
+	@Override
+	public void enablePermissionInheritance(String path)
+	{
+		this.simulateLatency();
+		this.inheritingDirectories.add(path);
+	}
+
+	/**
+	 * Gives a newly created file the permissions of its parent directory if the parent's permissions are inherited
+	 *
+	 * @param remotePath The remote path of the new file
+	 */
+	private void inheritPermissions(String remotePath)
+	{
+		String parentPath = StringUtils.substringBeforeLast(remotePath, "/");
+		// Inheritance applies to everything under an inheriting directory, not just its direct children
+		this.inheritingDirectories.stream()
+				.filter(directoryPath -> this.isSameOrInside(parentPath, directoryPath))
+				.map(directoryPath -> this.permissions.get(directoryPath))
+				.filter(Objects::nonNull)
+				.forEach(directoryPermissions -> this.permissions.computeIfAbsent(remotePath, ignored -> new ConcurrentHashMap<>()).putAll(directoryPermissions));
+	}
+
+	/**
+	 * Tests if a remote path is the same as or inside of another remote path
+	 *
+	 * @param path The path to test
+	 * @param directoryPath The directory path
+	 * @return True if the path is the directory or inside of it
+	 */
+	private Boolean isSameOrInside(String path, String directoryPath)
+	{
+		return path.equals(directoryPath) || path.startsWith(directoryPath + "/");
+	}
+
+	/**
+	 * Maps a remote path to the local file that stores it
+	 *
+	 * @param remotePath The remote path
+	 * @return The local file inside of the root directory
+	 */
+	private File toLocalFile(String remotePath)
+	{
+		return new File(this.rootDirectory, remotePath);
+	}
+
+	/**
+	 * Maps a local file inside of the root directory back to its remote path
+	 *
+	 * @param localPath The local file
+	 * @return The remote path of the file
+	 */
+	private String toRemotePath(Path localPath)
+	{
+		return "/" + this.rootDirectory.toPath().relativize(localPath).toString().replace('\\', '/');
+	}
+
+	/**
+	 * Waits for the simulated latency of a call
+	 */
+	private void simulateLatency()
+	{
+		this.sleep(this.latencyMillis);
+	}
+
+	/**
+	 * Waits for the time it would take to transfer a number of bytes at the simulated bandwidth
+	 *
+	 * @param bytes The number of bytes transferred
+	 */
+	private void simulateTransfer(Long bytes)
+	{
+		if (this.bandwidthBytesPerSecond > 0)
+			this.sleep(bytes * 1000 / this.bandwidthBytesPerSecond);
+	}
+
+	/**
+	 * Sleeps the current thread, keeping the interrupt flag if interrupted
+	 *
+	 * @param millis The time to sleep
+	 */
+	private void sleep(Long millis)
+	{
+		if (millis > 0)
+		{
+			try
+			{
+				Thread.sleep(millis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A reference to a file in local storage. The file's name and path are its remote path, while its size and dates are
+	 * read from the local file that stores it
+	 */
+	private static class LocalStorageFile extends File
+	{
+		// Files are serializable, so give this class a fixed version
+		private static final long serialVersionUID = 1L;
+
+		// The remote path of the file, kept so that the path does not use the local separator
+		private final String remotePath;
+		// The local file storing the remote file
+		private final File storedFile;
+
+		/**
+		 * Constructor stores the remote path and the local file backing it
+		 *
+		 * @param remotePath The remote path of the file
+		 * @param storedFile The local file storing the file
+		 */
+		LocalStorageFile(String remotePath, File storedFile)
+		{
+			super(remotePath);
+			this.remotePath = remotePath;
+			this.storedFile = storedFile;
+		}
+
+		@Override
+		public String getAbsolutePath()
+		{
+			return this.remotePath;
+		}
+
+		@Override
+		public boolean canRead()
+		{
+			return this.storedFile.canRead();
+		}
+
+		@Override
+		public boolean exists()
+		{
+			return this.storedFile.exists();
+		}
+
+		@Override
+		public boolean isDirectory()
+		{
+			return this.storedFile.isDirectory();
+		}
+
+		@Override
+		public boolean isFile()
+		{
+			return this.storedFile.isFile();
+		}
+
+		@Override
+		public long length()
+		{
+			return this.storedFile.length();
+		}
+
+		@Override
+		public long lastModified()
+		{
+			return this.storedFile.lastModified();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package model.cyverse;
+
+/**
+ * Class representing the size and last modified date of a remote file as reported by a directory listing. Used to tell
+ * if a remote file changed without asking the storage about each file separately
+ */
+public class RemoteFileStat
+{
+	// The size of the file in bytes
+	private final Long size;
+	// The last modified date of the file in milliseconds since the epoch
+	private final Long lastModified;
+
+	/**
+	 * Constructor just initializes fields
+	 *
+	 * @param size The size of the file in bytes
+	 * @param lastModified The last modified date of the file in milliseconds since the epoch
+	 */
+	public RemoteFileStat(Long size, Long lastModified)
+	{
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Getter for the file size
+	 *
+	 * @return The size of the file in bytes
+	 */
+	public Long getSize()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Getter for the last modified date
+	 *
+	 * @return The last modified date of the file in milliseconds since the epoch
+	 */
+	public Long getLastModified()
+	{
+		return this.lastModified;
+	}
+}
@@ -0,0 +1,244 @@
+package model.elasticsearch;
+
+import model.SanimalData;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+/**
+ * Class containing the settings used to connect to the elastic search cluster. Settings are read from the
+ * elasticsearch.properties resource, and any setting can be overridden with a system property of the same name
+ */
+public class ElasticSearchConfiguration
+{
+	// The resource containing the default settings
+	private static final String CONFIGURATION_RESOURCE = "/elasticsearch.properties";
+
+	// The settings read from the resource
+	private final Properties properties = new Properties();
+
+	/**
+	 * Constructor reads the settings resource
+	 */
+	public ElasticSearchConfiguration()
+	{
+		try (InputStream inputStream = ElasticSearchConfiguration.class.getResourceAsStream(CONFIGURATION_RESOURCE))
+		{
+			if (inputStream != null)
+				this.properties.load(inputStream);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not read the elastic search configuration, using defaults!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Creates a low level client builder using these settings. The client round robins requests over every host and fails
+	 * over to the next host if one stops responding
+	 *
+	 * @return A builder ready to create a client
+	 */
+	public RestClientBuilder createClientBuilder()
+	{
+		return RestClient.builder(this.getHosts())
+				.setMaxRetryTimeoutMillis(this.getMaxRetryTimeoutMillis())
+				.setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
+						.setConnectTimeout(this.getConnectTimeoutMillis())
+						.setSocketTimeout(this.getSocketTimeoutMillis())
+						.setConnectionRequestTimeout(this.getConnectionRequestTimeoutMillis()))
+				.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+						.setMaxConnTotal(this.getMaxConnectionsTotal())
+						.setMaxConnPerRoute(this.getMaxConnectionsPerRoute()))
+				.setFailureListener(new RestClient.FailureListener()
+				{
+					@Override
+					public void onFailure(HttpHost host)
+					{
+						SanimalData.getInstance().getErrorDisplay().printError("Elastic search node " + host + " failed, trying the next node");
+					}
+				});
+	}
+
+	/**
+	 * Creates a bulk processor builder using these settings. The processor splits large bulk operations into chunks and limits
+	 * how many chunks are in flight. The processor's own backoff only retries rejections raised inside the node, never the 429
+	 * responses a REST client gets back, so it is turned off and the bulk consumer retries those itself
+	 *
+	 * @param bulkConsumer The function that sends a single chunk
+	 * @param listener The listener that is told about the result of each chunk
+	 * @return A builder ready to create a bulk processor
+	 */
+	public BulkProcessor.Builder createBulkProcessorBuilder(BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer, BulkProcessor.Listener listener)
+	{
+		return BulkProcessor.builder(bulkConsumer, listener)
+				.setBulkActions(this.getBulkMaxActions())
+				.setBulkSize(new ByteSizeValue(this.getBulkMaxSizeMB(), ByteSizeUnit.MB))
+				.setConcurrentRequests(this.getBulkConcurrentRequests())
+				.setBackoffPolicy(BackoffPolicy.noBackoff());
+	}
+
+	/**
+	 * Reads a setting, checking system properties first
+	 *
+	 * @param key The name of the setting
+	 * @param defaultValue The value to use if the setting is missing
+	 * @return The value of the setting
+	 */
+	private String getSetting(String key, String defaultValue)
+	{
+		return System.getProperty(key, this.properties.getProperty(key, defaultValue)).trim();
+	}
+
+	/**
+	 * Reads an integer setting, using the default if the setting is not a number
+	 *
+	 * @param key The name of the setting
+	 * @param defaultValue The value to use if the setting is missing or invalid
+	 * @return The value of the setting
+	 */
+	private Integer getIntegerSetting(String key, Integer defaultValue)
+	{
+		try
+		{
+			return Integer.parseInt(this.getSetting(key, defaultValue.toString()));
+		}
+		catch (NumberFormatException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Invalid value for elastic search setting " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	///
+	/// Getters/Setters
+	///
+
+	public HttpHost[] getHosts()
+	{
+		return Arrays.stream(this.getSetting("elasticsearch.hosts", "http://128.196.142.30:9200").split(","))
+				.map(String::trim)
+				.filter(host -> !host.isEmpty())
+				.map(HttpHost::create)
+				.toArray(HttpHost[]::new);
+	}
+
+	public Integer getMaxConnectionsTotal()
+	{
+		return this.getIntegerSetting("elasticsearch.maxConnectionsTotal", 30);
+	}
+
+	public Integer getMaxConnectionsPerRoute()
+	{
+		return this.getIntegerSetting("elasticsearch.maxConnectionsPerRoute", 10);
+	}
+
+	public Integer getConnectTimeoutMillis()
+	{
+		return this.getIntegerSetting("elasticsearch.connectTimeoutMillis", 5000);
+	}
+
+	public Integer getSocketTimeoutMillis()
+	{
+		return this.getIntegerSetting("elasticsearch.socketTimeoutMillis", 60000);
+	}
+
+	public Integer getConnectionRequestTimeoutMillis()
+	{
+		return this.getIntegerSetting("elasticsearch.connectionRequestTimeoutMillis", 10000);
+	}
+
+	public Integer getMaxRetryTimeoutMillis()
+	{
+		return this.getIntegerSetting("elasticsearch.maxRetryTimeoutMillis", 60000);
+	}
+
+	public Boolean getCompression()
+	{
+		return Boolean.parseBoolean(this.getSetting("elasticsearch.compression", "true"));
+	}
+
+	public Integer getBulkMaxActions()
+	{
+		return this.getIntegerSetting("elasticsearch.bulkMaxActions", 1000);
+	}
+
+	public Integer getBulkMaxSizeMB()
+	{
+		return this.getIntegerSetting("elasticsearch.bulkMaxSizeMB", 5);
+	}
+
+	public Integer getBulkConcurrentRequests()
+	{
+		return this.getIntegerSetting("elasticsearch.bulkConcurrentRequests", 2);
+	}
+
+	public Integer getBulkBackoffInitialDelayMillis()
+	{
+		return this.getIntegerSetting("elasticsearch.bulkBackoffInitialDelayMillis", 100);
+	}
+
+	public Integer getBulkBackoffMaxRetries()
+	{
+		return this.getIntegerSetting("elasticsearch.bulkBackoffMaxRetries", 8);
+	}
+
+	public Integer getMetadataShardCount()
+	{
+		return this.getIntegerSetting("elasticsearch.metadataShardCount", 1);
+	}
+
+	public Integer getMetadataReplicaCount()
+	{
+		return this.getIntegerSetting("elasticsearch.metadataReplicaCount", 0);
+	}
+
+	public Integer getQueryPageSize()
+	{
+		return this.getIntegerSetting("elasticsearch.queryPageSize", 2000);
+	}
+
+	public Integer getQuerySliceCount()
+	{
+		return Math.max(1, this.getIntegerSetting("elasticsearch.querySliceCount", 2));
+	}
+
+	public Integer getQueryScrollKeepAliveSeconds()
+	{
+		return this.getIntegerSetting("elasticsearch.queryScrollKeepAliveSeconds", 60);
+	}
+
+	public Integer getReindexBatchSize()
+	{
+		return this.getIntegerSetting("elasticsearch.reindexBatchSize", 500);
+	}
+
+	public Integer getReindexRequestsPerSecond()
+	{
+		return this.getIntegerSetting("elasticsearch.reindexRequestsPerSecond", 500);
+	}
+
+	public Integer getBulkLoadLeaseMinutes()
+	{
+		return Math.max(1, this.getIntegerSetting("elasticsearch.bulkLoadLeaseMinutes", 10));
+	}
+
+	public Boolean getBulkLoadDropReplicas()
+	{
+		return Boolean.parseBoolean(this.getSetting("elasticsearch.bulkLoadDropReplicas", "false"));
+	}
+}
@@ -4,11 +4,11 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import javafx.application.Platform;
 import model.SanimalData;
+import model.analysis.ImageCounts;
 import model.constant.SanimalMetadataFields;
 import model.cyverse.ImageCollection;
 import model.image.CloudImageEntry;
 import model.image.CloudUploadEntry;
-import model.image.ImageDirectory;
 import model.image.ImageEntry;
 import model.location.Location;
 import model.query.ElasticSearchQuery;
@@ -16,51 +16,96 @@ import model.species.Species;
 import model.species.SpeciesEntry;
 import model.util.SettingsData;
 import org.apache.commons.collections4.ListUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.http.HttpHost;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.*;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
-import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
-import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.*;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.Scroll;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.nested.Nested;
+import org.elasticsearch.search.aggregations.bucket.nested.ReverseNested;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTimeZone;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 public class ElasticSearchConnectionManager
 {
-	// The IP of the elastic search index
-	private static final String ELASTIC_SEARCH_HOST = "128.196.142.30";
-	// The port of the elastic search index
-	private static final Integer ELASTIC_SEARCH_PORT = 9200;
-	// The scheme used to connect to the elastic search index
-	private static final String ELASTIC_SEARCH_SCHEME = "http";
+	// The content type of bulk request bodies, one JSON object per line
+	private static final ContentType BULK_CONTENT_TYPE = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+	// The longest we wait for a bulk processor to finish sending its chunks
+	private static final Integer BULK_CLOSE_TIMEOUT_MINUTES = 10;
+	// The number of failed documents that are shown to the user after a bulk operation
+	private static final Integer MAX_REPORTED_BULK_FAILURES = 10;
+	// The number of times an update to a collection or upload document is retried if another update changed the document first
+	private static final Integer COLLECTION_UPDATE_RETRY_COUNT = 5;
 
 	// The name of the user's index
 	private static final String INDEX_SANIMAL_USERS = "users";
@@ -71,14 +116,28 @@ public class ElasticSearchConnectionManager
 	// The number of replicas to be created by the users index, for development we don't need any
 	private static final Integer INDEX_SANIMAL_USERS_REPLICA_COUNT = 0;
 
-	// The name of the metadata index
+	// The name of the alias that reads from every metadata index. Image metadata is split into one index per year the image was taken
 	private static final String INDEX_SANIMAL_METADATA = "metadata";
+	// The prefix of each yearly metadata index, followed by the year, ex: metadata-2019
+	private static final String INDEX_SANIMAL_METADATA_PREFIX = "metadata-";
 	// The type for the sanimal metadata index
 	private static final String INDEX_SANIMAL_METADATA_TYPE = "_doc";
-	// The number of shards to be used by the metadata index, for development we just need 1
-	private static final Integer INDEX_SANIMAL_METADATA_SHARD_COUNT = 1;
-	// The number of replicas to be created by the metadata index, for development we don't need any
-	private static final Integer INDEX_SANIMAL_METADATA_REPLICA_COUNT = 0;
+	// If a query covers more years than this, we search the alias instead of listing each yearly index
+	static final Integer MAX_TARGETED_METADATA_YEARS = 25;
+	// The script that fills in the flat copy of an image's species from its species entries, see ElasticSearchSchemaManager.imageToJSONMap.
+	// Images indexed before the flat copy was added don't have it, so species filters would not match them until this is run
+	private static final String SPECIES_FIELDS_SCRIPT =
+			"List names = new ArrayList(); int count = 0; " +
+			"if (ctx._source.imageMetadata.speciesEntries != null) { " +
+				"for (def speciesEntry : ctx._source.imageMetadata.speciesEntries) { " +
+					"if (!names.contains(speciesEntry.species.scientificName)) { names.add(speciesEntry.species.scientificName); } " +
+					"count += speciesEntry.count; " +
+				"} " +
+			"} " +
+			"ctx._source.imageMetadata.speciesScientificNames = names; " +
+			"ctx._source.imageMetadata.speciesCount = count;";
+	// The most buckets returned by a count query for species, locations, or years
+	private static final Integer MAX_AGGREGATION_BUCKETS = 1000;
 
 	// The name of the collections index
 	private static final String INDEX_SANIMAL_COLLECTIONS = "collections";
@@ -89,6 +148,52 @@ public class ElasticSearchConnectionManager
 	// The number of replicas to be created by the collections index, for development we don't need any
 	private static final Integer INDEX_SANIMAL_COLLECTIONS_REPLICA_COUNT = 0;
 
+	// The name of the uploads index
+	private static final String INDEX_SANIMAL_UPLOADS = "uploads";
+	// The type for the sanimal uploads index
+	private static final String INDEX_SANIMAL_UPLOADS_TYPE = "_doc";
+	// The number of shards to be used by the uploads index, for development we just need 1
+	private static final Integer INDEX_SANIMAL_UPLOADS_SHARD_COUNT = 1;
+	// The number of replicas to be created by the uploads index, for development we don't need any
+	private static final Integer INDEX_SANIMAL_UPLOADS_REPLICA_COUNT = 0;
+	// The number of uploads retrieved at a time when reading a collection's uploads
+	private static final Integer UPLOAD_PAGE_SIZE = 50;
+
+	// The name of the rollups index. Each rollup counts the images of one species at one location in one collection on one day
+	private static final String INDEX_SANIMAL_ROLLUPS = "rollups";
+	// The type for the sanimal rollups index
+	private static final String INDEX_SANIMAL_ROLLUPS_TYPE = "_doc";
+	// The number of shards to be used by the rollups index, for development we just need 1
+	private static final Integer INDEX_SANIMAL_ROLLUPS_SHARD_COUNT = 1;
+	// The number of replicas to be created by the rollups index, for development we don't need any
+	private static final Integer INDEX_SANIMAL_ROLLUPS_REPLICA_COUNT = 0;
+	// The script used to apply a change to a rollup. The rollup is created if it does not exist yet, and removed once it holds no images.
+	// The first and last taken dates only ever widen, so after images are removed they are bounds rather than exact
+	private static final String ROLLUP_UPDATE_SCRIPT =
+			"boolean created = ctx._source.imageCount == null; " +
+			"if (created) { " +
+				"ctx._source.collectionID = params.collectionID; ctx._source.locationID = params.locationID; ctx._source.scientificName = params.scientificName; ctx._source.day = params.day; " +
+				"ctx._source.imageCount = 0; ctx._source.animalCount = 0; ctx._source.firstTaken = params.firstTaken; ctx._source.lastTaken = params.lastTaken; " +
+			"} " +
+			"ctx._source.imageCount += params.images; " +
+			"ctx._source.animalCount += params.animals; " +
+			"if (params.images > 0) { " +
+				"ctx._source.firstTaken = Math.min(((Number) ctx._source.firstTaken).longValue(), ((Number) params.firstTaken).longValue()); " +
+				"ctx._source.lastTaken = Math.max(((Number) ctx._source.lastTaken).longValue(), ((Number) params.lastTaken).longValue()); " +
+			"} " +
+			"if (ctx._source.imageCount <= 0) { ctx.op = created ? 'none' : 'delete'; }";
+
+	// The name of the bulk loads index. Each document is a lease held by a client while it has metadata indices tuned for a bulk load
+	private static final String INDEX_SANIMAL_BULK_LOADS = "bulkloads";
+	// The type for the sanimal bulk loads index
+	private static final String INDEX_SANIMAL_BULK_LOADS_TYPE = "_doc";
+	// The number of shards to be used by the bulk loads index, it only ever holds a few documents
+	private static final Integer INDEX_SANIMAL_BULK_LOADS_SHARD_COUNT = 1;
+	// The number of replicas to be created by the bulk loads index, for development we don't need any
+	private static final Integer INDEX_SANIMAL_BULK_LOADS_REPLICA_COUNT = 0;
+	// The most bulk load leases we expect to be held at once
+	private static final Integer MAX_BULK_LOAD_LEASES = 1000;
+
 	// The type used to serialize a list of species through Gson
 	private static final Type SPECIES_LIST_TYPE = new TypeToken<ArrayList<Species>>()
 	{
@@ -97,29 +202,60 @@ public class ElasticSearchConnectionManager
 	private static final Type LOCATION_LIST_TYPE = new TypeToken<ArrayList<Location>>()
 	{
 	}.getType();
-	// The type used to serialize a list of cloud uploads
-	private static final Type CLOUD_UPLOAD_ENTRY_LIST_TYPE = new TypeToken<ArrayList<CloudUploadEntry>>()
-	{
-	}.getType();
 	// The type used to serialize a list of species entries through Gson
 	private static final Type SPECIES_ENTRY_LIST_TYPE = new TypeToken<ArrayList<SpeciesEntry>>()
 	{
 	}.getType();
 
+	// The settings used to connect to elastic search
+	private final ElasticSearchConfiguration configuration;
+
 	// Create a new elastic search client
 	private final RestHighLevelClient elasticSearchClient;
 
 	// Create a new elastic search schema manager
 	private final ElasticSearchSchemaManager elasticSearchSchemaManager;
 
+	// Used to move indices to new mappings without taking them offline
+	private final ElasticSearchIndexMigrator elasticSearchIndexMigrator;
+
+	// Renews the leases of the bulk loads running in this client so that they don't run out while the load is still going
+	private final ScheduledExecutorService bulkLoadLeaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "ElasticSearch Bulk Load Lease Renewer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// Resends bulk chunks and documents that the cluster rejected because it was too busy once their backoff delay runs out
+	private final ScheduledExecutorService bulkRetryScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "ElasticSearch Bulk Retry Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// Bulk load lease ID -> the indices tuned for the bulk load and the task renewing its lease
+	private final Map<String, Tuple<Set<String>, ScheduledFuture<?>>> bulkLoadLeases = new ConcurrentHashMap<>();
+	// True once we know the bulk loads index exists
+	private volatile Boolean bulkLoadsIndexExists = false;
+
+	// The yearly metadata indices known to exist, so we only ask the cluster to create each one once
+	private final Set<String> knownMetadataIndices = ConcurrentHashMap.newKeySet();
+
+	// Lock guarding the split of the metadata index from before metadata was split by year
+	private final Object legacyMetadataLock = new Object();
+	// True once we know the metadata index from before metadata was split by year is gone
+	private Boolean legacyMetadataIndexSplit = false;
+
 	/**
 	 * The constructor initializes the elastic search
 	 */
 	public ElasticSearchConnectionManager()
 	{
-		// Establish a connection to the elastic search server
-		this.elasticSearchClient = new RestHighLevelClient(RestClient.builder(new HttpHost(ELASTIC_SEARCH_HOST, ELASTIC_SEARCH_PORT, ELASTIC_SEARCH_SCHEME)));
+		// Establish a connection to the elastic search cluster
+		this.configuration = new ElasticSearchConfiguration();
+		this.elasticSearchClient = new RestHighLevelClient(this.configuration.createClientBuilder());
 		this.elasticSearchSchemaManager = new ElasticSearchSchemaManager();
+		this.elasticSearchIndexMigrator = new ElasticSearchIndexMigrator(this.elasticSearchClient, this.configuration);
 	}
 
 	/**
@@ -152,33 +288,251 @@ public class ElasticSearchConnectionManager
 	}
 
 	/**
-	 * Destroys and rebuilds entire metadata index. All metadata stored will be lost
+	 * Destroys every yearly metadata index. All metadata stored will be lost. Yearly indices are recreated as images are
+	 * indexed, and the current year's index is created right away so the read alias always exists
 	 */
 	public void nukeAndRecreateMetadataIndex()
 	{
-		// Delete the original index
-		deleteIndex(INDEX_SANIMAL_METADATA);
+		try
+		{
+			// Delete every yearly index as well as the single metadata index used before metadata was split by year
+			DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest(INDEX_SANIMAL_METADATA, INDEX_SANIMAL_METADATA_PREFIX + "*");
+			// Don't fail if some of the indices are missing
+			deleteIndexRequest.indicesOptions(IndicesOptions.lenientExpandOpen());
+			this.elasticSearchClient.indices().delete(deleteIndexRequest);
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error deleting '" + INDEX_SANIMAL_METADATA + "' from the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+		}
+		this.knownMetadataIndices.clear();
 
-		// The index is gone now, so recreate it
+		// Recreate the index for this year
+		this.ensureMetadataIndex(LocalDateTime.now().getYear());
+	}
+
+	/**
+	 * Returns the name of the metadata index that holds images taken in a given year
+	 *
+	 * @param year The year the image was taken
+	 * @return The name of the yearly metadata index
+	 */
+	private String metadataIndexFor(Integer year)
+	{
+		return INDEX_SANIMAL_METADATA_PREFIX + year;
+	}
+
+	/**
+	 * Returns the year that a metadata index holds images for
+	 *
+	 * @param index The name of a yearly metadata index, ex: metadata-2019, or of a migrated copy, ex: metadata-2019-v1530000000000
+	 * @return The year the index holds images for, or null if the index is not a yearly metadata index
+	 */
+	private Integer metadataYearOf(String index)
+	{
+		// Indices are named metadata-year, or metadata-year-version once migrated
+		String year = StringUtils.substringBefore(StringUtils.removeStart(index, INDEX_SANIMAL_METADATA_PREFIX), "-");
+		if (index.startsWith(INDEX_SANIMAL_METADATA_PREFIX) && StringUtils.isNumeric(year) && !year.isEmpty())
+			return Integer.parseInt(year);
+		return null;
+	}
+
+	/**
+	 * Makes sure the metadata index for a given year exists, creating it with the metadata mapping and read alias if needed
+	 *
+	 * @param year The year the index holds images for
+	 * @return The name of the yearly metadata index, or null if it could not be created. Nothing should be written to the
+	 * index if it could not be created, since the write would create it without the mapping or read alias
+	 */
+	private String ensureMetadataIndex(Integer year)
+	{
+		String index = this.metadataIndexFor(year);
+		// If we already know about the index we're done
+		if (this.knownMetadataIndices.contains(index))
+			return index;
+
+		// The read alias can't be created while the metadata index from before the split by year exists
+		if (!this.legacyMetadataIndexWasSplit())
+			return null;
+
+		return this.createMetadataIndex(index, true) ? index : null;
+	}
+
+	/**
+	 * Creates a yearly metadata index with the metadata mapping
+	 *
+	 * @param index The name of the yearly metadata index
+	 * @param addToAlias If the index should be added to the read alias
+	 * @return True if the index was created or already existed, false otherwise
+	 */
+	private Boolean createMetadataIndex(String index, Boolean addToAlias)
+	{
 		try
 		{
 			// Create a create index request
-			CreateIndexRequest createIndexRequest = new CreateIndexRequest(INDEX_SANIMAL_METADATA);
+			CreateIndexRequest createIndexRequest = new CreateIndexRequest(index);
 			// Make sure to set the number of shards and replicas
 			createIndexRequest.settings(Settings.builder()
-					.put("index.number_of_shards", INDEX_SANIMAL_METADATA_SHARD_COUNT)
-					.put("index.number_of_replicas", INDEX_SANIMAL_METADATA_REPLICA_COUNT));
-			// Add the users type mapping which defines our schema
+					.put("index.number_of_shards", this.configuration.getMetadataShardCount())
+					.put("index.number_of_replicas", this.configuration.getMetadataReplicaCount()));
+			// Add the metadata type mapping which defines our schema
 			createIndexRequest.mapping(INDEX_SANIMAL_METADATA_TYPE, this.elasticSearchSchemaManager.makeSanimalMetadataIndexMapping(INDEX_SANIMAL_METADATA_TYPE));
-			// Execute the index request
-			this.elasticSearchClient.indices().create(createIndexRequest);
+			// Queries read through the alias, so add the new index to it
+			if (addToAlias)
+				createIndexRequest.alias(new Alias(INDEX_SANIMAL_METADATA));
+			// Execute the index request, the index and alias are created together so if it was not acknowledged neither exists
+			CreateIndexResponse createIndexResponse = this.elasticSearchClient.indices().create(createIndexRequest);
+			if (!createIndexResponse.isAcknowledged())
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Creating '" + index + "' in the ElasticSearch index was not acknowledged!");
+				return false;
+			}
+		}
+		catch (ElasticsearchStatusException e)
+		{
+			// If the index already exists that's fine, otherwise print an error. Once an index has been migrated its name is
+			// an alias of the migrated index, which also counts as existing
+			if (e.getMessage() == null || !e.getMessage().contains("already exists"))
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Error creating '" + index + "' in the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+				return false;
+			}
+			// The index may have been created without the read alias, adding it again is harmless
+			if (addToAlias)
+			{
+				try
+				{
+					IndicesAliasesRequest indicesAliasesRequest = new IndicesAliasesRequest();
+					indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(index).alias(INDEX_SANIMAL_METADATA));
+					this.elasticSearchClient.indices().updateAliases(indicesAliasesRequest);
+				}
+				catch (IOException | ElasticsearchStatusException aliasException)
+				{
+					SanimalData.getInstance().getErrorDisplay().notify("Error adding '" + index + "' to the '" + INDEX_SANIMAL_METADATA + "' alias: \n" + ExceptionUtils.getStackTrace(aliasException));
+					return false;
+				}
+			}
 		}
 		catch (IOException e)
 		{
-			SanimalData.getInstance().getErrorDisplay().notify("Error creating '" + INDEX_SANIMAL_METADATA + "' in the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+			SanimalData.getInstance().getErrorDisplay().notify("Error creating '" + index + "' in the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+			return false;
+		}
+		if (addToAlias)
+			this.knownMetadataIndices.add(index);
+		return true;
+	}
+
+	/**
+	 * Checks that the metadata index from before metadata was split by year is gone. While it exists the read alias can't
+	 * be created and images written to yearly indices would be hidden from queries, so image metadata writes are refused
+	 * until splitLegacyMetadataIndex has been run
+	 *
+	 * @return True if image metadata can be written, false otherwise
+	 */
+	private Boolean legacyMetadataIndexWasSplit()
+	{
+		synchronized (this.legacyMetadataLock)
+		{
+			if (this.legacyMetadataIndexSplit)
+				return true;
+
+			try
+			{
+				// If the metadata name is missing or already an alias there is nothing left to split
+				if (this.elasticSearchIndexMigrator.resolveIndices(INDEX_SANIMAL_METADATA).contains(INDEX_SANIMAL_METADATA))
+				{
+					SanimalData.getInstance().getErrorDisplay().notify("The old '" + INDEX_SANIMAL_METADATA + "' index has not been split into yearly indices yet, so image metadata can't be saved until it is!");
+					return false;
+				}
+				this.legacyMetadataIndexSplit = true;
+			}
+			catch (IOException | ElasticsearchStatusException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Error checking for the old '" + INDEX_SANIMAL_METADATA + "' index: \n" + ExceptionUtils.getStackTrace(e));
+			}
+			return this.legacyMetadataIndexSplit;
+		}
+	}
+
+	/**
+	 * Before image metadata was split by year every image was stored in a single index named metadata, which is now the
+	 * name of the read alias. If that index still exists its images are copied into yearly indices by the year they were
+	 * taken in, and the index is replaced by the alias. This only needs to be run once per cluster, and image metadata
+	 * can't be written until it has been
+	 *
+	 * @return True if there is no old metadata index left, false if it could not be split
+	 */
+	public Boolean splitLegacyMetadataIndex()
+	{
+		synchronized (this.legacyMetadataLock)
+		{
+			if (this.legacyMetadataIndexSplit)
+				return true;
+
+			try
+			{
+				// If the metadata name is missing or already an alias there is nothing to split
+				if (this.elasticSearchIndexMigrator.resolveIndices(INDEX_SANIMAL_METADATA).contains(INDEX_SANIMAL_METADATA))
+				{
+					// Find each year that the old index holds images for
+					SearchRequest searchRequest = new SearchRequest();
+					searchRequest
+							.indices(INDEX_SANIMAL_METADATA)
+							.types(INDEX_SANIMAL_METADATA_TYPE)
+							.source(new SearchSourceBuilder()
+								.size(0)
+								.aggregation(AggregationBuilders.terms("years").field("imageMetadata.yearTaken").size(MAX_AGGREGATION_BUCKETS)));
+					SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+					Set<String> yearlyIndices = new TreeSet<>();
+					for (Terms.Bucket bucket : ((Terms) searchResponse.getAggregations().get("years")).getBuckets())
+						yearlyIndices.add(this.metadataIndexFor(bucket.getKeyAsNumber().intValue()));
+					// Always split into at least this year's index so the alias has an index to point at
+					yearlyIndices.add(this.metadataIndexFor(LocalDateTime.now().getYear()));
+
+					// Create the yearly indices with the metadata mapping. They join the alias when the old index is removed
+					for (String yearlyIndex : yearlyIndices)
+						if (!this.createMetadataIndex(yearlyIndex, false))
+							return false;
+
+					// Copy each image into the index of the year it was taken in, and then swap the old index for the alias
+					this.elasticSearchIndexMigrator.split(INDEX_SANIMAL_METADATA, yearlyIndices, new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+							"ctx._index = params.prefix + ctx._source.imageMetadata.yearTaken", Collections.singletonMap("prefix", INDEX_SANIMAL_METADATA_PREFIX)));
+					this.knownMetadataIndices.addAll(yearlyIndices);
+				}
+				this.legacyMetadataIndexSplit = true;
+			}
+			catch (IOException | ElasticsearchStatusException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify("Error splitting the old '" + INDEX_SANIMAL_METADATA + "' index into yearly indices: \n" + ExceptionUtils.getStackTrace(e));
+			}
+			return this.legacyMetadataIndexSplit;
 		}
 	}
 
+	/**
+	 * Returns the metadata indices that a query needs to search. If the query limits the years images were taken in only
+	 * those years' indices are searched, otherwise every index is searched through the alias
+	 *
+	 * @param query The query to find indices for
+	 * @return A list of indices to search
+	 */
+	String[] metadataIndicesFor(ElasticSearchQuery query)
+	{
+		Integer earliestYear = query.getEarliestYear();
+		Integer latestYear = query.getLatestYear();
+		// If the query does not limit both ends or covers too many years, search everything. If no year can match the
+		// query itself returns nothing, so we can search everything then too
+		if (earliestYear == null || latestYear == null || earliestYear > latestYear || latestYear - earliestYear >= MAX_TARGETED_METADATA_YEARS)
+			return new String[] { INDEX_SANIMAL_METADATA };
+
+		// Search the index of each year in the range
+		List<String> indices = new ArrayList<>();
+		for (Integer year = earliestYear; year <= latestYear; year++)
+			indices.add(this.metadataIndexFor(year));
+		return indices.toArray(new String[0]);
+	}
+
 	public void nukeAndRecreateCollectionsIndex()
 	{
 		// Delete the original index
@@ -204,6 +558,136 @@ public class ElasticSearchConnectionManager
 		}
 	}
 
+	/**
+	 * Destroys and rebuilds the entire uploads index. All upload history will be lost!
+	 */
+	public void nukeAndRecreateUploadsIndex()
+	{
+		// Delete the original index
+		deleteIndex(INDEX_SANIMAL_UPLOADS);
+
+		// The index is gone now, so recreate it
+		try
+		{
+			// Create a create index request
+			CreateIndexRequest createIndexRequest = new CreateIndexRequest(INDEX_SANIMAL_UPLOADS);
+			// Make sure to set the number of shards and replicas
+			createIndexRequest.settings(Settings.builder()
+					.put("index.number_of_shards", INDEX_SANIMAL_UPLOADS_SHARD_COUNT)
+					.put("index.number_of_replicas", INDEX_SANIMAL_UPLOADS_REPLICA_COUNT));
+			// Add the uploads type mapping which defines our schema
+			createIndexRequest.mapping(INDEX_SANIMAL_UPLOADS_TYPE, this.elasticSearchSchemaManager.makeSanimalUploadsIndexMapping(INDEX_SANIMAL_UPLOADS_TYPE));
+			// Execute the index request
+			this.elasticSearchClient.indices().create(createIndexRequest);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error creating '" + INDEX_SANIMAL_UPLOADS + "' in the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Destroys and rebuilds the entire rollups index. The rollups will be empty until rebuildRollupsIndex is run
+	 */
+	public void nukeAndRecreateRollupsIndex()
+	{
+		// Delete the original index
+		deleteIndex(INDEX_SANIMAL_ROLLUPS);
+
+		// The index is gone now, so recreate it
+		try
+		{
+			// Create a create index request
+			CreateIndexRequest createIndexRequest = new CreateIndexRequest(INDEX_SANIMAL_ROLLUPS);
+			// Make sure to set the number of shards and replicas
+			createIndexRequest.settings(Settings.builder()
+					.put("index.number_of_shards", INDEX_SANIMAL_ROLLUPS_SHARD_COUNT)
+					.put("index.number_of_replicas", INDEX_SANIMAL_ROLLUPS_REPLICA_COUNT));
+			// Add the rollups type mapping which defines our schema
+			createIndexRequest.mapping(INDEX_SANIMAL_ROLLUPS_TYPE, this.elasticSearchSchemaManager.makeSanimalRollupsIndexMapping(INDEX_SANIMAL_ROLLUPS_TYPE));
+			// Execute the index request
+			this.elasticSearchClient.indices().create(createIndexRequest);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error creating '" + INDEX_SANIMAL_ROLLUPS + "' in the ElasticSearch index: \n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Recreates the rollups index and fills it from every image in the metadata index. Rollups are kept up to date as
+	 * images are indexed and saved, so this only needs to be run once or if the rollups get out of sync
+	 */
+	public void rebuildRollupsIndex()
+	{
+		this.nukeAndRecreateRollupsIndex();
+
+		// We use a scroll to read every image 500 at a time
+		Scroll scroll = new Scroll(TimeValue.timeValueMinutes(1));
+		SearchRequest searchRequest = new SearchRequest();
+		searchRequest
+				.indices(INDEX_SANIMAL_METADATA)
+				.types(INDEX_SANIMAL_METADATA_TYPE)
+				// Don't fail if no metadata has been indexed yet
+				.indicesOptions(IndicesOptions.lenientExpandOpen())
+				.scroll(scroll)
+				.source(new SearchSourceBuilder()
+					.query(QueryBuilders.matchAllQuery())
+					.size(500)
+					.fetchSource(FetchSourceContext.FETCH_SOURCE));
+
+		// There are far fewer rollups than images, so we total them all up before sending them
+		Map<String, Map<String, Object>> rollupChanges = new HashMap<>();
+		try
+		{
+			SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+			String scrollID = searchResponse.getScrollId();
+			SearchHit[] searchHits = searchResponse.getHits().getHits();
+
+			Map<String, Location> uniqueLocations = new HashMap<>();
+			Map<String, Species> uniqueSpecies = new HashMap<>();
+
+			// While we have results...
+			while (searchHits != null && searchHits.length > 0)
+			{
+				// Add each image to the rollups
+				for (SearchHit searchHit : searchHits)
+				{
+					Map<String, Object> sourceAsMap = searchHit.getSourceAsMap();
+					// Grab the collection ID before converting because the conversion modifies the source
+					Object collectionIDObj = sourceAsMap.get("collectionID");
+					ImageEntry imageEntry = this.convertSourceToImage(sourceAsMap, uniqueSpecies, uniqueLocations);
+					if (imageEntry != null && collectionIDObj instanceof String)
+						this.mergeRollupChanges(rollupChanges, this.elasticSearchSchemaManager.imageToRollupChanges(imageEntry, (String) collectionIDObj, 1));
+				}
+
+				// Grab the next page of results
+				SearchScrollRequest searchScrollRequest = new SearchScrollRequest();
+				searchScrollRequest
+					.scrollId(scrollID)
+					.scroll(scroll);
+				searchResponse = this.elasticSearchClient.searchScroll(searchScrollRequest);
+				scrollID = searchResponse.getScrollId();
+				searchHits = searchResponse.getHits().getHits();
+			}
+
+			// After the query is complete we clear the scroll request
+			ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+			clearScrollRequest.addScrollId(scrollID);
+			ClearScrollResponse clearScrollResponse = this.elasticSearchClient.clearScroll(clearScrollRequest);
+			// If the clear fails, print an error
+			if (!clearScrollResponse.isSucceeded())
+				SanimalData.getInstance().getErrorDisplay().printError("Clearing the scroll after rebuilding the rollups did not succeed!");
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error reading the metadata index to rebuild the rollups!\n" + ExceptionUtils.getStackTrace(e));
+			return;
+		}
+
+		this.applyRollupChanges(rollupChanges);
+	}
+
 	/**
 	 * Given an elastic search client and an index, this method removes the index from the client
 	 *
@@ -229,6 +713,137 @@ public class ElasticSearchConnectionManager
 		}
 	}
 
+	/**
+	 * Moves the users index to the current mapping without taking it offline
+	 *
+	 * @param transform A painless script run on each user document as it is copied, or null to copy documents as is
+	 */
+	public void migrateUserIndex(Script transform)
+	{
+		this.migrateIndex(INDEX_SANIMAL_USERS, INDEX_SANIMAL_USERS_TYPE, INDEX_SANIMAL_USERS_SHARD_COUNT, INDEX_SANIMAL_USERS_REPLICA_COUNT, Collections.emptyList(), transform);
+	}
+
+	/**
+	 * Moves every yearly metadata index to the current mapping without taking them offline
+	 *
+	 * @param transform A painless script run on each image document as it is copied, or null to copy documents as is
+	 */
+	public void migrateMetadataIndices(Script transform)
+	{
+		try
+		{
+			// Find each year that has an index
+			Set<Integer> years = new TreeSet<>();
+			for (String index : this.elasticSearchIndexMigrator.resolveIndices(INDEX_SANIMAL_METADATA))
+			{
+				Integer year = this.metadataYearOf(index);
+				if (year != null)
+					years.add(year);
+			}
+
+			// Migrate each year, keeping the new indices in the read alias
+			for (Integer year : years)
+				this.migrateIndex(this.metadataIndexFor(year), INDEX_SANIMAL_METADATA_TYPE, this.configuration.getMetadataShardCount(), this.configuration.getMetadataReplicaCount(), Collections.singletonList(INDEX_SANIMAL_METADATA), transform);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not find the metadata indices to migrate!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Fills in the flat species fields (speciesScientificNames and speciesCount) of every image indexed before they were
+	 * added. Species filters only look at these fields, so this needs to be run once on existing metadata. Only images
+	 * missing the fields are touched, so running it again is cheap
+	 */
+	public void backfillSpeciesFields()
+	{
+		try
+		{
+			// Every image indexed with the flat fields has a species count, even if it has no species
+			this.elasticSearchIndexMigrator.updateByQuery(INDEX_SANIMAL_METADATA,
+					QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery("imageMetadata.speciesCount")),
+					new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, SPECIES_FIELDS_SCRIPT, Collections.emptyMap()));
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not fill in the species fields of the indexed images!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Moves the collections index to the current mapping without taking it offline
+	 *
+	 * @param transform A painless script run on each collection document as it is copied, or null to copy documents as is
+	 */
+	public void migrateCollectionsIndex(Script transform)
+	{
+		this.migrateIndex(INDEX_SANIMAL_COLLECTIONS, INDEX_SANIMAL_COLLECTIONS_TYPE, INDEX_SANIMAL_COLLECTIONS_SHARD_COUNT, INDEX_SANIMAL_COLLECTIONS_REPLICA_COUNT, Collections.emptyList(), transform);
+	}
+
+	/**
+	 * Moves the uploads index to the current mapping without taking it offline
+	 *
+	 * @param transform A painless script run on each upload document as it is copied, or null to copy documents as is
+	 */
+	public void migrateUploadsIndex(Script transform)
+	{
+		this.migrateIndex(INDEX_SANIMAL_UPLOADS, INDEX_SANIMAL_UPLOADS_TYPE, INDEX_SANIMAL_UPLOADS_SHARD_COUNT, INDEX_SANIMAL_UPLOADS_REPLICA_COUNT, Collections.emptyList(), transform);
+	}
+
+	/**
+	 * Moves the rollups index to the current mapping without taking it offline
+	 *
+	 * @param transform A painless script run on each rollup document as it is copied, or null to copy documents as is
+	 */
+	public void migrateRollupsIndex(Script transform)
+	{
+		this.migrateIndex(INDEX_SANIMAL_ROLLUPS, INDEX_SANIMAL_ROLLUPS_TYPE, INDEX_SANIMAL_ROLLUPS_SHARD_COUNT, INDEX_SANIMAL_ROLLUPS_REPLICA_COUNT, Collections.emptyList(), transform);
+	}
+
+	/**
+	 * Copies an index into a new versioned index using the index's current mapping from the schema manager, and then
+	 * swaps the index's name over to the new index. See ElasticSearchIndexMigrator for details
+	 *
+	 * @param index The name of the index to migrate
+	 * @param type The mapping type of the index, used to pick the mapping
+	 * @param shardCount The number of shards the new index should have
+	 * @param replicaCount The number of replicas the new index should have
+	 * @param extraAliases Other aliases the new index should be a part of
+	 * @param transform A painless script run on each document as it is copied, or null
+	 * @throws IllegalArgumentException If the index is not one of our indices
+	 */
+	private void migrateIndex(String index, String type, Integer shardCount, Integer replicaCount, List<String> extraAliases, Script transform)
+	{
+		try
+		{
+			// Grab the current mapping for the index
+			XContentBuilder mapping;
+			if (index.equals(INDEX_SANIMAL_USERS))
+				mapping = this.elasticSearchSchemaManager.makeSanimalUsersIndexMapping(type);
+			else if (index.equals(INDEX_SANIMAL_COLLECTIONS))
+				mapping = this.elasticSearchSchemaManager.makeSanimalCollectionsIndexMapping(type);
+			else if (index.equals(INDEX_SANIMAL_UPLOADS))
+				mapping = this.elasticSearchSchemaManager.makeSanimalUploadsIndexMapping(type);
+			else if (index.equals(INDEX_SANIMAL_ROLLUPS))
+				mapping = this.elasticSearchSchemaManager.makeSanimalRollupsIndexMapping(type);
+			else if (this.metadataYearOf(index) != null)
+				mapping = this.elasticSearchSchemaManager.makeSanimalMetadataIndexMapping(type);
+			else
+				throw new IllegalArgumentException("There is no mapping for the index '" + index + "'!");
+
+			// Copy the index and swap over to the copy
+			this.elasticSearchIndexMigrator.migrate(index, type, mapping, Settings.builder()
+					.put("index.number_of_shards", shardCount)
+					.put("index.number_of_replicas", replicaCount)
+					.build(), extraAliases, transform);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not migrate the '" + index + "' index!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
 	/**
 	 * Initializes the remote SANIMAL directory which is more like the remote SANIMAL index now. Indices are
 	 * updated with default user settings if not present
@@ -389,7 +1004,8 @@ public class ElasticSearchConnectionManager
 				.source(new SearchSourceBuilder()
 					// Fetch results 10 at a time, and use a query that matches everything
 					.size(10)
-					.fetchSource(true)
+					// Collections made before uploads had their own index may still have an upload list, don't download it
+					.fetchSource(null, new String[] { "uploads" })
 					.query(QueryBuilders.matchAllQuery()));
 
 		try
@@ -441,9 +1057,6 @@ public class ElasticSearchConnectionManager
 			SanimalData.getInstance().getErrorDisplay().notify("Error pulling remote collections, error was:\n" + ExceptionUtils.getStackTrace(e));
 		}
 
-		// Collections are deserialized and have null listeners, call initFromJSON to fix those listeners
-		toReturn.forEach(imageCollection -> imageCollection.getUploads().forEach(CloudUploadEntry::initFromJSON));
-
 		return toReturn;
 	}
 
@@ -633,57 +1246,84 @@ public class ElasticSearchConnectionManager
 	}
 
 	/**
-	 * Downloads the upload list for a given collection
+	 * Downloads the first page of the upload list for a given collection, newest first. Any uploads we already had are
+	 * cleared, further pages are loaded on demand with retrieveAndInsertNextUploadPageFor
 	 *
 	 * @param imageCollection The image collection which we want to retrieve uploads of
 	 */
 	public void retrieveAndInsertUploadListFor(ImageCollection imageCollection)
 	{
-		// Get a map of 'upload'->[List of uploads]
-		Map<String, Object> uploadsForCollection = getUploadsForCollection(imageCollection.getID().toString());
-		if (uploadsForCollection != null)
+		// Clear out any uploads we had before and start again from the newest upload
+		imageCollection.setUploadsCursor(null);
+		Platform.runLater(() ->
 		{
-			// Make sure our map does in fact have the uploads key
-			if (uploadsForCollection.containsKey("uploads"))
-			{
-				// Grab the JSON representing the uploads list
-				String uploadJSON = SanimalData.getInstance().getGson().toJson(uploadsForCollection.get("uploads"));
-				// Convert the JSON to a list of objects
-				List<CloudUploadEntry> uploads = SanimalData.getInstance().getGson().fromJson(uploadJSON, CLOUD_UPLOAD_ENTRY_LIST_TYPE);
-				// Because we deserialized our list from JSON, we need to initialize any extra fields using this call
-				uploads.forEach(CloudUploadEntry::initFromJSON);
-				// Update our collection's uploads
-				Platform.runLater(() -> imageCollection.getUploads().setAll(uploads));
-			}
-		}
+			imageCollection.getUploads().clear();
+			imageCollection.setMoreUploadsAvailable(false);
+		});
+		this.retrieveAndInsertNextUploadPageFor(imageCollection);
 	}
 
 	/**
-	 * Utility function used to get a list of uploads fro a given collection ID
+	 * Downloads the next page of the upload list for a given collection, picking up after the last upload that was loaded
 	 *
-	 * @param collectionID The ID of the collection we want to retrieve uploads for
-	 * @return A map containing a list of uploads
+	 * @param imageCollection The image collection which we want to retrieve more uploads of
 	 */
-	private Map<String, Object> getUploadsForCollection(String collectionID)
+	public void retrieveAndInsertNextUploadPageFor(ImageCollection imageCollection)
 	{
-		try
+		Pair<List<CloudUploadEntry>, Object[]> uploadPage = this.fetchUploadPage(imageCollection.getID().toString(), imageCollection.getUploadsCursor(), UPLOAD_PAGE_SIZE);
+		// Remember where this page ended so the next page starts after it
+		imageCollection.setUploadsCursor(uploadPage.getRight());
+		List<CloudUploadEntry> uploadsToAdd = uploadPage.getLeft();
+		// If the page was full there may be more uploads to load
+		Boolean moreUploads = uploadsToAdd.size() == UPLOAD_PAGE_SIZE;
+		Platform.runLater(() ->
 		{
-			// Get the document corresponding to this imageCollection's ID
-			GetRequest getRequest = new GetRequest();
-			getRequest
-					.index(INDEX_SANIMAL_COLLECTIONS)
-					.type(INDEX_SANIMAL_COLLECTIONS_TYPE)
-					// Make sure the ID corresponds to the imageCollection ID
-					.id(collectionID)
-					// Only fetch the uploads part of the document
-					.fetchSourceContext(new FetchSourceContext(true, new String[] { "uploads" }, new String[] { "name", "organization", "contactInfo", "description", "id", "permissions" }));
-			// Perform the GET request
-			GetResponse getResponse = this.elasticSearchClient.get(getRequest);
-			// It should exist...
-			if (getResponse.isExists() && !getResponse.isSourceEmpty())
+			imageCollection.getUploads().addAll(uploadsToAdd);
+			imageCollection.setMoreUploadsAvailable(moreUploads);
+		});
+	}
+
+	/**
+	 * Fetches a single page of a collection's uploads, newest first. Pages are read with search_after instead of from/size
+	 * so that collections with more uploads than the index's result window can still be paged through
+	 *
+	 * @param collectionID The ID of the collection we want to retrieve uploads for
+	 * @param searchAfter The sort values of the last upload of the previous page, or null to fetch the first page
+	 * @param pageSize The number of uploads in each page
+	 * @return The uploads in the page, empty if there are no more uploads, paired with the sort values to fetch the following page
+	 */
+	public Pair<List<CloudUploadEntry>, Object[]> fetchUploadPage(String collectionID, Object[] searchAfter, Integer pageSize)
+	{
+		List<CloudUploadEntry> uploads = new ArrayList<>();
+		Object[] nextSearchAfter = searchAfter;
+		try
+		{
+			// Search for uploads to the collection, sorted newest first. The path is the document ID and is unique so it breaks ties
+			SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+					.query(QueryBuilders.termQuery("collectionID", collectionID))
+					.sort("uploadDate", SortOrder.DESC)
+					.sort("uploadIRODSPath", SortOrder.ASC)
+					.size(pageSize);
+			// Continue after the last upload of the previous page
+			if (searchAfter != null)
+				searchSourceBuilder.searchAfter(searchAfter);
+
+			SearchRequest searchRequest = new SearchRequest();
+			searchRequest
+					.indices(INDEX_SANIMAL_UPLOADS)
+					.types(INDEX_SANIMAL_UPLOADS_TYPE)
+					.source(searchSourceBuilder);
+
+			SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+			for (SearchHit searchHit : searchResponse.getHits().getHits())
 			{
-				// Return the response
-				return getResponse.getSourceAsMap();
+				// Convert the map to JSON, and then into a CloudUploadEntry object
+				String uploadJSON = SanimalData.getInstance().getGson().toJson(searchHit.getSourceAsMap());
+				CloudUploadEntry uploadEntry = SanimalData.getInstance().getGson().fromJson(uploadJSON, CloudUploadEntry.class);
+				// Because we deserialized our upload from JSON, we need to initialize any extra fields using this call
+				uploadEntry.initFromJSON();
+				uploads.add(uploadEntry);
+				nextSearchAfter = searchHit.getSortValues();
 			}
 		}
 		catch (IOException e)
@@ -691,191 +1331,875 @@ public class ElasticSearchConnectionManager
 			// If something went wrong, print out an error.
 			SanimalData.getInstance().getErrorDisplay().notify("Error retrieving uploads for image collection '" + collectionID + "', error was:\n" + ExceptionUtils.getStackTrace(e));
 		}
-		return null;
+		return Pair.of(uploads, nextSearchAfter);
 	}
 
 	/**
-	 * Given a path, a collection ID, and a directory of images, this function indexes the directory of images into the ElasticSearch
-	 * index.
-	 * @param basePath The base path all images will be placed to on the datastore. Often will look like /iplant/home/user/uploads/
-	 * @param collectionID The ID of the collection that these images will be uploaded to
-	 * @param directory The directory containing all images awaiting upload
-	 * @param uploadEntry The upload entry representing this upload, will be put into our collections index
+	 * Moves the upload lists stored inside of collection documents into the uploads index. Collections used to store every
+	 * upload inside of the collection document, this only needs to be run once to move those uploads
 	 */
 	@SuppressWarnings("unchecked")
-	public void indexImages(String basePath, String collectionID, ImageDirectory directory, CloudUploadEntry uploadEntry)
+	public void migrateCollectionUploads()
 	{
-		// List of images to be uploaded
-		List<ImageEntry> imageEntries = directory.flattened().filter(imageContainer -> imageContainer instanceof ImageEntry).map(imageContainer -> (ImageEntry) imageContainer).collect(Collectors.toList());
-
-		// Compute the absolute path of the image directory
-		String localDirAbsolutePath = directory.getFile().getAbsolutePath();
+		// Find every collection that still has an upload list. Upload lists can be long, so we use a scroll to read a few collections at a time
+		Scroll scroll = new Scroll(TimeValue.timeValueMinutes(1));
+		SearchRequest searchRequest = new SearchRequest();
+		searchRequest
+				.indices(INDEX_SANIMAL_COLLECTIONS)
+				.types(INDEX_SANIMAL_COLLECTIONS_TYPE)
+				.scroll(scroll)
+				.source(new SearchSourceBuilder()
+					.query(QueryBuilders.existsQuery("uploads"))
+					.fetchSource(new String[] { "uploads" }, null)
+					.size(UPLOAD_PAGE_SIZE));
 
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		BulkProcessor bulkProcessor = this.createBulkProcessor(failures);
+		List<String> migratedCollectionIDs = new ArrayList<>();
 		try
 		{
-			// Create a bulk index request to update all these images at once
-			BulkRequest bulkRequest = new BulkRequest();
+			SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+			// Remember how many collections there are to migrate so we can make sure we saw all of them
+			Long totalHits = searchResponse.getHits().getTotalHits();
+			String scrollID = searchResponse.getScrollId();
+			SearchHit[] searchHits = searchResponse.getHits().getHits();
 
+			// While we have results...
+			while (searchHits != null && searchHits.length > 0)
+			{
+				for (SearchHit searchHit : searchHits)
+				{
+					// Index each of the collection's uploads as its own document. The document ID is the upload path, so running this twice is harmless
+					List<Map<String, Object>> uploads = (List<Map<String, Object>>) searchHit.getSourceAsMap().get("uploads");
+					for (Map<String, Object> upload : uploads)
+					{
+						Map<String, Object> uploadDocument = new HashMap<>(upload);
+						uploadDocument.put("collectionID", searchHit.getId());
+						bulkProcessor.add(new IndexRequest()
+								.index(INDEX_SANIMAL_UPLOADS)
+								.type(INDEX_SANIMAL_UPLOADS_TYPE)
+								.id(uploadDocument.get("uploadIRODSPath").toString())
+								.source(uploadDocument));
+					}
+					migratedCollectionIDs.add(searchHit.getId());
+				}
+
+				// Grab the next page of results
+				SearchScrollRequest searchScrollRequest = new SearchScrollRequest();
+				searchScrollRequest
+					.scrollId(scrollID)
+					.scroll(scroll);
+				searchResponse = this.elasticSearchClient.searchScroll(searchScrollRequest);
+				scrollID = searchResponse.getScrollId();
+				searchHits = searchResponse.getHits().getHits();
+			}
+
+			// After the query is complete we clear the scroll request
+			ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+			clearScrollRequest.addScrollId(scrollID);
+			ClearScrollResponse clearScrollResponse = this.elasticSearchClient.clearScroll(clearScrollRequest);
+			// If the clear fails, print an error
+			if (!clearScrollResponse.isSucceeded())
+				SanimalData.getInstance().getErrorDisplay().printError("Clearing the scroll after reading collection uploads did not succeed!");
+
+			// If the scroll ended early the collections we missed keep their upload lists, so running the migration again picks them up
+			if (migratedCollectionIDs.size() != totalHits)
+				failures.add("Only " + migratedCollectionIDs.size() + " of " + totalHits + " collections with upload lists were read, run the migration again to move the rest");
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error reading collection uploads to migrate, error was:\n" + ExceptionUtils.getStackTrace(e));
+		}
+
+		// Only remove the old upload lists if every upload made it into the uploads index
+		if (this.closeBulkProcessor(bulkProcessor, failures, "Error migrating collection uploads!"))
+		{
+			for (String collectionID : migratedCollectionIDs)
+			{
+				try
+				{
+					UpdateRequest updateRequest = new UpdateRequest()
+							.index(INDEX_SANIMAL_COLLECTIONS)
+							.type(INDEX_SANIMAL_COLLECTIONS_TYPE)
+							.id(collectionID)
+							.retryOnConflict(COLLECTION_UPDATE_RETRY_COUNT)
+							.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, "ctx._source.remove('uploads')", Collections.emptyMap()));
+					this.elasticSearchClient.update(updateRequest);
+				}
+				catch (IOException e)
+				{
+					SanimalData.getInstance().getErrorDisplay().notify("Error removing the old upload list from collection '" + collectionID + "', error was:\n" + ExceptionUtils.getStackTrace(e));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Given a path, a collection ID, and a list of images, this function indexes the images into the ElasticSearch index.
+	 * This can be called once per uploaded TAR part, the collection's upload entry is added separately once the upload is done.
+	 * Images are sent in chunks so that large uploads never create a single huge request
+	 *
+	 * @param basePath The base path all images will be placed to on the datastore. Often will look like /iplant/home/user/uploads/
+	 * @param collectionID The ID of the collection that these images will be uploaded to
+	 * @param localDirAbsolutePath The absolute path of the local directory that is being uploaded
+	 * @param imageEntries The images to index
+	 * @return True if every image was indexed, false if any of them failed
+	 */
+	public Boolean indexImages(String basePath, String collectionID, String localDirAbsolutePath, List<ImageEntry> imageEntries)
+	{
+		// An empty bulk request is not allowed, so just return
+		if (imageEntries.isEmpty())
+			return true;
+		// Images can't be indexed until the metadata index from before the split by year is gone
+		if (!this.legacyMetadataIndexWasSplit())
+			return false;
+
+		// Create a bulk processor which sends the images in chunks. Adding an image waits if too many chunks are in flight.
+		// We also record which images were new to the index, images that were already indexed are already in the rollups
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		Set<String> createdIDs = ConcurrentHashMap.newKeySet();
+		BulkProcessor bulkProcessor = this.createBulkProcessor(failures, createdIDs, null);
+		Map<String, ImageEntry> idToImage = new HashMap<>();
+		try
+		{
 			// Convert the images to a map format ready to be converted to JSON
 			for (ImageEntry imageEntry : imageEntries)
 			{
 				// Our image to JSON map will return 2 items, one is the ID of the document and one is the JSON request
 				Tuple<String, XContentBuilder> idAndJSON = this.elasticSearchSchemaManager.imageToJSONMap(imageEntry, collectionID, basePath, localDirAbsolutePath);
+				// Images are written to the index of the year they were taken in
+				String index = this.ensureMetadataIndex(imageEntry.getDateTaken().getYear());
+				if (index == null)
+				{
+					failures.add(idAndJSON.v1() + ": the metadata index for " + imageEntry.getDateTaken().getYear() + " could not be created");
+					continue;
+				}
 				IndexRequest request = new IndexRequest()
-						.index(INDEX_SANIMAL_METADATA)
+						.index(index)
 						.type(INDEX_SANIMAL_METADATA_TYPE)
 						.id(idAndJSON.v1())
 						.source(idAndJSON.v2());
-				bulkRequest.add(request);
+				bulkProcessor.add(request);
+				idToImage.put(idAndJSON.v1(), imageEntry);
+			}
+		}
+		catch (IOException e)
+		{
+			// If the insert failed for some reason, print that error
+			SanimalData.getInstance().getErrorDisplay().notify("Could not insert the image metadata into the index!\n" + ExceptionUtils.getStackTrace(e));
+			failures.add("Could not convert the images: " + e.getMessage());
+		}
+
+		// Send any remaining images and wait for every chunk to finish
+		Boolean indexed = this.closeBulkProcessor(bulkProcessor, failures, "Error bulk inserting metadata!");
+
+		// Add each new image to the daily rollups
+		Map<String, Map<String, Object>> rollupChanges = new HashMap<>();
+		for (String createdID : createdIDs)
+			if (idToImage.containsKey(createdID))
+				this.mergeRollupChanges(rollupChanges, this.elasticSearchSchemaManager.imageToRollupChanges(idToImage.get(createdID), collectionID, 1));
+		this.applyRollupChanges(rollupChanges);
+		return indexed;
+	}
+
+	/**
+	 * Adds a finished upload to the collection's list of uploads. This should be called once after all images in the upload
+	 * have been indexed. Each upload is its own document in the uploads index, so the collection document is not touched
+	 *
+	 * @param collectionID The ID of the collection that the upload belongs to
+	 * @param uploadEntry The upload entry representing this upload, will be put into our uploads index
+	 */
+	public void insertUploadIntoCollection(String collectionID, CloudUploadEntry uploadEntry)
+	{
+		try
+		{
+			// The upload's path is unique, so use it as the document ID
+			IndexRequest indexRequest = new IndexRequest();
+			indexRequest
+				.index(INDEX_SANIMAL_UPLOADS)
+				.type(INDEX_SANIMAL_UPLOADS_TYPE)
+				.id(uploadEntry.getUploadIRODSPath())
+				.source(this.elasticSearchSchemaManager.makeCreateUpload(collectionID, uploadEntry));
+			// Execute the insert, and save the result
+			IndexResponse indexResponse = this.elasticSearchClient.index(indexRequest);
+			// If the response was not CREATED, print an error
+			if (indexResponse.status() != RestStatus.CREATED && indexResponse.status() != RestStatus.OK)
+				SanimalData.getInstance().getErrorDisplay().notify("Could not update the Collection's index with a new upload!");
+		}
+		catch (IOException e)
+		{
+			// If the update failed for some reason, print that error
+			SanimalData.getInstance().getErrorDisplay().notify("Could not insert the upload into the collection index!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Called to update existing images already present in the index. The images' metadata is updated in chunks, and then the
+	 * upload's document is updated once for the whole save
+	 *
+	 * @param imagesToSave The list of images that need saving
+	 * @param collectionID The ID of the collection that these images belong to
+	 * @param cloudUploadEntry An upload entry representing upload metadata
+	 */
+	public void updateIndexedImages(List<CloudImageEntry> imagesToSave, String collectionID, CloudUploadEntry cloudUploadEntry)
+	{
+		// Images can't be updated until the metadata index from before the split by year is gone
+		if (!this.legacyMetadataIndexWasSplit())
+			return;
+		// Find where each image is currently indexed. The image's date may have been edited, so it may be stored under a different
+		// year than it has now
+		Map<String, Tuple<String, ImageEntry>> indexedImages = this.fetchIndexedImages(imagesToSave);
+		if (indexedImages == null)
+			return;
+
+		// Update the metadata of each image in the metadata index in chunks. We record which images failed and which were sent
+		// so that only images whose metadata actually changed in the index change the rollups
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		Set<String> failedIDs = ConcurrentHashMap.newKeySet();
+		BulkProcessor bulkProcessor = this.createBulkProcessor(failures, null, failedIDs);
+		Map<String, CloudImageEntry> idToSentImage = new HashMap<>();
+		// Images moving to a different year's index -> the index they are moving out of
+		Map<String, String> idToOldIndex = new HashMap<>();
+		try
+		{
+			// For each image entry, create an update request and add it to the bulk update
+			for (CloudImageEntry cloudImageEntry : imagesToSave)
+			{
+				Tuple<String, XContentBuilder> idAndJSON = this.elasticSearchSchemaManager.imageToJSONMap(cloudImageEntry, collectionID, cloudImageEntry.getCyverseFile().getAbsolutePath());
+				Integer year = cloudImageEntry.getDateTaken().getYear();
+				Tuple<String, ImageEntry> indexedImage = indexedImages.get(idAndJSON.v1());
+				// Only images that are already indexed can be updated
+				if (indexedImage == null)
+				{
+					failures.add(idAndJSON.v1() + ": the image is not in the metadata index");
+					continue;
+				}
+
+				// Images are stored in the index of the year they were taken in. If the year was changed the image has to move
+				// to the new year's index, so index the whole document into the new one. It is only removed from the old index
+				// once that has succeeded, so a failed save never loses the image
+				if (!year.equals(this.metadataYearOf(indexedImage.v1())))
+				{
+					String index = this.ensureMetadataIndex(year);
+					if (index == null)
+					{
+						failures.add(idAndJSON.v1() + ": the metadata index for " + year + " could not be created");
+						continue;
+					}
+					idToOldIndex.put(idAndJSON.v1(), indexedImage.v1());
+					bulkProcessor.add(new IndexRequest()
+							.index(index)
+							.type(INDEX_SANIMAL_METADATA_TYPE)
+							.id(idAndJSON.v1())
+							.source(idAndJSON.v2()));
+				}
+				else
+				{
+					UpdateRequest updateMetaRequest = new UpdateRequest();
+					updateMetaRequest
+							.index(this.metadataIndexFor(year))
+							.type(INDEX_SANIMAL_METADATA_TYPE)
+							.id(idAndJSON.v1())
+							// The new document will contain all new fields
+							.doc(idAndJSON.v2());
+					bulkProcessor.add(updateMetaRequest);
+				}
+				idToSentImage.put(idAndJSON.v1(), cloudImageEntry);
+			}
+		}
+		catch (IOException e)
+		{
+			// If something went wrong while updating, print an error
+			SanimalData.getInstance().getErrorDisplay().notify("Error updating the image index. Error was:\n" + ExceptionUtils.getStackTrace(e));
+		}
+		this.closeBulkProcessor(bulkProcessor, failures, "Error updating the image index!");
+
+		// Now that the moved images are in their new year's index, remove them from their old index. Images that could not be
+		// indexed into their new year are left where they were
+		List<String> deleteFailures = Collections.synchronizedList(new ArrayList<>());
+		Set<String> deleteFailedIDs = ConcurrentHashMap.newKeySet();
+		BulkProcessor deleteBulkProcessor = this.createBulkProcessor(deleteFailures, null, deleteFailedIDs);
+		idToOldIndex.forEach((id, oldIndex) ->
+		{
+			if (!failedIDs.contains(id))
+				deleteBulkProcessor.add(new DeleteRequest()
+						.index(oldIndex)
+						.type(INDEX_SANIMAL_METADATA_TYPE)
+						.id(id));
+		});
+		this.closeBulkProcessor(deleteBulkProcessor, deleteFailures, "Error removing images moved to a different year from their old index!");
+
+		// Work out how the save changes the daily rollups. The indexed version of each image is taken out and the new version is put in.
+		// Images that were skipped or failed to update are still indexed as they were, so they don't change the rollups. Moved images
+		// that could not be removed from their old index are still counted there, so their old version is not taken out
+		Map<String, Map<String, Object>> rollupChanges = new HashMap<>();
+		idToSentImage.forEach((id, cloudImageEntry) ->
+		{
+			if (!failedIDs.contains(id))
+			{
+				if (!deleteFailedIDs.contains(id))
+					this.mergeRollupChanges(rollupChanges, this.elasticSearchSchemaManager.imageToRollupChanges(indexedImages.get(id).v2(), collectionID, -1));
+				this.mergeRollupChanges(rollupChanges, this.elasticSearchSchemaManager.imageToRollupChanges(cloudImageEntry, collectionID, 1));
+			}
+		});
+		this.applyRollupChanges(rollupChanges);
+
+		try
+		{
+			// Then update the upload's metadata once for the whole save
+			UpdateRequest updateUploadRequest = new UpdateRequest();
+			// We do this update with a script, and it needs 2 arguments. Create of map of those 2 arguments now
+			HashMap<String, Object> args = new HashMap<>();
+			args.put("comment", cloudUploadEntry.getEditComments().get(cloudUploadEntry.getEditComments().size() - 1));
+			args.put("imagesWithSpecies", cloudUploadEntry.getImagesWithSpecies());
+
+			// Setup the upload update request
+			updateUploadRequest
+					.index(INDEX_SANIMAL_UPLOADS)
+					.type(INDEX_SANIMAL_UPLOADS_TYPE)
+					.id(cloudUploadEntry.getUploadIRODSPath())
+					// Other users may be saving to the same upload, so if the upload changed under us try again
+					.retryOnConflict(COLLECTION_UPDATE_RETRY_COUNT)
+					// Add the edit comment, and update the images with species
+					.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, "ctx._source.editComments.add(params.comment); ctx._source.imagesWithSpecies = params.imagesWithSpecies", args));
+
+			// Execute the update, and save the result
+			UpdateResponse updateResponse = this.elasticSearchClient.update(updateUploadRequest);
+			// If the response was not OK, print an error
+			if (updateResponse.status() != RestStatus.OK)
+				SanimalData.getInstance().getErrorDisplay().notify("Could not update the upload index with the saved upload, status was: " + updateResponse.status());
+		}
+		catch (IOException e)
+		{
+			// If something went wrong while updating, print an error
+			SanimalData.getInstance().getErrorDisplay().notify("Error updating the upload index. Error was:\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Tunes the metadata indices that a large ingest writes to. Refreshing is turned off (and replicas are dropped if
+	 * configured to) until endBulkLoad is called, so documents are written once and not made searchable after every chunk.
+	 * Only the yearly indices of the given images are changed. While the load runs the client holds a lease document in
+	 * the bulk loads index which is renewed in the background, so other clients know not to restore the settings. If the
+	 * client dies the lease runs out and restoreStaleBulkLoads puts the settings back
+	 *
+	 * @param imageEntries The images that will be indexed during the bulk load
+	 * @return The ID of the bulk load's lease which must be passed to endBulkLoad, or null if the indices were not tuned
+	 */
+	public String beginBulkLoad(List<ImageEntry> imageEntries)
+	{
+		// Nothing will be written until the metadata index from before the split by year is gone
+		if (!this.legacyMetadataIndexWasSplit())
+			return null;
+
+		// Find the yearly indices the images will be written to. They are created now so they can be tuned before any image is written
+		Set<String> indices = new TreeSet<>();
+		for (Integer year : imageEntries.stream().map(imageEntry -> imageEntry.getDateTaken().getYear()).collect(Collectors.toSet()))
+		{
+			String index = this.ensureMetadataIndex(year);
+			if (index != null)
+				indices.add(index);
+		}
+		if (indices.isEmpty())
+			return null;
+
+		// Take the lease before changing any settings so that no other client restores them while we're loading
+		String leaseID = UUID.randomUUID().toString();
+		try
+		{
+			this.writeBulkLoadLease(leaseID, indices);
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not start a bulk load, images will be indexed with the normal index settings!\n" + ExceptionUtils.getStackTrace(e));
+			return null;
+		}
+
+		// Tune the indices for the load
+		Settings.Builder settings = Settings.builder().put("index.refresh_interval", "-1");
+		if (this.configuration.getBulkLoadDropReplicas())
+			settings.put("index.number_of_replicas", 0);
+		this.updateMetadataIndexSettings(indices, settings.build());
+
+		// Renew the lease a few times before it would run out for as long as the load is running
+		Long renewalMillis = TimeUnit.MINUTES.toMillis(this.configuration.getBulkLoadLeaseMinutes()) / 3;
+		ScheduledFuture<?> renewal = this.bulkLoadLeaseRenewer.scheduleAtFixedRate(() ->
+		{
+			try
+			{
+				this.writeBulkLoadLease(leaseID, indices);
 			}
+			catch (IOException | ElasticsearchStatusException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().printError("Could not renew the lease of a bulk load!\n" + ExceptionUtils.getStackTrace(e));
+			}
+		}, renewalMillis, renewalMillis, TimeUnit.MILLISECONDS);
+		this.bulkLoadLeases.put(leaseID, Tuple.tuple(indices, renewal));
+		return leaseID;
+	}
 
-			// Execute the bulk insert
-			BulkResponse bulkResponse = this.elasticSearchClient.bulk(bulkRequest);
+	/**
+	 * Ends a bulk load started with beginBulkLoad. The bulk load's lease is released, and the settings of each index it
+	 * tuned are restored unless another client is still bulk loading into that index. Restored indices are refreshed once
+	 * so that every new document becomes searchable
+	 *
+	 * @param leaseID The lease ID returned by beginBulkLoad, null is ignored
+	 */
+	public void endBulkLoad(String leaseID)
+	{
+		// Ignore unmatched calls
+		Tuple<Set<String>, ScheduledFuture<?>> lease = leaseID == null ? null : this.bulkLoadLeases.remove(leaseID);
+		if (lease == null)
+			return;
 
-			// Check if everything went OK, if not return an error
-			if (bulkResponse.status() != RestStatus.OK)
-				SanimalData.getInstance().getErrorDisplay().notify("Error bulk inserting metadata, error response was: " + bulkResponse.status());
+		// Stop renewing the lease and release it
+		lease.v2().cancel(false);
+		try
+		{
+			this.elasticSearchClient.delete(new DeleteRequest()
+					.index(INDEX_SANIMAL_BULK_LOADS)
+					.type(INDEX_SANIMAL_BULK_LOADS_TYPE)
+					.id(leaseID)
+					// Other clients ending their loads need to see that this lease is gone
+					.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			// The lease will run out on its own, so the settings will still be restored eventually
+			SanimalData.getInstance().getErrorDisplay().printError("Could not release the lease of a bulk load!\n" + ExceptionUtils.getStackTrace(e));
+		}
+
+		this.restoreBulkLoadSettings(lease.v1());
+	}
 
-			// Now that we've updated our metadata index, update the collections uploads field
+	/**
+	 * Finds yearly metadata indices that are still tuned for a bulk load that is no longer running, for example because the
+	 * client running it was closed before it finished, and restores their settings. Should be called once after logging in
+	 */
+	public void restoreStaleBulkLoads()
+	{
+		try
+		{
+			// Find every yearly index with refreshing turned off. The response is keyed by concrete index
+			Response response = this.elasticSearchClient.getLowLevelClient().performRequest("GET", "/" + INDEX_SANIMAL_METADATA_PREFIX + "*/_settings/index.refresh_interval");
+			Set<String> tunedIndices = new TreeSet<>();
+			try (InputStream content = response.getEntity().getContent();
+				 XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, content))
+			{
+				for (Map.Entry<String, Object> indexSettings : parser.map().entrySet())
+				{
+					// Leases refer to indices by their yearly name, which may be an alias of a migrated index
+					Integer year = this.metadataYearOf(indexSettings.getKey());
+					if (year != null && indexSettings.getValue() instanceof Map<?, ?> && "-1".equals(XContentMapValues.extractValue("settings.index.refresh_interval", (Map<?, ?>) indexSettings.getValue())))
+						tunedIndices.add(this.metadataIndexFor(year));
+				}
+			}
+
+			// Indices that a running bulk load holds a lease on are left alone
+			if (!tunedIndices.isEmpty())
+				this.restoreBulkLoadSettings(tunedIndices);
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not check for metadata indices left tuned for a bulk load!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Restores the normal settings of metadata indices tuned for a bulk load and refreshes them, skipping any index that a
+	 * bulk load still holds an unexpired lease on
+	 *
+	 * @param indices The yearly metadata indices to restore
+	 */
+	private void restoreBulkLoadSettings(Set<String> indices)
+	{
+		Set<String> toRestore = new TreeSet<>(indices);
+		try
+		{
+			// Find the indices that are still being loaded into by this or another client
+			SearchRequest searchRequest = new SearchRequest();
+			searchRequest
+					.indices(INDEX_SANIMAL_BULK_LOADS)
+					.types(INDEX_SANIMAL_BULK_LOADS_TYPE)
+					// If no bulk load ever ran there is no bulk loads index
+					.indicesOptions(IndicesOptions.lenientExpandOpen())
+					.source(new SearchSourceBuilder()
+						.query(QueryBuilders.rangeQuery("expires").gt(System.currentTimeMillis()))
+						.size(MAX_BULK_LOAD_LEASES)
+						.fetchSource(new String[] { "indices" }, null));
+			for (SearchHit searchHit : this.elasticSearchClient.search(searchRequest).getHits().getHits())
+			{
+				Object leasedIndices = searchHit.getSourceAsMap().get("indices");
+				if (leasedIndices instanceof Collection<?>)
+					toRestore.removeAll((Collection<?>) leasedIndices);
+			}
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			// If we can't tell which indices are still being loaded leave them all as they are, the next login tries again
+			SanimalData.getInstance().getErrorDisplay().printError("Could not read the bulk load leases!\n" + ExceptionUtils.getStackTrace(e));
+			return;
+		}
+
+		if (toRestore.isEmpty())
+			return;
+
+		// Removing the refresh interval setting puts it back to the default
+		this.updateMetadataIndexSettings(toRestore, Settings.builder()
+				.putNull("index.refresh_interval")
+				.put("index.number_of_replicas", this.configuration.getMetadataReplicaCount())
+				.build());
+		try
+		{
+			// Make everything written during the bulk load searchable with a single refresh
+			this.elasticSearchClient.indices().refresh(new RefreshRequest(toRestore.toArray(new String[0])));
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not refresh the metadata indices after a bulk load!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Creates or renews a bulk load lease so that it runs out a lease period from now
+	 *
+	 * @param leaseID The ID of the lease
+	 * @param indices The indices tuned for the bulk load
+	 * @throws IOException If the lease could not be written
+	 */
+	private void writeBulkLoadLease(String leaseID, Set<String> indices) throws IOException
+	{
+		// Create the bulk loads index the first time a lease is taken
+		if (!this.bulkLoadsIndexExists)
+		{
+			try
+			{
+				CreateIndexRequest createIndexRequest = new CreateIndexRequest(INDEX_SANIMAL_BULK_LOADS);
+				createIndexRequest.settings(Settings.builder()
+						.put("index.number_of_shards", INDEX_SANIMAL_BULK_LOADS_SHARD_COUNT)
+						.put("index.number_of_replicas", INDEX_SANIMAL_BULK_LOADS_REPLICA_COUNT));
+				createIndexRequest.mapping(INDEX_SANIMAL_BULK_LOADS_TYPE, this.elasticSearchSchemaManager.makeSanimalBulkLoadsIndexMapping(INDEX_SANIMAL_BULK_LOADS_TYPE));
+				this.elasticSearchClient.indices().create(createIndexRequest);
+			}
+			catch (ElasticsearchStatusException e)
+			{
+				// If the index already exists that's fine
+				if (e.getMessage() == null || !e.getMessage().contains("already exists"))
+					throw e;
+			}
+			this.bulkLoadsIndexExists = true;
+		}
+
+		this.elasticSearchClient.index(new IndexRequest()
+				.index(INDEX_SANIMAL_BULK_LOADS)
+				.type(INDEX_SANIMAL_BULK_LOADS_TYPE)
+				.id(leaseID)
+				.source(this.elasticSearchSchemaManager.makeBulkLoadLease(indices, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(this.configuration.getBulkLoadLeaseMinutes())))
+				// Other clients ending their loads need to see this lease right away
+				.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+	}
+
+	/**
+	 * Updates the dynamic settings of metadata indices
+	 *
+	 * @param indices The indices to change
+	 * @param settings The settings to change
+	 */
+	private void updateMetadataIndexSettings(Set<String> indices, Settings settings)
+	{
+		try
+		{
+			UpdateSettingsRequest updateSettingsRequest = new UpdateSettingsRequest(indices.toArray(new String[0])).settings(settings);
+			this.elasticSearchClient.indices().putSettings(updateSettingsRequest);
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Could not update the settings of the metadata indices " + indices + "!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Performs a query given an ElasticSearch query builder that returns a list of images that match that query
+	 *
+	 * @param queryBuilder The query builder used to specify query parameters
+	 * @return The list of images that match the query
+	 */
+	public List<ImageEntry> performQuery(ElasticSearchQuery queryBuilder)
+	{
+		// The list of images to return
+		List<ImageEntry> toReturn = new ArrayList<>();
+		this.performQuery(queryBuilder, toReturn::addAll);
+		return toReturn;
+	}
+
+	/**
+	 * Performs a query given an ElasticSearch query builder and hands the images that match that query to a consumer a page
+	 * at a time as they arrive. Only the pages currently being read are held in memory, so the caller can process results
+	 * of any size as long as it does not keep every image itself. The results are split into slices which are scrolled
+	 * through in parallel, but the consumer is only ever given one page at a time
+	 *
+	 * @param queryBuilder The query builder used to specify query parameters
+	 * @param pageConsumer Given each page of images that match the query, in no particular order
+	 */
+	public void performQuery(ElasticSearchQuery queryBuilder, Consumer<List<ImageEntry>> pageConsumer)
+	{
+		// Unique species and locations are used to ensure images with identical locations don't create two locations. These are
+		// shared by every slice, so they are concurrent maps that let each slice convert its pages at the same time
+		Map<String, Location> uniqueLocations = new ConcurrentHashMap<>();
+		Map<String, Species> uniqueSpecies = new ConcurrentHashMap<>();
+		// The consumer is only given one page at a time
+		Object pageConsumerLock = new Object();
+
+		// Build the query once, every slice uses the same query
+		QueryBuilder query = queryBuilder.build();
+		String[] indices = this.metadataIndicesFor(queryBuilder);
+
+		// Scroll through each slice on its own thread
+		Integer sliceCount = this.configuration.getQuerySliceCount();
+		ExecutorService sliceWorkers = Executors.newFixedThreadPool(sliceCount);
+		List<Future<?>> sliceWorkerTasks = new ArrayList<>();
+		for (Integer sliceID = 0; sliceID < sliceCount; sliceID++)
+		{
+			Integer finalSliceID = sliceID;
+			sliceWorkerTasks.add(sliceWorkers.submit(() ->
+			{
+				this.scrollQuery(indices, query, finalSliceID, sliceCount, searchHits ->
+				{
+					// Iterate over all search hits and convert them into images
+					List<ImageEntry> page = new ArrayList<>(searchHits.length);
+					for (SearchHit searchHit : searchHits)
+					{
+						ImageEntry imageEntry = this.convertSourceToImage(searchHit.getSourceAsMap(), uniqueSpecies, uniqueLocations);
+						if (imageEntry != null)
+							page.add(imageEntry);
+					}
+					// Hand the page over, the hits can be thrown away once this returns
+					synchronized (pageConsumerLock)
+					{
+						pageConsumer.accept(page);
+					}
+				});
+				return null;
+			}));
+		}
+		sliceWorkers.shutdown();
+
+		// Wait for every slice to finish
+		try
+		{
+			for (Future<?> sliceWorkerTask : sliceWorkerTasks)
+				sliceWorkerTask.get();
+		}
+		catch (InterruptedException e)
+		{
+			// If the query was cancelled stop every slice, each slice clears its own scroll
+			sliceWorkers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			// If something goes wrong with the query print an error
+			sliceWorkers.shutdownNow();
+			SanimalData.getInstance().getErrorDisplay().notify("Error occurred when performing query!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Scrolls through one slice of a query's results a page at a time. The scroll is kept alive only briefly between pages,
+	 * and is always cleared once the slice is done, fails, or the thread is interrupted
+	 *
+	 * @param indices The indices to search
+	 * @param query The query to perform
+	 * @param sliceID The slice to scroll through, from 0 to sliceCount - 1
+	 * @param sliceCount The number of slices the results are split into, 1 scrolls through every result
+	 * @param pageConsumer Given each page of hits as it arrives
+	 * @throws IOException If the query failed
+	 */
+	private void scrollQuery(String[] indices, QueryBuilder query, Integer sliceID, Integer sliceCount, Consumer<SearchHit[]> pageConsumer) throws IOException
+	{
+		// Each page must be requested before the keep alive runs out
+		Scroll scroll = new Scroll(TimeValue.timeValueSeconds(this.configuration.getQueryScrollKeepAliveSeconds()));
+
+		// Results are read in index order which is the cheapest order to scroll in
+		SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+				.query(query)
+				.size(this.configuration.getQueryPageSize())
+				.sort(FieldSortBuilder.DOC_FIELD_NAME)
+				.fetchSource(FetchSourceContext.FETCH_SOURCE);
+		if (sliceCount > 1)
+			searchSourceBuilder.slice(new SliceBuilder(sliceID, sliceCount));
+
+		// The search request to perform the query
+		SearchRequest searchRequest = new SearchRequest();
+		searchRequest
+				.indices(indices)
+				.types(INDEX_SANIMAL_METADATA_TYPE)
+				// Some of the years may not have an index, skip those
+				.indicesOptions(IndicesOptions.lenientExpandOpen())
+				// Set the scroll up so that we don't retrieve all results at once
+				.scroll(scroll)
+				.source(searchSourceBuilder);
+
+		String scrollID = null;
+		try
+		{
+			// Execute the query
+			SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+			// Grab the new scroll ID from the response used in the follow up search
+			scrollID = searchResponse.getScrollId();
+			// Grab a list of hits from the search
+			SearchHit[] searchHits = searchResponse.getHits().getHits();
 
-			// Update the uploads field
-			UpdateRequest updateRequest = new UpdateRequest();
+			// While we have results and have not been cancelled...
+			while (searchHits != null && searchHits.length > 0 && !Thread.currentThread().isInterrupted())
+			{
+				pageConsumer.accept(searchHits);
 
-			// We do this update with a script, and it needs 1 argument. Create of map of that 1 argument now
-			HashMap<String, Object> args = new HashMap<>();
-			// We can't use XContentBuilder so just use hashmaps. We set all appropriate fields and insert it as the arguments parameter
-			args.put("upload", new HashMap<String, Object>()
-			{{
-				put("imageCount", uploadEntry.getImageCount());
-				put("imagesWithSpecies", uploadEntry.getImagesWithSpecies());
-				put("uploadDate", uploadEntry.getUploadDate().atZone(ZoneId.systemDefault()).format(SanimalMetadataFields.INDEX_DATE_TIME_FORMAT));
-				put("editComments", uploadEntry.getEditComments());
-				put("uploadUser", uploadEntry.getUploadUser());
-				put("uploadIRODSPath", uploadEntry.getUploadIRODSPath());
-			}});
-			updateRequest
-				.index(INDEX_SANIMAL_COLLECTIONS)
-				.type(INDEX_SANIMAL_COLLECTIONS_TYPE)
-				.id(collectionID)
-				// We use a script because we're updating nested fields. The script written out looks like:
-				/*
-				ctx._source.uploads.add(params.upload)
-				 */
-				.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, "ctx._source.uploads.add(params.upload)", args));
-			// Execute the update, and save the result
-			UpdateResponse updateResponse = this.elasticSearchClient.update(updateRequest);
-			// If the response was not OK, print an error
-			if (updateResponse.status() != RestStatus.OK)
-				SanimalData.getInstance().getErrorDisplay().notify("Could not update the Collection's index with a new upload!");
+				// Grab the next page of results
+				SearchScrollRequest searchScrollRequest = new SearchScrollRequest();
+				searchScrollRequest
+					.scrollId(scrollID)
+					.scroll(scroll);
+				searchResponse = this.elasticSearchClient.searchScroll(searchScrollRequest);
+				scrollID = searchResponse.getScrollId();
+				searchHits = searchResponse.getHits().getHits();
+			}
 		}
-		catch (IOException e)
+		finally
 		{
-			// If the update failed for some reason, print that error
-			SanimalData.getInstance().getErrorDisplay().notify("Could not insert the upload into the collection index!\n" + ExceptionUtils.getStackTrace(e));
+			// Clear the scroll so the cluster can free it right away instead of waiting for it to expire
+			if (scrollID != null)
+			{
+				try
+				{
+					ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+					clearScrollRequest.addScrollId(scrollID);
+					ClearScrollResponse clearScrollResponse = this.elasticSearchClient.clearScroll(clearScrollRequest);
+					// If the clear fails, print an error
+					if (!clearScrollResponse.isSucceeded())
+						SanimalData.getInstance().getErrorDisplay().printError("Clearing the scroll after querying did not succeed!");
+				}
+				catch (IOException | ElasticsearchStatusException e)
+				{
+					SanimalData.getInstance().getErrorDisplay().printError("Clearing the scroll after querying failed!\n" + ExceptionUtils.getStackTrace(e));
+				}
+			}
 		}
 	}
 
 	/**
-	 * Called to update existing images already present in the index
+	 * Performs a query that returns image counts instead of images. The counts are computed by the cluster with aggregations,
+	 * so no images are downloaded no matter how many match the query
 	 *
-	 * @param imagesToSave The list of images that need saving
-	 * @param collectionID The ID of the collection that these images belong to
-	 * @param cloudUploadEntry An upload entry representing upload metadata
+	 * @param queryBuilder The query builder used to specify query parameters
+	 * @return The image counts of the images that match the query
 	 */
-	@SuppressWarnings("unchecked")
-	public void updateIndexedImages(List<CloudImageEntry> imagesToSave, String collectionID, CloudUploadEntry cloudUploadEntry)
+	public ImageCounts performCountQuery(ElasticSearchQuery queryBuilder)
 	{
+		// The counts to return
+		ImageCounts toReturn = new ImageCounts();
+
 		try
 		{
-			// Do the update in bulk
-			BulkRequest bulkUpdate = new BulkRequest();
-
-			// For each image entry, create an update request and add it to the bulk update
-			for (CloudImageEntry cloudImageEntry : imagesToSave)
+			// Execute the query
+			SearchResponse searchResponse = this.elasticSearchClient.search(this.countRequestFor(queryBuilder));
+			toReturn.setTotalImages(searchResponse.getHits().getTotalHits());
+			Aggregations aggregations = searchResponse.getAggregations();
+			if (aggregations == null)
+				return toReturn;
+
+			// Read the per species counts
+			Terms species = ((Nested) aggregations.get("speciesEntries")).getAggregations().get("species");
+			for (Terms.Bucket bucket : species.getBuckets())
 			{
-				Tuple<String, XContentBuilder> idAndJSON = this.elasticSearchSchemaManager.imageToJSONMap(cloudImageEntry, collectionID, cloudImageEntry.getCyverseFile().getAbsolutePath());
-				// The first update will update the metadata in the metadata index
-				UpdateRequest updateMetaRequest = new UpdateRequest();
-				updateMetaRequest
-						.index(INDEX_SANIMAL_METADATA)
-						.type(INDEX_SANIMAL_METADATA_TYPE)
-						.id(idAndJSON.v1())
-						// The new document will contain all new fields
-						.doc(idAndJSON.v2());
-
-				// The second update will update the collection upload metadata
-				UpdateRequest updateCollectionRequest = new UpdateRequest();
-				// We do this update with a script, and it needs 3 arguments. Create of map of those 3 arguments now
-				HashMap<String, Object> args = new HashMap<>();
-				args.put("pathID", cloudUploadEntry.getUploadIRODSPath());
-				args.put("comment", cloudUploadEntry.getEditComments().get(cloudUploadEntry.getEditComments().size() - 1));
-				args.put("imagesWithSpecies", cloudUploadEntry.getImagesWithSpecies());
-
-				// Setup the collection update request
-				updateCollectionRequest
-						.index(INDEX_SANIMAL_COLLECTIONS)
-						.type(INDEX_SANIMAL_COLLECTIONS_TYPE)
-						.id(collectionID)
-						// We use a script because we're updating nested fields. The script written out looks like:
-						/*
-						// Iterate over all uploads
-						for (upload in ctx._source.uploads)
-						{
-							// If the IDs match
-							if (upload.uploadIRODSPath == params.pathID)
-							{
-								// Add the edit comment, and update the images with species
-								upload.editComments.add(params.comment);
-								upload.imagesWithSpecies = params.imagesWithSpecies;
-							}
-						 }
-						 */
-						.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, "for (upload in ctx._source.uploads) { if (upload.uploadIRODSPath == params.pathID) { upload.editComments.add(params.comment); upload.imagesWithSpecies = params.imagesWithSpecies } }", args));
-
-				// Add the updates to the bulk request
-				bulkUpdate.add(updateMetaRequest);
-				bulkUpdate.add(updateCollectionRequest);
+				toReturn.getImagesPerSpecies().put(bucket.getKeyAsString(), ((ReverseNested) bucket.getAggregations().get("images")).getDocCount());
+				toReturn.getAnimalsPerSpecies().put(bucket.getKeyAsString(), Math.round(((Sum) bucket.getAggregations().get("animals")).getValue()));
 			}
 
-			// Fire off the bulk request and save the response
-			BulkResponse bulkResponse = this.elasticSearchClient.bulk(bulkUpdate);
-
-			// If the status was not OK, print an error
-			if (bulkResponse.status() != RestStatus.OK)
-				System.err.println("Bulk insert responded without an OK, status was: " + bulkResponse.status().toString());
+			// Read the rest of the counts
+			for (Terms.Bucket bucket : ((Terms) aggregations.get("locations")).getBuckets())
+				toReturn.getImagesPerLocation().put(bucket.getKeyAsString(), bucket.getDocCount());
+			for (Terms.Bucket bucket : ((Terms) aggregations.get("years")).getBuckets())
+				toReturn.getImagesPerYear().put(bucket.getKeyAsNumber().intValue(), bucket.getDocCount());
+			for (Terms.Bucket bucket : ((Terms) aggregations.get("months")).getBuckets())
+				toReturn.getImagesPerMonth().put(bucket.getKeyAsNumber().intValue(), bucket.getDocCount());
+			for (Terms.Bucket bucket : ((Terms) aggregations.get("hours")).getBuckets())
+				toReturn.getImagesPerHour().put(bucket.getKeyAsNumber().intValue(), bucket.getDocCount());
+			for (Histogram.Bucket bucket : ((Histogram) aggregations.get("yearMonths")).getBuckets())
+				toReturn.getImagesPerYearMonth().put(bucket.getKeyAsString(), bucket.getDocCount());
 		}
-		catch (IOException e)
+		catch (IOException | ElasticsearchStatusException e)
 		{
-			// If something went wrong while updating, print an error
-			SanimalData.getInstance().getErrorDisplay().notify("Error updating the image index. Error was:\n" + ExceptionUtils.getStackTrace(e));
+			// If something goes wrong with the query print an error
+			SanimalData.getInstance().getErrorDisplay().notify("Error occurred when performing count query!\n" + ExceptionUtils.getStackTrace(e));
 		}
+
+		return toReturn;
 	}
 
 	/**
-	 * Performs a query given an ElasticSearch query builder that returns a list of images that match that query
+	 * Creates the search request used to count the images matching a query. The request returns no hits, only aggregations
 	 *
 	 * @param queryBuilder The query builder used to specify query parameters
-	 * @return The list of images that match the query
+	 * @return The search request that computes the image counts
 	 */
-	public List<ImageEntry> performQuery(ElasticSearchQuery queryBuilder)
+	SearchRequest countRequestFor(ElasticSearchQuery queryBuilder)
 	{
-		// The list of images to return
-		List<ImageEntry> toReturn = new ArrayList<>();
+		// We don't want any hits, only the aggregations
+		SearchRequest searchRequest = new SearchRequest();
+		searchRequest
+				// Only search the yearly indices that can contain results
+				.indices(this.metadataIndicesFor(queryBuilder))
+				.types(INDEX_SANIMAL_METADATA_TYPE)
+				// Some of the years may not have an index, skip those
+				.indicesOptions(IndicesOptions.lenientExpandOpen())
+				.source(new SearchSourceBuilder()
+					.query(queryBuilder.build())
+					.size(0)
+					// Species entries are nested, so count them inside of the nested documents. Each species bucket counts its animals,
+					// and uses a reverse nested aggregation to count the images instead of the species entries
+					.aggregation(AggregationBuilders.nested("speciesEntries", "imageMetadata.speciesEntries")
+						.subAggregation(AggregationBuilders.terms("species").field("imageMetadata.speciesEntries.species.scientificName").size(MAX_AGGREGATION_BUCKETS)
+							.subAggregation(AggregationBuilders.sum("animals").field("imageMetadata.speciesEntries.count"))
+							.subAggregation(AggregationBuilders.reverseNested("images"))))
+					.aggregation(AggregationBuilders.terms("locations").field("imageMetadata.location.id").size(MAX_AGGREGATION_BUCKETS))
+					.aggregation(AggregationBuilders.terms("years").field("imageMetadata.yearTaken").size(MAX_AGGREGATION_BUCKETS))
+					.aggregation(AggregationBuilders.terms("months").field("imageMetadata.monthTaken").size(12))
+					.aggregation(AggregationBuilders.terms("hours").field("imageMetadata.hourTaken").size(24))
+					// Dates are indexed with this computer's offset and the other date fields are in local time, so bucket months in the
+					// same time zone. Otherwise months would be split at midnight UTC and disagree with the per year and month counts
+					.aggregation(AggregationBuilders.dateHistogram("yearMonths").field("imageMetadata.dateTaken").dateHistogramInterval(DateHistogramInterval.MONTH).timeZone(DateTimeZone.forTimeZone(TimeZone.getDefault())).format("yyyy-MM").minDocCount(1)));
+		return searchRequest;
+	}
+
+	/**
+	 * Fetches the indexed metadata of every image in an upload with a single query. This lets us show an upload's
+	 * metadata without downloading any of its images
+	 *
+	 * @param uploadIRODSPath The path to the upload on CyVerse
+	 * @return A map of image storage path -> image entry containing the indexed metadata for that image, or null if the
+	 * index could not be read
+	 */
+	public Map<String, ImageEntry> fetchIndexedImagesForUpload(String uploadIRODSPath)
+	{
+		// The map of storage path -> image to return
+		Map<String, ImageEntry> toReturn = new HashMap<>();
 
-		// We use a scroll to retrieve results 50 at a time instead of all at once
-		Scroll scroll = new Scroll(TimeValue.timeValueMinutes(10));
+		// We use a scroll to retrieve results 500 at a time instead of all at once
+		Scroll scroll = new Scroll(TimeValue.timeValueMinutes(1));
 
-		// The search request to perform the query
+		// The search request to find all images in the upload. Every image in an upload has a storage path starting with the upload path
 		SearchRequest searchRequest = new SearchRequest();
 		searchRequest
 				.indices(INDEX_SANIMAL_METADATA)
 				.types(INDEX_SANIMAL_METADATA_TYPE)
+				// Don't fail if no metadata has been indexed yet
+				.indicesOptions(IndicesOptions.lenientExpandOpen())
 				// Set the scroll up so that we don't retrieve all results at once
 				.scroll(scroll)
-				// The source of the query will be our query builder
 				.source(new SearchSourceBuilder()
-					.query(queryBuilder.build())
-					.size(50)
+					.query(QueryBuilders.prefixQuery("storagePath", uploadIRODSPath + "/"))
+					.size(500)
 					.fetchSource(FetchSourceContext.FETCH_SOURCE));
 
 		try
@@ -887,32 +2211,31 @@ public class ElasticSearchConnectionManager
 			// Grab a list of hits from the search
 			SearchHit[] searchHits = searchResponse.getHits().getHits();
 
-			// A unique list of species and locations is used to ensure images with identical locations don't create two locations
-			List<Location> uniqueLocations = new LinkedList<>();
-			List<Species> uniqueSpecies = new LinkedList<>();
+			// Start with the user's species and locations so the images we create use the same objects as the rest of the program
+			Map<String, Location> uniqueLocations = new HashMap<>();
+			SanimalData.getInstance().getLocationList().forEach(location -> uniqueLocations.putIfAbsent(location.getId(), location));
+			Map<String, Species> uniqueSpecies = new HashMap<>();
+			SanimalData.getInstance().getSpeciesList().forEach(species -> uniqueSpecies.putIfAbsent(species.getScientificName().toLowerCase(), species));
 
 			// While we have results...
 			while (searchHits != null && searchHits.length > 0)
 			{
-				// Iterate over all search hits and fetch the source
+				// Iterate over all search hits and convert them into images
 				for (SearchHit searchHit : searchHits)
 				{
-					// Grab the source for the image, and convert it into a usable format
 					Map<String, Object> sourceAsMap = searchHit.getSourceAsMap();
-					// Conver the image and store it
+					// Grab the storage path before converting because the conversion modifies the source
+					Object storagePathObj = sourceAsMap.get("storagePath");
 					ImageEntry imageEntry = this.convertSourceToImage(sourceAsMap, uniqueSpecies, uniqueLocations);
-					if (imageEntry != null)
-						toReturn.add(imageEntry);
+					if (imageEntry != null && storagePathObj instanceof String)
+						toReturn.put((String) storagePathObj, imageEntry);
 				}
 
-				// Test if there are more results by using a scroll request
+				// Grab the next page of results
 				SearchScrollRequest searchScrollRequest = new SearchScrollRequest();
-				// Set the ID and scroll of this scroll request
 				searchScrollRequest
 					.scrollId(scrollID)
 					.scroll(scroll);
-				// Perform a search and save the result into the same object. ALso save hits and the next scroll ID
-				// for the next iteration
 				searchResponse = this.elasticSearchClient.searchScroll(searchScrollRequest);
 				scrollID = searchResponse.getScrollId();
 				searchHits = searchResponse.getHits().getHits();
@@ -921,16 +2244,16 @@ public class ElasticSearchConnectionManager
 			// After the query is complete we clear the scroll request
 			ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
 			clearScrollRequest.addScrollId(scrollID);
-			// Execute the scroll clear
 			ClearScrollResponse clearScrollResponse = this.elasticSearchClient.clearScroll(clearScrollRequest);
 			// If the clear fails, print an error
 			if (!clearScrollResponse.isSucceeded())
-				SanimalData.getInstance().getErrorDisplay().notify("Clearing the scroll after querying did not succeed!");
+				SanimalData.getInstance().getErrorDisplay().printError("Clearing the scroll after fetching upload metadata did not succeed!");
 		}
 		catch (IOException e)
 		{
 			// If something goes wrong with the query print an error
-			SanimalData.getInstance().getErrorDisplay().notify("Error occurred when performing query!\n" + ExceptionUtils.getStackTrace(e));
+			SanimalData.getInstance().getErrorDisplay().notify("Error fetching the indexed metadata for the upload!\n" + ExceptionUtils.getStackTrace(e));
+			return null;
 		}
 
 		return toReturn;
@@ -940,12 +2263,14 @@ public class ElasticSearchConnectionManager
 	 * Utility function used to convert raw index metadata into a structured format
 	 *
 	 * @param source The raw metadata in key->value format
-	 * @param uniqueSpecies A list of current species to be used. This ensures we don't allocate thousands of species objects
-	 * @param uniqueLocations A list of current locations to be used. This ensures we don't allocate thousands of location objects
+	 * @param uniqueSpecies Lower case scientific name -> species to be used. This ensures we don't allocate thousands of species
+	 *                      objects. New species are added to it, pass a concurrent map if it is shared between threads
+	 * @param uniqueLocations Location ID -> location to be used. This ensures we don't allocate thousands of location objects.
+	 *                        New locations are added to it, pass a concurrent map if it is shared between threads
 	 * @return An image entry representing the source, or null if something went wrong
 	 */
 	@SuppressWarnings("unchecked")
-	private ImageEntry convertSourceToImage(Map<String, Object> source, List<Species> uniqueSpecies, List<Location> uniqueLocations)
+	private ImageEntry convertSourceToImage(Map<String, Object> source, Map<String, Species> uniqueSpecies, Map<String, Location> uniqueLocations)
 	{
 		try
 		{
@@ -998,28 +2323,9 @@ public class ElasticSearchConnectionManager
 										Gson gson = SanimalData.getInstance().getGson();
 										Location tempLocation = gson.fromJson(gson.toJson(locationMap), Location.class);
 										List<SpeciesEntry> tempSpeciesEntries = gson.fromJson(gson.toJson(speciesEntryList), SPECIES_ENTRY_LIST_TYPE);
-										// Pull unique species off of the species entries list
-										List<Species> tempSpeciesList = tempSpeciesEntries.stream().map(SpeciesEntry::getSpecies).distinct().collect(Collectors.toList());
-										// Make sure each of the species has the default icon set
-										tempSpeciesList.forEach(species -> species.setSpeciesIcon(Species.DEFAULT_ICON));
-
-										// Compute a new location if we need to
-										Boolean locationForImagePresent = uniqueLocations.stream().anyMatch(location -> location.getId().equals(tempLocation.getId()));
-										// Do we have the location? If not add it
-										if (!locationForImagePresent)
-											uniqueLocations.add(tempLocation);
-
-										// Compute a new species (s) if we need to
-										for (Species tempSpecies : tempSpeciesList)
-										{
-											// Test if the species is present, if not add it
-											Boolean speciesForImagePresent = uniqueSpecies.stream().anyMatch(species -> species.getScientificName().equalsIgnoreCase(tempSpecies.getScientificName()));
-											if (!speciesForImagePresent)
-												uniqueSpecies.add(tempSpecies);
-										}
 
-										// Grab the correct location for the image entry
-										Location correctLocation = uniqueLocations.stream().filter(location -> location.getId().equals(tempLocation.getId())).findFirst().get();
+										// Grab the correct location for the image entry, if we don't have the location yet add it
+										Location correctLocation = uniqueLocations.computeIfAbsent(tempLocation.getId(), id -> tempLocation);
 										// Create the image entry
 										ImageEntry entry = new ImageEntry(new File(storagePath));
 										// Set the location and date taken
@@ -1028,8 +2334,13 @@ public class ElasticSearchConnectionManager
 										// Add the species to the image entries
 										for (SpeciesEntry tempSpeciesEntry : tempSpeciesEntries)
 										{
-											// Grab the species based on scientific name
-											Species correctSpecies = uniqueSpecies.stream().filter(species -> species.getScientificName().equals(tempSpeciesEntry.getSpecies().getScientificName())).findFirst().get();
+											// Grab the species based on scientific name, if we don't have the species yet add it with the default icon
+											Species tempSpecies = tempSpeciesEntry.getSpecies();
+											Species correctSpecies = uniqueSpecies.computeIfAbsent(tempSpecies.getScientificName().toLowerCase(), scientificName ->
+											{
+												tempSpecies.setSpeciesIcon(Species.DEFAULT_ICON);
+												return tempSpecies;
+											});
 											entry.addSpecies(correctSpecies, tempSpeciesEntry.getCount());
 										}
 										return entry;
@@ -1058,6 +2369,9 @@ public class ElasticSearchConnectionManager
 	{
 		super.finalize();
 
+		// Stop renewing bulk load leases
+		this.bulkLoadLeaseRenewer.shutdownNow();
+
 		// Close the elastic search connection
 		try
 		{
@@ -1068,4 +2382,455 @@ public class ElasticSearchConnectionManager
 			SanimalData.getInstance().getErrorDisplay().notify("Could not close ElasticSearch connection: \n" + ExceptionUtils.getStackTrace(e));
 		}
 	}
+
+	/**
+	 * Fetches the currently indexed version of images along with the index each one is stored in. Images are looked up by ID
+	 * through the metadata alias, so an image is found no matter which year's index it was written to
+	 *
+	 * @param cloudImageEntries The images to fetch
+	 * @return A map of image ID -> the concrete index holding the image and its indexed version, for each image that was found.
+	 * If the lookup failed null is returned
+	 */
+	private Map<String, Tuple<String, ImageEntry>> fetchIndexedImages(List<CloudImageEntry> cloudImageEntries)
+	{
+		Map<String, Tuple<String, ImageEntry>> toReturn = new HashMap<>();
+
+		Map<String, Location> uniqueLocations = new HashMap<>();
+		Map<String, Species> uniqueSpecies = new HashMap<>();
+		try
+		{
+			// Fetch the images a chunk at a time
+			for (List<CloudImageEntry> chunk : ListUtils.partition(cloudImageEntries, this.configuration.getBulkMaxActions()))
+			{
+				// The ID of an image is its path on CyVerse, see ElasticSearchSchemaManager.imageToJSONMap
+				String[] ids = chunk.stream().map(cloudImageEntry -> cloudImageEntry.getCyverseFile().getAbsolutePath().replace('\\', '/')).toArray(String[]::new);
+				// A get request only works on a single index, so search every yearly index through the alias for the IDs instead
+				SearchRequest searchRequest = new SearchRequest();
+				searchRequest
+						.indices(INDEX_SANIMAL_METADATA)
+						.types(INDEX_SANIMAL_METADATA_TYPE)
+						// Don't fail if no metadata has been indexed yet
+						.indicesOptions(IndicesOptions.lenientExpandOpen())
+						.source(new SearchSourceBuilder()
+							.query(QueryBuilders.idsQuery().addIds(ids))
+							.size(ids.length)
+							.fetchSource(FetchSourceContext.FETCH_SOURCE));
+
+				// Convert each image that was found, remembering which index it came from
+				SearchResponse searchResponse = this.elasticSearchClient.search(searchRequest);
+				for (SearchHit searchHit : searchResponse.getHits().getHits())
+				{
+					ImageEntry indexedImage = this.convertSourceToImage(searchHit.getSourceAsMap(), uniqueSpecies, uniqueLocations);
+					if (indexedImage != null)
+						toReturn.put(searchHit.getId(), Tuple.tuple(searchHit.getIndex(), indexedImage));
+				}
+			}
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().notify("Error fetching the indexed version of the images!\n" + ExceptionUtils.getStackTrace(e));
+			return null;
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Adds rollup changes into a running total of changes, keyed by rollup ID
+	 *
+	 * @param rollupChanges The running total of changes
+	 * @param changes The changes to add, from ElasticSearchSchemaManager.imageToRollupChanges
+	 */
+	void mergeRollupChanges(Map<String, Map<String, Object>> rollupChanges, List<Tuple<String, Map<String, Object>>> changes)
+	{
+		for (Tuple<String, Map<String, Object>> change : changes)
+		{
+			rollupChanges.merge(change.v1(), change.v2(), (total, added) ->
+			{
+				total.put("images", (Integer) total.get("images") + (Integer) added.get("images"));
+				total.put("animals", (Integer) total.get("animals") + (Integer) added.get("animals"));
+				total.put("firstTaken", Math.min((Long) total.get("firstTaken"), (Long) added.get("firstTaken")));
+				total.put("lastTaken", Math.max((Long) total.get("lastTaken"), (Long) added.get("lastTaken")));
+				return total;
+			});
+		}
+	}
+
+	/**
+	 * Sends rollup changes to the rollups index in chunks. Each change is a scripted upsert so changes from several users
+	 * can be applied at once
+	 *
+	 * @param rollupChanges The changes to send, keyed by rollup ID
+	 */
+	private void applyRollupChanges(Map<String, Map<String, Object>> rollupChanges)
+	{
+		List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		BulkProcessor bulkProcessor = this.createBulkProcessor(failures);
+		rollupChanges.forEach((rollupID, change) ->
+		{
+			// Changes that cancel out don't need to be sent
+			if ((Integer) change.get("images") != 0 || (Integer) change.get("animals") != 0)
+				bulkProcessor.add(new UpdateRequest()
+						.index(INDEX_SANIMAL_ROLLUPS)
+						.type(INDEX_SANIMAL_ROLLUPS_TYPE)
+						.id(rollupID)
+						// Other saves may be changing the same rollup, so if it changed under us try again
+						.retryOnConflict(COLLECTION_UPDATE_RETRY_COUNT)
+						.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, ROLLUP_UPDATE_SCRIPT, change))
+						// Run the script even if the rollup does not exist yet
+						.scriptedUpsert(true)
+						.upsert(Collections.emptyMap()));
+		});
+		this.closeBulkProcessor(bulkProcessor, failures, "Error updating the daily rollups!");
+	}
+
+	/**
+	 * Creates a bulk processor which sends the requests added to it in chunks. Documents rejected because the cluster is busy
+	 * are retried with a backoff, and any other failed document is recorded so that it can be reported once the processor
+	 * is closed
+	 *
+	 * @param failures The list that a message describing each failed document is added to, must be thread safe
+	 * @return The bulk processor
+	 */
+	private BulkProcessor createBulkProcessor(List<String> failures)
+	{
+		return this.createBulkProcessor(failures, null, null);
+	}
+
+	/**
+	 * Creates a bulk processor that sends chunks through executeBulkAsync and records failed documents and created documents
+	 *
+	 * @param failures A thread safe list that a description of each failed document is added to
+	 * @param createdIDs A thread safe set that the ID of each document that did not exist before is added to, or null
+	 * @param failedIDs A thread safe set that the ID of each failed document is added to, or null
+	 * @return The bulk processor, which must be closed with closeBulkProcessor
+	 */
+	private BulkProcessor createBulkProcessor(List<String> failures, Set<String> createdIDs, Set<String> failedIDs)
+	{
+		return this.configuration.createBulkProcessorBuilder(this::executeBulkAsync, new BulkProcessor.Listener()
+		{
+			@Override
+			public void beforeBulk(long executionId, BulkRequest request)
+			{
+			}
+
+			@Override
+			public void afterBulk(long executionId, BulkRequest request, BulkResponse response)
+			{
+				// Only the documents that failed are recorded, the rest of the chunk went through
+				if (response.hasFailures())
+				{
+					for (BulkItemResponse itemResponse : response.getItems())
+					{
+						if (itemResponse.isFailed())
+						{
+							failures.add(itemResponse.getId() + ": " + itemResponse.getFailureMessage());
+							if (failedIDs != null)
+								failedIDs.add(itemResponse.getId());
+						}
+					}
+				}
+
+				// Record which documents were created instead of replaced if asked to
+				if (createdIDs != null)
+					for (BulkItemResponse itemResponse : response.getItems())
+						if (!itemResponse.isFailed() && itemResponse.getResponse().getResult() == DocWriteResponse.Result.CREATED)
+							createdIDs.add(itemResponse.getId());
+			}
+
+			@Override
+			public void afterBulk(long executionId, BulkRequest request, Throwable failure)
+			{
+				// The whole chunk failed, so every document in it failed
+				for (DocWriteRequest<?> docWriteRequest : request.requests())
+				{
+					failures.add(docWriteRequest.id() + ": " + failure.getMessage());
+					if (failedIDs != null)
+						failedIDs.add(docWriteRequest.id());
+				}
+			}
+		}).build();
+	}
+
+	/**
+	 * Sends any requests left in a bulk processor and waits for every chunk to finish. If any document failed the user is
+	 * shown the first few failures
+	 *
+	 * @param bulkProcessor The bulk processor to close
+	 * @param failures The list of failures recorded by the processor
+	 * @param errorMessage The message shown to the user if any document failed
+	 * @return True if every document succeeded, false otherwise
+	 */
+	private Boolean closeBulkProcessor(BulkProcessor bulkProcessor, List<String> failures, String errorMessage)
+	{
+		try
+		{
+			if (!bulkProcessor.awaitClose(BULK_CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+				failures.add("Timed out waiting for the bulk requests to finish");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			failures.add("Interrupted while waiting for the bulk requests to finish");
+		}
+
+		if (!failures.isEmpty())
+		{
+			// There may be thousands of failures, so only show the first few
+			synchronized (failures)
+			{
+				SanimalData.getInstance().getErrorDisplay().notify(errorMessage + " " + failures.size() + " document(s) failed, the first failures were:\n" + String.join("\n", failures.subList(0, Math.min(failures.size(), MAX_REPORTED_BULK_FAILURES))));
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Executes a bulk request without waiting for the response, used by bulk processors. Documents the cluster rejects with
+	 * 429 (too many requests) are resent after an exponentially growing delay, as is the whole request if the cluster
+	 * rejects all of it, up to the configured number of retries
+	 *
+	 * @param bulkRequest The bulk request to execute
+	 * @param listener The listener that receives the response or failure
+	 */
+	private void executeBulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener)
+	{
+		this.executeBulkAsync(bulkRequest, listener, 0);
+	}
+
+	/**
+	 * Executes a bulk request without waiting for the response, retrying anything rejected with 429 (too many requests)
+	 *
+	 * @param bulkRequest The bulk request to execute
+	 * @param listener The listener that receives the response or failure. Items in the response line up with the request
+	 * @param attempt The number of times this request has already been retried
+	 */
+	private void executeBulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener, Integer attempt)
+	{
+		Boolean canRetry = attempt < this.configuration.getBulkBackoffMaxRetries();
+		this.sendBulkAsync(bulkRequest, new ActionListener<BulkResponse>()
+		{
+			@Override
+			public void onResponse(BulkResponse bulkResponse)
+			{
+				// Pick out the documents that the cluster was too busy to handle
+				List<BulkItemResponse> rejectedItems = Arrays.stream(bulkResponse.getItems())
+						.filter(itemResponse -> itemResponse.isFailed() && itemResponse.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS)
+						.collect(Collectors.toList());
+				if (rejectedItems.isEmpty() || !canRetry)
+				{
+					listener.onResponse(bulkResponse);
+					return;
+				}
+
+				// Resend only the rejected documents
+				BulkRequest retryRequest = new BulkRequest();
+				retryRequest.setRefreshPolicy(bulkRequest.getRefreshPolicy());
+				for (BulkItemResponse rejectedItem : rejectedItems)
+					retryRequest.add(bulkRequest.requests().get(rejectedItem.getItemId()));
+
+				ElasticSearchConnectionManager.this.scheduleBulkRetry(retryRequest, attempt, new ActionListener<BulkResponse>()
+				{
+					@Override
+					public void onResponse(BulkResponse retryResponse)
+					{
+						// Put the result of each resent document back where it was in the original response
+						BulkItemResponse[] itemResponses = bulkResponse.getItems().clone();
+						for (BulkItemResponse retryItem : retryResponse.getItems())
+						{
+							Integer itemID = rejectedItems.get(retryItem.getItemId()).getItemId();
+							itemResponses[itemID] = retryItem.isFailed() ?
+									new BulkItemResponse(itemID, retryItem.getOpType(), retryItem.getFailure()) :
+									new BulkItemResponse(itemID, retryItem.getOpType(), (DocWriteResponse) retryItem.getResponse());
+						}
+						listener.onResponse(new BulkResponse(itemResponses, bulkResponse.getTook().millis() + retryResponse.getTook().millis()));
+					}
+
+					@Override
+					public void onFailure(Exception exception)
+					{
+						// Only the resent documents failed, the rest of the original request went through
+						BulkItemResponse[] itemResponses = bulkResponse.getItems().clone();
+						for (BulkItemResponse rejectedItem : rejectedItems)
+							itemResponses[rejectedItem.getItemId()] = new BulkItemResponse(rejectedItem.getItemId(), rejectedItem.getOpType(),
+									new BulkItemResponse.Failure(rejectedItem.getIndex(), rejectedItem.getType(), rejectedItem.getId(), exception));
+						listener.onResponse(new BulkResponse(itemResponses, bulkResponse.getTook().millis()));
+					}
+				});
+			}
+
+			@Override
+			public void onFailure(Exception exception)
+			{
+				// If the cluster rejected the whole request because it was busy, send all of it again later
+				if (canRetry && ElasticSearchConnectionManager.this.isTooManyRequests(exception))
+					ElasticSearchConnectionManager.this.scheduleBulkRetry(bulkRequest, attempt, listener);
+				else
+					listener.onFailure(exception);
+			}
+		});
+	}
+
+	/**
+	 * Executes a bulk request again once its backoff delay has passed. The delay doubles with every attempt
+	 *
+	 * @param bulkRequest The bulk request to execute again
+	 * @param attempt The number of times this request has already been retried
+	 * @param listener The listener that receives the response or failure
+	 */
+	private void scheduleBulkRetry(BulkRequest bulkRequest, Integer attempt, ActionListener<BulkResponse> listener)
+	{
+		Long delayMillis = this.configuration.getBulkBackoffInitialDelayMillis().longValue() << attempt;
+		this.bulkRetryScheduler.schedule(() -> this.executeBulkAsync(bulkRequest, listener, attempt + 1), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Tests if a failed request was rejected with 429 (too many requests), either by the high level client or the low level one
+	 *
+	 * @param exception The exception the request failed with
+	 * @return True if the cluster was too busy to handle the request
+	 */
+	Boolean isTooManyRequests(Exception exception)
+	{
+		if (exception instanceof ResponseException)
+			return ((ResponseException) exception).getResponse().getStatusLine().getStatusCode() == RestStatus.TOO_MANY_REQUESTS.getStatus();
+		return exception instanceof ElasticsearchException && ((ElasticsearchException) exception).status() == RestStatus.TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * Sends a bulk request once without waiting for the response. If compression is enabled the request body is gzip
+	 * compressed before being sent, since bulk bodies are large and very repetitive
+	 *
+	 * @param bulkRequest The bulk request to send
+	 * @param listener The listener that receives the response or failure
+	 */
+	private void sendBulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener)
+	{
+		// Without compression just use the high level client
+		if (!this.configuration.getCompression())
+		{
+			this.elasticSearchClient.bulkAsync(bulkRequest, listener);
+			return;
+		}
+
+		// Ask the cluster to refresh if the bulk request asks for it
+		Map<String, String> parameters = new HashMap<>();
+		if (bulkRequest.getRefreshPolicy() != WriteRequest.RefreshPolicy.NONE)
+			parameters.put("refresh", bulkRequest.getRefreshPolicy().getValue());
+
+		// Build the compressed body
+		HttpEntity body;
+		try
+		{
+			body = new ByteArrayEntity(this.compressBulkBody(bulkRequest), BULK_CONTENT_TYPE);
+		}
+		catch (IOException e)
+		{
+			listener.onFailure(e);
+			return;
+		}
+
+		// Send it with the low level client
+		this.elasticSearchClient.getLowLevelClient().performRequestAsync("POST", "/_bulk", parameters, body, new ResponseListener()
+		{
+			@Override
+			public void onSuccess(Response response)
+			{
+				BulkResponse bulkResponse;
+				try
+				{
+					bulkResponse = ElasticSearchConnectionManager.this.parseBulkResponse(response);
+				}
+				catch (IOException e)
+				{
+					listener.onFailure(e);
+					return;
+				}
+				listener.onResponse(bulkResponse);
+			}
+
+			@Override
+			public void onFailure(Exception exception)
+			{
+				listener.onFailure(exception);
+			}
+		}, new BasicHeader(HttpHeaders.CONTENT_ENCODING, "gzip"), new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+	}
+
+	/**
+	 * Writes a bulk request in the bulk API's newline delimited JSON format and gzip compresses it
+	 *
+	 * @param bulkRequest The bulk request to write
+	 * @return The compressed request body
+	 * @throws IOException If a request could not be converted to JSON
+	 */
+	private byte[] compressBulkBody(BulkRequest bulkRequest) throws IOException
+	{
+		ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+		try (GZIPOutputStream body = new GZIPOutputStream(compressedBody))
+		{
+			for (DocWriteRequest<?> docWriteRequest : bulkRequest.requests())
+			{
+				// The first line is the action, which contains where the document goes
+				ByteArrayOutputStream actionLine = new ByteArrayOutputStream();
+				try (XContentBuilder action = XContentFactory.jsonBuilder(actionLine))
+				{
+					action.startObject().startObject(docWriteRequest.opType().getLowercase())
+							.field("_index", docWriteRequest.index())
+							.field("_type", docWriteRequest.type());
+					if (docWriteRequest.id() != null)
+						action.field("_id", docWriteRequest.id());
+					if (docWriteRequest.routing() != null)
+						action.field("routing", docWriteRequest.routing());
+					if (docWriteRequest instanceof UpdateRequest && ((UpdateRequest) docWriteRequest).retryOnConflict() > 0)
+						action.field("retry_on_conflict", ((UpdateRequest) docWriteRequest).retryOnConflict());
+					action.endObject().endObject();
+				}
+				actionLine.writeTo(body);
+				body.write('\n');
+
+				// The second line is the document (index) or the update (update). Deletes have no second line
+				if (docWriteRequest instanceof IndexRequest)
+				{
+					IndexRequest indexRequest = (IndexRequest) docWriteRequest;
+					if (indexRequest.getContentType() == XContentType.JSON)
+						indexRequest.source().writeTo(body);
+					else
+						body.write(XContentHelper.convertToJson(indexRequest.source(), false, indexRequest.getContentType()).getBytes(StandardCharsets.UTF_8));
+					body.write('\n');
+				}
+				else if (docWriteRequest instanceof UpdateRequest)
+				{
+					ByteArrayOutputStream updateLine = new ByteArrayOutputStream();
+					try (XContentBuilder update = XContentFactory.jsonBuilder(updateLine))
+					{
+						((UpdateRequest) docWriteRequest).toXContent(update, ToXContent.EMPTY_PARAMS);
+					}
+					updateLine.writeTo(body);
+					body.write('\n');
+				}
+			}
+		}
+		return compressedBody.toByteArray();
+	}
+
+	/**
+	 * Reads a bulk response from the low level client, decompressing it if the server compressed it
+	 *
+	 * @param response The response returned by the low level client
+	 * @return The parsed bulk response
+	 * @throws IOException If the response could not be read
+	 */
+	private BulkResponse parseBulkResponse(Response response) throws IOException
+	{
+		HttpEntity entity = response.getEntity();
+		// We asked for a gzip response, so if the server did compress the response decompress it
+		if ("gzip".equalsIgnoreCase(response.getHeader(HttpHeaders.CONTENT_ENCODING)))
+			entity = new GzipDecompressingEntity(entity);
+		try (InputStream content = entity.getContent();
+			 XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, content))
+		{
+			return BulkResponse.fromXContent(parser);
+		}
+	}
 }
@@ -0,0 +1,382 @@
+package model.elasticsearch;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.*;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.script.Script;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class used to move an index to a new mapping while it stays online. Documents are copied into a new versioned index with
+ * a throttled reindex, and then the index's name is atomically moved over to the new index as an alias
+ */
+class ElasticSearchIndexMigrator
+{
+	// The text placed between an index's name and its version, ex: users-v1530000000000
+	private static final String VERSION_SEPARATOR = "-v";
+	// How often we check on a running reindex
+	private static final Integer REINDEX_POLL_INTERVAL_SECONDS = 5;
+
+	// The client used to talk to the cluster
+	private final RestHighLevelClient elasticSearchClient;
+	// The settings used to throttle the copy
+	private final ElasticSearchConfiguration configuration;
+
+	/**
+	 * Constructor just stores the client and configuration
+	 *
+	 * @param elasticSearchClient The client used to talk to the cluster
+	 * @param configuration The settings used to throttle the copy
+	 */
+	ElasticSearchIndexMigrator(RestHighLevelClient elasticSearchClient, ElasticSearchConfiguration configuration)
+	{
+		this.elasticSearchClient = elasticSearchClient;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Migrates an index to a new mapping. The steps are:
+	 * 1. Create a new index named name-v(timestamp) with the new mapping
+	 * 2. Copy every document into it with a throttled reindex, applying the transform to each document
+	 * 3. Block writes to the old index and copy any documents written while the first copy was running
+	 * 4. Atomically point the name (and any extra aliases) at the new index
+	 * 5. Delete the old index
+	 * If anything fails before the swap the new index is deleted and the old index accepts writes again. Writes are rejected
+	 * between the final copy and the swap, and updates made to existing documents during the first copy are not carried
+	 * over, so migrations should run while the index is quiet
+	 *
+	 * @param name The name readers and writers use for the index. This may be a concrete index or an alias
+	 * @param type The mapping type of the index
+	 * @param mapping The new mapping, usually from ElasticSearchSchemaManager
+	 * @param settings The settings for the new index such as shard and replica count
+	 * @param extraAliases Other aliases the new index should be a part of, ex: the metadata read alias
+	 * @param transform A painless script run on each document as it is copied, or null to copy documents as is
+	 * @return The name of the new index
+	 * @throws IOException If the migration failed
+	 */
+	String migrate(String name, String type, XContentBuilder mapping, Settings settings, List<String> extraAliases, Script transform) throws IOException
+	{
+		// Find the index or indices currently behind the name
+		Set<String> oldIndices = this.resolveIndices(name);
+		if (oldIndices.isEmpty())
+			throw new IOException("There is no index named '" + name + "' to migrate!");
+		// Before the first migration the name is a concrete index, not an alias
+		Boolean nameIsIndex = oldIndices.contains(name);
+
+		// Create the new index. Refreshing is off and replicas are dropped while the copy runs
+		String newIndex = name + VERSION_SEPARATOR + System.currentTimeMillis();
+		try
+		{
+			CreateIndexRequest createIndexRequest = new CreateIndexRequest(newIndex);
+			createIndexRequest.settings(Settings.builder()
+					.put(settings)
+					.put("index.refresh_interval", "-1")
+					.put("index.number_of_replicas", 0));
+			createIndexRequest.mapping(type, mapping);
+			this.elasticSearchClient.indices().create(createIndexRequest);
+		}
+		catch (ElasticsearchStatusException e)
+		{
+			throw new IOException("Could not create the index '" + newIndex + "'!", e);
+		}
+
+		try
+		{
+			// Copy everything while the old index is still written to, then stop writes and copy whatever was added meanwhile
+			this.reindex(oldIndices, newIndex, transform, false);
+			for (String oldIndex : oldIndices)
+				this.setWriteBlock(oldIndex, true);
+			this.reindex(oldIndices, newIndex, transform, true);
+
+			// Restore the settings of the new index and make the copied documents searchable
+			this.elasticSearchClient.indices().putSettings(new UpdateSettingsRequest(newIndex).settings(Settings.builder()
+					.putNull("index.refresh_interval")
+					.put("index.number_of_replicas", settings.get("index.number_of_replicas", "0"))
+					.build()));
+			this.elasticSearchClient.indices().refresh(new RefreshRequest(newIndex));
+
+			// Swap the name and aliases over in a single request so readers and writers never see a missing index
+			IndicesAliasesRequest indicesAliasesRequest = new IndicesAliasesRequest();
+			for (String oldIndex : oldIndices)
+			{
+				// If the name is a concrete index it has to be removed before the alias can take its name
+				if (nameIsIndex && oldIndex.equals(name))
+					indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(oldIndex));
+				else
+				{
+					indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndex).alias(name));
+					for (String extraAlias : extraAliases)
+						indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndex).alias(extraAlias));
+				}
+			}
+			indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndex).alias(name));
+			for (String extraAlias : extraAliases)
+				indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndex).alias(extraAlias));
+			this.elasticSearchClient.indices().updateAliases(indicesAliasesRequest);
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			// The old index is still in use, so let it be written to again and remove the partial copy
+			try
+			{
+				for (String oldIndex : oldIndices)
+					this.setWriteBlock(oldIndex, false);
+				this.elasticSearchClient.indices().delete(new DeleteIndexRequest(newIndex));
+			}
+			catch (IOException | ElasticsearchStatusException ignored)
+			{
+			}
+			throw new IOException("Migrating '" + name + "' failed, the original index was left as is!", e);
+		}
+
+		// The old indices were fully copied before the swap and no longer have a name pointing at them, so remove them. If the
+		// name was a concrete index the swap already removed it
+		oldIndices.remove(name);
+		if (!oldIndices.isEmpty())
+			this.elasticSearchClient.indices().delete(new DeleteIndexRequest(oldIndices.toArray(new String[0])));
+
+		return newIndex;
+	}
+
+	/**
+	 * Splits a concrete index into several new indices and replaces it with an alias of the same name that reads from all of
+	 * them. The steps are:
+	 * 1. Copy every document into the new indices, the router script picks each document's index by setting ctx._index
+	 * 2. Block writes to the old index and copy any documents written during the first copy
+	 * 3. Atomically remove the old index and add its name as an alias of every new index
+	 * If anything fails before the swap the old index accepts writes again and is left untouched. The new indices must already
+	 * exist with their mappings, otherwise the copy would create them with dynamic mappings
+	 *
+	 * @param name The name of the concrete index to split
+	 * @param newIndices The indices the documents are split into
+	 * @param router A painless script run on each document as it is copied which sets ctx._index to one of the new indices
+	 * @throws IOException If the split failed
+	 */
+	void split(String name, Set<String> newIndices, Script router) throws IOException
+	{
+		Set<String> oldIndices = new TreeSet<>(Collections.singleton(name));
+		// The router picks the index of each document, but the reindex API still requires a destination
+		String defaultIndex = newIndices.iterator().next();
+		try
+		{
+			// Copy everything while the old index is still written to, then stop writes and copy whatever was added meanwhile
+			this.reindex(oldIndices, defaultIndex, router, false);
+			this.setWriteBlock(name, true);
+			this.reindex(oldIndices, defaultIndex, router, true);
+
+			// Swap the name over in a single request so readers never see a missing index
+			IndicesAliasesRequest indicesAliasesRequest = new IndicesAliasesRequest();
+			indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(name));
+			for (String newIndex : newIndices)
+				indicesAliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndex).alias(name));
+			this.elasticSearchClient.indices().updateAliases(indicesAliasesRequest);
+		}
+		catch (IOException | ElasticsearchStatusException e)
+		{
+			// The old index is still in use, so let it be written to again. Copied documents are left in the new indices,
+			// running the split again skips over them
+			try
+			{
+				this.setWriteBlock(name, false);
+			}
+			catch (IOException | ElasticsearchStatusException ignored)
+			{
+			}
+			throw new IOException("Splitting '" + name + "' failed, the original index was left as is!", e);
+		}
+	}
+
+	/**
+	 * Returns the concrete indices behind a name
+	 *
+	 * @param name The name of an index or an alias
+	 * @return The concrete indices, which is just the name if the name is an index, or an empty set if nothing has that name
+	 * @throws IOException If the cluster could not be reached
+	 */
+	Set<String> resolveIndices(String name) throws IOException
+	{
+		try
+		{
+			// The alias API returns an object keyed by each concrete index
+			Map<String, Object> response = this.readResponse(this.elasticSearchClient.getLowLevelClient().performRequest("GET", "/" + name + "/_alias"));
+			return new TreeSet<>(response.keySet());
+		}
+		catch (ResponseException e)
+		{
+			if (e.getResponse().getStatusLine().getStatusCode() == 404)
+				return new TreeSet<>();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies documents between indices with the reindex API. The copy runs in the background on the cluster and is
+	 * throttled so that the cluster stays responsive, this method waits for it to finish
+	 *
+	 * @param sourceIndices The indices to copy from
+	 * @param destinationIndex The index to copy to
+	 * @param transform A painless script run on each document, or null
+	 * @param onlyMissing If true only documents missing from the destination are copied
+	 * @throws IOException If the copy failed
+	 */
+	private void reindex(Set<String> sourceIndices, String destinationIndex, Script transform, Boolean onlyMissing) throws IOException
+	{
+		// Build the reindex body
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (XContentBuilder reindex = XContentFactory.jsonBuilder(body))
+		{
+			reindex.startObject();
+			// Documents that already exist in the destination are skipped instead of failing the copy
+			if (onlyMissing)
+				reindex.field("conflicts", "proceed");
+			reindex
+				.startObject("source")
+					.array("index", sourceIndices.toArray(new String[0]))
+					.field("size", this.configuration.getReindexBatchSize())
+				.endObject()
+				.startObject("dest")
+					.field("index", destinationIndex);
+			if (onlyMissing)
+				reindex.field("op_type", "create");
+			reindex.endObject();
+			if (transform != null)
+				reindex.field("script", transform);
+			reindex.endObject();
+		}
+
+		// Start the copy without waiting for it, we get back a task ID to check on
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("wait_for_completion", "false");
+		parameters.put("requests_per_second", this.configuration.getReindexRequestsPerSecond().toString());
+		String taskID = this.readResponse(this.elasticSearchClient.getLowLevelClient().performRequest("POST", "/_reindex", parameters, new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON))).get("task").toString();
+
+		// Wait for the copy to finish
+		this.waitForTask(taskID, "Copying into '" + destinationIndex + "'");
+	}
+
+	/**
+	 * Runs a script on every document in an index that matches a query with the update by query API. Like reindex the
+	 * update runs in the background on the cluster and is throttled, this method waits for it to finish. Documents changed
+	 * by someone else while the update runs are skipped
+	 *
+	 * @param index The index or alias to update
+	 * @param query The query selecting which documents to update
+	 * @param script A painless script run on each document
+	 * @throws IOException If the update failed
+	 */
+	void updateByQuery(String index, QueryBuilder query, Script script) throws IOException
+	{
+		// Build the update body
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (XContentBuilder update = XContentFactory.jsonBuilder(body))
+		{
+			update.startObject()
+					.field("query", query)
+					.field("script", script)
+				.endObject();
+		}
+
+		// Start the update without waiting for it, we get back a task ID to check on
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("conflicts", "proceed");
+		parameters.put("scroll_size", this.configuration.getReindexBatchSize().toString());
+		parameters.put("wait_for_completion", "false");
+		parameters.put("requests_per_second", this.configuration.getReindexRequestsPerSecond().toString());
+		String taskID = this.readResponse(this.elasticSearchClient.getLowLevelClient().performRequest("POST", "/" + index + "/_update_by_query", parameters, new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON))).get("task").toString();
+
+		// Wait for the update to finish
+		this.waitForTask(taskID, "Updating '" + index + "'");
+	}
+
+	/**
+	 * Waits for a background task started on the cluster to finish, checking on it every few seconds. If the waiting
+	 * thread is interrupted the task is cancelled
+	 *
+	 * @param taskID The ID of the task returned when it was started
+	 * @param description A description of the task used in error messages
+	 * @throws IOException If the task failed or any document in it failed
+	 */
+	@SuppressWarnings("unchecked")
+	private void waitForTask(String taskID, String description) throws IOException
+	{
+		Map<String, Object> task;
+		try
+		{
+			do
+			{
+				TimeUnit.SECONDS.sleep(REINDEX_POLL_INTERVAL_SECONDS);
+				task = this.readResponse(this.elasticSearchClient.getLowLevelClient().performRequest("GET", "/_tasks/" + taskID));
+			}
+			while (!Boolean.TRUE.equals(task.get("completed")));
+		}
+		catch (InterruptedException e)
+		{
+			// If we were interrupted stop the task too
+			this.elasticSearchClient.getLowLevelClient().performRequest("POST", "/_tasks/" + taskID + "/_cancel");
+			Thread.currentThread().interrupt();
+			throw new IOException(description + " was interrupted!", e);
+		}
+
+		// Make sure every document made it
+		if (task.containsKey("error"))
+			throw new IOException(description + " failed: " + task.get("error"));
+		Object taskResponse = task.get("response");
+		if (taskResponse instanceof Map<?, ?>)
+		{
+			Object failures = ((Map<String, Object>) taskResponse).get("failures");
+			if (failures instanceof List<?> && !((List<?>) failures).isEmpty())
+				throw new IOException(description + " failed for " + ((List<?>) failures).size() + " document(s), the first failure was: " + ((List<?>) failures).get(0));
+		}
+	}
+
+	/**
+	 * Blocks or unblocks writes to an index. Reads are still allowed while writes are blocked
+	 *
+	 * @param index The index to change
+	 * @param blocked True to block writes, false to allow them again
+	 * @throws IOException If the setting could not be changed
+	 */
+	private void setWriteBlock(String index, Boolean blocked) throws IOException
+	{
+		this.elasticSearchClient.indices().putSettings(new UpdateSettingsRequest(index).settings(Settings.builder()
+				.put("index.blocks.write", blocked)
+				.build()));
+	}
+
+	/**
+	 * Parses the JSON body of a low level response
+	 *
+	 * @param response The response returned by the low level client
+	 * @return The body as a map
+	 * @throws IOException If the response could not be read
+	 */
+	private Map<String, Object> readResponse(Response response) throws IOException
+	{
+		try (InputStream content = response.getEntity().getContent();
+			 XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, content))
+		{
+			return parser.map();
+		}
+	}
+}
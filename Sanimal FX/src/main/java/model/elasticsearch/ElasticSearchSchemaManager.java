@@ -1,8 +1,10 @@
 package model.elasticsearch;
 
+import com.google.gson.JsonObject;
 import model.SanimalData;
 import model.constant.SanimalMetadataFields;
 import model.cyverse.ImageCollection;
+import model.image.CloudUploadEntry;
 import model.image.ImageEntry;
 import model.location.Location;
 import model.species.Species;
@@ -17,7 +19,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -107,6 +113,12 @@ public class ElasticSearchSchemaManager
 							.startObject("noPopups")
 								.field("type", "boolean")
 							.endObject()
+							.startObject("metadataOnlyCloudSaves")
+								.field("type", "boolean")
+							.endObject()
+							.startObject("cloudImageCacheSizeMB")
+								.field("type", "double")
+							.endObject()
 						.endObject()
 					.endObject()
 				.endObject()
@@ -193,6 +205,12 @@ public class ElasticSearchSchemaManager
 									.endObject()
 								.endObject()
 							.endObject()
+							.startObject("speciesScientificNames")
+								.field("type", "keyword")
+							.endObject()
+							.startObject("speciesCount")
+								.field("type", "integer")
+							.endObject()
 						.endObject()
 					.endObject()
 				.endObject()
@@ -244,29 +262,112 @@ public class ElasticSearchSchemaManager
 							.endObject()
 						.endObject()
 					.endObject()
-					.startObject("uploads")
-						.field("type", "nested")
-						.startObject("properties")
-							.startObject("uploadUser")
-								.field("type", "keyword")
-							.endObject()
-							.startObject("uploadDate")
-								.field("type", "date")
-								.field("format", "date_time")
-							.endObject()
-							.startObject("imagesWithSpecies")
-								.field("type", "integer")
-							.endObject()
-							.startObject("imageCount")
-								.field("type", "integer")
-							.endObject()
-							.startObject("editComments")
-								.field("type", "text")
-							.endObject()
-							.startObject("uploadIRODSPath")
-								.field("type", "keyword")
-							.endObject()
-						.endObject()
+				.endObject()
+			.endObject()
+		.endObject();
+	}
+
+	/**
+	 * Helper function which returns the JSON required to create the uploads index mapping. Each upload is its own document
+	 * so that uploading and saving never rewrites the collection document
+	 *
+	 * @return An XContentBuilder which can be used to create JSON in Java
+	 */
+	XContentBuilder makeSanimalUploadsIndexMapping(String indexType) throws IOException
+	{
+		return XContentFactory.jsonBuilder()
+		.startObject()
+			.startObject(indexType)
+				.startObject("properties")
+					.startObject("collectionID")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("uploadUser")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("uploadDate")
+						.field("type", "date")
+						.field("format", "date_time")
+					.endObject()
+					.startObject("imagesWithSpecies")
+						.field("type", "integer")
+					.endObject()
+					.startObject("imageCount")
+						.field("type", "integer")
+					.endObject()
+					.startObject("editComments")
+						.field("type", "text")
+					.endObject()
+					.startObject("uploadIRODSPath")
+						.field("type", "keyword")
+					.endObject()
+				.endObject()
+			.endObject()
+		.endObject();
+	}
+
+	/**
+	 * Helper function which returns the JSON required to create the rollups index mapping. Each rollup counts the images
+	 * of one species taken at one location in one collection on one day
+	 *
+	 * @return An XContentBuilder which can be used to create JSON in Java
+	 */
+	XContentBuilder makeSanimalRollupsIndexMapping(String indexType) throws IOException
+	{
+		return XContentFactory.jsonBuilder()
+		.startObject()
+			.startObject(indexType)
+				.startObject("properties")
+					.startObject("collectionID")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("locationID")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("scientificName")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("day")
+						.field("type", "date")
+						.field("format", "date")
+					.endObject()
+					.startObject("imageCount")
+						.field("type", "integer")
+					.endObject()
+					.startObject("animalCount")
+						.field("type", "integer")
+					.endObject()
+					.startObject("firstTaken")
+						.field("type", "date")
+						.field("format", "epoch_millis")
+					.endObject()
+					.startObject("lastTaken")
+						.field("type", "date")
+						.field("format", "epoch_millis")
+					.endObject()
+				.endObject()
+			.endObject()
+		.endObject();
+	}
+
+	/**
+	 * Helper function which returns the JSON required to create the bulk loads index mapping. Each document is a lease
+	 * held by a client while it has metadata indices tuned for a bulk load
+	 *
+	 * @return An XContentBuilder which can be used to create JSON in Java
+	 */
+	XContentBuilder makeSanimalBulkLoadsIndexMapping(String indexType) throws IOException
+	{
+		return XContentFactory.jsonBuilder()
+		.startObject()
+			.startObject(indexType)
+				.startObject("properties")
+					.startObject("indices")
+						.field("type", "keyword")
+					.endObject()
+					.startObject("expires")
+						.field("type", "date")
+						.field("format", "epoch_millis")
 					.endObject()
 				.endObject()
 			.endObject()
@@ -401,8 +502,10 @@ public class ElasticSearchSchemaManager
 	 */
 	XContentBuilder makeCreateCollection(ImageCollection imageCollection) throws IOException
 	{
-		// Convert the collection to JSON
-		String collectionJSON = SanimalData.getInstance().getGson().toJson(imageCollection);
+		// Convert the collection to JSON. Uploads are stored in their own index, so leave them out
+		JsonObject collectionJSONTree = SanimalData.getInstance().getGson().toJsonTree(imageCollection).getAsJsonObject();
+		collectionJSONTree.remove("uploads");
+		String collectionJSON = SanimalData.getInstance().getGson().toJson(collectionJSONTree);
 
 		// Read this JSON directly and return it. Simple as that
 		return XContentFactory.jsonBuilder()
@@ -435,6 +538,45 @@ public class ElasticSearchSchemaManager
 		.endObject();
 	}
 
+	/**
+	 * Utility function used to create a JSON request body which creates an upload
+	 *
+	 * @param collectionID The ID of the collection that the upload belongs to
+	 * @param uploadEntry The upload to create the request for
+	 * @return A JSON builder formatted to create an upload
+	 * @throws IOException If the JSON is improperly formatted
+	 */
+	XContentBuilder makeCreateUpload(String collectionID, CloudUploadEntry uploadEntry) throws IOException
+	{
+		return XContentFactory.jsonBuilder()
+		.startObject()
+			.field("collectionID", collectionID)
+			.field("uploadUser", uploadEntry.getUploadUser())
+			.field("uploadDate", uploadEntry.getUploadDate().atZone(ZoneId.systemDefault()).format(SanimalMetadataFields.INDEX_DATE_TIME_FORMAT))
+			.field("imagesWithSpecies", uploadEntry.getImagesWithSpecies())
+			.field("imageCount", uploadEntry.getImageCount())
+			.field("editComments", uploadEntry.getEditComments())
+			.field("uploadIRODSPath", uploadEntry.getUploadIRODSPath())
+		.endObject();
+	}
+
+	/**
+	 * Utility function used to create a JSON request body which creates or renews a bulk load lease
+	 *
+	 * @param indices The metadata indices tuned for the bulk load
+	 * @param expires The time the lease runs out in milliseconds since the epoch
+	 * @return A JSON builder formatted to create a bulk load lease
+	 * @throws IOException If the JSON is improperly formatted
+	 */
+	XContentBuilder makeBulkLoadLease(Collection<String> indices, Long expires) throws IOException
+	{
+		return XContentFactory.jsonBuilder()
+		.startObject()
+			.field("indices", indices)
+			.field("expires", expires)
+		.endObject();
+	}
+
 	/**
 	 * Utility function used to convert an image entry to its JSON representation
 	 *
@@ -497,13 +639,57 @@ public class ElasticSearchSchemaManager
 					.endObject();
 		}
 
-		// Finalize the JSON object
+		// Finalize the species entries and store a flat copy of the species on the image. The flat copy can be filtered on with
+		// a simple terms query which is much cheaper than a nested query
 		imageJSON
 				.endArray()
+				.array("speciesScientificNames", imageEntry.getSpeciesPresent().stream().map(speciesEntry -> speciesEntry.getSpecies().getScientificName()).distinct().toArray(String[]::new))
+				.field("speciesCount", imageEntry.getSpeciesPresent().stream().mapToInt(SpeciesEntry::getCount).sum())
 			.endObject()
 		.endObject();
 
 		// We return two fields, one is the absolute path of the image file, and the other is the JSON representing the image metadata
 		return Tuple.tuple(fixedAbsolutePath, imageJSON);
 	}
+
+	/**
+	 * Utility function used to compute how an image changes the daily rollups. An image adds one image and its animals to
+	 * the rollup of each species on it. Images without species are added to a rollup with an empty scientific name so that
+	 * days with images but no animals are still counted
+	 *
+	 * @param imageEntry The image to compute rollup changes for
+	 * @param collectionID The ID of the collection that the image belongs to
+	 * @param direction 1 if the image is being added to the rollups, -1 if it is being removed
+	 * @return A list of rollup document IDs and the change to make to each rollup
+	 */
+	List<Tuple<String, Map<String, Object>>> imageToRollupChanges(ImageEntry imageEntry, String collectionID, Integer direction)
+	{
+		// Total the animals of each species on the image, an image may list the same species more than once
+		Map<String, Integer> animalsPerSpecies = new HashMap<>();
+		for (SpeciesEntry speciesEntry : imageEntry.getSpeciesPresent())
+			animalsPerSpecies.merge(speciesEntry.getSpecies().getScientificName(), speciesEntry.getCount(), Integer::sum);
+		if (animalsPerSpecies.isEmpty())
+			animalsPerSpecies.put("", 0);
+
+		String locationID = imageEntry.getLocationTaken().getId();
+		String day = imageEntry.getDateTaken().toLocalDate().toString();
+		Long taken = imageEntry.getDateTaken().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+		// One change per species, these are used as the parameters of the rollup update script
+		List<Tuple<String, Map<String, Object>>> changes = new ArrayList<>();
+		animalsPerSpecies.forEach((scientificName, animals) ->
+		{
+			Map<String, Object> change = new HashMap<>();
+			change.put("collectionID", collectionID);
+			change.put("locationID", locationID);
+			change.put("scientificName", scientificName);
+			change.put("day", day);
+			change.put("images", direction);
+			change.put("animals", direction * animals);
+			change.put("firstTaken", taken);
+			change.put("lastTaken", taken);
+			changes.add(Tuple.tuple(String.join("|", collectionID, locationID, scientificName, day), change));
+		});
+		return changes;
+	}
 }
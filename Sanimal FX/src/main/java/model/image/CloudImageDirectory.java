@@ -3,7 +3,8 @@ package model.image;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.image.Image;
-import org.irods.jargon.core.pub.io.IRODSFile;
+
+import java.io.File;
 
 /**
  * Image directory that's originally on a cloud
@@ -14,14 +15,14 @@ public class CloudImageDirectory extends ImageDirectory
 	private static final Image DEFAULT_CLOUD_DIR_IMAGE = new Image(ImageEntry.class.getResource("/images/importWindow/cloudDirectoryIcon.png").toString());
 
 	// The file representing the directory
-	private ObjectProperty<IRODSFile> cyverseDirectoryProperty = new SimpleObjectProperty<>();
+	private ObjectProperty<File> cyverseDirectoryProperty = new SimpleObjectProperty<>();
 
 	/**
 	 * Construct a cyverse Directory
 	 *
 	 * @param cyverseDirectory The file that represents the cyverseDirectoryProperty
 	 */
-	public CloudImageDirectory(IRODSFile cyverseDirectory)
+	public CloudImageDirectory(File cyverseDirectory)
 	{
 		// No local file
 		super(null);
@@ -46,17 +47,17 @@ public class CloudImageDirectory extends ImageDirectory
 	/// Setters/Getters
 	///
 
-	public IRODSFile getCyverseDirectory()
+	public File getCyverseDirectory()
 	{
 		return cyverseDirectoryProperty.getValue();
 	}
 
-	public void setCyverseDirectory(IRODSFile file)
+	public void setCyverseDirectory(File file)
 	{
 		this.cyverseDirectoryProperty.setValue(file);
 	}
 
-	public ObjectProperty<IRODSFile> getCyverseDirectoryProperty()
+	public ObjectProperty<File> getCyverseDirectoryProperty()
 	{
 		return this.cyverseDirectoryProperty;
 	}
@@ -1,19 +1,21 @@
 package model.image;
 
+import javafx.application.Platform;
 import javafx.beans.binding.Binding;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.scene.image.Image;
 import model.SanimalData;
 import model.location.Location;
 import model.species.Species;
+import model.species.SpeciesEntry;
 import model.threading.ErrorTask;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.irods.jargon.core.pub.io.IRODSFile;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,7 +43,7 @@ public class CloudImageEntry extends ImageEntry
 	private static File PLACEHOLDER_FILE = null;
 
 	// The CyVerse file
-	private ObjectProperty<IRODSFile> cyverseFileProperty = new SimpleObjectProperty<>();
+	private ObjectProperty<File> cyverseFileProperty = new SimpleObjectProperty<>();
 
 	// Transient because we don't want these to be written to disk
 
@@ -49,17 +51,28 @@ public class CloudImageEntry extends ImageEntry
 	private transient final BooleanProperty hasBeenPulledFromCloud = new SimpleBooleanProperty(false);
 	// If the image entry is currently being downloaded from CyVerse
 	private transient final BooleanProperty isBeingPulledFromCloud = new SimpleBooleanProperty(false);
+	// If either the user or the prefetcher has claimed the download of this image, ensures the image is only downloaded once
+	private transient final AtomicBoolean pullClaimed = new AtomicBoolean(false);
 	// If the image entry was tagged with species on CyVerse
 	private transient final AtomicBoolean wasTaggedWithSpecies = new AtomicBoolean(false);
 	// If the current version of the image is dirty compared to the one on CyVerse
 	private transient final AtomicBoolean isCloudDirty = new AtomicBoolean(false);
+	// If the image's metadata has been filled in from the metadata index, in which case we don't need to download the image to read it
+	private transient final BooleanProperty hasIndexedMetadata = new SimpleBooleanProperty(false);
+	// A small preview of the image shown until the full image is downloaded, null if the image has no thumbnail
+	private transient File thumbnailFile = null;
+	// Tags saved with a metadata only save that have not been written into the image file on CyVerse yet
+	private transient ImageTagDelta pendingTagDelta = null;
+	// The key of this version of the image in the cloud image cache, null if the image should not be cached
+	private transient String cacheKey = null;
 
 	/**
 	 * Create a new image entry with an image file
 	 *
 	 * @param cloudFile The file which can be a temporary local file
+	 * @param cacheKey The key of this version of the image in the cloud image cache, or null if the image should not be cached
 	 */
-	public CloudImageEntry(IRODSFile cloudFile)
+	public CloudImageEntry(File cloudFile, String cacheKey)
 	{
 		// No local file
 		super(null);
@@ -85,7 +98,7 @@ public class CloudImageEntry extends ImageEntry
 		// The image is checked if the location is valid and the species present list is not empty
 		Binding<Image> imageBinding = Bindings.createObjectBinding(() ->
 		{
-			if (!this.hasBeenPulledFromCloud.getValue())
+			if (!this.hasBeenPulledFromCloud.getValue() && !this.hasIndexedMetadata.getValue())
 				return NO_DOWNLOAD_CLOUD_IMAGE_ICON;
 			else if (this.getLocationTaken() != null && this.getLocationTaken().locationValid() && !this.getSpeciesPresent().isEmpty())
 				return CHECKED_CLOUD_IMAGE_ICON;
@@ -95,11 +108,12 @@ public class CloudImageEntry extends ImageEntry
 				return LOCATION_ONLY_CLOUD_IMAGE_ICON;
 			else
 				return DEFAULT_CLOUD_IMAGE_ICON;
-		}, this.locationTakenProperty(), this.getSpeciesPresent(), this.hasBeenPulledFromCloud);
+		}, this.locationTakenProperty(), this.getSpeciesPresent(), this.hasBeenPulledFromCloud, this.hasIndexedMetadata);
 		this.selectedImageProperty.bind(imageBinding);
 
 		this.getFileProperty().setValue(PLACEHOLDER_FILE);
 		this.setCyverseFile(cloudFile);
+		this.cacheKey = cacheKey;
 	}
 
 	/**
@@ -115,55 +129,61 @@ public class CloudImageEntry extends ImageEntry
 	}
 
 	/**
-	 * We can set the date taken without the image but don't write to disk
+	 * We can set the date taken without the image but don't write to disk. If we already know the image's tags from the
+	 * index the image isn't downloaded, the edit is saved as a tag delta instead
 	 *
 	 * @param date The new date taken
 	 */
 	@Override
 	public void setDateTaken(LocalDateTime date)
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		super.setDateTaken(date);
 	}
 
 	/**
-	 * If we haven't pulled yet we just return null
+	 * If we haven't pulled yet and the date isn't indexed we just return null
 	 *
-	 * @return Null or a real date if we have pulled from the cloud
+	 * @return Null or a real date if we have pulled from the cloud or have indexed metadata
 	 */
 	@Override
 	public LocalDateTime getDateTaken()
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		return super.getDateTaken();
 	}
 
 	/**
-	 * We can set the location taken without the image but don't write to disk
+	 * We can set the location taken without the image but don't write to disk. If we already know the image's tags from
+	 * the index the image isn't downloaded, the edit is saved as a tag delta instead
 	 *
 	 * @param location The new location the image was taken at
 	 */
 	@Override
 	public void setLocationTaken(Location location)
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		super.setLocationTaken(location);
 	}
 
 	/**
-	 * If we haven't pulled yet we just return null
+	 * If we haven't pulled yet and the location isn't indexed we just return null
 	 *
 	 * @return The location taken or null if it has not yet been determined
 	 */
 	@Override
 	public Location getLocationTaken()
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		return super.getLocationTaken();
 	}
 
 	/**
-	 * Add a species and a count to the image
+	 * Add a species and a count to the image. If we already know the image's tags from the index the image isn't downloaded
 	 *
 	 * @param species The species of the animal
 	 * @param amount The amount of that species to add
@@ -171,22 +191,46 @@ public class CloudImageEntry extends ImageEntry
 	@Override
 	public void addSpecies(Species species, Integer amount)
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		super.addSpecies(species, amount);
 	}
 
 	/**
-	 * Remove a species from the image
+	 * Remove a species from the image. If we already know the image's tags from the index the image isn't downloaded
 	 *
 	 * @param species The species to remove
 	 */
 	@Override
 	public void removeSpecies(Species species)
 	{
-		this.pullFromCloudIfNotPulled();
+		if (!this.hasIndexedMetadata.getValue())
+			this.pullFromCloudIfNotPulled();
 		super.removeSpecies(species);
 	}
 
+	/**
+	 * Fills in this image's metadata from the metadata index so that it can be displayed and analyzed without
+	 * downloading the image. The image itself is still downloaded once it is viewed or edited
+	 *
+	 * @param indexedImage An image containing the indexed metadata of this image
+	 */
+	public void setIndexedMetadata(ImageEntry indexedImage)
+	{
+		// Use the super methods so that we don't trigger a download
+		super.setDateTaken(indexedImage.getDateTaken());
+		super.setLocationTaken(indexedImage.getLocationTaken());
+		super.getSpeciesPresent().clear();
+		// Add the entries to the list directly, addSpecies calls our removeSpecies which would download the image
+		for (SpeciesEntry speciesEntry : indexedImage.getSpeciesPresent())
+			super.getSpeciesPresent().add(new SpeciesEntry(speciesEntry.getSpecies(), speciesEntry.getCount()));
+		// Update flags, the indexed metadata is what's on CyVerse so we are not dirty
+		this.wasTaggedWithSpecies.set(!this.getSpeciesPresent().isEmpty());
+		super.markDiskDirty(false);
+		this.markCloudDirty(false);
+		this.hasIndexedMetadata.setValue(true);
+	}
+
 	/**
 	 * Marks the image entry as dirty meaning it needs to be written to disk
 	 *
@@ -230,7 +274,8 @@ public class CloudImageEntry extends ImageEntry
 	 */
 	public Boolean isCloudDirty()
 	{
-		if (!this.hasBeenPulledFromCloud.getValue())
+		// Images can only be edited once they have been downloaded or their tags are known from the index
+		if (!this.hasBeenPulledFromCloud.getValue() && !this.hasIndexedMetadata.getValue())
 			return false;
 		return this.isCloudDirty.get();
 	}
@@ -246,12 +291,15 @@ public class CloudImageEntry extends ImageEntry
 	}
 
 	/**
-	 * Pulls the given image from the cloud
+	 * Pulls the given image from the cloud. The user is waiting on this image so prefetches are paused until it finishes
 	 */
 	private void pullFromCloud()
 	{
 		// Set a flag that we're pulling from the cloud
 		this.isBeingPulledFromCloud.setValue(true);
+		// Let the prefetcher know that it should give way to this download
+		CloudImagePrefetcher cloudImagePrefetcher = SanimalData.getInstance().getCloudImagePrefetcher();
+		cloudImagePrefetcher.interactivePullStarted(this);
 		// Download the file
 		ErrorTask<File> pullTask = new ErrorTask<File>()
 		{
@@ -259,35 +307,94 @@ public class CloudImageEntry extends ImageEntry
 			protected File call()
 			{
 				this.updateMessage("Downloading the image " + getCyverseFile().getName() + " for editing...");
-				return SanimalData.getInstance().getCyConnectionManager().remoteToLocalImageFile(getCyverseFile());
+				return SanimalData.getInstance().getCyConnectionManager().remoteToLocalImageFile(getCyverseFile(), cacheKey);
 			}
 		};
 
 		// Once it's done set the local file and
 		pullTask.setOnSucceeded(event ->
 		{
-			File localFile = pullTask.getValue();
-			this.getFileProperty().setValue(localFile);
-			// Read the metadata into the image file
-			super.readFileMetadataIntoImage(SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
-			// Update flags
-			if (!this.getSpeciesPresent().isEmpty())
-				wasTaggedWithSpecies.set(true);
-			this.hasBeenPulledFromCloud.setValue(true);
-			this.isBeingPulledFromCloud.setValue(false);
-			this.markCloudDirty(false);
+			cloudImagePrefetcher.interactivePullFinished();
+			this.finishPull(pullTask.getValue());
+		});
+		// If the download failed or was cancelled let the image be pulled again later
+		pullTask.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event ->
+		{
+			cloudImagePrefetcher.interactivePullFinished();
+			this.finishPull(null);
+		});
+		pullTask.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, event ->
+		{
+			cloudImagePrefetcher.interactivePullFinished();
+			this.finishPull(null);
 		});
 
 		SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(pullTask);
 	}
 
+	/**
+	 * Pulls the image file from CyVerse on the current thread if it has not yet been downloaded or claimed by another pull.
+	 * Used by the cloud image prefetcher
+	 */
+	void prefetchFromCloud()
+	{
+		// Make sure we didnt already or are not already pulling
+		if (!this.hasBeenPulledFromCloud.getValue() && this.pullClaimed.compareAndSet(false, true))
+		{
+			Platform.runLater(() -> this.isBeingPulledFromCloud.setValue(true));
+			// Download the file
+			File localFile = SanimalData.getInstance().getCyConnectionManager().remoteToLocalImageFile(this.getCyverseFile(), this.cacheKey);
+			Platform.runLater(() -> this.finishPull(localFile));
+		}
+	}
+
+	/**
+	 * Called on the FX thread once an image has been downloaded. Reads the downloaded file's metadata into the image
+	 *
+	 * @param localFile The downloaded file, or null if the download failed
+	 */
+	private void finishPull(File localFile)
+	{
+		// If the download failed, release our claim so that the image can be pulled again
+		if (localFile == null)
+		{
+			this.isBeingPulledFromCloud.setValue(false);
+			this.pullClaimed.set(false);
+			return;
+		}
+
+		this.getFileProperty().setValue(localFile);
+		// If we already have the indexed metadata it's the latest version of the image's tags, so we don't read the file's
+		// metadata. Instead we mark the local file as dirty so that its metadata gets updated to match the index. This also
+		// keeps any edits made while the image was downloading
+		if (this.hasIndexedMetadata.getValue())
+		{
+			super.markDiskDirty(true);
+			this.hasBeenPulledFromCloud.setValue(true);
+			this.isBeingPulledFromCloud.setValue(false);
+			return;
+		}
+
+		// Read the metadata into the image file
+		super.readFileMetadataIntoImage(SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
+		// If the image was saved with a metadata only save, its file is out of date so apply the saved tags on top
+		if (this.pendingTagDelta != null)
+			this.pendingTagDelta.applyTo(this, SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
+		// Update flags
+		if (!this.getSpeciesPresent().isEmpty())
+			wasTaggedWithSpecies.set(true);
+		this.hasBeenPulledFromCloud.setValue(true);
+		this.isBeingPulledFromCloud.setValue(false);
+		this.markCloudDirty(false);
+	}
+
 	/**
 	 * Pulls the image file from CyVerse if it has not yet been downloaded
 	 */
 	public void pullFromCloudIfNotPulled()
 	{
-		// Make sure we didnt already or are not already pulling
-		if (!this.hasBeenPulledFromCloud.getValue() && !this.isBeingPulledFromCloud.getValue())
+		// Make sure we didnt already or are not already pulling. If a prefetch is already downloading this image we just wait for it
+		if (!this.hasBeenPulledFromCloud.getValue() && this.pullClaimed.compareAndSet(false, true))
 			this.pullFromCloud();
 	}
 
@@ -306,17 +413,17 @@ public class CloudImageEntry extends ImageEntry
 	/// Getters/Setters
 	///
 
-	public IRODSFile getCyverseFile()
+	public File getCyverseFile()
 	{
 		return cyverseFileProperty.getValue();
 	}
 
-	private void setCyverseFile(IRODSFile file)
+	private void setCyverseFile(File file)
 	{
 		this.cyverseFileProperty.setValue(file);
 	}
 
-	public ObjectProperty<IRODSFile> cyverseFileProperty()
+	public ObjectProperty<File> cyverseFileProperty()
 	{
 		return this.cyverseFileProperty;
 	}
@@ -326,8 +433,36 @@ public class CloudImageEntry extends ImageEntry
 		return this.hasBeenPulledFromCloud.getValue();
 	}
 
+	Boolean isBeingPulledFromCloud()
+	{
+		return this.isBeingPulledFromCloud.getValue();
+	}
+
 	public Boolean wasTaggedWithSpecies()
 	{
 		return this.wasTaggedWithSpecies.get();
 	}
+
+	public void setThumbnailFile(File thumbnailFile)
+	{
+		this.thumbnailFile = thumbnailFile;
+		// Show the thumbnail instead of the placeholder until the full image is downloaded
+		if (!this.hasBeenPulledFromCloud.getValue())
+			this.getFileProperty().setValue(thumbnailFile);
+	}
+
+	public Boolean hasThumbnail()
+	{
+		return this.thumbnailFile != null;
+	}
+
+	public void setPendingTagDelta(ImageTagDelta pendingTagDelta)
+	{
+		this.pendingTagDelta = pendingTagDelta;
+	}
+
+	public ImageTagDelta getPendingTagDelta()
+	{
+		return this.pendingTagDelta;
+	}
 }
@@ -0,0 +1,429 @@
+package model.image;
+
+import javafx.collections.ListChangeListener;
+import model.SanimalData;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Class used to download cloud images before the user selects them so that stepping through a cloud directory does not
+ * stall on every image. Prefetches always give way to images the user is waiting on
+ */
+public class CloudImagePrefetcher
+{
+	// The number of images after the selected image (in tree order) to prefetch
+	private static final Integer PREFETCH_WINDOW_SIZE = 10;
+	// The number of images in the same directory as the selected item to prefetch
+	private static final Integer PREFETCH_SIBLING_COUNT = 10;
+	// The number of images to look at when filling the window, so that a tree of already pulled images isn't scanned to the end
+	private static final Integer PREFETCH_SCAN_LIMIT = 100;
+	// The number of images that may be prefetched at the same time
+	private static final Integer PREFETCH_THREAD_COUNT = 2;
+	// The number of extra threads that may be started while downloads that fell out of the window finish
+	private static final Integer MAX_STALE_PREFETCHES = 2;
+
+	// The thread pool that prefetches are run on. The queue is ordered so that the newest window runs first, closest images
+	// first. These are daemon threads so that they never keep SANIMAL from exiting
+	private final ThreadPoolExecutor prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREAD_COUNT, PREFETCH_THREAD_COUNT + MAX_STALE_PREFETCHES, 30L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable ->
+	{
+		Thread thread = new Thread(runnable, "Cloud Image Prefetcher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// A map of image -> prefetch for every image in the current prefetch window
+	private final Map<CloudImageEntry, Prefetch> prefetches = new ConcurrentHashMap<>();
+	// The number of times the window has been computed, used to run newer windows first
+	private Long windowGeneration = 0L;
+
+	// Downloads can't be interrupted once they start, so when one falls out of the window we let an extra thread run instead
+	private Integer stalePrefetchCount = 0;
+	// Lock used to guard the download state of prefetches and the stale prefetch count
+	private final Object stalePrefetchLock = new Object();
+
+	// The number of images the user is currently waiting on, prefetches wait until this is 0
+	private final AtomicInteger interactivePullsInProgress = new AtomicInteger(0);
+	// Lock used to wake prefetches up once all interactive pulls are done
+	private final Object interactivePullLock = new Object();
+
+	// The image tree flattened into tree order, rebuilt only when the shape of the tree changes
+	private List<ImageContainer> treeOrder = Collections.emptyList();
+	// Map of image or directory -> its position in the tree, so a selection change doesn't have to search the tree
+	private final Map<ImageContainer, TreePosition> treePositions = new IdentityHashMap<>();
+	// True if images or directories were added or removed since the tree was last indexed
+	private volatile Boolean treeIndexStale = true;
+	// Every directory we listen to for changes. Weak so that removed directories can be garbage collected
+	private final Set<ImageDirectory> listenedDirectories = Collections.newSetFromMap(new WeakHashMap<>());
+	// Listener that marks the tree index stale when a directory's children are added, removed, or re-ordered
+	private final ListChangeListener<ImageContainer> treeChangeListener = change ->
+	{
+		while (change.next())
+			if (change.wasAdded() || change.wasRemoved() || change.wasPermutated())
+				this.treeIndexStale = true;
+	};
+
+	/**
+	 * Prefetches images around the given selected item. Any prefetch for an image that is no longer near the selection
+	 * is cancelled. Should be called on the FX thread whenever the selection changes
+	 *
+	 * @param selected The newly selected image or directory, may be null
+	 */
+	public void prefetchAround(ImageContainer selected)
+	{
+		// Compute the new window of images, it's ordered from highest to lowest priority
+		List<CloudImageEntry> window = this.computeWindow(selected);
+		Set<CloudImageEntry> windowSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		windowSet.addAll(window);
+
+		// Cancel any prefetch for images that fell out of the window. Downloads that already started can't be stopped, so
+		// they are marked stale and an extra thread is allowed to run in their place
+		this.prefetches.entrySet().removeIf(prefetch ->
+		{
+			if (!windowSet.contains(prefetch.getKey()))
+			{
+				this.cancel(prefetch.getValue());
+				return true;
+			}
+			return false;
+		});
+
+		// Queue up every image in the window with the priority of this window. Images that are still waiting to start are
+		// re-queued so that the new priority applies to them as well
+		this.windowGeneration++;
+		for (int rank = 0; rank < window.size(); rank++)
+		{
+			CloudImageEntry cloudImageEntry = window.get(rank);
+			Prefetch prefetch = new Prefetch(cloudImageEntry, this.windowGeneration, rank);
+			synchronized (this.stalePrefetchLock)
+			{
+				Prefetch existing = this.prefetches.get(cloudImageEntry);
+				if (existing != null && existing.isDownloading())
+					continue;
+				// Store the prefetch before it can start so that it knows it's still in the window
+				this.prefetches.put(cloudImageEntry, prefetch);
+				if (existing != null)
+					this.prefetchExecutor.remove(existing);
+			}
+			this.prefetchExecutor.execute(prefetch);
+		}
+	}
+
+	/**
+	 * Called when the user is waiting on the given image to download. Pauses prefetching until the image is done and
+	 * cancels the image's own prefetch if it was still queued
+	 *
+	 * @param cloudImageEntry The image being pulled
+	 */
+	void interactivePullStarted(CloudImageEntry cloudImageEntry)
+	{
+		this.interactivePullsInProgress.incrementAndGet();
+		// The image is already being pulled so don't prefetch it
+		Prefetch prefetch = this.prefetches.remove(cloudImageEntry);
+		if (prefetch != null)
+			this.prefetchExecutor.remove(prefetch);
+	}
+
+	/**
+	 * Called when an image the user was waiting on finished downloading. Once no more images are being waited on
+	 * prefetching resumes
+	 */
+	void interactivePullFinished()
+	{
+		if (this.interactivePullsInProgress.decrementAndGet() <= 0)
+		{
+			synchronized (this.interactivePullLock)
+			{
+				this.interactivePullLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Prefetches a single image, run on one of the prefetch threads
+	 *
+	 * @param prefetch The prefetch of the image
+	 */
+	private void prefetch(Prefetch prefetch)
+	{
+		CloudImageEntry cloudImageEntry = prefetch.getCloudImageEntry();
+		try
+		{
+			// Give way to any image the user is currently waiting on
+			synchronized (this.interactivePullLock)
+			{
+				while (this.interactivePullsInProgress.get() > 0)
+					this.interactivePullLock.wait();
+			}
+
+			// While we were waiting the image may have fallen out of the window or been re-queued, if so don't download it
+			synchronized (this.stalePrefetchLock)
+			{
+				if (this.prefetches.get(cloudImageEntry) != prefetch)
+					return;
+				prefetch.setDownloading(true);
+			}
+
+			try
+			{
+				cloudImageEntry.prefetchFromCloud();
+			}
+			finally
+			{
+				// If the image fell out of the window while downloading, give back the extra thread
+				synchronized (this.stalePrefetchLock)
+				{
+					prefetch.setDownloading(false);
+					if (prefetch.isStale())
+					{
+						this.stalePrefetchCount--;
+						this.prefetchExecutor.setCorePoolSize(PREFETCH_THREAD_COUNT + this.stalePrefetchCount);
+					}
+				}
+			}
+		}
+		catch (InterruptedException ignored)
+		{
+		}
+		finally
+		{
+			this.prefetches.remove(cloudImageEntry, prefetch);
+		}
+	}
+
+	/**
+	 * Cancels a prefetch that fell out of the window. If it is still queued it is removed from the queue. If it is already
+	 * downloading it is marked stale, and while it finishes an extra thread is allowed to run so the new window doesn't
+	 * have to wait for it
+	 *
+	 * @param prefetch The prefetch that fell out of the window
+	 */
+	private void cancel(Prefetch prefetch)
+	{
+		this.prefetchExecutor.remove(prefetch);
+		synchronized (this.stalePrefetchLock)
+		{
+			if (prefetch.isDownloading() && !prefetch.isStale() && this.stalePrefetchCount < MAX_STALE_PREFETCHES)
+			{
+				prefetch.setStale(true);
+				this.stalePrefetchCount++;
+				this.prefetchExecutor.setCorePoolSize(PREFETCH_THREAD_COUNT + this.stalePrefetchCount);
+			}
+		}
+	}
+
+	/**
+	 * Computes the set of images that should be prefetched given the current selection. This is the next few images
+	 * after the selection in tree order followed by the images that share a directory with the selection. Images with a
+	 * thumbnail can be shown without downloading them, so they are moved to the end of the window
+	 *
+	 * @param selected The selected image or directory
+	 * @return An ordered list of images that have not yet been pulled from the cloud, highest priority first
+	 */
+	private List<CloudImageEntry> computeWindow(ImageContainer selected)
+	{
+		Set<CloudImageEntry> window = new LinkedHashSet<>();
+		// Only cloud images and directories get prefetches
+		if (!(selected instanceof CloudImageEntry) && !(selected instanceof CloudImageDirectory))
+			return new ArrayList<>(window);
+
+		// Look the selection up in the tree index, only re-indexing if the tree changed shape
+		if (this.treeIndexStale)
+			this.indexTree();
+		TreePosition selectedPosition = this.treePositions.get(selected);
+		if (selectedPosition == null)
+			return new ArrayList<>(window);
+
+		// Grab the next few images in tree order. If a directory is selected these are its first images
+		Integer scanEnd = Math.min(this.treeOrder.size(), selectedPosition.getTreeIndex() + 1 + PREFETCH_SCAN_LIMIT);
+		for (int treeIndex = selectedPosition.getTreeIndex() + 1; treeIndex < scanEnd && window.size() < PREFETCH_WINDOW_SIZE; treeIndex++)
+			this.addIfNeedsPrefetch(this.treeOrder.get(treeIndex), window);
+
+		// Grab the images in the same directory as the selection, closest to the selection first (lower index first on ties)
+		ImageDirectory parent = selectedPosition.getParent();
+		if (parent != null)
+		{
+			List<ImageContainer> siblings = parent.getChildren();
+			Integer siblingIndex = selectedPosition.getSiblingIndex();
+			Integer siblingsAdded = 0;
+			for (int distance = 1; distance <= PREFETCH_SCAN_LIMIT && siblingsAdded < PREFETCH_SIBLING_COUNT && (siblingIndex - distance >= 0 || siblingIndex + distance < siblings.size()); distance++)
+			{
+				if (siblingIndex - distance >= 0 && siblingsAdded < PREFETCH_SIBLING_COUNT && this.addIfNeedsPrefetch(siblings.get(siblingIndex - distance), window))
+					siblingsAdded++;
+				if (siblingIndex + distance < siblings.size() && siblingsAdded < PREFETCH_SIBLING_COUNT && this.addIfNeedsPrefetch(siblings.get(siblingIndex + distance), window))
+					siblingsAdded++;
+			}
+		}
+
+		// Images without a thumbnail are the ones the user would have to wait on, so they go first. The sort is stable so
+		// each group stays closest first
+		return window.stream().sorted(Comparator.comparing(CloudImageEntry::hasThumbnail)).collect(Collectors.toList());
+	}
+
+	/**
+	 * Adds an image container to the window if it is a cloud image that needs to be prefetched
+	 *
+	 * @param imageContainer The image or directory to test
+	 * @param window The window to add the image to
+	 * @return True if the image was added, false otherwise
+	 */
+	private Boolean addIfNeedsPrefetch(ImageContainer imageContainer, Set<CloudImageEntry> window)
+	{
+		return imageContainer instanceof CloudImageEntry && this.needsPrefetch((CloudImageEntry) imageContainer) && window.add((CloudImageEntry) imageContainer);
+	}
+
+	/**
+	 * Rebuilds the tree order and the position of every image and directory in the image tree. Also starts listening to
+	 * any new directories so that we know when to re-index
+	 */
+	private void indexTree()
+	{
+		this.treeIndexStale = false;
+		this.treeOrder = SanimalData.getInstance().getImageTree().flattened().collect(Collectors.toList());
+		this.treePositions.clear();
+
+		// First record the tree index of everything, then fill in each child's parent and index in the parent
+		Map<ImageContainer, Integer> treeIndices = new IdentityHashMap<>();
+		for (int treeIndex = 0; treeIndex < this.treeOrder.size(); treeIndex++)
+			treeIndices.put(this.treeOrder.get(treeIndex), treeIndex);
+		this.treePositions.put(this.treeOrder.get(0), new TreePosition(0, null, -1));
+		for (ImageContainer imageContainer : this.treeOrder)
+		{
+			if (imageContainer instanceof ImageDirectory)
+			{
+				ImageDirectory directory = (ImageDirectory) imageContainer;
+				if (this.listenedDirectories.add(directory))
+					directory.getChildren().addListener(this.treeChangeListener);
+				List<ImageContainer> children = directory.getChildren();
+				for (int siblingIndex = 0; siblingIndex < children.size(); siblingIndex++)
+					this.treePositions.put(children.get(siblingIndex), new TreePosition(treeIndices.get(children.get(siblingIndex)), directory, siblingIndex));
+			}
+		}
+	}
+
+	/**
+	 * Tests if an image should be prefetched. Images with a thumbnail are still prefetched since the user may zoom in or
+	 * edit them, but computeWindow gives them a lower priority
+	 *
+	 * @param cloudImageEntry The image to test
+	 * @return True if the image has not yet been pulled
+	 */
+	private Boolean needsPrefetch(CloudImageEntry cloudImageEntry)
+	{
+		return !cloudImageEntry.hasBeenPulledFromCloud();
+	}
+
+	/**
+	 * Class representing where an image or directory is in the image tree
+	 */
+	private static class TreePosition
+	{
+		// The index of the container in the flattened tree
+		private final Integer treeIndex;
+		// The directory the container is in, null for the root
+		private final ImageDirectory parent;
+		// The index of the container in its parent's children
+		private final Integer siblingIndex;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param treeIndex The index of the container in the flattened tree
+		 * @param parent The directory the container is in, null for the root
+		 * @param siblingIndex The index of the container in its parent's children
+		 */
+		TreePosition(Integer treeIndex, ImageDirectory parent, Integer siblingIndex)
+		{
+			this.treeIndex = treeIndex;
+			this.parent = parent;
+			this.siblingIndex = siblingIndex;
+		}
+
+		Integer getTreeIndex()
+		{
+			return this.treeIndex;
+		}
+
+		ImageDirectory getParent()
+		{
+			return this.parent;
+		}
+
+		Integer getSiblingIndex()
+		{
+			return this.siblingIndex;
+		}
+	}
+
+	/**
+	 * A queued prefetch of a single image. Prefetches of newer windows run first, and within a window the images closest
+	 * to the selection run first
+	 */
+	private class Prefetch implements Runnable, Comparable<Prefetch>
+	{
+		// The image to prefetch
+		private final CloudImageEntry cloudImageEntry;
+		// The window this prefetch was queued for
+		private final Long generation;
+		// The position of the image in its window, lower is more important
+		private final Integer rank;
+		// True while the image is being downloaded, guarded by the stale prefetch lock
+		private Boolean downloading = false;
+		// True if the image fell out of the window while it was being downloaded, guarded by the stale prefetch lock
+		private Boolean stale = false;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param cloudImageEntry The image to prefetch
+		 * @param generation The window this prefetch was queued for
+		 * @param rank The position of the image in its window
+		 */
+		Prefetch(CloudImageEntry cloudImageEntry, Long generation, Integer rank)
+		{
+			this.cloudImageEntry = cloudImageEntry;
+			this.generation = generation;
+			this.rank = rank;
+		}
+
+		@Override
+		public void run()
+		{
+			CloudImagePrefetcher.this.prefetch(this);
+		}
+
+		@Override
+		public int compareTo(Prefetch other)
+		{
+			int generationComparison = other.generation.compareTo(this.generation);
+			return generationComparison != 0 ? generationComparison : this.rank.compareTo(other.rank);
+		}
+
+		CloudImageEntry getCloudImageEntry()
+		{
+			return this.cloudImageEntry;
+		}
+
+		Boolean isDownloading()
+		{
+			return this.downloading;
+		}
+
+		void setDownloading(Boolean downloading)
+		{
+			this.downloading = downloading;
+		}
+
+		Boolean isStale()
+		{
+			return this.stale;
+		}
+
+		void setStale(Boolean stale)
+		{
+			this.stale = stale;
+		}
+	}
+}
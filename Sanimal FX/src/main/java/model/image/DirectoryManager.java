@@ -4,19 +4,26 @@ import model.SanimalData;
 import model.analysis.SanimalAnalysisUtils;
 import model.location.Location;
 import model.species.Species;
+import model.util.ThumbnailUtils;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A class that imports images into a more easily readable structure
@@ -25,6 +32,10 @@ import java.util.stream.Collectors;
  */
 public class DirectoryManager
 {
+	// The number of thumbnails generated at once before they are written into the thumbnail pack, this bounds how many
+	// thumbnails are held in memory
+	private static final Integer THUMBNAIL_BATCH_SIZE = 256;
+
 	/**
 	 * Given a directory this function validates that each file exists and if they don't adds them to the invalid containers list
 	 *
@@ -133,25 +144,44 @@ public class DirectoryManager
 		}
 	}
 
+	/**
+	 * Given an image directory, this will split its images into the groups that will be placed into each TAR part
+	 *
+	 * @param directory The image directory to split
+	 * @param maxImagesPerTar The maximum number of images to put into each TAR part
+	 * @return A list of image groups, one for each TAR part
+	 */
+	public static List<List<ImageEntry>> splitIntoTarParts(ImageDirectory directory, Integer maxImagesPerTar)
+	{
+		maxImagesPerTar = maxImagesPerTar - 1;
+
+		// List of images to be uploaded
+		List<ImageEntry> imageEntries = directory.flattened().filter(imageContainer -> imageContainer instanceof ImageEntry).map(imageContainer -> (ImageEntry) imageContainer).collect(Collectors.toList());
+		// If we have no images we have no TAR parts
+		if (imageEntries.isEmpty())
+			return Collections.emptyList();
+
+		// Take the number of images / maximum number of images per tar to get the number of tar files we need
+		Integer numberOfTars = (int) Math.ceil((double) imageEntries.size() / (double) maxImagesPerTar);
+		Integer imagesPerTar = (int) Math.ceil((double) imageEntries.size() / (double) numberOfTars);
+		// Split the images evenly between each TAR part
+		return ListUtils.partition(imageEntries, imagesPerTar);
+	}
+
 	/**
 	 * Given an image directory, this will create a TAR file out of the directory
 	 *
 	 * @param directory The image directory to TAR
+	 * @param tarParts The images that go into each TAR part, see splitIntoTarParts
 	 * @param imageToMetadata The CSV file representing each image's metadata
 	 * @return The TAR file
 	 */
-	public static File[] directoryToTars(ImageDirectory directory, Function<ImageEntry, String> imageToMetadata, Integer maxImagesPerTar)
+	public static File[] directoryToTars(ImageDirectory directory, List<List<ImageEntry>> tarParts, Function<ImageEntry, String> imageToMetadata)
 	{
-		maxImagesPerTar = maxImagesPerTar - 1;
 		try
 		{
-			// List of images to be uploaded
-			List<ImageEntry> imageEntries = directory.flattened().filter(imageContainer -> imageContainer instanceof ImageEntry).map(imageContainer -> (ImageEntry) imageContainer).collect(Collectors.toList());
-
-			// Take the number of images / maximum number of images per tar to get the number of tar files we need
-			Integer numberOfTars = (int) Math.ceil((double) imageEntries.size() / (double) maxImagesPerTar);
-			Integer imagesPerTar = (int) Math.ceil((double) imageEntries.size() / (double) numberOfTars);
 			// Create an array of tars
+			Integer numberOfTars = tarParts.size();
 			File[] tars = new File[numberOfTars];
 
 			// Get the path to the top level directory
@@ -168,9 +198,8 @@ public class DirectoryManager
 				tempMetaCSV.createNewFile();
 
 				PrintWriter metaOut = new PrintWriter(tempMetaCSV);
-				for (Integer imageIndex = tarIndex * imagesPerTar; imageIndex < (tarIndex + 1) * imagesPerTar && imageIndex < imageEntries.size(); imageIndex++)
+				for (ImageEntry imageEntry : tarParts.get(tarIndex))
 				{
-					ImageEntry imageEntry = imageEntries.get(imageIndex);
 					// Create an archive entry for the image
 					String tarPath = StringUtils.substringAfter(imageEntry.getFile().getAbsolutePath(), topDirectory).replace('\\', '/');
 					ArchiveEntry archiveEntry = tarOut.createArchiveEntry(imageEntry.getFile(), tarPath);
@@ -214,6 +243,58 @@ public class DirectoryManager
 		return new File[0];
 	}
 
+	/**
+	 * Given an image directory, this will create a ZIP file containing a small thumbnail of every image in the directory.
+	 * Thumbnails are generated in parallel a batch at a time, and each batch is written out before the next one starts
+	 *
+	 * @param directory The image directory to create thumbnails for
+	 * @param imageToPath Function used to compute the path of each image's thumbnail inside of the ZIP file
+	 * @return The ZIP file, or null if it could not be created
+	 */
+	public static File directoryToThumbnailPack(ImageDirectory directory, Function<ImageEntry, String> imageToPath)
+	{
+		// List of images to create thumbnails for
+		List<ImageEntry> imageEntries = directory.flattened().filter(imageContainer -> imageContainer instanceof ImageEntry).map(imageContainer -> (ImageEntry) imageContainer).collect(Collectors.toList());
+
+		File tempZip = SanimalData.getInstance().getTempDirectoryManager().createTempFile("thumbnails.zip");
+		try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(tempZip))
+		{
+			for (List<ImageEntry> batch : ListUtils.partition(imageEntries, THUMBNAIL_BATCH_SIZE))
+			{
+				// Generate the batch's thumbnails in parallel, images that can't be read just don't get a thumbnail
+				byte[][] thumbnails = new byte[batch.size()][];
+				IntStream.range(0, batch.size()).parallel().forEach(index ->
+				{
+					try
+					{
+						thumbnails[index] = ThumbnailUtils.createThumbnail(batch.get(index).getFile());
+					}
+					catch (IOException e)
+					{
+						SanimalData.getInstance().getErrorDisplay().printError("Could not create a thumbnail for " + batch.get(index).getFile().getName() + "!\n" + ExceptionUtils.getStackTrace(e));
+					}
+				});
+
+				// Write the thumbnails into the ZIP file in the same order as the images
+				for (Integer index = 0; index < batch.size(); index++)
+				{
+					if (thumbnails[index] != null)
+					{
+						zipOut.putArchiveEntry(new ZipArchiveEntry(imageToPath.apply(batch.get(index))));
+						zipOut.write(thumbnails[index]);
+						zipOut.closeArchiveEntry();
+					}
+				}
+			}
+			return tempZip;
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not create the thumbnail pack!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		return null;
+	}
+
 	/**
 	 * Parses a directory assuming its in Dr. Sanderson's format
 	 *
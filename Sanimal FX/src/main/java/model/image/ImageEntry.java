@@ -90,17 +90,9 @@ public class ImageEntry extends ImageContainer
 	{
 		try
 		{
-			// Set the date to a default
-			this.dateTakenProperty.setValue(LocalDateTime.now());
 			//Read the metadata off of the image
 			TiffImageMetadata tiffImageMetadata = MetadataUtils.readImageMetadata(this.getFile());
-
-			// Read date, location, and species
-			this.readDateFromMetadata(tiffImageMetadata);
-			this.readLocationFromMetadata(tiffImageMetadata, knownLocations);
-			this.readSpeciesFroMetadata(tiffImageMetadata, knownSpecies);
-
-			this.markDiskDirty(false);
+			this.readMetadataIntoImage(tiffImageMetadata, knownLocations, knownSpecies);
 		}
 		catch (ImageReadException | IOException e)
 		{
@@ -108,6 +100,28 @@ public class ImageEntry extends ImageContainer
 		}
 	}
 
+	/**
+	 * Initializes fields from metadata that has already been read. Used when the metadata does not come from the local
+	 * image file, for example when only the header of a remote image was read
+	 *
+	 * @param tiffImageMetadata The image metadata, may be null if the image has none
+	 * @param knownLocations The current list of known locations
+	 * @param knownSpecies The current list of known species
+	 * @throws ImageReadException If the metadata could not be parsed
+	 */
+	public void readMetadataIntoImage(TiffImageMetadata tiffImageMetadata, List<Location> knownLocations, List<Species> knownSpecies) throws ImageReadException
+	{
+		// Set the date to a default
+		this.dateTakenProperty.setValue(LocalDateTime.now());
+
+		// Read date, location, and species
+		this.readDateFromMetadata(tiffImageMetadata);
+		this.readLocationFromMetadata(tiffImageMetadata, knownLocations);
+		this.readSpeciesFroMetadata(tiffImageMetadata, knownSpecies);
+
+		this.markDiskDirty(false);
+	}
+
 	/**
 	 * Reads the date off of an image given metadata
 	 *
@@ -0,0 +1,92 @@
+package model.image;
+
+import model.location.Location;
+import model.species.Species;
+import model.species.SpeciesEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The tag data of a single cloud image at the time it was saved. Metadata only saves write a list of these to a small
+ * JSON file next to the images instead of re-uploading the images themselves
+ */
+public class ImageTagDelta
+{
+	// The absolute path of the image on CyVerse that this delta applies to
+	private String imageIRODSPath;
+	// The date the image was taken
+	private LocalDateTime dateTaken;
+	// The location the image was taken at
+	private Location locationTaken;
+	// The species present in the image
+	private List<SpeciesEntry> speciesPresent;
+
+	/**
+	 * Constructor copies the current tag data off of a cloud image
+	 *
+	 * @param cloudImageEntry The image to create the delta for
+	 */
+	public ImageTagDelta(CloudImageEntry cloudImageEntry)
+	{
+		this.imageIRODSPath = cloudImageEntry.getCyverseFile().getAbsolutePath();
+		this.dateTaken = cloudImageEntry.getDateTaken();
+		this.locationTaken = cloudImageEntry.getLocationTaken();
+		this.speciesPresent = new ArrayList<>(cloudImageEntry.getSpeciesPresent());
+	}
+
+	/**
+	 * Applies this delta to an image entry, replacing its date, location, and species with the ones stored in the delta
+	 *
+	 * @param imageEntry The image to apply the delta to
+	 * @param knownLocations The current list of known locations
+	 * @param knownSpecies The current list of known species
+	 */
+	public void applyTo(ImageEntry imageEntry, List<Location> knownLocations, List<Species> knownSpecies)
+	{
+		// Set the date
+		if (this.dateTaken != null)
+			imageEntry.setDateTaken(this.dateTaken);
+
+		// Set the location, re-using a known location if we have one with the same ID
+		if (this.locationTaken != null)
+		{
+			Optional<Location> knownLocation = knownLocations.stream().filter(location -> location.equals(this.locationTaken)).findFirst();
+			if (knownLocation.isPresent())
+				imageEntry.setLocationTaken(knownLocation.get());
+			else
+			{
+				knownLocations.add(this.locationTaken);
+				imageEntry.setLocationTaken(this.locationTaken);
+			}
+		}
+
+		// Replace the species, re-using known species if we have one with the same scientific name
+		imageEntry.getSpeciesPresent().clear();
+		if (this.speciesPresent != null)
+		{
+			for (SpeciesEntry speciesEntry : this.speciesPresent)
+			{
+				Optional<Species> knownSpeciesEntry = knownSpecies.stream().filter(species -> species.equals(speciesEntry.getSpecies())).findFirst();
+				if (knownSpeciesEntry.isPresent())
+					imageEntry.addSpecies(knownSpeciesEntry.get(), speciesEntry.getCount());
+				else
+				{
+					knownSpecies.add(speciesEntry.getSpecies());
+					imageEntry.addSpecies(speciesEntry.getSpecies(), speciesEntry.getCount());
+				}
+			}
+		}
+	}
+
+	///
+	/// Getters/Setters
+	///
+
+	public String getImageIRODSPath()
+	{
+		return this.imageIRODSPath;
+	}
+}
@@ -7,11 +7,10 @@ import model.cyverse.ImageCollection;
 import model.location.Location;
 import model.query.conditions.ElevationCondition;
 import model.species.Species;
-import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.common.unit.DistanceUnit;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.query.TermsQueryBuilder;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -36,6 +35,9 @@ public class ElasticSearchQuery
 	private Set<Integer> hourQuery = new HashSet<>();
 	// A list of days of week to query for
 	private Set<Integer> dayOfWeekQuery = new HashSet<>();
+	// The earliest and latest year that images may be taken in, or null if the query does not limit the year
+	private Integer earliestYear = null;
+	private Integer latestYear = null;
 
 	// Query builder used to make queries that we will send out
 	private final BoolQueryBuilder queryBuilder;
@@ -87,6 +89,7 @@ public class ElasticSearchQuery
 	public void setStartAndEndYear(Integer startYear, Integer endYear)
 	{
 		queryBuilder.must().add(QueryBuilders.rangeQuery("imageMetadata.yearTaken").gte(startYear).lte(endYear));
+		this.limitYears(startYear, endYear);
 	}
 
 	/**
@@ -127,6 +130,7 @@ public class ElasticSearchQuery
 	public void setStartDate(LocalDateTime startDate)
 	{
 		this.queryBuilder.must().add(QueryBuilders.rangeQuery("imageMetadata.dateTaken").gte(startDate.atZone(ZoneId.systemDefault()).format(SanimalMetadataFields.INDEX_DATE_TIME_FORMAT)));
+		this.limitYears(startDate.getYear(), null);
 	}
 
 	/**
@@ -137,6 +141,21 @@ public class ElasticSearchQuery
 	public void setEndDate(LocalDateTime endDate)
 	{
 		this.queryBuilder.must().add(QueryBuilders.rangeQuery("imageMetadata.dateTaken").lte(endDate.atZone(ZoneId.systemDefault()).format(SanimalMetadataFields.INDEX_DATE_TIME_FORMAT)));
+		this.limitYears(null, endDate.getYear());
+	}
+
+	/**
+	 * Narrows the range of years that images may be taken in. Every condition must hold so the ranges are intersected
+	 *
+	 * @param earliestYear The earliest year images may be taken in, or null if it is not limited
+	 * @param latestYear The latest year images may be taken in, or null if it is not limited
+	 */
+	private void limitYears(Integer earliestYear, Integer latestYear)
+	{
+		if (earliestYear != null)
+			this.earliestYear = this.earliestYear == null ? earliestYear : Math.max(this.earliestYear, earliestYear);
+		if (latestYear != null)
+			this.latestYear = this.latestYear == null ? latestYear : Math.min(this.latestYear, latestYear);
 	}
 
 	/**
@@ -171,6 +190,51 @@ public class ElasticSearchQuery
 		}
 	}
 
+	/**
+	 * Adds a condition that only includes images taken inside of a latitude/longitude box
+	 *
+	 * @param north The latitude of the top edge of the box
+	 * @param west The longitude of the left edge of the box
+	 * @param south The latitude of the bottom edge of the box
+	 * @param east The longitude of the right edge of the box
+	 */
+	public void addGeoBoundingBox(Double north, Double west, Double south, Double east)
+	{
+		this.queryBuilder.must().add(QueryBuilders.geoBoundingBoxQuery("imageMetadata.location.position").setCorners(north, west, south, east));
+	}
+
+	/**
+	 * Adds a condition that only includes images taken within a distance of a point
+	 *
+	 * @param latitude The latitude of the center point
+	 * @param longitude The longitude of the center point
+	 * @param distanceInMeters The distance from the center point in meters
+	 */
+	public void addGeoDistance(Double latitude, Double longitude, Double distanceInMeters)
+	{
+		this.queryBuilder.must().add(QueryBuilders.geoDistanceQuery("imageMetadata.location.position").point(latitude, longitude).distance(distanceInMeters, DistanceUnit.METERS));
+	}
+
+	/**
+	 * Returns the earliest year images matching this query may be taken in
+	 *
+	 * @return The earliest year, or null if the query does not limit it
+	 */
+	public Integer getEarliestYear()
+	{
+		return this.earliestYear;
+	}
+
+	/**
+	 * Returns the latest year images matching this query may be taken in
+	 *
+	 * @return The latest year, or null if the query does not limit it
+	 */
+	public Integer getLatestYear()
+	{
+		return this.latestYear;
+	}
+
 	/**
 	 * Finalizes the ElasticSearch query and returns the builder
 	 *
@@ -182,10 +246,9 @@ public class ElasticSearchQuery
 		// Species are IDd by scientific name
 		if (!speciesQuery.isEmpty())
 		{
-			// For this query we need to use 2 queries because speciesEntries is a nested field. The first query looks into the speciesEntries object and searches for
-			// for any inner objects that satisfy the inside query which tests scientific name.
-			TermsQueryBuilder innerQuery = QueryBuilders.termsQuery("imageMetadata.speciesEntries.species.scientificName", this.speciesQuery.stream().map(Species::getScientificName).collect(Collectors.toList()));
-			this.queryBuilder.must(QueryBuilders.nestedQuery("imageMetadata.speciesEntries", innerQuery, ScoreMode.Max));
+			// Species membership does not depend on the count of each species, so we can use the flattened list of scientific names instead
+			// of a nested query into speciesEntries. As a filter the result does not affect scoring and can be cached by the cluster
+			this.queryBuilder.filter().add(QueryBuilders.termsQuery("imageMetadata.speciesScientificNames", this.speciesQuery.stream().map(Species::getScientificName).collect(Collectors.toList())));
 		}
 
 		// Make sure that we have at least one location we're looking for
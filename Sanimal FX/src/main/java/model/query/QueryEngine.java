@@ -31,6 +31,8 @@ public class QueryEngine
 		SPECIES_FILTER("Species Filter", SpeciesFilterCondition::new),
 		LOCATION_FILTER("Location Filter", LocationFilterCondition::new),
 		ELEVATION_FILTER("Elevation filter", ElevationCondition::new),
+		BOUNDING_BOX_FILTER("Bounding Box Filter", GeoBoundingBoxCondition::new),
+		DISTANCE_FILTER("Distance Filter", GeoDistanceCondition::new),
 		YEAR_FILTER("Year Filter", YearCondition::new),
 		MONTH_FILTER("Month Filter", MonthCondition::new),
 		HOUR_FILTER("Hour Filter", HourCondition::new),
@@ -0,0 +1,85 @@
+package model.query.conditions;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import model.query.ElasticSearchQuery;
+import model.query.IQueryCondition;
+
+/**
+ * Data model used by the "Bounding box filter" query condition
+ */
+public class GeoBoundingBoxCondition implements IQueryCondition
+{
+	// The latitude of the top edge of the box
+	private DoubleProperty north = new SimpleDoubleProperty(90);
+	// The longitude of the left edge of the box
+	private DoubleProperty west = new SimpleDoubleProperty(-180);
+	// The latitude of the bottom edge of the box
+	private DoubleProperty south = new SimpleDoubleProperty(-90);
+	// The longitude of the right edge of the box
+	private DoubleProperty east = new SimpleDoubleProperty(180);
+
+	/**
+	 * This query condition ensures only images taken inside of the box are queried for. A box with its north edge not above
+	 * its south edge or with the same west and east edge is not a valid box, so it is left out of the query
+	 *
+	 * @param query The current state of the query before the appending
+	 */
+	@Override
+	public void appendConditionToQuery(ElasticSearchQuery query)
+	{
+		if (this.north.getValue() > this.south.getValue() && !this.west.getValue().equals(this.east.getValue()))
+			query.addGeoBoundingBox(this.north.getValue(), this.west.getValue(), this.south.getValue(), this.east.getValue());
+	}
+
+	/**
+	 * Returns the FXML document that can edit this data model
+	 *
+	 * @return An FXML UI document to edit this data model
+	 */
+	@Override
+	public String getFXMLConditionEditor()
+	{
+		return "GeoBoundingBoxCondition.fxml";
+	}
+
+	/**
+	 * The latitude of the top edge of the box
+	 *
+	 * @return The north latitude property
+	 */
+	public DoubleProperty northProperty()
+	{
+		return this.north;
+	}
+
+	/**
+	 * The longitude of the left edge of the box
+	 *
+	 * @return The west longitude property
+	 */
+	public DoubleProperty westProperty()
+	{
+		return this.west;
+	}
+
+	/**
+	 * The latitude of the bottom edge of the box
+	 *
+	 * @return The south latitude property
+	 */
+	public DoubleProperty southProperty()
+	{
+		return this.south;
+	}
+
+	/**
+	 * The longitude of the right edge of the box
+	 *
+	 * @return The east longitude property
+	 */
+	public DoubleProperty eastProperty()
+	{
+		return this.east;
+	}
+}
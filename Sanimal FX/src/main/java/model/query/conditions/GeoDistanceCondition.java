@@ -0,0 +1,150 @@
+package model.query.conditions;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import model.query.ElasticSearchQuery;
+import model.query.IQueryCondition;
+
+/**
+ * Data model used by the "Distance filter" query condition
+ */
+public class GeoDistanceCondition implements IQueryCondition
+{
+	// The latitude of the center point
+	private DoubleProperty latitude = new SimpleDoubleProperty(0);
+	// The longitude of the center point
+	private DoubleProperty longitude = new SimpleDoubleProperty(0);
+	// The distance from the center point
+	private DoubleProperty distance = new SimpleDoubleProperty(5);
+	// The units to interpret distance as
+	private ObjectProperty<RadiusUnits> units = new SimpleObjectProperty<>(RadiusUnits.Kilometers);
+
+	// A list of possible units to filter
+	private ObservableList<RadiusUnits> unitList = FXCollections.observableArrayList(RadiusUnits.values());
+
+	/**
+	 * This query condition ensures only images taken within the distance of the center point are queried for. A distance
+	 * that is not positive can't be searched for, so it is left out of the query
+	 *
+	 * @param query The current state of the query before the appending
+	 */
+	@Override
+	public void appendConditionToQuery(ElasticSearchQuery query)
+	{
+		if (this.units.getValue() != null && this.distance.getValue() > 0)
+			query.addGeoDistance(this.latitude.getValue(), this.longitude.getValue(), this.units.getValue().toMeters(this.distance.getValue()));
+	}
+
+	/**
+	 * Returns the FXML document that can edit this data model
+	 *
+	 * @return An FXML UI document to edit this data model
+	 */
+	@Override
+	public String getFXMLConditionEditor()
+	{
+		return "GeoDistanceCondition.fxml";
+	}
+
+	/**
+	 * The latitude of the center point
+	 *
+	 * @return The latitude property
+	 */
+	public DoubleProperty latitudeProperty()
+	{
+		return this.latitude;
+	}
+
+	/**
+	 * The longitude of the center point
+	 *
+	 * @return The longitude property
+	 */
+	public DoubleProperty longitudeProperty()
+	{
+		return this.longitude;
+	}
+
+	/**
+	 * The distance from the center point
+	 *
+	 * @return The distance property
+	 */
+	public DoubleProperty distanceProperty()
+	{
+		return this.distance;
+	}
+
+	/**
+	 * The units used by distance
+	 *
+	 * @return The units of distance
+	 */
+	public ObjectProperty<RadiusUnits> unitsProperty()
+	{
+		return this.units;
+	}
+
+	/**
+	 * Getter for all possible distance units
+	 *
+	 * @return A list of possible units
+	 */
+	public ObservableList<RadiusUnits> getUnitList()
+	{
+		return this.unitList;
+	}
+
+	/**
+	 * Enum of units the distance can be given in
+	 */
+	public enum RadiusUnits
+	{
+		Meters("m", 1D),
+		Kilometers("km", 1000D),
+		Feet("ft", 0.3048D),
+		Miles("mi", 1609.344D);
+
+		private String symbol;
+		private Double metersPerUnit;
+
+		/**
+		 * Constructor takes the symbol to display and the number of meters in one unit
+		 *
+		 * @param symbol The symbol to visually display
+		 * @param metersPerUnit The number of meters in one of this unit
+		 */
+		RadiusUnits(String symbol, Double metersPerUnit)
+		{
+			this.symbol = symbol;
+			this.metersPerUnit = metersPerUnit;
+		}
+
+		/**
+		 * Converts a distance in this unit to meters
+		 *
+		 * @param value The distance in this unit
+		 * @return The distance in meters
+		 */
+		public Double toMeters(Double value)
+		{
+			return this.metersPerUnit * value;
+		}
+
+		/**
+		 * Returns the symbol as the unit's toString
+		 *
+		 * @return The symbol
+		 */
+		@Override
+		public String toString()
+		{
+			return this.symbol;
+		}
+	}
+}
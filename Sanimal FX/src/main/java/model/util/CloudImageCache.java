@@ -0,0 +1,265 @@
+package model.util;
+
+import model.SanimalData;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent on disk cache of images downloaded from CyVerse. Images are keyed by their CyVerse path, size, and last
+ * modified date so a changed image on CyVerse is never served from the cache. The cache is limited in size, and the
+ * least recently used images are removed first
+ */
+public class CloudImageCache
+{
+	// The directory inside of the user's home directory that the cache is stored in
+	private static final String CACHE_DIRECTORY = ".sanimal" + File.separator + "imageCache";
+	// The suffix of files that are still being copied into the cache
+	private static final String PARTIAL_FILE_SUFFIX = ".part";
+	// The number of bytes in a megabyte
+	private static final Long BYTES_PER_MB = 1024L * 1024L;
+
+	// The directory that cached images are stored in
+	private final File cacheDirectory;
+	// Map of cache key -> cached file, iterated in least recently used order
+	private final LinkedHashMap<String, File> cachedFiles = new LinkedHashMap<>(16, 0.75f, true);
+	// Map of cache key -> size of the cached file in bytes. Stored because evicted files are deleted after the lock is released
+	private final Map<String, Long> cachedFileSizes = new HashMap<>();
+	// The total number of bytes in the cache
+	private Long cacheSizeBytes = 0L;
+
+	/**
+	 * Constructor builds the cache index from any images cached by previous sessions
+	 */
+	public CloudImageCache()
+	{
+		this(FileUtils.getFile(FileUtils.getUserDirectory(), CACHE_DIRECTORY));
+	}
+
+	/**
+	 * Constructor builds the cache index from any images cached by previous sessions in the given directory
+	 *
+	 * @param cacheDirectory The directory that cached images are stored in
+	 */
+	CloudImageCache(File cacheDirectory)
+	{
+		this.cacheDirectory = cacheDirectory;
+		if (this.cacheDirectory.isDirectory() || this.cacheDirectory.mkdirs())
+		{
+			File[] previouslyCachedFiles = this.cacheDirectory.listFiles(File::isFile);
+			if (previouslyCachedFiles != null)
+			{
+				// We touch files when they are used, so sorting by last modified gives us the least recently used order
+				Arrays.sort(previouslyCachedFiles, Comparator.comparingLong(File::lastModified));
+				for (File cachedFile : previouslyCachedFiles)
+				{
+					// Copies that never finished because SANIMAL was closed are thrown away
+					if (cachedFile.getName().endsWith(PARTIAL_FILE_SUFFIX))
+					{
+						FileUtils.deleteQuietly(cachedFile);
+						continue;
+					}
+					String cacheKey = FilenameUtils.getBaseName(cachedFile.getName());
+					this.cachedFiles.put(cacheKey, cachedFile);
+					this.cachedFileSizes.put(cacheKey, cachedFile.length());
+					this.cacheSizeBytes = this.cacheSizeBytes + cachedFile.length();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a temporary copy of the given CyVerse file if it is cached and unchanged on CyVerse. A copy is returned
+	 * because local images have their metadata rewritten while being tagged. The copy is made without holding the cache
+	 * lock so other threads can use the cache while a large image is copied
+	 *
+	 * @param cacheKey The cache key of the file on CyVerse, see cacheKeyFor
+	 * @param fileName The name of the file, used to name the temporary copy
+	 * @return A temporary copy of the cached file or null if the file is not in the cache
+	 */
+	public File retrieve(String cacheKey, String fileName)
+	{
+		File cachedFile = this.lookup(cacheKey);
+		if (cachedFile != null)
+		{
+			try
+			{
+				// Copy the cached file to a temporary file, and mark the cached file as recently used. We don't use touch here
+				// because that would re-create the file if it was evicted while we were copying it
+				File localImageFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile(fileName);
+				FileUtils.copyFile(cachedFile, localImageFile);
+				cachedFile.setLastModified(System.currentTimeMillis());
+				return localImageFile;
+			}
+			catch (IOException e)
+			{
+				// If the cached file is unreadable, remove it from the cache so that we download it again
+				FileUtils.deleteQuietly(this.remove(cacheKey, cachedFile));
+				SanimalData.getInstance().getErrorDisplay().printError("Could not read the cached image (" + fileName + ")!\n" + ExceptionUtils.getStackTrace(e));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stores a freshly downloaded CyVerse file into the cache, evicting the least recently used images if the cache is
+	 * too large
+	 *
+	 * @param cacheKey The cache key of the file on CyVerse, see cacheKeyFor
+	 * @param fileName The name of the file, used to give the cached file the right extension
+	 * @param downloadedFile The local copy of the file that was just downloaded
+	 */
+	public void store(String cacheKey, String fileName, File downloadedFile)
+	{
+		this.store(cacheKey, fileName, downloadedFile, Math.round(SanimalData.getInstance().getSettings().getCloudImageCacheSizeMB() * BYTES_PER_MB));
+	}
+
+	/**
+	 * Stores a file into the cache, evicting the least recently used images until the cache is no larger than the given
+	 * size. The file is copied into the cache directory without holding the cache lock, the lock is only held to add the
+	 * copy to the cache index
+	 *
+	 * @param cacheKey The cache key of the file on CyVerse, see cacheKeyFor
+	 * @param fileName The name of the file, used to give the cached file the right extension
+	 * @param downloadedFile The local copy of the file that was just downloaded
+	 * @param maxSizeBytes The maximum size of the cache in bytes
+	 */
+	void store(String cacheKey, String fileName, File downloadedFile, Long maxSizeBytes)
+	{
+		// Already cached, nothing to do
+		if (this.contains(cacheKey))
+			return;
+
+		File partialFile = null;
+		try
+		{
+			// Copy into a uniquely named partial file first so that two threads storing the same image don't collide
+			partialFile = File.createTempFile("download", PARTIAL_FILE_SUFFIX, this.cacheDirectory);
+			FileUtils.copyFile(downloadedFile, partialFile);
+			Long fileSizeBytes = partialFile.length();
+
+			File cachedFile = FileUtils.getFile(this.cacheDirectory, cacheKey + "." + FilenameUtils.getExtension(fileName));
+			List<File> filesToDelete = new ArrayList<>();
+			synchronized (this)
+			{
+				// Another thread may have cached the image while we were copying it
+				if (this.cachedFiles.containsKey(cacheKey))
+				{
+					filesToDelete.add(partialFile);
+				}
+				else
+				{
+					Files.move(partialFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					this.cachedFiles.put(cacheKey, cachedFile);
+					this.cachedFileSizes.put(cacheKey, fileSizeBytes);
+					this.cacheSizeBytes = this.cacheSizeBytes + fileSizeBytes;
+					filesToDelete.addAll(this.evictToSize(maxSizeBytes));
+				}
+			}
+			// Delete any files that are no longer needed once we no longer hold the lock
+			filesToDelete.forEach(FileUtils::deleteQuietly);
+		}
+		catch (IOException e)
+		{
+			FileUtils.deleteQuietly(partialFile);
+			SanimalData.getInstance().getErrorDisplay().printError("Could not cache the image (" + fileName + ")!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Returns the cached file of the given key and marks it as the most recently used
+	 *
+	 * @param cacheKey The cache key of the file on CyVerse, see cacheKeyFor
+	 * @return The file in the cache directory or null if the file is not in the cache
+	 */
+	synchronized File lookup(String cacheKey)
+	{
+		return this.cachedFiles.get(cacheKey);
+	}
+
+	/**
+	 * Tests if a file is in the cache without changing the least recently used order
+	 *
+	 * @param cacheKey The cache key of the file on CyVerse, see cacheKeyFor
+	 * @return True if the file is in the cache, false otherwise
+	 */
+	synchronized Boolean contains(String cacheKey)
+	{
+		return this.cachedFiles.containsKey(cacheKey);
+	}
+
+	/**
+	 * Removes the least recently used images from the cache index until it is no larger than the given size. Must be
+	 * called while holding the cache lock
+	 *
+	 * @param maxSizeBytes The maximum size of the cache in bytes
+	 * @return The evicted files which should be deleted from disk once the lock is released
+	 */
+	private List<File> evictToSize(Long maxSizeBytes)
+	{
+		List<File> evictedFiles = new ArrayList<>();
+		Iterator<Map.Entry<String, File>> leastRecentlyUsed = this.cachedFiles.entrySet().iterator();
+		while (this.cacheSizeBytes > maxSizeBytes && leastRecentlyUsed.hasNext())
+		{
+			Map.Entry<String, File> cacheEntry = leastRecentlyUsed.next();
+			this.cacheSizeBytes = this.cacheSizeBytes - this.cachedFileSizes.remove(cacheEntry.getKey());
+			leastRecentlyUsed.remove();
+			evictedFiles.add(cacheEntry.getValue());
+		}
+		return evictedFiles;
+	}
+
+	/**
+	 * Removes a single image from the cache index if it is still stored as the given file
+	 *
+	 * @param cacheKey The key of the image to remove
+	 * @param cachedFile The file the image was cached as
+	 * @return The removed file which should be deleted from disk, or null if the image was already replaced or removed
+	 */
+	private synchronized File remove(String cacheKey, File cachedFile)
+	{
+		if (this.cachedFiles.remove(cacheKey, cachedFile))
+		{
+			this.cacheSizeBytes = this.cacheSizeBytes - this.cachedFileSizes.remove(cacheKey);
+			return cachedFile;
+		}
+		return null;
+	}
+
+	/**
+	 * Computes the cache key of a CyVerse file. The key is a hash of the file's path, size, and last modified date so that
+	 * any change to the file on CyVerse results in a new key. The size and date should come from a directory listing so
+	 * that computing the key never has to ask CyVerse about each file
+	 *
+	 * @param cyversePath The path of the file on CyVerse
+	 * @param size The size of the file in bytes
+	 * @param lastModified The last modified date of the file in milliseconds since the epoch
+	 * @return A hex string used to identify the version of the file in the cache
+	 */
+	public String cacheKeyFor(String cyversePath, Long size, Long lastModified)
+	{
+		String toHash = cyversePath + "|" + size + "|" + lastModified;
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(toHash.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hexHash = new StringBuilder();
+			for (byte hashByte : hash)
+				hexHash.append(String.format("%02x", hashByte));
+			return hexHash.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every JVM has to support SHA-256, so this should never happen
+			throw new IllegalStateException(e);
+		}
+	}
+}
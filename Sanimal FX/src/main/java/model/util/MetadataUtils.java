@@ -14,16 +14,25 @@ import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
 import org.apache.commons.io.FileUtils;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
 
 /**
  * Class containing utils for writing & reading metadata
  */
 public class MetadataUtils
 {
+	// The JPEG start of image marker
+	private static final Integer JPEG_SOI_MARKER = 0xFFD8;
+	// The JPEG end of image marker
+	private static final Integer JPEG_EOI_MARKER = 0xFFD9;
+	// The first and last JPEG application segment markers (APP0-APP15), EXIF is stored in APP1
+	private static final Integer JPEG_APP0_MARKER = 0xFFE0;
+	private static final Integer JPEG_APP15_MARKER = 0xFFEF;
+	// The JPEG comment segment marker, some cameras write these in between application segments
+	private static final Integer JPEG_COM_MARKER = 0xFFFE;
+	// The most header bytes we will read before giving up, EXIF is limited to 64KB so this leaves plenty of room
+	private static final Integer MAX_JPEG_HEADER_BYTES = 512 * 1024;
+
 	/**
 	 * Reads the output set from a given image entry which contains metadata
 	 *
@@ -149,4 +158,63 @@ public class MetadataUtils
 		else
 			return null;
 	}
+
+	/**
+	 * Returns the tiff image metadata of a JPEG image given a stream of the image's bytes. Only the header segments that
+	 * come before the image data are read from the stream, so this is much cheaper than reading the whole image when the
+	 * image lives on a remote server
+	 *
+	 * @param imageStream A stream of the image, positioned at the start of the image. The stream is not closed
+	 * @param fileName The name of the image, used for error messages
+	 *
+	 * @return The Image's metadata or null if no metadata was found (this probably means it's not a jpeg image...)
+	 *
+	 * @throws ImageReadException If something went wrong reading the image...
+	 * @throws IOException If something went wrong reading the image...
+	 */
+	public static TiffImageMetadata readImageMetadata(InputStream imageStream, String fileName) throws ImageReadException, IOException
+	{
+		DataInputStream dataStream = new DataInputStream(imageStream);
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream headerStream = new DataOutputStream(headerBytes);
+
+		// Make sure this is a JPEG image, otherwise there's no EXIF header to read
+		if (dataStream.readUnsignedShort() != JPEG_SOI_MARKER)
+			return null;
+		headerStream.writeShort(JPEG_SOI_MARKER);
+
+		// Copy each application and comment segment until we hit the first segment that isn't one. That's where the image data starts
+		while (true)
+		{
+			Integer marker = dataStream.readUnsignedShort();
+			if (!((marker >= JPEG_APP0_MARKER && marker <= JPEG_APP15_MARKER) || marker.equals(JPEG_COM_MARKER)))
+				break;
+
+			// The segment length includes the two length bytes
+			Integer segmentLength = dataStream.readUnsignedShort();
+			if (segmentLength < 2)
+				throw new ImageReadException("Invalid JPEG segment length in " + fileName);
+			if (headerBytes.size() + segmentLength > MAX_JPEG_HEADER_BYTES)
+				throw new ImageReadException("JPEG header of " + fileName + " is larger than " + MAX_JPEG_HEADER_BYTES + " bytes");
+
+			byte[] segment = new byte[segmentLength - 2];
+			dataStream.readFully(segment);
+			headerStream.writeShort(marker);
+			headerStream.writeShort(segmentLength);
+			headerStream.write(segment);
+		}
+
+		// End the header so that it parses as a (image data-less) JPEG
+		headerStream.writeShort(JPEG_EOI_MARKER);
+		headerStream.flush();
+
+		// Read the metadata off of the header
+		ImageMetadata metadata = Imaging.getMetadata(headerBytes.toByteArray());
+
+		// Grab the tiff metadata to read from, or return null
+		if (metadata instanceof JpegImageMetadata)
+			return ((JpegImageMetadata) metadata).getExif();
+		else
+			return null;
+	}
 }
@@ -29,6 +29,8 @@ public class SettingsData
 	private BooleanProperty automaticNextImage = new SimpleBooleanProperty(false);
 	private BooleanProperty backgroundImageLoading = new SimpleBooleanProperty(false);
 	private BooleanProperty disablePopups = new SimpleBooleanProperty(false);
+	private BooleanProperty metadataOnlyCloudSaves = new SimpleBooleanProperty(false);
+	private ObjectProperty<Double> cloudImageCacheSizeMB = new SimpleDoubleProperty(2048).asObject();
 
 	/**
 	 * Constructor adds all settings SANIMAL will use to the dictionary
@@ -55,6 +57,8 @@ public class SettingsData
 		this.automaticNextImage.setValue(otherSettings.getAutomaticNextImage());
 		this.backgroundImageLoading.setValue(otherSettings.getBackgroundImageLoading());
 		this.disablePopups.setValue(otherSettings.getDisablePopups());
+		this.metadataOnlyCloudSaves.setValue(otherSettings.getMetadataOnlyCloudSaves());
+		this.cloudImageCacheSizeMB.setValue(otherSettings.getCloudImageCacheSizeMB());
 	}
 
 	/**
@@ -72,6 +76,8 @@ public class SettingsData
 		settingList.add(new CustomPropertyItem<>("Automatically Select Next Image: ", "Legacy", "Automatically select the next image after tagging one with species", automaticNextImage, Boolean.class));
 		settingList.add(new CustomPropertyItem<>("Background Image Loading: ", "Options", "Load images in the background when selecting them, useful for slow hard drives or SD cards", backgroundImageLoading, Boolean.class));
 		settingList.add(new CustomPropertyItem<>("Disable Popups: ", "Options", "Lose some program functionality to avoid popups at all costs", disablePopups, Boolean.class));
+		settingList.add(new CustomPropertyItem<>("Metadata Only Cloud Saves: ", "Options", "When saving edited cloud images only send the changed tags instead of re-uploading the whole images", metadataOnlyCloudSaves, Boolean.class));
+		settingList.add(new CustomPropertyItem<>("Cloud Image Cache Size (in MB): ", "Options", "How much disk space may be used to keep downloaded cloud images between sessions", cloudImageCacheSizeMB, Double.class));
 	}
 
 	/**
@@ -473,4 +479,34 @@ public class SettingsData
 	{
 		return disablePopups;
 	}
+
+	public void setMetadataOnlyCloudSaves(boolean metadataOnlyCloudSaves)
+	{
+		this.metadataOnlyCloudSaves.set(metadataOnlyCloudSaves);
+	}
+
+	public Boolean getMetadataOnlyCloudSaves()
+	{
+		return this.metadataOnlyCloudSaves.get();
+	}
+
+	public BooleanProperty metadataOnlyCloudSavesProperty()
+	{
+		return metadataOnlyCloudSaves;
+	}
+
+	public void setCloudImageCacheSizeMB(Double cloudImageCacheSizeMB)
+	{
+		this.cloudImageCacheSizeMB.set(cloudImageCacheSizeMB);
+	}
+
+	public Double getCloudImageCacheSizeMB()
+	{
+		return cloudImageCacheSizeMB.get();
+	}
+
+	public ObjectProperty<Double> cloudImageCacheSizeMBProperty()
+	{
+		return cloudImageCacheSizeMB;
+	}
 }
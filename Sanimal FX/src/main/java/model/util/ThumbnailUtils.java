@@ -0,0 +1,71 @@
+package model.util;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Class containing utils for creating small preview images of full size images
+ */
+public class ThumbnailUtils
+{
+	// The largest width or height a generated thumbnail may have
+	private static final Integer THUMBNAIL_MAX_DIMENSION = 320;
+
+	/**
+	 * Creates a JPEG thumbnail of an image. If the image has a thumbnail embedded in its EXIF data we use that, otherwise
+	 * we downscale the image ourselves
+	 *
+	 * @param imageFile The image to create a thumbnail for
+	 * @return The bytes of the JPEG thumbnail, or null if the image could not be read
+	 * @throws IOException If the image could not be read
+	 */
+	public static byte[] createThumbnail(File imageFile) throws IOException
+	{
+		// First try the embedded thumbnail, it's free since we don't need to decode the image
+		try
+		{
+			ImageMetadata imageMetadata = Imaging.getMetadata(imageFile);
+			if (imageMetadata instanceof JpegImageMetadata)
+			{
+				byte[] exifThumbnail = ((JpegImageMetadata) imageMetadata).getEXIFThumbnailData();
+				if (exifThumbnail != null && exifThumbnail.length > 0)
+					return exifThumbnail;
+			}
+		}
+		catch (ImageReadException ignored)
+		{
+			// If the metadata is unreadable we just downscale the image instead
+		}
+
+		// No embedded thumbnail, so downscale the image
+		BufferedImage fullImage = ImageIO.read(imageFile);
+		if (fullImage == null)
+			return null;
+
+		// Compute the thumbnail size keeping the aspect ratio the same
+		Double scale = Math.min(1.0, THUMBNAIL_MAX_DIMENSION / (double) Math.max(fullImage.getWidth(), fullImage.getHeight()));
+		Integer thumbnailWidth = Math.max(1, (int) Math.round(fullImage.getWidth() * scale));
+		Integer thumbnailHeight = Math.max(1, (int) Math.round(fullImage.getHeight() * scale));
+
+		// Draw the full image onto the smaller thumbnail
+		BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = thumbnail.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(fullImage, 0, 0, thumbnailWidth, thumbnailHeight, null);
+		graphics.dispose();
+
+		// Write the thumbnail as a JPEG
+		ByteArrayOutputStream thumbnailBytes = new ByteArrayOutputStream();
+		ImageIO.write(thumbnail, "jpg", thumbnailBytes);
+		return thumbnailBytes.toByteArray();
+	}
+}
@@ -0,0 +1,233 @@
+package model.cyverse;
+
+import javafx.embed.swing.JFXPanel;
+import model.image.CloudImageEntry;
+import model.image.CloudUploadEntry;
+import model.image.ImageEntry;
+import model.image.ImageTagDelta;
+import model.location.Location;
+import model.species.Species;
+import org.apache.commons.io.FileUtils;
+import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for saving edited cloud images, run against the local storage backend instead of CyVerse
+ */
+public class CyVerseConnectionManagerTest
+{
+	// The directory of the upload the images are saved into
+	private static final String UPLOAD_PATH = "/iplant/home/user/Sanimal/Collections/collection/Uploads/upload";
+
+	// The local storage and the images being saved are created in here
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	// The directory the local storage backend keeps its files in
+	private File storageRoot;
+
+	/**
+	 * Image entries load their tree icons when the class is loaded, which needs JavaFX to be running
+	 */
+	@BeforeClass
+	public static void initJavaFX()
+	{
+		new JFXPanel();
+	}
+
+	@Before
+	public void createStorage() throws IOException
+	{
+		this.storageRoot = this.temporaryFolder.newFolder("storage");
+	}
+
+	@Test
+	public void savedImagesOverwriteTheStoredImage() throws IOException
+	{
+		LocalStorageBackend storageBackend = new LocalStorageBackend(this.storageRoot, 0L, 0L);
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(storageBackend);
+		FileUtils.writeStringToFile(new File(this.storageRoot, UPLOAD_PATH + "/image.jpg"), "old image", StandardCharsets.UTF_8);
+
+		assertTrue(cyVerseConnectionManager.saveImageWithRetry(this.localImage("edited image"), UPLOAD_PATH + "/image.jpg"));
+		assertEquals("edited image", FileUtils.readFileToString(new File(this.storageRoot, UPLOAD_PATH + "/image.jpg"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failedSavesAreRetried() throws IOException
+	{
+		// The first two transfers fail, the third goes through
+		FlakyStorageBackend storageBackend = new FlakyStorageBackend(this.storageRoot, 2);
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(storageBackend);
+
+		File localImage = this.localImage("edited image");
+		Long start = System.currentTimeMillis();
+		assertTrue(cyVerseConnectionManager.saveImageWithRetry(localImage, UPLOAD_PATH + "/image.jpg"));
+		assertEquals(3, storageBackend.getAttempts().intValue());
+		// The retries back off, waiting 1 and then 2 seconds
+		assertTrue(System.currentTimeMillis() - start >= 3000);
+		assertEquals("edited image", FileUtils.readFileToString(new File(this.storageRoot, UPLOAD_PATH + "/image.jpg"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void savesGiveUpAfterTooManyFailures() throws IOException
+	{
+		FlakyStorageBackend storageBackend = new FlakyStorageBackend(this.storageRoot, Integer.MAX_VALUE);
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(storageBackend);
+
+		assertFalse(cyVerseConnectionManager.saveImageWithRetry(this.localImage("edited image"), UPLOAD_PATH + "/image.jpg"));
+		assertEquals(CyVerseConnectionManager.SAVE_RETRY_COUNT, storageBackend.getAttempts());
+		assertFalse(new File(this.storageRoot, UPLOAD_PATH + "/image.jpg").exists());
+	}
+
+	@Test
+	public void savedTagsAreReadBackFromTheUpload() throws IOException
+	{
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(new LocalStorageBackend(this.storageRoot, 0L, 0L));
+		FileUtils.forceMkdir(new File(this.storageRoot, UPLOAD_PATH));
+
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		Location creek = new Location("Creek", "CRK", 32.2, -110.9, 800.0);
+		CloudImageEntry first = this.taggedCloudImage(UPLOAD_PATH + "/first.jpg", LocalDateTime.of(2017, 6, 14, 8, 30), creek, deer, 2);
+		CloudImageEntry second = this.taggedCloudImage(UPLOAD_PATH + "/camera1/second.jpg", LocalDateTime.of(2017, 6, 15, 9, 45), creek, deer, 1);
+		CloudUploadEntry uploadEntry = new CloudUploadEntry("user", LocalDateTime.now(), 2, 2, UPLOAD_PATH);
+
+		List<CloudImageEntry> savedImages = cyVerseConnectionManager.saveImageTagDeltas(Arrays.asList(first, second), uploadEntry);
+		assertEquals(Arrays.asList(first, second), savedImages);
+
+		// The tags are read back keyed by image path, and applying them gives the saved tags
+		Map<String, ImageTagDelta> pendingTagDeltas = cyVerseConnectionManager.readPendingTagDeltas(UPLOAD_PATH);
+		assertEquals(2, pendingTagDeltas.size());
+		ImageEntry imageEntry = new ImageEntry(new File("second.jpg"));
+		pendingTagDeltas.get(UPLOAD_PATH + "/camera1/second.jpg").applyTo(imageEntry, new ArrayList<>(), new ArrayList<>());
+		assertEquals(LocalDateTime.of(2017, 6, 15, 9, 45), imageEntry.getDateTaken());
+		assertEquals("CRK", imageEntry.getLocationTaken().getId());
+		assertEquals("Odocoileus hemionus", imageEntry.getSpeciesPresent().get(0).getSpecies().getScientificName());
+		assertEquals(1, imageEntry.getSpeciesPresent().get(0).getCount().intValue());
+	}
+
+	@Test
+	public void savedImageFilesSupersedeOlderTags() throws IOException
+	{
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(new LocalStorageBackend(this.storageRoot, 0L, 0L));
+		FileUtils.forceMkdir(new File(this.storageRoot, UPLOAD_PATH));
+
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		Location creek = new Location("Creek", "CRK", 32.2, -110.9, 800.0);
+		CloudImageEntry first = this.taggedCloudImage(UPLOAD_PATH + "/first.jpg", LocalDateTime.of(2017, 6, 14, 8, 30), creek, deer, 2);
+		CloudImageEntry second = this.taggedCloudImage(UPLOAD_PATH + "/second.jpg", LocalDateTime.of(2017, 6, 15, 9, 45), creek, deer, 1);
+		CloudUploadEntry uploadEntry = new CloudUploadEntry("user", LocalDateTime.now(), 2, 2, UPLOAD_PATH);
+		cyVerseConnectionManager.saveImageTagDeltas(Arrays.asList(first, second), uploadEntry);
+		Date afterDeltaSave = new Date(System.currentTimeMillis() + 1000);
+
+		// A save that started before the deltas were written leaves them alone
+		cyVerseConnectionManager.supersedeTagDeltas(UPLOAD_PATH, Collections.singleton(UPLOAD_PATH + "/first.jpg"), new Date(0));
+		assertEquals(2, cyVerseConnectionManager.readPendingTagDeltas(UPLOAD_PATH).size());
+
+		// Once the first image's file is saved only the second image's tags are left
+		cyVerseConnectionManager.supersedeTagDeltas(UPLOAD_PATH, Collections.singleton(UPLOAD_PATH + "/first.jpg"), afterDeltaSave);
+		assertEquals(Collections.singleton(UPLOAD_PATH + "/second.jpg"), cyVerseConnectionManager.readPendingTagDeltas(UPLOAD_PATH).keySet());
+
+		// Once both are saved the delta file is gone
+		cyVerseConnectionManager.supersedeTagDeltas(UPLOAD_PATH, Collections.singleton(UPLOAD_PATH + "/second.jpg"), afterDeltaSave);
+		assertTrue(cyVerseConnectionManager.readPendingTagDeltas(UPLOAD_PATH).isEmpty());
+		assertEquals(0, new File(this.storageRoot, UPLOAD_PATH).list().length);
+	}
+
+	@Test
+	public void failedTagSavesSaveNothing() throws IOException
+	{
+		CyVerseConnectionManager cyVerseConnectionManager = new CyVerseConnectionManager(new FlakyStorageBackend(this.storageRoot, Integer.MAX_VALUE));
+		CloudImageEntry cloudImageEntry = this.taggedCloudImage(UPLOAD_PATH + "/first.jpg", LocalDateTime.of(2017, 6, 14, 8, 30), new Location("Creek", "CRK", 32.2, -110.9, 800.0), new Species("Mule Deer", "Odocoileus hemionus"), 2);
+		CloudUploadEntry uploadEntry = new CloudUploadEntry("user", LocalDateTime.now(), 1, 1, UPLOAD_PATH);
+
+		// None of the images count as saved, so none of them get updated in the index
+		assertTrue(cyVerseConnectionManager.saveImageTagDeltas(Arrays.asList(cloudImageEntry), uploadEntry).isEmpty());
+	}
+
+	/**
+	 * Creates a local file standing in for an edited image
+	 *
+	 * @param contents The contents of the file
+	 * @return The file
+	 * @throws IOException If the file could not be written
+	 */
+	private File localImage(String contents) throws IOException
+	{
+		File localImage = this.temporaryFolder.newFile();
+		FileUtils.writeStringToFile(localImage, contents, StandardCharsets.UTF_8);
+		return localImage;
+	}
+
+	/**
+	 * Creates a cloud image tagged with a date, location, and species
+	 *
+	 * @param cyversePath The path of the image on CyVerse
+	 * @param dateTaken The date the image was taken
+	 * @param location The location the image was taken at
+	 * @param species The species in the image
+	 * @param count The number of animals of the species
+	 * @return The tagged image
+	 */
+	private CloudImageEntry taggedCloudImage(String cyversePath, LocalDateTime dateTaken, Location location, Species species, Integer count)
+	{
+		CloudImageEntry cloudImageEntry = new CloudImageEntry(new File(cyversePath), null);
+		cloudImageEntry.setDateTaken(dateTaken);
+		cloudImageEntry.setLocationTaken(location);
+		cloudImageEntry.addSpecies(species, count);
+		return cloudImageEntry;
+	}
+
+	/**
+	 * Local storage whose file transfers fail a given number of times before they start working
+	 */
+	private static class FlakyStorageBackend extends LocalStorageBackend
+	{
+		// The number of transfers that fail before transfers work
+		private final Integer failuresBeforeSuccess;
+		// The number of transfers tried so far
+		private Integer attempts = 0;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param rootDirectory The directory that remote paths are stored in
+		 * @param failuresBeforeSuccess The number of transfers that fail before transfers work
+		 */
+		FlakyStorageBackend(File rootDirectory, Integer failuresBeforeSuccess)
+		{
+			super(rootDirectory, 0L, 0L);
+			this.failuresBeforeSuccess = failuresBeforeSuccess;
+		}
+
+		@Override
+		public synchronized void putFile(File localFile, String remotePath, TransferStatusCallbackListener transferCallback) throws IOException
+		{
+			this.attempts++;
+			if (this.attempts <= this.failuresBeforeSuccess)
+				throw new IOException("Simulated transfer failure " + this.attempts);
+			super.putFile(localFile, remotePath, transferCallback);
+		}
+
+		synchronized Integer getAttempts()
+		{
+			return this.attempts;
+		}
+	}
+}
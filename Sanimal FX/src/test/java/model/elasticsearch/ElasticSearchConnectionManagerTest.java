@@ -0,0 +1,228 @@
+package model.elasticsearch;
+
+import javafx.embed.swing.JFXPanel;
+import model.image.ImageEntry;
+import model.location.Location;
+import model.query.ElasticSearchQuery;
+import model.species.Species;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.joda.time.DateTimeZone;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for picking the yearly metadata indices a query searches, building count queries, totalling rollup changes, and spotting
+ * bulk rejections worth retrying. Creating the connection manager does not connect to the cluster, so none is needed
+ */
+public class ElasticSearchConnectionManagerTest
+{
+	// The read alias covering every yearly metadata index
+	private static final String[] ALL_METADATA = new String[] { "metadata" };
+
+	// The connection manager that picks the indices
+	private static ElasticSearchConnectionManager elasticSearchConnectionManager;
+
+	@BeforeClass
+	public static void createConnectionManager()
+	{
+		// Image entries load their tree icons when the class is loaded, which needs JavaFX to be running
+		new JFXPanel();
+		elasticSearchConnectionManager = new ElasticSearchConnectionManager();
+	}
+
+	@Test
+	public void busyClusterRejectionsAreRetried()
+	{
+		assertTrue(elasticSearchConnectionManager.isTooManyRequests(new ElasticsearchStatusException("busy", RestStatus.TOO_MANY_REQUESTS)));
+		assertFalse(elasticSearchConnectionManager.isTooManyRequests(new ElasticsearchStatusException("bad request", RestStatus.BAD_REQUEST)));
+		assertFalse(elasticSearchConnectionManager.isTooManyRequests(new IOException("connection reset")));
+	}
+
+	@Test
+	public void unlimitedQueriesSearchEverything()
+	{
+		assertArrayEquals(ALL_METADATA, elasticSearchConnectionManager.metadataIndicesFor(new ElasticSearchQuery()));
+	}
+
+	@Test
+	public void openEndedQueriesSearchEverything()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartDate(LocalDateTime.of(2014, 3, 1, 0, 0));
+		assertArrayEquals(ALL_METADATA, elasticSearchConnectionManager.metadataIndicesFor(query));
+	}
+
+	@Test
+	public void yearRangesSearchEachYearsIndex()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2015, 2017);
+		assertArrayEquals(new String[] { "metadata-2015", "metadata-2016", "metadata-2017" }, elasticSearchConnectionManager.metadataIndicesFor(query));
+	}
+
+	@Test
+	public void datesInOneYearSearchOneIndex()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartDate(LocalDateTime.of(2016, 2, 1, 0, 0));
+		query.setEndDate(LocalDateTime.of(2016, 8, 1, 0, 0));
+		assertArrayEquals(new String[] { "metadata-2016" }, elasticSearchConnectionManager.metadataIndicesFor(query));
+	}
+
+	@Test
+	public void queriesMatchingNoYearSearchEverything()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2010, 2012);
+		query.setStartDate(LocalDateTime.of(2015, 1, 1, 0, 0));
+		assertArrayEquals(ALL_METADATA, elasticSearchConnectionManager.metadataIndicesFor(query));
+	}
+
+	@Test
+	public void wideRangesSearchEverything()
+	{
+		Integer maxYears = ElasticSearchConnectionManager.MAX_TARGETED_METADATA_YEARS;
+
+		// The widest range that still lists each year
+		ElasticSearchQuery targetedQuery = new ElasticSearchQuery();
+		targetedQuery.setStartAndEndYear(2000, 2000 + maxYears - 1);
+		assertEquals(maxYears.intValue(), elasticSearchConnectionManager.metadataIndicesFor(targetedQuery).length);
+
+		// One year more and the alias is searched instead
+		ElasticSearchQuery wideQuery = new ElasticSearchQuery();
+		wideQuery.setStartAndEndYear(2000, 2000 + maxYears);
+		assertArrayEquals(ALL_METADATA, elasticSearchConnectionManager.metadataIndicesFor(wideQuery));
+	}
+
+	@Test
+	public void countQueriesOnlySearchTheQueriedYears()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2016, 2017);
+		SearchRequest countRequest = elasticSearchConnectionManager.countRequestFor(query);
+		assertArrayEquals(new String[] { "metadata-2016", "metadata-2017" }, countRequest.indices());
+		assertEquals(0, countRequest.source().size());
+	}
+
+	@Test
+	public void countQueriesBucketMonthsInLocalTime()
+	{
+		// The year, month, and hour fields are in local time, so months must be split in local time too
+		SearchRequest countRequest = elasticSearchConnectionManager.countRequestFor(new ElasticSearchQuery());
+		AggregationBuilder yearMonths = countRequest.source().aggregations().getAggregatorFactories().stream().filter(aggregation -> aggregation.getName().equals("yearMonths")).findFirst().orElseThrow(() -> new AssertionError("No month histogram"));
+		assertEquals(DateTimeZone.getDefault(), ((DateHistogramAggregationBuilder) yearMonths).timeZone());
+	}
+
+	@Test
+	public void unchangedEditsCancelOut()
+	{
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		ImageEntry oldImage = this.makeImage(LocalDateTime.of(2017, 6, 14, 8, 30));
+		oldImage.addSpecies(deer, 2);
+		ImageEntry newImage = this.makeImage(LocalDateTime.of(2017, 6, 14, 8, 30));
+		newImage.addSpecies(deer, 2);
+
+		Map<String, Map<String, Object>> rollupChanges = this.editChanges(oldImage, newImage);
+		assertEquals(1, rollupChanges.size());
+		assertEquals(0, rollupChanges.get("collection|CRK|Odocoileus hemionus|2017-06-14").get("images"));
+		assertEquals(0, rollupChanges.get("collection|CRK|Odocoileus hemionus|2017-06-14").get("animals"));
+	}
+
+	@Test
+	public void changedCountsChangeOnlyTheAnimals()
+	{
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		ImageEntry oldImage = this.makeImage(LocalDateTime.of(2017, 6, 14, 8, 30));
+		oldImage.addSpecies(deer, 2);
+		ImageEntry newImage = this.makeImage(LocalDateTime.of(2017, 6, 14, 8, 30));
+		newImage.addSpecies(deer, 5);
+
+		Map<String, Object> deerChange = this.editChanges(oldImage, newImage).get("collection|CRK|Odocoileus hemionus|2017-06-14");
+		assertEquals(0, deerChange.get("images"));
+		assertEquals(3, deerChange.get("animals"));
+	}
+
+	@Test
+	public void retaggedImagesMoveBetweenRollups()
+	{
+		// The image was a deer on one day, and is re-tagged as two bobcats on the next day
+		ImageEntry oldImage = this.makeImage(LocalDateTime.of(2017, 6, 14, 8, 30));
+		oldImage.addSpecies(new Species("Mule Deer", "Odocoileus hemionus"), 1);
+		ImageEntry newImage = this.makeImage(LocalDateTime.of(2017, 6, 15, 8, 30));
+		newImage.addSpecies(new Species("Bobcat", "Lynx rufus"), 2);
+
+		Map<String, Map<String, Object>> rollupChanges = this.editChanges(oldImage, newImage);
+		assertEquals(2, rollupChanges.size());
+		assertEquals(-1, rollupChanges.get("collection|CRK|Odocoileus hemionus|2017-06-14").get("images"));
+		assertEquals(-1, rollupChanges.get("collection|CRK|Odocoileus hemionus|2017-06-14").get("animals"));
+		assertEquals(1, rollupChanges.get("collection|CRK|Lynx rufus|2017-06-15").get("images"));
+		assertEquals(2, rollupChanges.get("collection|CRK|Lynx rufus|2017-06-15").get("animals"));
+	}
+
+	@Test
+	public void changesFromManyImagesAreTotalled()
+	{
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		LocalDateTime morning = LocalDateTime.of(2017, 6, 14, 8, 30);
+		LocalDateTime evening = LocalDateTime.of(2017, 6, 14, 19, 0);
+		ImageEntry morningImage = this.makeImage(morning);
+		morningImage.addSpecies(deer, 2);
+		ImageEntry eveningImage = this.makeImage(evening);
+		eveningImage.addSpecies(deer, 1);
+
+		Map<String, Map<String, Object>> rollupChanges = new HashMap<>();
+		ElasticSearchSchemaManager elasticSearchSchemaManager = new ElasticSearchSchemaManager();
+		elasticSearchConnectionManager.mergeRollupChanges(rollupChanges, elasticSearchSchemaManager.imageToRollupChanges(eveningImage, "collection", 1));
+		elasticSearchConnectionManager.mergeRollupChanges(rollupChanges, elasticSearchSchemaManager.imageToRollupChanges(morningImage, "collection", 1));
+
+		// Both images are on the same day, so they share a rollup that spans both of their times
+		Map<String, Object> deerChange = rollupChanges.get("collection|CRK|Odocoileus hemionus|2017-06-14");
+		assertEquals(2, deerChange.get("images"));
+		assertEquals(3, deerChange.get("animals"));
+		assertEquals(morning.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), deerChange.get("firstTaken"));
+		assertEquals(evening.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), deerChange.get("lastTaken"));
+	}
+
+	/**
+	 * Totals the rollup changes made by saving an edit to an image, the same way a metadata save does
+	 *
+	 * @param oldImage The image as it was indexed before the edit
+	 * @param newImage The image after the edit
+	 * @return A map of rollup ID -> the total change to the rollup
+	 */
+	private Map<String, Map<String, Object>> editChanges(ImageEntry oldImage, ImageEntry newImage)
+	{
+		ElasticSearchSchemaManager elasticSearchSchemaManager = new ElasticSearchSchemaManager();
+		Map<String, Map<String, Object>> rollupChanges = new HashMap<>();
+		elasticSearchConnectionManager.mergeRollupChanges(rollupChanges, elasticSearchSchemaManager.imageToRollupChanges(oldImage, "collection", -1));
+		elasticSearchConnectionManager.mergeRollupChanges(rollupChanges, elasticSearchSchemaManager.imageToRollupChanges(newImage, "collection", 1));
+		return rollupChanges;
+	}
+
+	/**
+	 * Creates an image taken at a creek without any species
+	 *
+	 * @param dateTaken The date the image was taken
+	 * @return The image
+	 */
+	private ImageEntry makeImage(LocalDateTime dateTaken)
+	{
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		imageEntry.setDateTaken(dateTaken);
+		imageEntry.setLocationTaken(new Location("Creek", "CRK", 32.2, -110.9, 800.0));
+		return imageEntry;
+	}
+}
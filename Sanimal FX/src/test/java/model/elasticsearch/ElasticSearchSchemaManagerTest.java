@@ -0,0 +1,125 @@
+package model.elasticsearch;
+
+import javafx.embed.swing.JFXPanel;
+import model.image.ImageEntry;
+import model.location.Location;
+import model.species.Species;
+import model.species.SpeciesEntry;
+import org.elasticsearch.common.collect.Tuple;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for computing how an image changes the daily rollups
+ */
+public class ElasticSearchSchemaManagerTest
+{
+	// The date every test image is taken on
+	private static final LocalDateTime DATE_TAKEN = LocalDateTime.of(2017, 6, 14, 8, 30);
+
+	// Computes the rollup changes
+	private final ElasticSearchSchemaManager elasticSearchSchemaManager = new ElasticSearchSchemaManager();
+
+	/**
+	 * Image entries load their tree icons when the class is loaded, which needs JavaFX to be running
+	 */
+	@BeforeClass
+	public static void initJavaFX()
+	{
+		new JFXPanel();
+	}
+
+	@Test
+	public void addedImagesCountOncePerSpecies()
+	{
+		ImageEntry imageEntry = this.makeImage();
+		imageEntry.addSpecies(new Species("Mule Deer", "Odocoileus hemionus"), 3);
+		imageEntry.addSpecies(new Species("Bobcat", "Lynx rufus"), 1);
+
+		List<Tuple<String, Map<String, Object>>> changes = this.elasticSearchSchemaManager.imageToRollupChanges(imageEntry, "collection", 1);
+		assertEquals(2, changes.size());
+
+		Map<String, Object> deerChange = this.changeFor(changes, "collection|CRK|Odocoileus hemionus|2017-06-14");
+		assertEquals(1, deerChange.get("images"));
+		assertEquals(3, deerChange.get("animals"));
+		assertEquals("collection", deerChange.get("collectionID"));
+		assertEquals("CRK", deerChange.get("locationID"));
+		assertEquals("2017-06-14", deerChange.get("day"));
+		Long taken = DATE_TAKEN.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		assertEquals(taken, deerChange.get("firstTaken"));
+		assertEquals(taken, deerChange.get("lastTaken"));
+
+		Map<String, Object> bobcatChange = this.changeFor(changes, "collection|CRK|Lynx rufus|2017-06-14");
+		assertEquals(1, bobcatChange.get("images"));
+		assertEquals(1, bobcatChange.get("animals"));
+	}
+
+	@Test
+	public void removedImagesSubtract()
+	{
+		ImageEntry imageEntry = this.makeImage();
+		imageEntry.addSpecies(new Species("Mule Deer", "Odocoileus hemionus"), 3);
+
+		Map<String, Object> change = this.changeFor(this.elasticSearchSchemaManager.imageToRollupChanges(imageEntry, "collection", -1), "collection|CRK|Odocoileus hemionus|2017-06-14");
+		assertEquals(-1, change.get("images"));
+		assertEquals(-3, change.get("animals"));
+	}
+
+	@Test
+	public void repeatedSpeciesAreTotalled()
+	{
+		// Two entries for the same species still count the image once, with the animals of both
+		ImageEntry imageEntry = this.makeImage();
+		imageEntry.getSpeciesPresent().add(new SpeciesEntry(new Species("Mule Deer", "Odocoileus hemionus"), 2));
+		imageEntry.getSpeciesPresent().add(new SpeciesEntry(new Species("Mule Deer", "Odocoileus hemionus"), 4));
+
+		List<Tuple<String, Map<String, Object>>> changes = this.elasticSearchSchemaManager.imageToRollupChanges(imageEntry, "collection", 1);
+		assertEquals(1, changes.size());
+		assertEquals(1, changes.get(0).v2().get("images"));
+		assertEquals(6, changes.get(0).v2().get("animals"));
+	}
+
+	@Test
+	public void imagesWithoutSpeciesCountTowardsTheEmptySpecies()
+	{
+		List<Tuple<String, Map<String, Object>>> changes = this.elasticSearchSchemaManager.imageToRollupChanges(this.makeImage(), "collection", 1);
+		assertEquals(1, changes.size());
+		Map<String, Object> change = this.changeFor(changes, "collection|CRK||2017-06-14");
+		assertEquals("", change.get("scientificName"));
+		assertEquals(1, change.get("images"));
+		assertEquals(0, change.get("animals"));
+	}
+
+	/**
+	 * Creates an image taken at a creek on the test date, without any species
+	 *
+	 * @return The image
+	 */
+	private ImageEntry makeImage()
+	{
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		imageEntry.setDateTaken(DATE_TAKEN);
+		imageEntry.setLocationTaken(new Location("Creek", "CRK", 32.2, -110.9, 800.0));
+		return imageEntry;
+	}
+
+	/**
+	 * Finds the change to a given rollup
+	 *
+	 * @param changes The changes computed for an image
+	 * @param rollupID The ID of the rollup to find the change to
+	 * @return The change to the rollup
+	 */
+	private Map<String, Object> changeFor(List<Tuple<String, Map<String, Object>>> changes, String rollupID)
+	{
+		return changes.stream().filter(change -> change.v1().equals(rollupID)).findFirst().orElseThrow(() -> new AssertionError("No change to " + rollupID)).v2();
+	}
+}
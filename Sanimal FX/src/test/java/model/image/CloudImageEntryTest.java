@@ -0,0 +1,74 @@
+package model.image;
+
+import javafx.embed.swing.JFXPanel;
+import model.location.Location;
+import model.species.Species;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for editing cloud images whose tags are already known from the metadata index
+ */
+public class CloudImageEntryTest
+{
+	/**
+	 * Image entries load their tree icons when the class is loaded, which needs JavaFX to be running
+	 */
+	@BeforeClass
+	public static void initJavaFX()
+	{
+		new JFXPanel();
+	}
+
+	@Test
+	public void indexedImagesAreCleanUntilEdited()
+	{
+		CloudImageEntry cloudImageEntry = this.indexedCloudImage();
+
+		assertFalse(cloudImageEntry.isCloudDirty());
+		assertFalse(cloudImageEntry.hasBeenPulledFromCloud());
+		assertFalse(cloudImageEntry.isBeingPulledFromCloud());
+		assertEquals(1, cloudImageEntry.getSpeciesPresent().size());
+	}
+
+	@Test
+	public void editingIndexedImagesDoesNotDownloadThem()
+	{
+		CloudImageEntry cloudImageEntry = this.indexedCloudImage();
+
+		cloudImageEntry.setDateTaken(LocalDateTime.of(2018, 1, 2, 3, 4));
+		cloudImageEntry.setLocationTaken(new Location("Ridge", "RDG", 32.4, -110.7, 1200.0));
+		cloudImageEntry.addSpecies(new Species("Elk", "Cervus canadensis"), 1);
+		cloudImageEntry.removeSpecies(cloudImageEntry.getSpeciesPresent().get(0).getSpecies());
+
+		// The edit is waiting to be saved, but the image was never downloaded
+		assertTrue(cloudImageEntry.isCloudDirty());
+		assertFalse(cloudImageEntry.hasBeenPulledFromCloud());
+		assertFalse(cloudImageEntry.isBeingPulledFromCloud());
+		assertEquals("RDG", cloudImageEntry.getLocationTaken().getId());
+		assertEquals(1, cloudImageEntry.getSpeciesPresent().size());
+		assertEquals("Cervus canadensis", cloudImageEntry.getSpeciesPresent().get(0).getSpecies().getScientificName());
+	}
+
+	/**
+	 * Creates a cloud image that has not been downloaded, with tags filled in from the metadata index
+	 *
+	 * @return The cloud image
+	 */
+	private CloudImageEntry indexedCloudImage()
+	{
+		ImageEntry indexedImage = new ImageEntry(new File("image.jpg"));
+		indexedImage.setDateTaken(LocalDateTime.of(2017, 6, 14, 8, 30));
+		indexedImage.setLocationTaken(new Location("Creek", "CRK", 32.2, -110.9, 800.0));
+		indexedImage.addSpecies(new Species("Mule Deer", "Odocoileus hemionus"), 2);
+
+		CloudImageEntry cloudImageEntry = new CloudImageEntry(new File("/iplant/home/user/Sanimal/Collections/collection/Uploads/upload/image.jpg"), null);
+		cloudImageEntry.setIndexedMetadata(indexedImage);
+		return cloudImageEntry;
+	}
+}
@@ -0,0 +1,140 @@
+package model.image;
+
+import javafx.embed.swing.JFXPanel;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for splitting an upload into TAR parts and packing its thumbnails
+ */
+public class DirectoryManagerTest
+{
+	// Every image directory and entry gets created in here
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Image entries and directories load their tree icons when the class is loaded, which needs JavaFX to be running
+	 */
+	@BeforeClass
+	public static void initJavaFX()
+	{
+		new JFXPanel();
+	}
+
+	@Test
+	public void emptyDirectoryHasNoParts() throws IOException
+	{
+		ImageDirectory directory = new ImageDirectory(this.temporaryFolder.newFolder("empty"));
+		assertTrue(DirectoryManager.splitIntoTarParts(directory, 10).isEmpty());
+	}
+
+	@Test
+	public void partsLeaveRoomForTheMetadataFile() throws IOException
+	{
+		ImageDirectory directory = new ImageDirectory(this.temporaryFolder.newFolder("upload"));
+		List<ImageEntry> images = this.addImages(directory, 9);
+
+		// Each TAR also holds a meta.csv, so 4 entries per TAR leaves room for 3 images
+		List<List<ImageEntry>> tarParts = DirectoryManager.splitIntoTarParts(directory, 4);
+		assertEquals(3, tarParts.size());
+		tarParts.forEach(tarPart -> assertEquals(3, tarPart.size()));
+		assertEquals(images, tarParts.stream().flatMap(List::stream).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void imagesAreSpreadOverTheFewestParts() throws IOException
+	{
+		ImageDirectory directory = new ImageDirectory(this.temporaryFolder.newFolder("upload"));
+		this.addImages(directory, 10);
+
+		// 10 images with room for 3 per TAR needs 4 TARs. No part may go over the limit
+		List<List<ImageEntry>> tarParts = DirectoryManager.splitIntoTarParts(directory, 4);
+		assertEquals(4, tarParts.size());
+		tarParts.forEach(tarPart -> assertTrue(tarPart.size() <= 3));
+		assertEquals(10, tarParts.stream().mapToInt(List::size).sum());
+	}
+
+	@Test
+	public void imagesInSubDirectoriesAreIncluded() throws IOException
+	{
+		ImageDirectory directory = new ImageDirectory(this.temporaryFolder.newFolder("upload"));
+		List<ImageEntry> topImages = this.addImages(directory, 2);
+		ImageDirectory subDirectory = new ImageDirectory(this.temporaryFolder.newFolder("upload", "camera1"));
+		directory.addChild(subDirectory);
+		List<ImageEntry> subImages = this.addImages(subDirectory, 3);
+
+		// Everything fits in one part, in tree order
+		List<List<ImageEntry>> tarParts = DirectoryManager.splitIntoTarParts(directory, 100);
+		assertEquals(1, tarParts.size());
+		List<ImageEntry> expected = new ArrayList<>(topImages);
+		expected.addAll(subImages);
+		assertEquals(expected, tarParts.get(0));
+	}
+
+	@Test
+	public void thumbnailPacksHoldEveryReadableImageInOrder() throws IOException
+	{
+		// More images than fit in one batch of thumbnails, with an unreadable image in the middle
+		ImageDirectory directory = new ImageDirectory(this.temporaryFolder.newFolder("upload"));
+		List<String> expectedEntries = new ArrayList<>();
+		for (Integer i = 0; i < 300; i++)
+		{
+			File imageFile = new File(directory.getFile(), "image" + i + ".jpg");
+			if (i == 150)
+			{
+				FileUtils.writeStringToFile(imageFile, "not an image", StandardCharsets.UTF_8);
+			}
+			else
+			{
+				ImageIO.write(new BufferedImage(8, 6, BufferedImage.TYPE_INT_RGB), "jpg", imageFile);
+				expectedEntries.add(imageFile.getName());
+			}
+			directory.addImage(new ImageEntry(imageFile));
+		}
+
+		File thumbnailPack = DirectoryManager.directoryToThumbnailPack(directory, imageEntry -> imageEntry.getFile().getName());
+		assertNotNull(thumbnailPack);
+		try (ZipFile zipFile = new ZipFile(thumbnailPack))
+		{
+			List<String> entries = Collections.list(zipFile.getEntries()).stream().map(ZipArchiveEntry::getName).collect(Collectors.toList());
+			assertEquals(expectedEntries, entries);
+		}
+	}
+
+	/**
+	 * Adds the given number of images to a directory. The image files don't need to exist to be split into parts
+	 *
+	 * @param directory The directory to add images to
+	 * @param count The number of images to add
+	 * @return The images that were added, in order
+	 */
+	private List<ImageEntry> addImages(ImageDirectory directory, Integer count)
+	{
+		List<ImageEntry> images = new ArrayList<>();
+		for (Integer i = 0; i < count; i++)
+		{
+			ImageEntry imageEntry = new ImageEntry(new File(directory.getFile(), "image" + i + ".jpg"));
+			directory.addImage(imageEntry);
+			images.add(imageEntry);
+		}
+		return images;
+	}
+}
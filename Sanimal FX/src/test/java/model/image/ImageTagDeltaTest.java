@@ -0,0 +1,135 @@
+package model.image;
+
+import javafx.embed.swing.JFXPanel;
+import model.location.Location;
+import model.species.Species;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for applying the tags saved by a metadata only save back onto an image
+ */
+public class ImageTagDeltaTest
+{
+	/**
+	 * Image entries load their tree icons when the class is loaded, which needs JavaFX to be running
+	 */
+	@BeforeClass
+	public static void initJavaFX()
+	{
+		new JFXPanel();
+	}
+
+	@Test
+	public void appliesDateLocationAndSpecies()
+	{
+		LocalDateTime dateTaken = LocalDateTime.of(2017, 6, 14, 8, 30);
+		Location location = new Location("Creek", "CRK", 32.2, -110.9, 800.0);
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		ImageTagDelta tagDelta = this.makeDelta(dateTaken, location, deer, 2);
+
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		tagDelta.applyTo(imageEntry, new ArrayList<>(), new ArrayList<>());
+
+		assertEquals(dateTaken, imageEntry.getDateTaken());
+		assertEquals("CRK", imageEntry.getLocationTaken().getId());
+		assertEquals(1, imageEntry.getSpeciesPresent().size());
+		assertEquals(deer, imageEntry.getSpeciesPresent().get(0).getSpecies());
+		assertEquals(2, imageEntry.getSpeciesPresent().get(0).getCount().intValue());
+	}
+
+	@Test
+	public void reusesKnownLocationsAndSpecies()
+	{
+		ImageTagDelta tagDelta = this.makeDelta(LocalDateTime.of(2017, 6, 14, 8, 30), new Location("Creek", "CRK", 32.2, -110.9, 800.0), new Species("Mule Deer", "Odocoileus hemionus"), 1);
+
+		// The known location and species have the same IDs as the ones in the delta, but are different objects
+		Location knownLocation = new Location("Creek (renamed)", "CRK", 32.2, -110.9, 800.0);
+		Species knownSpecies = new Species("Deer", "Odocoileus hemionus");
+		List<Location> knownLocations = new ArrayList<>(Collections.singletonList(knownLocation));
+		List<Species> knownSpeciesList = new ArrayList<>(Collections.singletonList(knownSpecies));
+
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		tagDelta.applyTo(imageEntry, knownLocations, knownSpeciesList);
+
+		assertSame(knownLocation, imageEntry.getLocationTaken());
+		assertSame(knownSpecies, imageEntry.getSpeciesPresent().get(0).getSpecies());
+		assertEquals(1, knownLocations.size());
+		assertEquals(1, knownSpeciesList.size());
+	}
+
+	@Test
+	public void addsUnknownLocationsAndSpecies()
+	{
+		Location location = new Location("Creek", "CRK", 32.2, -110.9, 800.0);
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		ImageTagDelta tagDelta = this.makeDelta(LocalDateTime.of(2017, 6, 14, 8, 30), location, deer, 1);
+
+		List<Location> knownLocations = new ArrayList<>();
+		List<Species> knownSpecies = new ArrayList<>();
+		tagDelta.applyTo(new ImageEntry(new File("image.jpg")), knownLocations, knownSpecies);
+
+		assertEquals(Collections.singletonList(location), knownLocations);
+		assertEquals(Collections.singletonList(deer), knownSpecies);
+	}
+
+	@Test
+	public void replacesExistingSpecies()
+	{
+		Species deer = new Species("Mule Deer", "Odocoileus hemionus");
+		Species bobcat = new Species("Bobcat", "Lynx rufus");
+		ImageTagDelta tagDelta = this.makeDelta(LocalDateTime.of(2017, 6, 14, 8, 30), new Location("Creek", "CRK", 32.2, -110.9, 800.0), deer, 3);
+
+		// The image was tagged with a different species before, the delta's species replace it instead of adding to it
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		imageEntry.addSpecies(bobcat, 1);
+		imageEntry.addSpecies(deer, 5);
+		tagDelta.applyTo(imageEntry, new ArrayList<>(), new ArrayList<>());
+
+		assertEquals(1, imageEntry.getSpeciesPresent().size());
+		assertEquals(deer, imageEntry.getSpeciesPresent().get(0).getSpecies());
+		assertEquals(3, imageEntry.getSpeciesPresent().get(0).getCount().intValue());
+	}
+
+	@Test
+	public void keepsDateAndLocationWhenTheDeltaHasNone()
+	{
+		ImageTagDelta tagDelta = this.makeDelta(null, null, new Species("Mule Deer", "Odocoileus hemionus"), 1);
+
+		LocalDateTime dateTaken = LocalDateTime.of(2016, 1, 2, 3, 4);
+		Location location = new Location("Ridge", "RDG", 31.0, -111.0, 1200.0);
+		ImageEntry imageEntry = new ImageEntry(new File("image.jpg"));
+		imageEntry.setDateTaken(dateTaken);
+		imageEntry.setLocationTaken(location);
+		tagDelta.applyTo(imageEntry, new ArrayList<>(), new ArrayList<>());
+
+		assertEquals(dateTaken, imageEntry.getDateTaken());
+		assertSame(location, imageEntry.getLocationTaken());
+	}
+
+	/**
+	 * Creates a tag delta by tagging a cloud image and capturing its tags
+	 *
+	 * @param dateTaken The date to tag the image with, may be null
+	 * @param location The location to tag the image with, may be null
+	 * @param species The species to tag the image with
+	 * @param count The number of animals of the species
+	 * @return The delta of the tagged image
+	 */
+	private ImageTagDelta makeDelta(LocalDateTime dateTaken, Location location, Species species, Integer count)
+	{
+		CloudImageEntry cloudImageEntry = new CloudImageEntry(new File("/iplant/home/user/Collections/upload/image.jpg"), null);
+		cloudImageEntry.setDateTaken(dateTaken);
+		cloudImageEntry.setLocationTaken(location);
+		cloudImageEntry.addSpecies(species, count);
+		return new ImageTagDelta(cloudImageEntry);
+	}
+}
@@ -0,0 +1,66 @@
+package model.query;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for tracking the years a query limits images to, which decide the yearly indices the query searches
+ */
+public class ElasticSearchQueryTest
+{
+	@Test
+	public void queriesStartWithoutYearLimits()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		assertNull(query.getEarliestYear());
+		assertNull(query.getLatestYear());
+	}
+
+	@Test
+	public void yearRangesLimitBothEnds()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2012, 2015);
+		assertEquals(2012, query.getEarliestYear().intValue());
+		assertEquals(2015, query.getLatestYear().intValue());
+	}
+
+	@Test
+	public void datesLimitOneEndEach()
+	{
+		ElasticSearchQuery startQuery = new ElasticSearchQuery();
+		startQuery.setStartDate(LocalDateTime.of(2014, 3, 1, 0, 0));
+		assertEquals(2014, startQuery.getEarliestYear().intValue());
+		assertNull(startQuery.getLatestYear());
+
+		ElasticSearchQuery endQuery = new ElasticSearchQuery();
+		endQuery.setEndDate(LocalDateTime.of(2016, 11, 30, 23, 59));
+		assertNull(endQuery.getEarliestYear());
+		assertEquals(2016, endQuery.getLatestYear().intValue());
+	}
+
+	@Test
+	public void limitsNarrowButNeverWiden()
+	{
+		// Every condition is 'and'ed into the query, so only years passing all of them can match
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2010, 2020);
+		query.setStartDate(LocalDateTime.of(2013, 1, 1, 0, 0));
+		query.setEndDate(LocalDateTime.of(2018, 12, 31, 0, 0));
+		query.setStartAndEndYear(2000, 2030);
+		assertEquals(2013, query.getEarliestYear().intValue());
+		assertEquals(2018, query.getLatestYear().intValue());
+	}
+
+	@Test
+	public void disjointLimitsLeaveNoYears()
+	{
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		query.setStartAndEndYear(2010, 2012);
+		query.setStartDate(LocalDateTime.of(2015, 1, 1, 0, 0));
+		assertTrue(query.getEarliestYear() > query.getLatestYear());
+	}
+}
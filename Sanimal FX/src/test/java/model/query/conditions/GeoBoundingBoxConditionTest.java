@@ -0,0 +1,52 @@
+package model.query.conditions;
+
+import model.query.ElasticSearchQuery;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for adding a bounding box to a query, which the cluster's query builder only accepts with a height and a width
+ */
+public class GeoBoundingBoxConditionTest
+{
+	@Test
+	public void validBoxesAreQueried()
+	{
+		assertTrue(this.queryFor(33.0, -111.5, 31.0, -109.0).contains("geo_bounding_box"));
+	}
+
+	@Test
+	public void invertedBoxesAreLeftOut()
+	{
+		assertFalse(this.queryFor(31.0, -111.5, 33.0, -109.0).contains("geo_bounding_box"));
+	}
+
+	@Test
+	public void flatBoxesAreLeftOut()
+	{
+		assertFalse(this.queryFor(32.0, -111.5, 32.0, -109.0).contains("geo_bounding_box"));
+		assertFalse(this.queryFor(33.0, -110.0, 31.0, -110.0).contains("geo_bounding_box"));
+	}
+
+	/**
+	 * Builds a query with a bounding box condition
+	 *
+	 * @param north The latitude of the top edge of the box
+	 * @param west The longitude of the left edge of the box
+	 * @param south The latitude of the bottom edge of the box
+	 * @param east The longitude of the right edge of the box
+	 * @return The built query as JSON
+	 */
+	private String queryFor(Double north, Double west, Double south, Double east)
+	{
+		GeoBoundingBoxCondition condition = new GeoBoundingBoxCondition();
+		condition.northProperty().setValue(north);
+		condition.westProperty().setValue(west);
+		condition.southProperty().setValue(south);
+		condition.eastProperty().setValue(east);
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		condition.appendConditionToQuery(query);
+		return query.build().toString();
+	}
+}
@@ -0,0 +1,42 @@
+package model.query.conditions;
+
+import model.query.ElasticSearchQuery;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for adding a distance filter to a query, which the cluster's query builder only accepts with a positive distance
+ */
+public class GeoDistanceConditionTest
+{
+	@Test
+	public void positiveDistancesAreQueried()
+	{
+		assertTrue(this.queryFor(2.5).contains("geo_distance"));
+	}
+
+	@Test
+	public void distancesThatAreNotPositiveAreLeftOut()
+	{
+		assertFalse(this.queryFor(0.0).contains("geo_distance"));
+		assertFalse(this.queryFor(-1.0).contains("geo_distance"));
+	}
+
+	/**
+	 * Builds a query with a distance condition around a point
+	 *
+	 * @param distance The distance in kilometers
+	 * @return The built query as JSON
+	 */
+	private String queryFor(Double distance)
+	{
+		GeoDistanceCondition condition = new GeoDistanceCondition();
+		condition.latitudeProperty().setValue(32.2);
+		condition.longitudeProperty().setValue(-110.9);
+		condition.distanceProperty().setValue(distance);
+		ElasticSearchQuery query = new ElasticSearchQuery();
+		condition.appendConditionToQuery(query);
+		return query.build().toString();
+	}
+}
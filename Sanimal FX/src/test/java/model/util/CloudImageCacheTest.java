@@ -0,0 +1,137 @@
+package model.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the size limited least recently used cache of cloud images
+ */
+public class CloudImageCacheTest
+{
+	// The cache directory and downloaded files are created in here
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void storedFilesCanBeLookedUp() throws IOException
+	{
+		CloudImageCache cloudImageCache = new CloudImageCache(this.temporaryFolder.newFolder("cache"));
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("a", 10), 100L);
+
+		File cachedFile = cloudImageCache.lookup("a");
+		assertNotNull(cachedFile);
+		assertEquals("a.jpg", cachedFile.getName());
+		assertEquals("aaaaaaaaaa", FileUtils.readFileToString(cachedFile, StandardCharsets.UTF_8));
+		assertNull(cloudImageCache.lookup("b"));
+	}
+
+	@Test
+	public void leastRecentlyUsedFilesAreEvictedFirst() throws IOException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("cache");
+		CloudImageCache cloudImageCache = new CloudImageCache(cacheDirectory);
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("a", 10), 30L);
+		cloudImageCache.store("b", "image.jpg", this.downloadedFile("b", 10), 30L);
+		cloudImageCache.store("c", "image.jpg", this.downloadedFile("c", 10), 30L);
+
+		// Using a makes b the least recently used, so b is evicted once d no longer fits
+		File cachedA = cloudImageCache.lookup("a");
+		File cachedB = new File(cacheDirectory, "b.jpg");
+		cloudImageCache.store("d", "image.jpg", this.downloadedFile("d", 10), 30L);
+
+		assertTrue(cloudImageCache.contains("a"));
+		assertFalse(cloudImageCache.contains("b"));
+		assertTrue(cloudImageCache.contains("c"));
+		assertTrue(cloudImageCache.contains("d"));
+		// The evicted file is deleted from disk, the others are kept
+		assertTrue(cachedA.exists());
+		assertFalse(cachedB.exists());
+	}
+
+	@Test
+	public void evictsUntilTheCacheFits() throws IOException
+	{
+		CloudImageCache cloudImageCache = new CloudImageCache(this.temporaryFolder.newFolder("cache"));
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("a", 10), 100L);
+		cloudImageCache.store("b", "image.jpg", this.downloadedFile("b", 10), 100L);
+
+		// A large file pushes out both smaller files
+		cloudImageCache.store("c", "image.jpg", this.downloadedFile("c", 95), 100L);
+
+		assertFalse(cloudImageCache.contains("a"));
+		assertFalse(cloudImageCache.contains("b"));
+		assertTrue(cloudImageCache.contains("c"));
+	}
+
+	@Test
+	public void storingACachedFileAgainDoesNothing() throws IOException
+	{
+		CloudImageCache cloudImageCache = new CloudImageCache(this.temporaryFolder.newFolder("cache"));
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("a", 10), 15L);
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("z", 10), 15L);
+
+		// The second store would push the cache over its size if it was counted twice
+		assertTrue(cloudImageCache.contains("a"));
+		assertEquals("aaaaaaaaaa", FileUtils.readFileToString(cloudImageCache.lookup("a"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void previouslyCachedFilesAreLoadedInLeastRecentlyUsedOrder() throws IOException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("cache");
+		File olderFile = new File(cacheDirectory, "older.jpg");
+		File newerFile = new File(cacheDirectory, "newer.jpg");
+		FileUtils.writeStringToFile(olderFile, "0123456789", StandardCharsets.UTF_8);
+		FileUtils.writeStringToFile(newerFile, "0123456789", StandardCharsets.UTF_8);
+		olderFile.setLastModified(1_000_000L);
+		newerFile.setLastModified(2_000_000L);
+		// A copy that never finished is thrown away
+		File partialFile = new File(cacheDirectory, "partial123.part");
+		FileUtils.writeStringToFile(partialFile, "0123", StandardCharsets.UTF_8);
+
+		CloudImageCache cloudImageCache = new CloudImageCache(cacheDirectory);
+		assertTrue(cloudImageCache.contains("older"));
+		assertTrue(cloudImageCache.contains("newer"));
+		assertFalse(partialFile.exists());
+
+		// The file used longest ago goes first
+		cloudImageCache.store("a", "image.jpg", this.downloadedFile("a", 10), 20L);
+		assertFalse(cloudImageCache.contains("older"));
+		assertTrue(cloudImageCache.contains("newer"));
+		assertTrue(cloudImageCache.contains("a"));
+	}
+
+	@Test
+	public void cacheKeysChangeWithTheFileVersion()
+	{
+		CloudImageCache cloudImageCache = new CloudImageCache(this.temporaryFolder.getRoot());
+		String cacheKey = cloudImageCache.cacheKeyFor("/iplant/home/user/image.jpg", 100L, 1_000L);
+		assertEquals(cacheKey, cloudImageCache.cacheKeyFor("/iplant/home/user/image.jpg", 100L, 1_000L));
+		assertNotEquals(cacheKey, cloudImageCache.cacheKeyFor("/iplant/home/user/image.jpg", 101L, 1_000L));
+		assertNotEquals(cacheKey, cloudImageCache.cacheKeyFor("/iplant/home/user/image.jpg", 100L, 2_000L));
+		assertNotEquals(cacheKey, cloudImageCache.cacheKeyFor("/iplant/home/user/other.jpg", 100L, 1_000L));
+	}
+
+	/**
+	 * Creates a file standing in for a freshly downloaded image
+	 *
+	 * @param contents The character the file is filled with
+	 * @param size The size of the file in bytes
+	 * @return The file
+	 * @throws IOException If the file could not be written
+	 */
+	private File downloadedFile(String contents, Integer size) throws IOException
+	{
+		File downloadedFile = this.temporaryFolder.newFile();
+		FileUtils.writeStringToFile(downloadedFile, new String(new char[size]).replace("\0", contents), StandardCharsets.UTF_8);
+		return downloadedFile;
+	}
+}